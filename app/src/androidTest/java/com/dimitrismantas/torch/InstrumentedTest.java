@@ -25,21 +25,65 @@ import androidx.test.platform.app.InstrumentationRegistry;
 
 import com.dimitrismantas.torch.core.main.Path;
 import com.dimitrismantas.torch.core.main.engine.AStar;
+import com.dimitrismantas.torch.core.main.engine.AlternativeRouteSearch;
+import com.dimitrismantas.torch.core.main.engine.BidirectionalAStar;
+import com.dimitrismantas.torch.core.main.engine.DeltaSteppingSearch;
+import com.dimitrismantas.torch.core.main.engine.IncrementalRerouteSearch;
+import com.dimitrismantas.torch.core.main.engine.IsochroneSearch;
+import com.dimitrismantas.torch.core.main.engine.KShortestPathSearch;
+import com.dimitrismantas.torch.core.main.engine.ManyToManySearch;
+import com.dimitrismantas.torch.core.main.engine.NavigationSession;
+import com.dimitrismantas.torch.core.main.engine.OneToManySearch;
+import com.dimitrismantas.torch.core.main.engine.ParetoSearch;
+import com.dimitrismantas.torch.core.main.engine.TimeDependentAStar;
+import com.dimitrismantas.torch.core.main.engine.WeightedAStar;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.metrics.Metric;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.TravelTimePatch;
+import com.dimitrismantas.torch.core.main.engine.utils.profiles.TravelTimeProfiles;
 import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
 import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
+import com.dimitrismantas.torch.core.main.utils.NearestNeighborSearch;
+import com.dimitrismantas.torch.core.main.utils.RouteCache;
+import com.dimitrismantas.torch.core.main.utils.SnapCache;
+import com.dimitrismantas.torch.core.main.utils.WaypointOrdering;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
 import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+import com.dimitrismantas.torch.core.utils.serialization.compression.BlockCompressedContainer;
+import com.dimitrismantas.torch.core.utils.serialization.compression.BlockCompressedReader;
+import com.dimitrismantas.torch.utils.data.AssetUnpacker;
 import com.dimitrismantas.torch.utils.data.DataManager;
 import com.dimitrismantas.torch.utils.data.FileManager;
+import com.dimitrismantas.torch.utils.multithreading.RoutingPipeline;
 import com.dimitrismantas.torch.utils.multithreading.ThreadManager;
 
+import org.oscim.core.GeoPoint;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(AndroidJUnit4.class)
 public class InstrumentedTest {
@@ -48,16 +92,17 @@ public class InstrumentedTest {
     private static final int NUM_TRIALS = 3;
     private static final int NUM_WARMUP_TRIALS = NUM_AVERAGED_TRIALS / 10;
     private static final int NUM_VERTICES = 8436216;
+    private static final int NUM_RANDOM_READS = 1000000;
+    private static final int NUM_SNAPS = 200;
+    private static final int NUM_MATRIX_SOURCES = 8;
+    private static final int NUM_MATRIX_TARGETS = 8;
+    private static final int NUM_ONE_TO_MANY_TARGETS = 50;
+    private static final int NUM_PATCH_RECORDS = 1 << 16;
     private static final double TO_MILLI = 1E-6D;
 
     private static void warmupDevice() {
-        ThreadManager.instantiateRoutingServices(InstrumentationRegistry.getInstrumentation().getTargetContext());
-        // This makes helps make sure that the routing services are actually available before proceeding.
-        try {
-            Thread.sleep(5000L);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        // Wait until the routing services are actually available before proceeding.
+        ThreadManager.instantiateRoutingServices(InstrumentationRegistry.getInstrumentation().getTargetContext()).join();
         // This class needs ot be instantiated in order for the RNG to work properly.
         final TestMath math = new TestMath();
         for (int i = 0; i < NUM_WARMUP_TRIALS; i++) {
@@ -100,7 +145,7 @@ public class InstrumentedTest {
                     final Path route = DataManager.getaStar().run(source, target, optimizationMode);
                     R.add((int) Math.round((System.nanoTime() * TO_MILLI - t0)));
 
-                    E.add(route.getEndpoints().size());
+                    E.add(route.getNumEndpoints());
                     L.add(route.getLength());
                     T.add(route.getTravelTime());
                 } catch (final EqualEndpointException | UnreachableTargetException e) {
@@ -131,6 +176,627 @@ public class InstrumentedTest {
         Log.d(LOG_TAG, "Torch profiled using the fastest route optimization mode.");
     }
 
+    /**
+     * Measures the time from the moment the routing services become available until the first route is found.
+     * <p>
+     * The page cache must be cold (e.g., after rebooting the device) for the results to be meaningful, and the measurement is repeated with and without prewarming on separate runs.
+     */
+    @Test
+    public void measureTimeToFirstRoute() {
+        final boolean prewarm = Boolean.parseBoolean(InstrumentationRegistry.getArguments().getString("prewarm", "true"));
+        ThreadManager.instantiateRoutingServices(InstrumentationRegistry.getInstrumentation().getTargetContext(), prewarm, new double[]{37.7338, 23.4775, 38.2338, 23.9775}).join();
+        final double t0 = System.nanoTime() * TO_MILLI;
+        final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(38.0512, 23.8091);
+        DataManager.getaStar().run(source, target, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        Log.d(LOG_TAG, String.format("Time to first route: %f ms (prewarm: %b)", System.nanoTime() * TO_MILLI - t0, prewarm));
+    }
+
+    /**
+     * Measures the storage footprint, cold start time, random read latency and full decompression time of the block-compressed graph container, against those of the raw graph.
+     */
+    @Test
+    public void measureBlockCompressedContainer() throws IOException {
+        final File serializedGraphPath = getGraphFile();
+        final File containerPath = File.createTempFile("grc", ".tbc");
+        containerPath.deleteOnExit();
+        BlockCompressedContainer.write(serializedGraphPath, containerPath, BlockCompressedContainer.DEFAULT_BLOCK_SIZE);
+        Log.d(LOG_TAG, String.format("Storage: %d B (raw), %d B (container)", serializedGraphPath.length(), containerPath.length()));
+
+        final Random random = new Random(362647020392L);
+        try (final FileChannel fChannel = new RandomAccessFile(serializedGraphPath, "r").getChannel()) {
+            double t0 = System.nanoTime() * TO_MILLI;
+            final ByteBuffer bb = fChannel.map(FileChannel.MapMode.READ_ONLY, 0, fChannel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            DeserializedGraph.getRootAsDeserializedGraph(bb).vertices(0);
+            Log.d(LOG_TAG, String.format("Cold start: %f ms (raw)", System.nanoTime() * TO_MILLI - t0));
+
+            t0 = System.nanoTime() * TO_MILLI;
+            try (final BlockCompressedReader reader = new BlockCompressedReader(containerPath)) {
+                reader.getInt(0);
+                Log.d(LOG_TAG, String.format("Cold start: %f ms (container)", System.nanoTime() * TO_MILLI - t0));
+
+                final long[] positions = new long[NUM_RANDOM_READS];
+                for (int i = 0; i < NUM_RANDOM_READS; i++) {
+                    positions[i] = (long) (random.nextDouble() * (bb.capacity() - 4));
+                }
+                // The checksum keeps the reads from being optimized away.
+                long checksum = 0;
+                long t1 = System.nanoTime();
+                for (final long position : positions) {
+                    checksum += bb.getInt((int) position);
+                }
+                Log.d(LOG_TAG, String.format("Random read: %f ns (raw)", (double) (System.nanoTime() - t1) / NUM_RANDOM_READS));
+                t1 = System.nanoTime();
+                for (final long position : positions) {
+                    checksum -= reader.getInt(position);
+                }
+                Log.d(LOG_TAG, String.format("Random read: %f ns (container, checksum %d)", (double) (System.nanoTime() - t1) / NUM_RANDOM_READS, checksum));
+
+                final File decompressedPath = File.createTempFile("grc", ".bin");
+                decompressedPath.deleteOnExit();
+                t0 = System.nanoTime() * TO_MILLI;
+                try (final FileChannel out = new RandomAccessFile(decompressedPath, "rw").getChannel()) {
+                    reader.decompressTo(out);
+                }
+                Log.d(LOG_TAG, String.format("Full decompression: %f ms", System.nanoTime() * TO_MILLI - t0));
+            }
+        }
+    }
+
+    /**
+     * Measures the time to unpack the graph on the first launch, the way it used to be unpacked and the way it is unpacked now, as well as the time to find it already unpacked on every subsequent launch.
+     */
+    @Test
+    public void measureAssetUnpacking() throws IOException {
+        final File serializedGraphPath = getGraphFile();
+
+        // This is how the assets used to be unpacked.
+        final File legacyPath = File.createTempFile("grc", ".bin");
+        legacyPath.deleteOnExit();
+        double t0 = System.nanoTime() * TO_MILLI;
+        try (final InputStream iStream = new FileInputStream(serializedGraphPath); final OutputStream oStream = new FileOutputStream(legacyPath)) {
+            final byte[] buffer = new byte[8192];
+            int length;
+            while ((length = iStream.read(buffer)) != -1) {
+                oStream.write(buffer, 0, length);
+            }
+        }
+        Log.d(LOG_TAG, String.format("First launch: %f ms (before)", System.nanoTime() * TO_MILLI - t0));
+
+        final File unpackedPath = new File(legacyPath.getPath() + ".unpacked");
+        unpackedPath.deleteOnExit();
+        new File(unpackedPath.getPath() + ".crc32").deleteOnExit();
+        for (final String launch : new String[]{"First launch: %f ms (after)", "Subsequent launch: %f ms"}) {
+            t0 = System.nanoTime() * TO_MILLI;
+            try (final FileInputStream iStream = new FileInputStream(serializedGraphPath)) {
+                AssetUnpacker.unpack(iStream.getChannel(), 0, serializedGraphPath.length(), unpackedPath, null);
+            }
+            Log.d(LOG_TAG, String.format(launch, System.nanoTime() * TO_MILLI - t0));
+        }
+    }
+
+    /**
+     * Measures the time to find a route through the routing pipeline, and the time to find the same route in the route cache afterwards.
+     */
+    @Test
+    public void measureRouteCache() {
+        final DeserializedGraph graph = getGraph();
+        final RouteCache routeCache = new RouteCache(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final RoutingPipeline pipeline = new RoutingPipeline(graph, DataManager.getNearestNeighborSearch(), DataManager.getaStar(), routeCache, executor);
+            double t0 = System.nanoTime() * TO_MILLI;
+            final Path route = pipeline.route(new GeoPoint(37.9838, 23.7275), new GeoPoint(40.6401, 22.9444), AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME).join().getRoute();
+            Log.d(LOG_TAG, String.format("Route cache miss: %f ms", System.nanoTime() * TO_MILLI - t0));
+
+            t0 = System.nanoTime() * TO_MILLI;
+            routeCache.get(graph.vertices(route.getSourceLabel()), graph.vertices(route.getTargetLabel()), AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+            Log.d(LOG_TAG, String.format("Route cache hit: %f ms (%s)", System.nanoTime() * TO_MILLI - t0, routeCache));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Measures the average time to snap points clustered around a few popular locations, with and without the snapping cache.
+     */
+    @Test
+    public void measureSnapCache() {
+        final DeserializedGraph graph = getGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final SnapCache snapCache = new SnapCache(graph, nns);
+        final double[][] popularLocations = {{37.9838, 23.7275}, {40.6401, 22.9444}, {38.2466, 21.7346}, {35.3387, 25.1442}};
+        final Random random = new Random(362647020392L);
+        final double[][] points = new double[NUM_SNAPS][];
+        for (int i = 0; i < NUM_SNAPS; i++) {
+            final double[] location = popularLocations[random.nextInt(popularLocations.length)];
+            points[i] = new double[]{location[0] + (random.nextInt(5) - 2) * SnapCache.DEFAULT_CELL_SIZE, location[1] + (random.nextInt(5) - 2) * SnapCache.DEFAULT_CELL_SIZE};
+        }
+        double t0 = System.nanoTime() * TO_MILLI;
+        for (final double[] point : points) {
+            nns.run(point[0], point[1]);
+        }
+        Log.d(LOG_TAG, String.format("Snap: %f ms (search)", (System.nanoTime() * TO_MILLI - t0) / NUM_SNAPS));
+        t0 = System.nanoTime() * TO_MILLI;
+        for (final double[] point : points) {
+            snapCache.run(point[0], point[1]);
+        }
+        Log.d(LOG_TAG, String.format("Snap: %f ms (cache, %s)", (System.nanoTime() * TO_MILLI - t0) / NUM_SNAPS, snapCache));
+    }
+
+    /**
+     * Measures the time to find the optimal route between two vertices, against the time to find only its cost, in every optimization mode.
+     */
+    @Test
+    public void measureCost() {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(40.6401, 22.9444);
+        final AStar aStar = new AStar(graph);
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            double t0 = System.nanoTime() * TO_MILLI;
+            aStar.run(source, target, optimizationMode);
+            Log.d(LOG_TAG, String.format("%s: %f ms (route)", optimizationMode, System.nanoTime() * TO_MILLI - t0));
+            t0 = System.nanoTime() * TO_MILLI;
+            aStar.findCost(source, target, optimizationMode, new int[1], CancellationToken.NONE);
+            Log.d(LOG_TAG, String.format("%s: %f ms (cost)", optimizationMode, System.nanoTime() * TO_MILLI - t0));
+        }
+    }
+
+    /**
+     * Measures the time to build the incoming edge index, as well as the time to compute a cost matrix between random vertices, against the time to find every cost in it with a separate search, in every optimization mode.
+     */
+    @Test
+    public void measureManyToMany() {
+        final DeserializedGraph graph = getGraph();
+        final TestMath math = new TestMath();
+        final int[] sourceLabels = new int[NUM_MATRIX_SOURCES];
+        final int[] targetLabels = new int[NUM_MATRIX_TARGETS];
+        for (int i = 0; i < NUM_MATRIX_SOURCES; i++) {
+            sourceLabels[i] = math.random(0, NUM_VERTICES);
+        }
+        for (int j = 0; j < NUM_MATRIX_TARGETS; j++) {
+            targetLabels[j] = math.random(0, NUM_VERTICES);
+        }
+        double t0 = System.nanoTime() * TO_MILLI;
+        final IncomingEdgeIndex incomingEdges = IncomingEdgeIndex.build(graph);
+        Log.d(LOG_TAG, String.format("Incoming edge index: %f ms (%d edges)", System.nanoTime() * TO_MILLI - t0, incomingEdges.getNumEdges()));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            final AStar aStar = new AStar(graph);
+            for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+                t0 = System.nanoTime() * TO_MILLI;
+                new ManyToManySearch(graph, incomingEdges).run(sourceLabels, targetLabels, optimizationMode, executor);
+                Log.d(LOG_TAG, String.format("%s: %f ms (matrix)", optimizationMode, System.nanoTime() * TO_MILLI - t0));
+                t0 = System.nanoTime() * TO_MILLI;
+                for (final int sourceLabel : sourceLabels) {
+                    for (final int targetLabel : targetLabels) {
+                        try {
+                            aStar.findCost(graph.vertices(sourceLabel), graph.vertices(targetLabel), optimizationMode);
+                        } catch (final UnreachableTargetException | EqualEndpointException e) {
+                            Log.w(LOG_TAG, e);
+                        }
+                    }
+                }
+                Log.d(LOG_TAG, String.format("%s: %f ms (pairwise)", optimizationMode, System.nanoTime() * TO_MILLI - t0));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Measures the time to find the routes from a depot to a number of nearby customers with a single search, against the time to find each of them with a separate one.
+     */
+    @Test
+    public void measureOneToMany() {
+        final DeserializedGraph graph = getGraph();
+        final NearestNeighborSearch nns = DataManager.getNearestNeighborSearch();
+        final int sourceLabel = nns.run(37.9838, 23.7275).lbl();
+        final Random random = new Random(362647020392L);
+        final int[] targetLabels = new int[NUM_ONE_TO_MANY_TARGETS];
+        for (int j = 0; j < NUM_ONE_TO_MANY_TARGETS; j++) {
+            targetLabels[j] = nns.run(37.9838 + 0.05 * (random.nextDouble() - 0.5), 23.7275 + 0.05 * (random.nextDouble() - 0.5)).lbl();
+        }
+        double t0 = System.nanoTime() * TO_MILLI;
+        new OneToManySearch(graph).run(sourceLabel, targetLabels, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, true);
+        Log.d(LOG_TAG, String.format("One-to-many: %f ms (single search)", System.nanoTime() * TO_MILLI - t0));
+        final AStar aStar = new AStar(graph);
+        t0 = System.nanoTime() * TO_MILLI;
+        for (final int targetLabel : targetLabels) {
+            try {
+                aStar.run(graph.vertices(sourceLabel), graph.vertices(targetLabel), AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+            } catch (final EqualEndpointException e) {
+                Log.w(LOG_TAG, e);
+            }
+        }
+        Log.d(LOG_TAG, String.format("One-to-many: %f ms (one search per target)", System.nanoTime() * TO_MILLI - t0));
+    }
+
+    /**
+     * Measures the time to find the vertices reachable from (and reaching) a given one within a travel time budget, as well as the time to compute their outline.
+     */
+    @Test
+    public void measureIsochrone() {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex origin = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex boundary = DataManager.getNearestNeighborSearch().run(37.9838 + 0.02, 23.7275 + 0.02);
+        // The budget is exactly enough to reach a vertex a couple of kilometers away.
+        final int budget = new AStar(graph).findCost(origin, boundary, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        final IsochroneSearch isochroneSearch = new IsochroneSearch(graph, IncomingEdgeIndex.build(graph));
+        for (final IsochroneSearch.Direction direction : IsochroneSearch.Direction.values()) {
+            double t0 = System.nanoTime() * TO_MILLI;
+            final IsochroneSearch.Isochrone isochrone = isochroneSearch.run(origin.lbl(), budget, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, direction);
+            Log.d(LOG_TAG, String.format("Isochrone (%s): %f ms (%d vertices)", direction, System.nanoTime() * TO_MILLI - t0, isochrone.getNumVertices()));
+            t0 = System.nanoTime() * TO_MILLI;
+            final float[] outline = isochrone.computeOutline(graph, 1e-3);
+            Log.d(LOG_TAG, String.format("Isochrone (%s): %f ms (outline, %d points)", direction, System.nanoTime() * TO_MILLI - t0, outline.length / 2));
+        }
+    }
+
+    /**
+     * Measures the speed-up of a parallel delta-stepping one-to-all search over a sequential Dijkstra search, for a range of bucket widths around the default one, in every optimization mode.
+     */
+    @Test
+    public void measureDeltaStepping() {
+        final DeserializedGraph graph = getGraph();
+        final int sourceLabel = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275).lbl();
+        final IsochroneSearch dijkstra = new IsochroneSearch(graph);
+        final DeltaSteppingSearch deltaStepping = new DeltaSteppingSearch(graph);
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            // An unbounded isochrone search is a sequential Dijkstra search.
+            double t0 = System.nanoTime() * TO_MILLI;
+            dijkstra.run(sourceLabel, Integer.MAX_VALUE, optimizationMode, IsochroneSearch.Direction.FORWARD);
+            final double sequentialTime = System.nanoTime() * TO_MILLI - t0;
+            Log.d(LOG_TAG, String.format("%s: %f ms (Dijkstra)", optimizationMode, sequentialTime));
+            final int defaultBucketWidth = deltaStepping.getDefaultBucketWidth(optimizationMode);
+            for (final int bucketWidth : new int[]{defaultBucketWidth / 16, defaultBucketWidth / 4, defaultBucketWidth, 4 * defaultBucketWidth, 16 * defaultBucketWidth}) {
+                t0 = System.nanoTime() * TO_MILLI;
+                deltaStepping.run(sourceLabel, optimizationMode, Math.max(1, bucketWidth), CancellationToken.NONE);
+                final double parallelTime = System.nanoTime() * TO_MILLI - t0;
+                Log.d(LOG_TAG, String.format("%s: %f ms (delta-stepping, delta = %d), %.2fx speed-up", optimizationMode, parallelTime, Math.max(1, bucketWidth), sequentialTime / parallelTime));
+            }
+        }
+    }
+
+    /**
+     * Measures the average latency of long queries between the largest cities, using a single thread (A*) and two threads (bidirectional A*), in every optimization mode.
+     */
+    @Test
+    public void measureBidirectionalAStar() {
+        final DeserializedGraph graph = getGraph();
+        final NearestNeighborSearch nns = DataManager.getNearestNeighborSearch();
+        final AStar aStar = new AStar(graph);
+        final BidirectionalAStar bidirectionalAStar = new BidirectionalAStar(graph, IncomingEdgeIndex.build(graph));
+        final double[][] queries = {{37.9838, 23.7275, 40.6401, 22.9444}, {40.6401, 22.9444, 37.9838, 23.7275}, {38.2466, 21.7346, 40.6401, 22.9444}};
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+                double sequentialTime = 0;
+                double parallelTime = 0;
+                for (final double[] query : queries) {
+                    final DeserializedVertex source = nns.run(query[0], query[1]);
+                    final DeserializedVertex target = nns.run(query[2], query[3]);
+                    double t0 = System.nanoTime() * TO_MILLI;
+                    aStar.run(source, target, optimizationMode);
+                    sequentialTime += System.nanoTime() * TO_MILLI - t0;
+                    t0 = System.nanoTime() * TO_MILLI;
+                    bidirectionalAStar.run(graph.vertices(source.lbl()), graph.vertices(target.lbl()), optimizationMode, executor);
+                    parallelTime += System.nanoTime() * TO_MILLI - t0;
+                }
+                Log.d(LOG_TAG, String.format("%s: %f ms (A*, 1 thread), %f ms (bidirectional A*, 2 threads) on average", optimizationMode, sequentialTime / queries.length, parallelTime / queries.length));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Measures the latency and route quality of weighted A* for a range of suboptimality bounds, as well as the latency of its anytime mode, in every optimization mode.
+     */
+    @Test
+    public void measureWeightedAStar() {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(40.6401, 22.9444);
+        final WeightedAStar weightedAStar = new WeightedAStar(graph);
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            double t0 = System.nanoTime() * TO_MILLI;
+            final Path optimalRoute = weightedAStar.run(source, target, optimizationMode, 0);
+            Log.d(LOG_TAG, String.format("%s: %f ms (epsilon = 0)", optimizationMode, System.nanoTime() * TO_MILLI - t0));
+            for (final double epsilon : new double[]{0.1, 0.5, 1}) {
+                t0 = System.nanoTime() * TO_MILLI;
+                final Path route = weightedAStar.run(source, target, optimizationMode, epsilon);
+                Log.d(LOG_TAG, String.format("%s: %f ms (epsilon = %.1f, %.3f times the optimal cost)", optimizationMode, System.nanoTime() * TO_MILLI - t0, epsilon, (double) getCost(route, optimizationMode) / getCost(optimalRoute, optimizationMode)));
+            }
+            final List<Path> routes = new ArrayList<>();
+            t0 = System.nanoTime() * TO_MILLI;
+            weightedAStar.runAnytime(source, target, optimizationMode, 1, new CancellationToken().withTimeBudget(1, TimeUnit.MINUTES), routes::add);
+            Log.d(LOG_TAG, String.format("%s: %f ms (anytime, %d routes)", optimizationMode, System.nanoTime() * TO_MILLI - t0, routes.size()));
+        }
+    }
+
+    /**
+     * Measures the time to precompute the edge cost metrics, as well as the time to find a route using a metric, against the time to find it using the corresponding optimization mode.
+     */
+    @Test
+    public void measureMetric() {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(40.6401, 22.9444);
+        final AStar aStar = new AStar(graph);
+        double t0 = System.nanoTime() * TO_MILLI;
+        final Metric distance = Metric.of(graph, AStar.OptimizationMode.MINIMIZE_DISTANCE);
+        final Metric travelTime = distance.withWeights(graph, 0, 1);
+        Log.d(LOG_TAG, String.format("Metrics: %f ms (%d edges)", System.nanoTime() * TO_MILLI - t0, distance.getNumEdges()));
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            t0 = System.nanoTime() * TO_MILLI;
+            aStar.run(source, target, optimizationMode);
+            Log.d(LOG_TAG, String.format("%s: %f ms (optimization mode)", optimizationMode, System.nanoTime() * TO_MILLI - t0));
+            t0 = System.nanoTime() * TO_MILLI;
+            aStar.run(source, target, optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? distance : travelTime);
+            Log.d(LOG_TAG, String.format("%s: %f ms (metric)", optimizationMode, System.nanoTime() * TO_MILLI - t0));
+        }
+    }
+
+    /**
+     * Measures the time to find a route without an edge overlay, against the time to find it with an empty one.
+     */
+    @Test
+    public void measureEdgeOverlay() {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(40.6401, 22.9444);
+        double t0 = System.nanoTime() * TO_MILLI;
+        new AStar(graph).run(source, target, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        Log.d(LOG_TAG, String.format("Overlay: %f ms (none)", System.nanoTime() * TO_MILLI - t0));
+        t0 = System.nanoTime() * TO_MILLI;
+        new AStar(graph, new EdgeOverlay()).run(source, target, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        Log.d(LOG_TAG, String.format("Overlay: %f ms (empty)", System.nanoTime() * TO_MILLI - t0));
+    }
+
+    /**
+     * Measures the time to apply a large travel time patch over random edges, during which concurrent queries keep using the previous snapshot of the overlay.
+     */
+    @Test
+    public void measureTravelTimePatch() {
+        final DeserializedGraph graph = getGraph();
+        final Random random = new Random(362647020392L);
+        final int[] edges = new int[NUM_PATCH_RECORDS];
+        final int[] travelTimes = new int[NUM_PATCH_RECORDS];
+        for (int i = 0; i < NUM_PATCH_RECORDS; i++) {
+            final int label = random.nextInt(graph.verticesLength());
+            final int degree = graph.vertices(label).outgoingEdgesLength();
+            edges[i] = TravelTimePatch.getEdgeId(label, degree == 0 ? 0 : random.nextInt(degree));
+            travelTimes[i] = random.nextInt(1000);
+        }
+        final EdgeOverlay overlay = new EdgeOverlay();
+        final double t0 = System.nanoTime() * TO_MILLI;
+        overlay.applyTravelTimePatch(new TravelTimePatch(edges, travelTimes));
+        Log.d(LOG_TAG, String.format("Travel time patch: %f ms (%d records)", System.nanoTime() * TO_MILLI - t0, NUM_PATCH_RECORDS));
+    }
+
+    /**
+     * Measures the time to find the fastest route for a range of departure times under a daily profile with a morning rush hour, against the time to find the free-flow one.
+     */
+    @Test
+    public void measureTimeDependentAStar() throws IOException {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(40.6401, 22.9444);
+        int numEdges = 0;
+        for (int i = 0; i < graph.verticesLength(); i++) {
+            numEdges += graph.vertices(i).outgoingEdgesLength();
+        }
+        final int[] edgeProfileIds = new int[numEdges];
+        Arrays.fill(edgeProfileIds, 1);
+        final File profilesPath = File.createTempFile("ttp", ".bin");
+        profilesPath.deleteOnExit();
+        try (final OutputStream oStream = new BufferedOutputStream(new FileOutputStream(profilesPath))) {
+            TravelTimeProfiles.write(oStream, 86400, new int[][]{{0, 5 * 3600, 7 * 3600, 10 * 3600, 12 * 3600}}, new double[][]{{0.8, 0.8, 2, 2, 1}}, edgeProfileIds);
+        }
+        final TravelTimeProfiles profiles;
+        try (final InputStream iStream = new BufferedInputStream(new FileInputStream(profilesPath))) {
+            profiles = TravelTimeProfiles.read(iStream, graph);
+        }
+        double t0 = System.nanoTime() * TO_MILLI;
+        new AStar(graph).run(source, target, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        Log.d(LOG_TAG, String.format("Free-flow A*: %f ms", System.nanoTime() * TO_MILLI - t0));
+        final TimeDependentAStar timeDependentAStar = new TimeDependentAStar(graph, profiles);
+        for (final int departureTime : new int[]{3 * 3600, 6 * 3600, 7 * 3600 + 1800, 11 * 3600, 14 * 3600}) {
+            t0 = System.nanoTime() * TO_MILLI;
+            timeDependentAStar.run(source, target, departureTime);
+            Log.d(LOG_TAG, String.format("Time-dependent A*: %f ms (departure at %02d:%02d)", System.nanoTime() * TO_MILLI - t0, departureTime / 3600, departureTime / 60 % 60));
+        }
+    }
+
+    /**
+     * Measures the time to find the Pareto-optimal routes between two vertices for a range of relaxations, with and without finding the exact fastest route beforehand, against the time to find only the shortest and fastest routes with two A* searches.
+     */
+    @Test
+    public void measureParetoSearch() {
+        final DeserializedGraph graph = getGraph();
+        final NearestNeighborSearch nns = DataManager.getNearestNeighborSearch();
+        final WeightedAStar weightedAStar = new WeightedAStar(graph);
+        final ParetoSearch paretoSearch = new ParetoSearch(graph);
+        // The exact set of Pareto-optimal routes is only affordable over short distances.
+        final double[][] queries = {{37.9838, 23.7275, 37.9420, 23.6465}, {37.9838, 23.7275, 40.6401, 22.9444}};
+        final double[][] epsilons = {{0, 0.01}, {0.01, 0.05}};
+        for (int q = 0; q < queries.length; q++) {
+            final DeserializedVertex source = nns.run(queries[q][0], queries[q][1]);
+            final DeserializedVertex target = nns.run(queries[q][2], queries[q][3]);
+            double t0 = System.nanoTime() * TO_MILLI;
+            weightedAStar.run(source, target, AStar.OptimizationMode.MINIMIZE_DISTANCE, 0);
+            weightedAStar.run(source, target, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, 0);
+            Log.d(LOG_TAG, String.format("Pareto search: %f ms (two A* searches)", System.nanoTime() * TO_MILLI - t0));
+            for (final double epsilon : epsilons[q]) {
+                for (final boolean isFastestRouteExact : new boolean[]{true, false}) {
+                    t0 = System.nanoTime() * TO_MILLI;
+                    final ParetoSearch.Result result = paretoSearch.run(source, target, epsilon, isFastestRouteExact, CancellationToken.NONE);
+                    Log.d(LOG_TAG, String.format("Pareto search: %f ms (epsilon = %.2f, exact fastest route: %b, %d routes, %d labels)", System.nanoTime() * TO_MILLI - t0, epsilon, isFastestRouteExact, result.getNumRoutes(), result.getNumSettledLabels()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the time to find up to three alternative routes between two cities, as well as their stretch, in every optimization mode.
+     */
+    @Test
+    public void measureAlternativeRoutes() {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(40.6401, 22.9444);
+        final AlternativeRouteSearch alternativeRouteSearch = new AlternativeRouteSearch(graph, IncomingEdgeIndex.build(graph));
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            final double t0 = System.nanoTime() * TO_MILLI;
+            final AlternativeRouteSearch.Result result = alternativeRouteSearch.run(source, target, optimizationMode, 3);
+            Log.d(LOG_TAG, String.format("%s: %f ms (%d alternative routes)", optimizationMode, System.nanoTime() * TO_MILLI - t0, result.getNumRoutes() - 1));
+            for (int j = 1; j < result.getNumRoutes(); j++) {
+                Log.d(LOG_TAG, String.format("%s: alternative route %d costs %.3f times as much as the optimal one", optimizationMode, j, (double) getCost(result.getRoute(j), optimizationMode) / getCost(result.getOptimalRoute(), optimizationMode)));
+            }
+        }
+    }
+
+    /**
+     * Measures the time to find the ten shortest simple routes between two cities, with the spur searches run sequentially and in parallel, in every optimization mode.
+     */
+    @Test
+    public void measureKShortestPaths() throws InterruptedException {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(40.6401, 22.9444);
+        final KShortestPathSearch kShortestPathSearch = new KShortestPathSearch(graph, IncomingEdgeIndex.build(graph));
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+                double t0 = System.nanoTime() * TO_MILLI;
+                final KShortestPathSearch.Result result = kShortestPathSearch.run(source, target, optimizationMode, 10);
+                Log.d(LOG_TAG, String.format("%s: %f ms (%d routes, sequential)", optimizationMode, System.nanoTime() * TO_MILLI - t0, result.getNumRoutes()));
+                t0 = System.nanoTime() * TO_MILLI;
+                kShortestPathSearch.run(source, target, optimizationMode, 10, executor);
+                Log.d(LOG_TAG, String.format("%s: %f ms (%d routes, parallel)", optimizationMode, System.nanoTime() * TO_MILLI - t0, result.getNumRoutes()));
+                Log.d(LOG_TAG, String.format("%s: the last route costs %.3f times as much as the optimal one", optimizationMode, (double) getCost(result.getRoute(result.getNumRoutes() - 1), optimizationMode) / getCost(result.getOptimalRoute(), optimizationMode)));
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Measures the time to find a route through a number of stops through the routing pipeline, with and without reordering them.
+     */
+    @Test
+    public void measureWaypointRouting() {
+        final DeserializedGraph graph = getGraph();
+        final List<GeoPoint> stops = Arrays.asList(new GeoPoint(37.9838, 23.7275), new GeoPoint(39.6390, 22.4191), new GeoPoint(38.2466, 21.7346), new GeoPoint(39.3666, 22.9507), new GeoPoint(38.9012, 22.4345), new GeoPoint(40.6401, 22.9444));
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final RoutingPipeline pipeline = new RoutingPipeline(graph, DataManager.getNearestNeighborSearch(), DataManager.getaStar(), executor);
+            for (final boolean isOrderOptimized : new boolean[]{false, true}) {
+                final double t0 = System.nanoTime() * TO_MILLI;
+                final RoutingPipeline.Result result = pipeline.route(stops, AStar.OptimizationMode.MINIMIZE_DISTANCE, isOrderOptimized, new CancellationToken()).join();
+                Log.d(LOG_TAG, String.format("Waypoint routing: %f ms (order %s, %d m)", System.nanoTime() * TO_MILLI - t0, Arrays.toString(result.getStopOrder()), result.getRoute().getLength()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Measures the time to order a number of stops scattered over a plane, with slightly asymmetric costs between them.
+     */
+    @Test
+    public void measureWaypointOrdering() {
+        final Random random = new Random(362647020392L);
+        for (final int numStops : new int[]{8, 64}) {
+            final double[][] stops = new double[numStops][2];
+            for (final double[] stop : stops) {
+                stop[0] = random.nextDouble() * 100000;
+                stop[1] = random.nextDouble() * 100000;
+            }
+            final int[] costs = new int[numStops * numStops];
+            for (int i = 0; i < numStops; i++) {
+                for (int j = 0; j < numStops; j++) {
+                    costs[i * numStops + j] = i == j ? 0 : (int) (Math.hypot(stops[i][0] - stops[j][0], stops[i][1] - stops[j][1]) * (1 + 0.2 * random.nextDouble()));
+                }
+            }
+            final double t0 = System.nanoTime() * TO_MILLI;
+            WaypointOrdering.run(costs, numStops);
+            Log.d(LOG_TAG, String.format("Waypoint ordering: %f ms (%d stops)", System.nanoTime() * TO_MILLI - t0, numStops));
+        }
+    }
+
+    /**
+     * Measures the time to find every route while the origin is dragged away from its initial location towards a fixed destination, one step at a time, in every optimization mode.
+     */
+    @Test
+    public void measureIncrementalReroute() {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(40.6401, 22.9444);
+        final IncrementalRerouteSearch incrementalRerouteSearch = new IncrementalRerouteSearch(graph, IncomingEdgeIndex.build(graph), IncrementalRerouteSearch.DEFAULT_MAX_TREE_SIZE);
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            for (int i = 0; i < 10; i++) {
+                final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838 + 0.002 * i, 23.7275 + 0.002 * i);
+                final double t0 = System.nanoTime() * TO_MILLI;
+                incrementalRerouteSearch.run(source, target, optimizationMode);
+                Log.d(LOG_TAG, String.format("%s: %f ms (%d vertices in the tree, %d settled locally)", optimizationMode, System.nanoTime() * TO_MILLI - t0, incrementalRerouteSearch.getTreeSize(), incrementalRerouteSearch.getNumLocallySettled()));
+            }
+        }
+    }
+
+    /**
+     * Measures the time to start a navigation session between two cities, to recalculate the route from its vertices, and to recalculate it from a position far off it, in every optimization mode.
+     */
+    @Test
+    public void measureNavigationSession() {
+        final DeserializedGraph graph = getGraph();
+        final DeserializedVertex source = DataManager.getNearestNeighborSearch().run(37.9838, 23.7275);
+        final DeserializedVertex target = DataManager.getNearestNeighborSearch().run(40.6401, 22.9444);
+        final DeserializedVertex position = DataManager.getNearestNeighborSearch().run(38.2466, 21.7346);
+        final WeightedAStar weightedAStar = new WeightedAStar(graph);
+        final NavigationSession navigationSession = new NavigationSession(graph, IncomingEdgeIndex.build(graph));
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            final Path route = weightedAStar.run(source, target, optimizationMode, 0);
+            double t0 = System.nanoTime() * TO_MILLI;
+            navigationSession.start(route, optimizationMode);
+            Log.d(LOG_TAG, String.format("%s: %f ms to start (%d vertices in the tree)", optimizationMode, System.nanoTime() * TO_MILLI - t0, navigationSession.getNumTreeVertices()));
+
+            int numRecalculations = 0;
+            t0 = System.nanoTime() * TO_MILLI;
+            for (int i = 0; i + 1 < route.getNumEndpoints(); i += 10, numRecalculations++) {
+                navigationSession.reroute(graph.vertices(route.getLabel(i)));
+            }
+            Log.d(LOG_TAG, String.format("%s: %f ms per recalculation on the route", optimizationMode, (System.nanoTime() * TO_MILLI - t0) / numRecalculations));
+
+            t0 = System.nanoTime() * TO_MILLI;
+            final Path detour = navigationSession.reroute(position);
+            Log.d(LOG_TAG, String.format("%s: %f ms off the route (%d extensions, %.3f times the optimal cost)", optimizationMode, System.nanoTime() * TO_MILLI - t0, navigationSession.getNumExtensions(), (double) getCost(detour, optimizationMode) / getCost(weightedAStar.run(position, target, optimizationMode, 0), optimizationMode)));
+        }
+    }
+
+    /**
+     * Waits until the routing services become available and returns the graph they use.
+     */
+    private static DeserializedGraph getGraph() {
+        ThreadManager.instantiateRoutingServices(InstrumentationRegistry.getInstrumentation().getTargetContext()).join();
+        return DataManager.getGraph();
+    }
+
+    /**
+     * Waits until the routing services become available, by which time the graph has been unpacked, and returns the unpacked graph.
+     */
+    private static File getGraphFile() {
+        ThreadManager.instantiateRoutingServices(InstrumentationRegistry.getInstrumentation().getTargetContext()).join();
+        return new File(FileManager.concatenateNestedPaths(FileManager.getPrimaryStorageDevicePath(), "bin/grc.bin"));
+    }
+
+    private static int getCost(final Path route, final AStar.OptimizationMode optimizationMode) {
+        return optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? route.getLength() : route.getTravelTime();
+    }
+
     private static final class TestMath {
         private final Random randomNumberGenerator;
 
@@ -51,7 +51,6 @@ import com.dimitrismantas.torch.ui.utils.AnimationManager;
 import com.dimitrismantas.torch.ui.textinput.TextInputHandler;
 import com.dimitrismantas.torch.utils.data.AssetManager;
 import com.dimitrismantas.torch.utils.data.DataManager;
-import com.dimitrismantas.torch.utils.data.FileManager;
 import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
 import com.dimitrismantas.torch.utils.permissions.RuntimePermissionManager;
 import com.dimitrismantas.torch.utils.multithreading.ThreadManager;
@@ -86,11 +85,16 @@ import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 public final class Main extends AppCompatActivity implements ItemizedLayer.OnItemGestureListener<MarkerInterface> {
     private static final String TAG = "Main";
     private static final double[] INITIAL_MAP_CENTER = {37.9838,23.7275};
     private static final int INITIAL_MAP_ZOOM_LEVEL = 12;
+    /**
+     * A rough estimate of half the width and height of the area visible at the initial zoom level, in decimal degrees.
+     */
+    private static final double INITIAL_MAP_HALF_SPAN = 0.25;
     private static final double[] GRAPH_BOUNDING_BOX = {36.4025066, 20.0121613, 41.7575614, 26.6283465};
     /**
      * The list containing all points currently on the map. It includes marker locations and route endpoints.
@@ -115,9 +119,9 @@ public final class Main extends AppCompatActivity implements ItemizedLayer.OnIte
         SplashScreen splashScreen = SplashScreen.installSplashScreen(this);
         super.onCreate(savedInstanceState);
 
-        splashScreen.setKeepOnScreenCondition(() ->  !RuntimePermissionManager.checkRuntimePermissionStatus(this));
-
-        ThreadManager.unpackCriticalAssets(getApplicationContext());
+        final CompletableFuture<File> criticalAssets = ThreadManager.unpackCriticalAssets(getApplicationContext());
+        // Keep the splash screen visible until the critical assets have been unpacked.
+        splashScreen.setKeepOnScreenCondition(() ->  !RuntimePermissionManager.checkRuntimePermissionStatus(this) || !criticalAssets.isDone());
 
         setContentView(R.layout.activity_map);
         mapView = findViewById(R.id.mapView);
@@ -125,13 +129,22 @@ public final class Main extends AppCompatActivity implements ItemizedLayer.OnIte
         odTextField = findViewById(R.id.textInput);
         odMarkerLegend = findViewById(R.id.markerHint);
         routeAttributeTextView = findViewById(R.id.routeAttributes);
-        // Instantiate the UI sections.
-        instantiateMap(FileManager.concatenateNestedPaths(FileManager.getPrimaryStorageDevicePath(), "map/grc.map"));
+        // Instantiate the UI sections. The map can only be instantiated after its tile source has been unpacked.
+        criticalAssets.whenComplete((mapFile, e) -> runOnUiThread(() -> {
+            if (e != null) {
+                Toast.makeText(getApplicationContext(), "Failed to load the map. Please restart Torch.", Toast.LENGTH_LONG).show();
+                return;
+            }
+            instantiateMap(mapFile.getPath());
+        }));
         instantiateMapController();
         instantiateRoutingManager();
         // Unpack the non-critical application assets.
 
-        ThreadManager.instantiateRoutingServices(getApplicationContext());
+        // Prewarm the graph around the initial map position, where the first routes are most likely to be.
+        ThreadManager.instantiateRoutingServices(getApplicationContext(), true, new double[]{
+                INITIAL_MAP_CENTER[0] - INITIAL_MAP_HALF_SPAN, INITIAL_MAP_CENTER[1] - INITIAL_MAP_HALF_SPAN,
+                INITIAL_MAP_CENTER[0] + INITIAL_MAP_HALF_SPAN, INITIAL_MAP_CENTER[1] + INITIAL_MAP_HALF_SPAN});
         final ImageButton helpButton = findViewById(R.id.info);
         helpButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -152,14 +165,14 @@ public final class Main extends AppCompatActivity implements ItemizedLayer.OnIte
                             return true;
                         case VERTEX_LABEL:
                             final int intRepresentation = TextInputHandler.getIntegerRepresentation(editable);
-                            // This check is required
+                            // The vertex can only be looked up once the graph has been deserialized.
                             if (!DataManager.areRoutingServicesAvailable()) {
-                                // TODO - Think of a possibly better message.
-                                Toast.makeText(getApplicationContext(), "Torch is still setting up. Please try again in a few moments.", Toast.LENGTH_SHORT).show();
-                                return true;
+                                Toast.makeText(getApplicationContext(), "Torch is still setting up. The marker will be added in a few moments.", Toast.LENGTH_SHORT).show();
                             }
-                            final DeserializedVertex vertex = DataManager.getGraph().vertices(intRepresentation);
-                            addMarkerUsingEditText(new GeoPoint(vertex.lat(), vertex.lon()), odTextField, odMarkerLegend);
+                            DataManager.getRoutingServicesAvailability().thenRun(() -> runOnUiThread(() -> {
+                                final DeserializedVertex vertex = DataManager.getGraph().vertices(intRepresentation);
+                                addMarkerUsingEditText(new GeoPoint(vertex.lat(), vertex.lon()), odTextField, odMarkerLegend);
+                            }));
                             return true;
                         case EMPTY_STRING:
                             return true;
@@ -392,7 +405,10 @@ public final class Main extends AppCompatActivity implements ItemizedLayer.OnIte
     @Override
     protected void onDestroy() {
         mapView.onDestroy();
-        mapTheme.dispose();
+        // The theme is only set once the critical assets have been unpacked, which may have failed.
+        if (mapTheme != null) {
+            mapTheme.dispose();
+        }
         super.onDestroy();
     }
 
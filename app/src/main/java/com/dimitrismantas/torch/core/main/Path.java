@@ -18,42 +18,117 @@
  */
 package com.dimitrismantas.torch.core.main;
 
-import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
-
-import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A route through the graph, along with its length and travel time.
+ * <p>
+ * The endpoints of the route are stored as primitive arrays of vertex labels and coordinates, so that a route holds no references into the graph and can be built without allocating an object per endpoint. This class exposes no way to modify a route, but the arrays passed to its constructor are not copied, so that they are not copied once more for every route found; they are owned by the route from then on, and must not be modified by the caller.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.0.0
+ */
 public final class Path {
-    private final List<DeserializedVertex> endpoints = new ArrayList<>();
-    private int length;
-    private int travelTime;
+    /**
+     * The labels of the route endpoints, in order from the source to the target.
+     */
+    private final int[] labels;
+    /**
+     * The coordinates of the route endpoints, in order from the source to the target. The latitude and longitude of the {@code i}-th endpoint are stored at indices {@code 2 * i} and {@code 2 * i + 1}, respectively.
+     */
+    private final float[] coordinates;
+    private final int length;
+    private final int travelTime;
 
+    /**
+     * Instantiates this class.
+     * <p>
+     * The arrays are not copied, so they must not be modified afterwards.
+     *
+     * @param labels      The labels of the route endpoints, in order from the source to the target.
+     * @param coordinates The coordinates of the route endpoints, packed as alternating latitudes and longitudes.
+     * @param length      The route length.
+     * @param travelTime  The route travel time.
+     * @since 1.1.0
+     */
+    public Path(final int[] labels, final float[] coordinates, final int length, final int travelTime) {
+        if (coordinates.length != 2 * labels.length) {
+            throw new IllegalArgumentException("The number of coordinates must be twice the number of endpoints.");
+        }
+        this.labels = labels;
+        this.coordinates = coordinates;
+        this.length = length;
+        this.travelTime = travelTime;
+    }
 
-    public Path() {
+    /**
+     * Joins a number of consecutive routes into a single one.
+     *
+     * @param legs The routes, each of which must start where the one before it ends.
+     * @return The route.
+     * @throws IllegalArgumentException If there are no routes, or any two consecutive ones are not joined.
+     * @since 1.1.0
+     */
+    public static Path concatenate(final List<Path> legs) {
+        if (legs.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one route.");
+        }
+        int numEndpoints = 1;
+        int length = 0;
+        int travelTime = 0;
+        for (int i = 0; i < legs.size(); i++) {
+            final Path leg = legs.get(i);
+            if (i > 0 && leg.getSourceLabel() != legs.get(i - 1).getTargetLabel()) {
+                throw new IllegalArgumentException("Every route must start where the one before it ends.");
+            }
+            numEndpoints += leg.labels.length - 1;
+            length += leg.length;
+            travelTime += leg.travelTime;
+        }
+        final int[] labels = new int[numEndpoints];
+        final float[] coordinates = new float[2 * numEndpoints];
+        int numCopied = 0;
+        // The first endpoint of every route but the first is the last one of the route before it.
+        for (int i = 0; i < legs.size(); i++) {
+            final Path leg = legs.get(i);
+            final int start = i == 0 ? 0 : 1;
+            System.arraycopy(leg.labels, start, labels, numCopied, leg.labels.length - start);
+            System.arraycopy(leg.coordinates, 2 * start, coordinates, 2 * numCopied, leg.coordinates.length - 2 * start);
+            numCopied += leg.labels.length - start;
+        }
+        return new Path(labels, coordinates, length, travelTime);
     }
 
-    public List<DeserializedVertex> getEndpoints() {
-        return endpoints;
+    public int getNumEndpoints() {
+        return labels.length;
     }
 
-    public void addEndpoint(final DeserializedVertex enpoint) {
-        this.endpoints.add(0, enpoint);
+    public int getLabel(final int i) {
+        return labels[i];
     }
 
-    public int getLength() {
-        return length;
+    public int getSourceLabel() {
+        return labels[0];
     }
 
-    public void incrementLength(final int length) {
-        this.length += length;
+    public int getTargetLabel() {
+        return labels[labels.length - 1];
     }
 
-    public int getTravelTime() {
-        return travelTime;
+    public float getLatitude(final int i) {
+        return coordinates[2 * i];
     }
 
-    public void incrementTravelTime(final int travelTime) {
-        this.travelTime += travelTime;
+    public float getLongitude(final int i) {
+        return coordinates[2 * i + 1];
     }
 
+    public int getLength() {
+        return length;
+    }
+
+    public int getTravelTime() {
+        return travelTime;
+    }
 }
@@ -19,12 +19,16 @@
 package com.dimitrismantas.torch.core.main.engine;
 
 import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
 import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
 import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
 import com.dimitrismantas.torch.core.main.engine.utils.heuristics.GreatCircleDistanceHeuristic;
 import com.dimitrismantas.torch.core.main.engine.utils.heuristics.AbstractHeuristic;
 import com.dimitrismantas.torch.core.main.engine.utils.heuristics.TravelTimeHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.metrics.Metric;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay;
 import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.PriorityQueueEntry;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
 import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
 import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
 import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
@@ -34,19 +38,126 @@ import java.util.Comparator;
 import java.util.PriorityQueue;
 
 public final class AStar {
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
     private final DeserializedGraph graph;
+    /**
+     * The overlay of closures and penalties consulted by every search, or {@code null}.
+     */
+    private final EdgeOverlay overlay;
+    /**
+     * The snapshot of the overlay used by the current execution, or {@code null} if it is empty.
+     */
+    private EdgeOverlay.Snapshot overlaySnapshot;
+    private long overlayVersion;
     private AbstractHeuristic heuristic;
-    private Path route;
     private PriorityQueue<PriorityQueueEntry> priorityQueue;
     private short numExecutions;
 
     public AStar(final DeserializedGraph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * Creates an instance of the algorithm whose searches avoid every closure and pay every penalty of a given overlay.
+     *
+     * @param graph   The graph.
+     * @param overlay The overlay.
+     * @since 1.1.0
+     */
+    public AStar(final DeserializedGraph graph, final EdgeOverlay overlay) {
+        // The largest label must never be packed into a predecessor label equal to -1, which denotes the absence of a predecessor.
+        if (graph.verticesLength() > SearchSpace.PREDECESSOR_LABEL_MASK) {
+            throw new IllegalArgumentException("The graph must not contain more than " + SearchSpace.PREDECESSOR_LABEL_MASK + " vertices.");
+        }
         this.graph = graph;
+        this.overlay = overlay;
+    }
+
+    public EdgeOverlay getOverlay() {
+        return overlay;
+    }
+
+    /**
+     * Returns the version of the overlay snapshot used by the last execution, which identifies the closures and penalties its result reflects.
+     *
+     * @return The version, or zero if there is no overlay.
+     * @since 1.1.0
+     */
+    public long getOverlayVersion() {
+        return overlayVersion;
     }
 
 
     public Path run(final DeserializedVertex source, final DeserializedVertex target, final OptimizationMode optimizationMode) {
-        invalidatePreviousExecution(target, optimizationMode);
+        return run(source, target, optimizationMode, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the optimal route between two vertices, polling a cancellation token while doing so.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @param token            The cancellation token.
+     * @return The optimal route.
+     * @throws com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchCancelledException If the token is cancelled before the search finishes.
+     * @throws com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchTimeoutException   If the token expires before the search finishes.
+     * @since 1.1.0
+     */
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final OptimizationMode optimizationMode, final CancellationToken token) {
+        return search(source, target, optimizationMode, null, getSnapshot(), token);
+    }
+
+    /**
+     * Finds the optimal route between two vertices under a given snapshot of the overlay, rather than its current state, polling a cancellation token while doing so.
+     * <p>
+     * This lets a number of searches, possibly of other algorithms, reflect the same closures and penalties, even if the overlay is edited between them.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @param snapshot         The snapshot, or {@code null} to ignore the overlay.
+     * @param token            The cancellation token.
+     * @return The optimal route.
+     * @since 1.1.0
+     */
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final OptimizationMode optimizationMode, final EdgeOverlay.Snapshot snapshot, final CancellationToken token) {
+        return search(source, target, optimizationMode, null, snapshot, token);
+    }
+
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final Metric metric) {
+        return run(source, target, metric, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the optimal route between two vertices in terms of a given metric, polling a cancellation token while doing so.
+     * <p>
+     * The cost of every edge is read from the precomputed costs of the metric, and the heuristic is the one matching it.
+     *
+     * @param source The source vertex.
+     * @param target The target vertex.
+     * @param metric The metric.
+     * @param token  The cancellation token.
+     * @return The optimal route.
+     * @since 1.1.0
+     */
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final Metric metric, final CancellationToken token) {
+        return search(source, target, null, metric, getSnapshot(), token);
+    }
+
+    /**
+     * Finds the optimal route between two vertices in terms of either an optimization mode or a metric.
+     *
+     * @param metric   The metric, or {@code null} to read the cost of every edge in terms of the optimization mode instead.
+     * @param snapshot The overlay snapshot, or {@code null}.
+     */
+    private Path search(final DeserializedVertex source, final DeserializedVertex target, final OptimizationMode optimizationMode, final Metric metric, final EdgeOverlay.Snapshot snapshot, final CancellationToken token) {
+        token.throwIfAborted();
+        invalidatePreviousExecution(snapshot);
+        heuristic = metric == null ? getHeuristic(target, optimizationMode, getMinTravelTimeFactor()) : metric.getHeuristic(target, getMinTravelTimeFactor());
         // This can happen if the origin and destination are so close to each other that their nearest neighbors are equal.
         if (DeserializationManager.equals(source, target)) {
             throw new EqualEndpointException("The source and target vertices are equal.");
@@ -54,7 +165,11 @@ public final class AStar {
         // The correct value of the estimated cost to from the source vertex to the target is equal to the corresponding value of the appropriate heuristic. However, since the priority queue is initially empty, the source is guaranteed to be dequeued first.
         initialize(source, -1, 0, 0);
 
+        int numSettled = 0;
         while (!priorityQueue.isEmpty()) {
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
             final PriorityQueueEntry entry =  priorityQueue.poll();
             final DeserializedVertex curr = graph.vertices(entry.getVertexLabel());
             // Since there might be two "copies" of the current vertex in the priority queue, we must be able to differentiate between them so that we use the correct one (i.e., the one with the minimum key).
@@ -63,38 +178,159 @@ public final class AStar {
             }
 
             if (DeserializationManager.equals(curr, target)) {
-                populatePath(source, curr);
-                break;
+                return populatePath(curr);
             }
+            final int firstEdgeIndex = metric == null ? 0 : metric.getFirstEdgeIndex(curr.lbl());
             for (int i = 0; i < curr.outgoingEdgesLength(); i++) {
                 final DeserializedEdge outEdge = curr.outgoingEdges(i);
+                final int edgeCost = getCost(curr.lbl(), i, outEdge, optimizationMode, metric, firstEdgeIndex);
+                if (edgeCost == EdgeOverlay.CLOSED) {
+                    continue;
+                }
                 final DeserializedVertex adj = graph.vertices(outEdge.endVertexLabel());
-                int costFromSource = curr.actualCostFromSource();
-                switch (optimizationMode) {
-                    case MINIMIZE_DISTANCE:
-                        costFromSource += outEdge.length();
-                        break;
-                    case MINIMIZE_TRAVEL_TIME:
-                        costFromSource += outEdge.travelTime();
-                        break;
+                final int costFromSource = curr.actualCostFromSource() + edgeCost;
+                final int costToTarget = heuristic.calc(adj);
+                // The index of the edge is recorded along with the predecessor, so that the route can be reconstructed without searching for it.
+                final int predecessorLabel = SearchSpace.packPredecessorLabel(curr.lbl(), i);
+                if (adj.numInitialized() == numExecutions) {
+                    relax(predecessorLabel, adj, costFromSource, costToTarget);
+                } else {
+                    initialize(adj, predecessorLabel, costFromSource, costToTarget);
+                }
+            }
+        }
+        throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+    }
+
+    /**
+     * Finds the cost of the optimal route between two vertices.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @return The length of the optimal route if the optimization mode is {@link OptimizationMode#MINIMIZE_DISTANCE}, or its travel time otherwise.
+     * @see #findCost(DeserializedVertex, DeserializedVertex, OptimizationMode, int[], CancellationToken)
+     * @since 1.1.0
+     */
+    public int findCost(final DeserializedVertex source, final DeserializedVertex target, final OptimizationMode optimizationMode) {
+        return findCost(source, target, optimizationMode, null, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the cost of the optimal route between two vertices and, optionally, its cost in terms of the metric not being optimized.
+     * <p>
+     * No predecessors are recorded and no route is built, so this is cheaper than {@link #run(DeserializedVertex, DeserializedVertex, OptimizationMode, CancellationToken)} when only the cost is needed. The predecessor label of each vertex is instead used to accumulate the other cost.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @param otherCost        The array to store the cost of the optimal route in terms of the metric not being optimized in, or {@code null} to skip computing it.
+     * @param token            The cancellation token.
+     * @return The length of the optimal route if the optimization mode is {@link OptimizationMode#MINIMIZE_DISTANCE}, or its travel time otherwise. This is zero if the source and target vertices are equal.
+     * @throws UnreachableTargetException If the target vertex is unreachable from the source.
+     * @since 1.1.0
+     */
+    public int findCost(final DeserializedVertex source, final DeserializedVertex target, final OptimizationMode optimizationMode, final int[] otherCost, final CancellationToken token) {
+        token.throwIfAborted();
+        invalidatePreviousExecution(getSnapshot());
+        heuristic = getHeuristic(target, optimizationMode, getMinTravelTimeFactor());
+        final boolean isAccumulatingOtherCost = otherCost != null;
+        if (DeserializationManager.equals(source, target)) {
+            if (isAccumulatingOtherCost) {
+                otherCost[0] = 0;
+            }
+            return 0;
+        }
+        initialize(source, 0, 0, 0);
+
+        // These are reused throughout the search to avoid allocating an object per vertex or edge.
+        final DeserializedVertex curr = new DeserializedVertex();
+        final DeserializedVertex adj = new DeserializedVertex();
+        final DeserializedEdge outEdge = new DeserializedEdge();
+        int numSettled = 0;
+        while (!priorityQueue.isEmpty()) {
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            final PriorityQueueEntry entry = priorityQueue.poll();
+            graph.vertices(curr, entry.getVertexLabel());
+            if (entry.getKey() > curr.actualCostFromSource() + heuristic.calc(curr)) {
+                continue;
+            }
+            if (DeserializationManager.equals(curr, target)) {
+                if (isAccumulatingOtherCost) {
+                    otherCost[0] = curr.predecessorLabel();
+                }
+                return curr.actualCostFromSource();
+            }
+            for (int i = 0; i < curr.outgoingEdgesLength(); i++) {
+                curr.outgoingEdges(outEdge, i);
+                final int edgeCost = getCost(curr.lbl(), i, outEdge, optimizationMode, null, 0);
+                if (edgeCost == EdgeOverlay.CLOSED) {
+                    continue;
                 }
+                graph.vertices(adj, outEdge.endVertexLabel());
+                final int costFromSource = curr.actualCostFromSource() + edgeCost;
+                // Penalties only apply to the metric being optimized.
+                final int otherCostFromSource = isAccumulatingOtherCost ? curr.predecessorLabel() + (optimizationMode == OptimizationMode.MINIMIZE_DISTANCE ? getTravelTime(curr.lbl(), i, outEdge) : outEdge.length()) : 0;
                 final int costToTarget = heuristic.calc(adj);
                 if (adj.numInitialized() == numExecutions) {
-                    relax(curr, adj, costFromSource, costToTarget);
+                    relax(otherCostFromSource, adj, costFromSource, costToTarget);
                 } else {
-                    initialize(adj, curr.lbl(), costFromSource, costToTarget);
+                    initialize(adj, otherCostFromSource, costFromSource, costToTarget);
                 }
             }
         }
-        if (route.getEndpoints().isEmpty()) {
-            throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+        throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+    }
+
+    /**
+     * Returns the cost of an edge under the overlay snapshot of the current execution.
+     *
+     * @param metric         The metric, or {@code null} to use the optimization mode instead.
+     * @param firstEdgeIndex The index of the first outgoing edge of the start vertex in the metric.
+     * @return The cost, or {@link EdgeOverlay#CLOSED} if the edge or its end vertex is closed.
+     */
+    private int getCost(final int startVertexLabel, final int edgeIndex, final DeserializedEdge edge, final OptimizationMode optimizationMode, final Metric metric, final int firstEdgeIndex) {
+        if (overlaySnapshot == null) {
+            return metric == null ? optimizationMode.getCost(edge) : metric.getCost(firstEdgeIndex + edgeIndex);
+        }
+        if (overlaySnapshot.isClosed(edge.endVertexLabel())) {
+            return EdgeOverlay.CLOSED;
         }
-        return route;
+        final int travelTime = overlaySnapshot.getTravelTime(startVertexLabel, edgeIndex, edge.travelTime());
+        final int cost;
+        if (metric == null) {
+            cost = optimizationMode == OptimizationMode.MINIMIZE_DISTANCE ? edge.length() : travelTime;
+        } else {
+            // The precomputed cost is only valid for the travel time of the graph.
+            cost = travelTime == edge.travelTime() ? metric.getCost(firstEdgeIndex + edgeIndex) : metric.getCost(edge.length(), travelTime);
+        }
+        return overlaySnapshot.getCost(startVertexLabel, edgeIndex, cost);
+    }
+
+    /**
+     * Returns the travel time of an edge under the overlay snapshot of the current execution.
+     */
+    private int getTravelTime(final int startVertexLabel, final int edgeIndex, final DeserializedEdge edge) {
+        return overlaySnapshot == null ? edge.travelTime() : overlaySnapshot.getTravelTime(startVertexLabel, edgeIndex, edge.travelTime());
+    }
+
+    /**
+     * Returns the minimum ratio of any travel time under the overlay snapshot of the current execution to the corresponding one in the graph, so that travel time heuristics remain admissible even if a patch makes an edge faster than free flow.
+     */
+    private double getMinTravelTimeFactor() {
+        return overlaySnapshot == null ? 1 : overlaySnapshot.getMinTravelTimeFactor(graph);
+    }
+
+    private EdgeOverlay.Snapshot getSnapshot() {
+        return overlay == null ? null : overlay.getSnapshot();
     }
 
-    private void invalidatePreviousExecution(final DeserializedVertex target, final OptimizationMode optMode) {
-        heuristic = getHeuristic(target, optMode);
-        route = new Path();
+    private void invalidatePreviousExecution(final EdgeOverlay.Snapshot snapshot) {
+        // The same snapshot is used throughout the execution, so that edits made in the meantime are either fully visible to the next one or not at all.
+        overlayVersion = snapshot == null ? 0 : snapshot.getVersion();
+        overlaySnapshot = snapshot == null || snapshot.isEmpty() ? null : snapshot;
         priorityQueue = new PriorityQueue<>(Comparator.comparingInt(PriorityQueueEntry::getKey));
         numExecutions++;
     }
@@ -107,48 +343,92 @@ public final class AStar {
 
     }
 
-    private void relax(final DeserializedVertex vertex, final DeserializedVertex adjacent, final int costFromSource, final int costToTarget) {
+    private void relax(final int predecessorLabel, final DeserializedVertex adjacent, final int costFromSource, final int costToTarget) {
         if (costFromSource < adjacent.actualCostFromSource()) {
             adjacent.mutateActualCostFromSource(costFromSource);
-            adjacent.mutatePredecessorLabel(vertex.lbl());
+            adjacent.mutatePredecessorLabel(predecessorLabel);
             // Add a "duplicate" vertex to the priority queue, whose key is smaller than that of its copy. This means that between these two vertices, this one will be dequeued first.
             priorityQueue.add(new PriorityQueueEntry(costFromSource+costToTarget, adjacent.lbl()));
         }
     }
 
-    private void populatePath(final DeserializedVertex source, DeserializedVertex current) {
-        while (current.predecessorLabel() != -1) {
-            route.addEndpoint(current);
-            current = graph.vertices(current.predecessorLabel());
+    /**
+     * Builds the route from the source to a given target by following the predecessor of each vertex, starting from the target.
+     * <p>
+     * The predecessors are followed twice; first to count the route endpoints and sum the route length and travel time along the edges recorded in the predecessor labels, and then to fill in the route itself from the target backwards.
+     *
+     * @param target The target vertex.
+     * @return The route.
+     */
+    private Path populatePath(final DeserializedVertex target) {
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int numEndpoints = 1;
+        int length = 0;
+        int travelTime = 0;
+        for (int predecessorLabel = target.predecessorLabel(); predecessorLabel != -1; predecessorLabel = vertex.predecessorLabel()) {
+            graph.vertices(vertex, SearchSpace.unpackLabel(predecessorLabel)).outgoingEdges(edge, SearchSpace.unpackEdgeIndex(predecessorLabel));
+            length += edge.length();
+            travelTime += getTravelTime(SearchSpace.unpackLabel(predecessorLabel), SearchSpace.unpackEdgeIndex(predecessorLabel), edge);
+            numEndpoints++;
         }
-        // The source vertex is originally not included as an endpoint, since it has no predecessor.
-        route.addEndpoint(source);
-        // Using each endpoint, increment the route length and travel time accordingly.
-        for (int i = 0; i < route.getEndpoints().size() - 1; i++) {
-            final DeserializedVertex endpoint = graph.vertices(route.getEndpoints().get(i).lbl());
-            for (int j = 0; j < endpoint.outgoingEdgesLength(); j++) {
-                final DeserializedEdge outEdge = endpoint.outgoingEdges(j);
-                if (outEdge.endVertexLabel() == route.getEndpoints().get(i + 1).lbl()) {
-                    route.incrementLength(outEdge.length());
-                    route.incrementTravelTime(outEdge.travelTime());
-                    break;
-                }
+        final int[] labels = new int[numEndpoints];
+        final float[] coordinates = new float[2 * numEndpoints];
+        graph.vertices(vertex, target.lbl());
+        for (int i = numEndpoints - 1; i >= 0; i--) {
+            labels[i] = vertex.lbl();
+            coordinates[2 * i] = vertex.lat();
+            coordinates[2 * i + 1] = vertex.lon();
+            if (i > 0) {
+                graph.vertices(vertex, SearchSpace.unpackLabel(vertex.predecessorLabel()));
             }
         }
+        return new Path(labels, coordinates, length, travelTime);
+    }
+
+    static AbstractHeuristic getHeuristic(final DeserializedVertex target, final OptimizationMode optMode) {
+        return getHeuristic(target, optMode, 1);
     }
 
-    private AbstractHeuristic getHeuristic(final DeserializedVertex target, final OptimizationMode optMode) {
+    /**
+     * Returns the heuristic matching a given optimization mode, when travel times may be shorter than those of the graph.
+     *
+     * @param minTravelTimeFactor The minimum ratio of any travel time to the corresponding one in the graph.
+     */
+    static AbstractHeuristic getHeuristic(final DeserializedVertex target, final OptimizationMode optMode, final double minTravelTimeFactor) {
         switch (optMode) {
             case MINIMIZE_DISTANCE:
                 return new GreatCircleDistanceHeuristic(target);
             case MINIMIZE_TRAVEL_TIME:
-                return new TravelTimeHeuristic(target);
+                return new TravelTimeHeuristic(target, minTravelTimeFactor);
             default:
                 return null;
         }
     }
 
     public enum OptimizationMode {
-        MINIMIZE_DISTANCE, MINIMIZE_TRAVEL_TIME
+        MINIMIZE_DISTANCE, MINIMIZE_TRAVEL_TIME;
+
+        /**
+         * Returns the cost of an edge in terms of the metric minimized in this mode.
+         *
+         * @param edge The edge.
+         * @return The length of the edge in {@link #MINIMIZE_DISTANCE} mode, or its travel time otherwise.
+         * @since 1.1.0
+         */
+        public int getCost(final DeserializedEdge edge) {
+            return this == MINIMIZE_DISTANCE ? edge.length() : edge.travelTime();
+        }
+
+        /**
+         * Returns the cost of an edge in terms of the metric not minimized in this mode.
+         *
+         * @param edge The edge.
+         * @return The travel time of the edge in {@link #MINIMIZE_DISTANCE} mode, or its length otherwise.
+         * @since 1.1.0
+         */
+        public int getOtherCost(final DeserializedEdge edge) {
+            return this == MINIMIZE_DISTANCE ? edge.travelTime() : edge.length();
+        }
     }
 }
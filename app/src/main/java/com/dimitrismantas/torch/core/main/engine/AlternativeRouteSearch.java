@@ -0,0 +1,629 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.AbstractHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SparseSearchSpace;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An implementation of the via-vertex method for finding alternative routes, which derives them from a forward shortest path tree of the source and a backward one of the target.
+ * <p>
+ * Both trees are grown by Dijkstra's algorithm up to {@link #MAX_STRETCH 1 + MAX_STRETCH} times the cost of the optimal route. Every vertex settled by both searches is then a candidate via vertex, whose route is the tree route from the source to it, followed by the tree route from it to the target. Candidates are ranked by the cost of their route, the cost it shares with the optimal route and the cost of the plateau through them (i.e., the longest subroute through the via vertex which is part of both trees, and hence optimal). A candidate route is only admissible if:
+ * <ul>
+ *     <li>Its cost is at most {@link #MAX_STRETCH 1 + MAX_STRETCH} times that of the optimal route (bounded stretch).</li>
+ *     <li>It shares at most {@link #MAX_SHARING} of the cost of the optimal route with it, or with any alternative route found before it (limited sharing).</li>
+ *     <li>Its subroute extending {@link #LOCAL_OPTIMALITY} times the cost of the optimal route on either side of the via vertex is itself optimal, which is verified by a local search (local optimality).</li>
+ * </ul>
+ * Apart from at most {@link #MAX_NUM_LOCAL_SEARCHES} local searches, which are A* searches between vertices of the candidate route, and skipped whenever the plateau through the via vertex already covers one side of the subroute, the alternative routes are found at roughly the cost of two one-to-all searches, rather than one search per alternative.
+ * <p>
+ * The state of the search is kept in {@link SearchSpace search spaces} rather than the graph itself, and is reused across executions. Only the trees themselves are kept per vertex of the graph; everything derived from them is kept per settled vertex, and the local searches, which only reach a small part of the graph, keep their state in a {@link SparseSearchSpace}. This class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class AlternativeRouteSearch {
+    /**
+     * The maximum relative excess cost of an alternative route over the optimal one.
+     */
+    public static final double MAX_STRETCH = 0.25;
+    /**
+     * The maximum fraction of the cost of the optimal route that an alternative route may share with it, or with any other alternative route.
+     */
+    public static final double MAX_SHARING = 0.8;
+    /**
+     * The fraction of the cost of the optimal route that every subroute of an alternative route around its via vertex must be optimal for.
+     */
+    public static final double LOCAL_OPTIMALITY = 0.25;
+    /**
+     * The maximum number of local searches verifying the local optimality of candidate routes per execution, which bounds the cost of finding the alternative routes beyond that of growing the trees.
+     */
+    public static final int MAX_NUM_LOCAL_SEARCHES = 16;
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    private final DeserializedGraph graph;
+    private final IncomingEdgeIndex incomingEdges;
+    private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+    private final SearchSpace forwardSearchSpace;
+    private final SearchSpace backwardSearchSpace;
+    private final SparseSearchSpace localSearchSpace = new SparseSearchSpace();
+    private final BitSet isForwardSettled;
+    private final BitSet isBackwardSettled;
+    private final BitSet isOnOptimalRoute;
+    /**
+     * The rank of every vertex settled by either search among those settled by the same search, in increasing order of label, which indexes the costs below.
+     */
+    private final SettledVertexRanks forwardRanks = new SettledVertexRanks();
+    private final SettledVertexRanks backwardRanks = new SettledVertexRanks();
+    /**
+     * The cost of every tree route from the source, or to the target, shared with the optimal route.
+     */
+    private int[] forwardSharedCosts = new int[0];
+    private int[] backwardSharedCosts = new int[0];
+    /**
+     * The cost of the plateau ending at, or starting from, every vertex.
+     */
+    private int[] forwardPlateauCosts = new int[0];
+    private int[] backwardPlateauCosts = new int[0];
+    private int[] forwardSettledLabels = new int[1 << 12];
+    private int[] backwardSettledLabels = new int[1 << 12];
+    private int numForwardSettled;
+    private int numBackwardSettled;
+    private int numLocalSearches;
+
+    public AlternativeRouteSearch(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges) {
+        if (graph.verticesLength() > SearchSpace.PREDECESSOR_LABEL_MASK) {
+            throw new IllegalArgumentException("The graph must not contain more than " + SearchSpace.PREDECESSOR_LABEL_MASK + " vertices.");
+        }
+        this.graph = graph;
+        this.incomingEdges = incomingEdges;
+        final int numVertices = graph.verticesLength();
+        // The length and travel time of every route are summed along its edges once it is found, so the trees need not keep the cost of every vertex in terms of the other metric.
+        forwardSearchSpace = new SearchSpace(numVertices, false, true);
+        backwardSearchSpace = new SearchSpace(numVertices, false, true);
+        isForwardSettled = new BitSet(numVertices);
+        isBackwardSettled = new BitSet(numVertices);
+        isOnOptimalRoute = new BitSet(numVertices);
+    }
+
+    public Result run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final int maxNumAlternatives) {
+        return run(source, target, optimizationMode, maxNumAlternatives, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the optimal route between two vertices, along with a number of admissible alternatives to it.
+     *
+     * @param source             The source vertex.
+     * @param target             The target vertex.
+     * @param optimizationMode   The optimization mode.
+     * @param maxNumAlternatives The maximum number of alternative routes to find.
+     * @param token              The cancellation token.
+     * @return The optimal route, followed by the alternative routes found, in order of preference.
+     * @throws EqualEndpointException     If the source and target vertices are equal.
+     * @throws UnreachableTargetException If the target vertex is unreachable from the source.
+     */
+    public Result run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final int maxNumAlternatives, final CancellationToken token) {
+        token.throwIfAborted();
+        if (source.lbl() == target.lbl()) {
+            throw new EqualEndpointException("The source and target vertices are equal.");
+        }
+        final int sourceLabel = source.lbl();
+        final int targetLabel = target.lbl();
+        final int optimalCost = growForwardTree(sourceLabel, targetLabel, optimizationMode, token);
+        if (optimalCost == SearchSpace.INFINITY) {
+            throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+        }
+        final int maxCost = (int) Math.min(Integer.MAX_VALUE - 1, (long) ((1 + MAX_STRETCH) * optimalCost));
+        growBackwardTree(targetLabel, maxCost, optimizationMode, token);
+
+        isOnOptimalRoute.clear();
+        for (int label = targetLabel; label != sourceLabel; ) {
+            final int predecessorLabel = SearchSpace.unpackLabel(forwardSearchSpace.getPredecessorLabel(label));
+            isOnOptimalRoute.set(predecessorLabel);
+            label = predecessorLabel;
+        }
+        isOnOptimalRoute.set(targetLabel);
+        computeSharedAndPlateauCosts(sourceLabel, targetLabel);
+
+        final List<Route> routes = new ArrayList<>();
+        routes.add(toRoute(targetLabel, sourceLabel, targetLabel));
+        if (maxNumAlternatives > 0) {
+            final long[] candidates = rankCandidates(maxCost, (long) (MAX_SHARING * optimalCost));
+            final BitSet isExcluded = new BitSet(graph.verticesLength());
+            final int minLocallyOptimalCost = (int) (LOCAL_OPTIMALITY * optimalCost);
+            numLocalSearches = 0;
+            for (int i = 0; i < candidates.length && routes.size() <= maxNumAlternatives && numLocalSearches < MAX_NUM_LOCAL_SEARCHES; i++) {
+                token.throwIfAborted();
+                final int viaLabel = (int) candidates[i];
+                if (isExcluded.get(viaLabel)) {
+                    continue;
+                }
+                final Route route = toRoute(viaLabel, sourceLabel, targetLabel);
+                if (route == null) {
+                    continue;
+                }
+                // Every vertex of the plateau through the via vertex has the same route, so it is never tried again.
+                final int forwardPlateauCost = forwardPlateauCosts[forwardRanks.get(viaLabel)];
+                final int backwardPlateauCost = backwardPlateauCosts[backwardRanks.get(viaLabel)];
+                for (int j = route.viaIndex; j >= 0 && route.costs[route.viaIndex] - route.costs[j] <= forwardPlateauCost; j--) {
+                    isExcluded.set(route.labels[j]);
+                }
+                for (int j = route.viaIndex; j < route.labels.length && route.costs[j] - route.costs[route.viaIndex] <= backwardPlateauCost; j++) {
+                    isExcluded.set(route.labels[j]);
+                }
+                if (!hasLimitedSharing(route, routes, MAX_SHARING * optimalCost) || !isLocallyOptimal(route, viaLabel, minLocallyOptimalCost, optimizationMode, token)) {
+                    continue;
+                }
+                routes.add(route);
+                // The route of a vertex on a previous alternative is most likely that alternative.
+                for (final int label : route.labels) {
+                    isExcluded.set(label);
+                }
+            }
+        }
+        final Path[] paths = new Path[routes.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = routes.get(i).toPath(graph);
+        }
+        return new Result(paths);
+    }
+
+    /**
+     * Grows the forward tree up to {@link #MAX_STRETCH 1 + MAX_STRETCH} times the cost of the optimal route, which is found along the way.
+     *
+     * @return The cost of the optimal route, or {@link SearchSpace#INFINITY} if the target is unreachable.
+     */
+    private int growForwardTree(final int sourceLabel, final int targetLabel, final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+        forwardSearchSpace.clear();
+        isForwardSettled.clear();
+        priorityQueue.clear();
+        numForwardSettled = 0;
+        forwardSearchSpace.reach(sourceLabel, 0, 0, -1);
+        priorityQueue.add(0, sourceLabel);
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int optimalCost = SearchSpace.INFINITY;
+        long maxCost = Long.MAX_VALUE;
+        while (!priorityQueue.isEmpty()) {
+            final int cost = priorityQueue.peekKey();
+            final int label = priorityQueue.poll();
+            if (cost > forwardSearchSpace.getCost(label)) {
+                continue;
+            }
+            if (cost > maxCost) {
+                break;
+            }
+            if ((numForwardSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            forwardSettledLabels = append(forwardSettledLabels, numForwardSettled++, label);
+            isForwardSettled.set(label);
+            if (label == targetLabel) {
+                optimalCost = cost;
+                maxCost = (long) ((1 + MAX_STRETCH) * cost);
+            }
+            graph.vertices(vertex, label);
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                vertex.outgoingEdges(edge, i);
+                final int adjacentLabel = edge.endVertexLabel();
+                final int adjacentCost = cost + optimizationMode.getCost(edge);
+                if (adjacentCost < forwardSearchSpace.getCost(adjacentLabel)) {
+                    forwardSearchSpace.reach(adjacentLabel, adjacentCost, 0, SearchSpace.packPredecessorLabel(label, i));
+                    priorityQueue.add(adjacentCost, adjacentLabel);
+                }
+            }
+        }
+        return optimalCost;
+    }
+
+    /**
+     * Grows the backward tree up to a given cost. The predecessor of every vertex in this tree is its successor on the route to the target, packed along with the index of the edge to it among the outgoing edges of the vertex itself.
+     */
+    private void growBackwardTree(final int targetLabel, final int maxCost, final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+        backwardSearchSpace.clear();
+        isBackwardSettled.clear();
+        priorityQueue.clear();
+        numBackwardSettled = 0;
+        backwardSearchSpace.reach(targetLabel, 0, 0, -1);
+        priorityQueue.add(0, targetLabel);
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        while (!priorityQueue.isEmpty()) {
+            final int cost = priorityQueue.peekKey();
+            final int label = priorityQueue.poll();
+            if (cost > backwardSearchSpace.getCost(label)) {
+                continue;
+            }
+            if ((numBackwardSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            backwardSettledLabels = append(backwardSettledLabels, numBackwardSettled++, label);
+            isBackwardSettled.set(label);
+            for (int i = incomingEdges.getEdgesStart(label); i < incomingEdges.getEdgesEnd(label); i++) {
+                incomingEdges.getEdge(graph, i, vertex, edge);
+                final int adjacentLabel = incomingEdges.getStartVertexLabel(i);
+                final int adjacentCost = cost + optimizationMode.getCost(edge);
+                // Vertices beyond the maximum cost are never enqueued, so the search stops as soon as the queue runs out.
+                if (adjacentCost <= maxCost && adjacentCost < backwardSearchSpace.getCost(adjacentLabel)) {
+                    backwardSearchSpace.reach(adjacentLabel, adjacentCost, 0, SearchSpace.packPredecessorLabel(label, incomingEdges.getEdgeIndex(i)));
+                    priorityQueue.add(adjacentCost, adjacentLabel);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the cost shared with the optimal route and the plateau cost of every tree route, in the order the vertices were settled, so that the costs of the predecessor of every vertex are always known.
+     */
+    private void computeSharedAndPlateauCosts(final int sourceLabel, final int targetLabel) {
+        forwardRanks.build(isForwardSettled);
+        backwardRanks.build(isBackwardSettled);
+        if (forwardSharedCosts.length < numForwardSettled) {
+            forwardSharedCosts = new int[numForwardSettled];
+            forwardPlateauCosts = new int[numForwardSettled];
+        }
+        if (backwardSharedCosts.length < numBackwardSettled) {
+            backwardSharedCosts = new int[numBackwardSettled];
+            backwardPlateauCosts = new int[numBackwardSettled];
+        }
+        forwardSharedCosts[forwardRanks.get(sourceLabel)] = 0;
+        forwardPlateauCosts[forwardRanks.get(sourceLabel)] = 0;
+        for (int i = 1; i < numForwardSettled; i++) {
+            final int label = forwardSettledLabels[i];
+            final int packedPredecessorLabel = forwardSearchSpace.getPredecessorLabel(label);
+            final int predecessorLabel = SearchSpace.unpackLabel(packedPredecessorLabel);
+            final int rank = forwardRanks.get(label);
+            final int predecessorRank = forwardRanks.get(predecessorLabel);
+            final int edgeCost = forwardSearchSpace.getCost(label) - forwardSearchSpace.getCost(predecessorLabel);
+            // The optimal route is a tree route, so every tree route shares a prefix with it.
+            forwardSharedCosts[rank] = isOnOptimalRoute.get(label) ? forwardSearchSpace.getCost(label) : forwardSharedCosts[predecessorRank];
+            final boolean isPlateauEdge = isBackwardSettled.get(predecessorLabel) && backwardSearchSpace.getPredecessorLabel(predecessorLabel) == SearchSpace.packPredecessorLabel(label, SearchSpace.unpackEdgeIndex(packedPredecessorLabel));
+            forwardPlateauCosts[rank] = isPlateauEdge ? forwardPlateauCosts[predecessorRank] + edgeCost : 0;
+        }
+        backwardSharedCosts[backwardRanks.get(targetLabel)] = 0;
+        backwardPlateauCosts[backwardRanks.get(targetLabel)] = 0;
+        for (int i = 1; i < numBackwardSettled; i++) {
+            final int label = backwardSettledLabels[i];
+            final int packedSuccessorLabel = backwardSearchSpace.getPredecessorLabel(label);
+            final int successorLabel = SearchSpace.unpackLabel(packedSuccessorLabel);
+            final int rank = backwardRanks.get(label);
+            final int successorRank = backwardRanks.get(successorLabel);
+            final int edgeCost = backwardSearchSpace.getCost(label) - backwardSearchSpace.getCost(successorLabel);
+            final boolean isPlateauEdge = isForwardSettled.get(successorLabel) && forwardSearchSpace.getPredecessorLabel(successorLabel) == SearchSpace.packPredecessorLabel(label, SearchSpace.unpackEdgeIndex(packedSuccessorLabel));
+            // The optimal route is a forward tree route, so an edge is on it if and only if it is an edge of the forward tree leading to a vertex of the optimal route.
+            final boolean isShared = isPlateauEdge && isOnOptimalRoute.get(successorLabel);
+            backwardSharedCosts[rank] = backwardSharedCosts[successorRank] + (isShared ? edgeCost : 0);
+            backwardPlateauCosts[rank] = isPlateauEdge ? backwardPlateauCosts[successorRank] + edgeCost : 0;
+        }
+    }
+
+    /**
+     * Ranks every vertex settled by both searches and off the optimal route, whose route is neither too costly nor shares too much with the optimal route, by twice the cost of its route plus the cost it shares with the optimal route minus the cost of its plateau.
+     *
+     * @return The candidates, as their scores packed along with their labels, in increasing order of score.
+     */
+    private long[] rankCandidates(final int maxCost, final long maxSharedCost) {
+        long[] candidates = new long[64];
+        int numCandidates = 0;
+        for (int i = 0; i < numBackwardSettled; i++) {
+            final int label = backwardSettledLabels[i];
+            if (!isForwardSettled.get(label) || isOnOptimalRoute.get(label)) {
+                continue;
+            }
+            final long cost = (long) forwardSearchSpace.getCost(label) + backwardSearchSpace.getCost(label);
+            final int forwardRank = forwardRanks.get(label);
+            final int backwardRank = backwardRanks.get(label);
+            final long sharedCost = (long) forwardSharedCosts[forwardRank] + backwardSharedCosts[backwardRank];
+            if (cost > maxCost || sharedCost > maxSharedCost) {
+                continue;
+            }
+            final long score = 2 * cost + sharedCost - forwardPlateauCosts[forwardRank] - backwardPlateauCosts[backwardRank];
+            if (numCandidates == candidates.length) {
+                candidates = Arrays.copyOf(candidates, 2 * numCandidates);
+            }
+            // Scores are never negative, since no plateau costs more than its route.
+            candidates[numCandidates++] = score << Integer.SIZE | label;
+        }
+        final long[] rankedCandidates = Arrays.copyOf(candidates, numCandidates);
+        Arrays.sort(rankedCandidates);
+        return rankedCandidates;
+    }
+
+    /**
+     * Builds the route through a via vertex from both trees.
+     *
+     * @return The route, or {@code null} if it is not simple (i.e., it visits some vertex more than once).
+     */
+    private Route toRoute(final int viaLabel, final int sourceLabel, final int targetLabel) {
+        int numForwardEndpoints = 1;
+        for (int label = viaLabel; label != sourceLabel; label = SearchSpace.unpackLabel(forwardSearchSpace.getPredecessorLabel(label))) {
+            numForwardEndpoints++;
+        }
+        int numBackwardEndpoints = 0;
+        for (int label = viaLabel; label != targetLabel; label = SearchSpace.unpackLabel(backwardSearchSpace.getPredecessorLabel(label))) {
+            numBackwardEndpoints++;
+        }
+        final int numEndpoints = numForwardEndpoints + numBackwardEndpoints;
+        final int[] labels = new int[numEndpoints];
+        // The cost from the source to every vertex of the route.
+        final int[] costs = new int[numEndpoints];
+        // The index of the edge from every endpoint to the next, among the outgoing edges of the former.
+        final int[] edgeIndices = new int[numEndpoints - 1];
+        final int viaCost = forwardSearchSpace.getCost(viaLabel);
+        int label = viaLabel;
+        for (int i = numForwardEndpoints - 1; i >= 0; i--) {
+            labels[i] = label;
+            costs[i] = forwardSearchSpace.getCost(label);
+            if (i > 0) {
+                final int packedPredecessorLabel = forwardSearchSpace.getPredecessorLabel(label);
+                edgeIndices[i - 1] = SearchSpace.unpackEdgeIndex(packedPredecessorLabel);
+                label = SearchSpace.unpackLabel(packedPredecessorLabel);
+            }
+        }
+        label = viaLabel;
+        for (int i = numForwardEndpoints; i < numEndpoints; i++) {
+            final int packedSuccessorLabel = backwardSearchSpace.getPredecessorLabel(label);
+            edgeIndices[i - 1] = SearchSpace.unpackEdgeIndex(packedSuccessorLabel);
+            label = SearchSpace.unpackLabel(packedSuccessorLabel);
+            labels[i] = label;
+            costs[i] = viaCost + backwardSearchSpace.getCost(viaLabel) - backwardSearchSpace.getCost(label);
+        }
+        final int[] sortedLabels = labels.clone();
+        Arrays.sort(sortedLabels);
+        for (int i = 1; i < numEndpoints; i++) {
+            if (sortedLabels[i] == sortedLabels[i - 1]) {
+                return null;
+            }
+        }
+        return new Route(labels, edgeIndices, costs, numForwardEndpoints - 1);
+    }
+
+    /**
+     * Returns whether a route shares at most a given cost with each of a number of other routes.
+     */
+    private static boolean hasLimitedSharing(final Route route, final List<Route> otherRoutes, final double maxSharedCost) {
+        for (final Route otherRoute : otherRoutes) {
+            long sharedCost = 0;
+            for (int i = 0; i + 1 < route.labels.length; i++) {
+                if (otherRoute.containsEdge(route.labels[i], route.labels[i + 1])) {
+                    sharedCost += route.costs[i + 1] - route.costs[i];
+                }
+            }
+            if (sharedCost > maxSharedCost) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the subroute of a route extending a given cost on either side of its via vertex is optimal.
+     */
+    private boolean isLocallyOptimal(final Route route, final int viaLabel, final int minLocallyOptimalCost, final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+        final int viaIndex = route.viaIndex;
+        int start = viaIndex;
+        while (start > 0 && route.costs[viaIndex] - route.costs[start] < minLocallyOptimalCost) {
+            start--;
+        }
+        int end = viaIndex;
+        while (end < route.labels.length - 1 && route.costs[end] - route.costs[viaIndex] < minLocallyOptimalCost) {
+            end++;
+        }
+        // A subroute within a single tree is optimal, and the plateau through the via vertex belongs to both trees.
+        if (route.costs[viaIndex] - route.costs[start] <= forwardPlateauCosts[forwardRanks.get(viaLabel)] || route.costs[end] - route.costs[viaIndex] <= backwardPlateauCosts[backwardRanks.get(viaLabel)]) {
+            return true;
+        }
+        final int subrouteCost = route.costs[end] - route.costs[start];
+        numLocalSearches++;
+        return findCost(route.labels[start], route.labels[end], subrouteCost, optimizationMode, token) >= subrouteCost;
+    }
+
+    /**
+     * Finds the cost of the optimal route between two vertices by A*, as long as it is less than a given one.
+     *
+     * @return The cost, or the given one if the optimal route costs at least as much.
+     */
+    private int findCost(final int sourceLabel, final int targetLabel, final int maxCost, final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+        localSearchSpace.clear();
+        priorityQueue.clear();
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedVertex adjacentVertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        final AbstractHeuristic heuristic = AStar.getHeuristic(graph.vertices(new DeserializedVertex(), targetLabel), optimizationMode);
+        localSearchSpace.reach(sourceLabel, 0, -1);
+        priorityQueue.add(heuristic.calc(graph.vertices(vertex, sourceLabel)), sourceLabel);
+        int numSettled = 0;
+        while (!priorityQueue.isEmpty()) {
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            final int key = priorityQueue.peekKey();
+            final int label = priorityQueue.poll();
+            final int cost = localSearchSpace.getCost(label);
+            graph.vertices(vertex, label);
+            if (key > cost + heuristic.calc(vertex)) {
+                continue;
+            }
+            if (label == targetLabel) {
+                return cost;
+            }
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                vertex.outgoingEdges(edge, i);
+                final int adjacentLabel = edge.endVertexLabel();
+                final int adjacentCost = cost + optimizationMode.getCost(edge);
+                if (adjacentCost >= localSearchSpace.getCost(adjacentLabel)) {
+                    continue;
+                }
+                final int adjacentKey = adjacentCost + heuristic.calc(graph.vertices(adjacentVertex, adjacentLabel));
+                // No route through this vertex can be cheaper than the given cost.
+                if (adjacentKey < maxCost) {
+                    localSearchSpace.reach(adjacentLabel, adjacentCost, -1);
+                    priorityQueue.add(adjacentKey, adjacentLabel);
+                }
+            }
+        }
+        return maxCost;
+    }
+
+    private static int[] append(final int[] array, final int size, final int value) {
+        final int[] result = size == array.length ? Arrays.copyOf(array, 2 * size) : array;
+        result[size] = value;
+        return result;
+    }
+
+    /**
+     * A route through a via vertex, before it is turned into a {@link Path}.
+     */
+    private static final class Route {
+        private final int[] labels;
+        /**
+         * The index of the edge from every endpoint to the next, among the outgoing edges of the former.
+         */
+        private final int[] edgeIndices;
+        private final int[] costs;
+        private final int viaIndex;
+        /**
+         * The edges of the route, as the labels of their start and end vertices packed into a single value, in increasing order.
+         */
+        private long[] sortedEdges;
+
+        private Route(final int[] labels, final int[] edgeIndices, final int[] costs, final int viaIndex) {
+            this.labels = labels;
+            this.edgeIndices = edgeIndices;
+            this.costs = costs;
+            this.viaIndex = viaIndex;
+        }
+
+        private boolean containsEdge(final int startVertexLabel, final int endVertexLabel) {
+            if (sortedEdges == null) {
+                sortedEdges = new long[labels.length - 1];
+                for (int i = 0; i < sortedEdges.length; i++) {
+                    sortedEdges[i] = pack(labels[i], labels[i + 1]);
+                }
+                Arrays.sort(sortedEdges);
+            }
+            return Arrays.binarySearch(sortedEdges, pack(startVertexLabel, endVertexLabel)) >= 0;
+        }
+
+        private Path toPath(final DeserializedGraph graph) {
+            final DeserializedVertex vertex = new DeserializedVertex();
+            final DeserializedEdge edge = new DeserializedEdge();
+            final float[] coordinates = new float[2 * labels.length];
+            int length = 0;
+            int travelTime = 0;
+            for (int i = 0; i < labels.length; i++) {
+                graph.vertices(vertex, labels[i]);
+                coordinates[2 * i] = vertex.lat();
+                coordinates[2 * i + 1] = vertex.lon();
+                if (i < edgeIndices.length) {
+                    vertex.outgoingEdges(edge, edgeIndices[i]);
+                    length += edge.length();
+                    travelTime += edge.travelTime();
+                }
+            }
+            return new Path(labels, coordinates, length, travelTime);
+        }
+
+        private static long pack(final int startVertexLabel, final int endVertexLabel) {
+            return (long) startVertexLabel << Integer.SIZE | endVertexLabel;
+        }
+    }
+
+    /**
+     * The rank of every vertex of a set among the vertices of that set, in increasing order of label, which takes up a single bit per vertex of the graph, plus a count per 64 of them.
+     */
+    private static final class SettledVertexRanks {
+        private long[] words = new long[0];
+        /**
+         * The number of vertices of the set in all words before every word.
+         */
+        private int[] counts = new int[0];
+
+        private void build(final BitSet set) {
+            words = set.toLongArray();
+            if (counts.length < words.length) {
+                counts = new int[words.length];
+            }
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                counts[i] = count;
+                count += Long.bitCount(words[i]);
+            }
+        }
+
+        /**
+         * Returns the rank of a vertex of the set.
+         */
+        private int get(final int label) {
+            final int i = label >>> 6;
+            // Only the bits below that of the vertex itself are counted, since shifts of a long only use the low six bits of their distance.
+            return counts[i] + Long.bitCount(words[i] & ((1L << label) - 1));
+        }
+    }
+
+    /**
+     * The routes found by a search.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Result {
+        private final Path[] routes;
+
+        private Result(final Path[] routes) {
+            this.routes = routes;
+        }
+
+        public int getNumRoutes() {
+            return routes.length;
+        }
+
+        /**
+         * Returns a route.
+         *
+         * @param i The index of the route, where {@code 0} is that of the optimal route, and the rest are those of the alternative routes, in order of preference.
+         * @return The route.
+         */
+        public Path getRoute(final int i) {
+            return routes[i];
+        }
+
+        public Path getOptimalRoute() {
+            return routes[0];
+        }
+    }
+}
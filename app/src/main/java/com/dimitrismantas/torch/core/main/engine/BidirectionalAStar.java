@@ -0,0 +1,311 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.AbstractHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An implementation of a parallel bidirectional variant of the A* algorithm, which finds the optimal route between two vertices using two cooperating threads.
+ * <p>
+ * A forward search from the source runs on the calling thread, while a backward search from the target runs on another. Both use the heuristic of {@link AStar}, estimating the cost to the target and from the source, respectively. Every time a search improves the cost of a vertex already reached by the other, the cost of the route through it becomes a candidate for the shared upper bound on the cost of the optimal route. Both searches stop as soon as either one only has vertices whose estimated cost is at least this bound left to settle.
+ * <p>
+ * Every search on its own is a complete A* search, so, as long as the heuristic is admissible, the route found is optimal and costs exactly as much as that found by {@link AStar}. The costs found by the other search are only ever used to tighten the upper bound. Every search publishes the cost of a vertex with a volatile store before it reads the cost the other search has found for it, so, whenever both searches reach a vertex, at least one of them sees the cost found by the other, and no meeting vertex is ever missed.
+ * <p>
+ * The parallelism of this class is fixed at two threads, one per search direction, rather than configurable. The forward and backward searches are the only parts of a single query that can proceed independently without coordinating on every settled vertex, which is what a hash-distributed search over more threads would need, and which would cost more than it saves on a mobile device with a handful of cores.
+ * <p>
+ * The state of the searches is kept outside the graph itself, is only allocated by the first execution, and is reused across executions, so this class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see IncomingEdgeIndex
+ * @since 1.1.0
+ */
+public final class BidirectionalAStar {
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    /**
+     * The packed upper bound denoting that no route has been found yet.
+     */
+    private static final long NO_BOUND = pack(Integer.MAX_VALUE, -1);
+    private final DeserializedGraph graph;
+    private final IncomingEdgeIndex incomingEdges;
+    private final Search forwardSearch;
+    private final Search backwardSearch;
+    /**
+     * The cost of the best route found so far, packed along with the label of the vertex where its forward and backward parts meet.
+     */
+    private final AtomicLong bound = new AtomicLong();
+    private volatile boolean isFinished;
+
+    public BidirectionalAStar(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges) {
+        if (graph.verticesLength() > SearchSpace.PREDECESSOR_LABEL_MASK) {
+            throw new IllegalArgumentException("The graph must not contain more than " + SearchSpace.PREDECESSOR_LABEL_MASK + " vertices.");
+        }
+        this.graph = graph;
+        this.incomingEdges = incomingEdges;
+        forwardSearch = new Search(true);
+        backwardSearch = new Search(false);
+    }
+
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final Executor executor) {
+        return run(source, target, optimizationMode, executor, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the optimal route between two vertices.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @param executor         The executor running the backward search.
+     * @param token            The cancellation token.
+     * @return The optimal route.
+     * @throws EqualEndpointException     If the source and target vertices are equal.
+     * @throws UnreachableTargetException If the target vertex is unreachable from the source.
+     */
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final Executor executor, final CancellationToken token) {
+        token.throwIfAborted();
+        if (source.lbl() == target.lbl()) {
+            throw new EqualEndpointException("The source and target vertices are equal.");
+        }
+        bound.set(NO_BOUND);
+        isFinished = false;
+        forwardSearch.initialize(source.lbl(), AStar.getHeuristic(target, optimizationMode));
+        backwardSearch.initialize(target.lbl(), AStar.getHeuristic(source, optimizationMode));
+        try {
+            final CompletableFuture<Void> backward = CompletableFuture.runAsync(() -> backwardSearch.run(optimizationMode, token), executor);
+            try {
+                forwardSearch.run(optimizationMode, token);
+            } finally {
+                // The backward search must have stopped before its state can be read or reset.
+                isFinished = true;
+                try {
+                    backward.join();
+                } catch (final CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            final long finalBound = bound.get();
+            if (finalBound == NO_BOUND) {
+                throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+            }
+            return toPath((int) finalBound);
+        } finally {
+            forwardSearch.reset();
+            backwardSearch.reset();
+        }
+    }
+
+    /**
+     * Reconstructs the route through the vertex where the forward and backward searches met.
+     */
+    private Path toPath(final int meetingLabel) {
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int numForwardEndpoints = 1;
+        for (int label = meetingLabel; forwardSearch.predecessorLabels[label] != -1; label = SearchSpace.unpackLabel(forwardSearch.predecessorLabels[label])) {
+            numForwardEndpoints++;
+        }
+        int numBackwardEndpoints = 0;
+        for (int label = meetingLabel; backwardSearch.predecessorLabels[label] != -1; label = SearchSpace.unpackLabel(backwardSearch.predecessorLabels[label])) {
+            numBackwardEndpoints++;
+        }
+
+        final int numEndpoints = numForwardEndpoints + numBackwardEndpoints;
+        final int[] labels = new int[numEndpoints];
+        int label = meetingLabel;
+        for (int i = numForwardEndpoints - 1; i >= 0; i--) {
+            labels[i] = label;
+            label = SearchSpace.unpackLabel(forwardSearch.predecessorLabels[label]);
+        }
+        label = meetingLabel;
+        for (int i = numForwardEndpoints; i < numEndpoints; i++) {
+            label = SearchSpace.unpackLabel(backwardSearch.predecessorLabels[label]);
+            labels[i] = label;
+        }
+
+        final float[] coordinates = new float[2 * numEndpoints];
+        int length = 0;
+        int travelTime = 0;
+        for (int i = 0; i < numEndpoints; i++) {
+            graph.vertices(vertex, labels[i]);
+            coordinates[2 * i] = vertex.lat();
+            coordinates[2 * i + 1] = vertex.lon();
+            if (i == numEndpoints - 1) {
+                break;
+            }
+            // Forward predecessor labels record the edge of their predecessor, while backward ones record the edge of the vertex itself.
+            final int predecessorLabel = i < numForwardEndpoints - 1 ? forwardSearch.predecessorLabels[labels[i + 1]] : backwardSearch.predecessorLabels[labels[i]];
+            final int edgeIndex = SearchSpace.unpackEdgeIndex(predecessorLabel);
+            vertex.outgoingEdges(edge, edgeIndex);
+            length += edge.length();
+            travelTime += edge.travelTime();
+        }
+        return new Path(labels, coordinates, length, travelTime);
+    }
+
+    private static long pack(final int cost, final int meetingLabel) {
+        return ((long) cost << 32) | (meetingLabel & 0xFFFFFFFFL);
+    }
+
+    private static int unpackCost(final long bound) {
+        return (int) (bound >>> 32);
+    }
+
+    /**
+     * The state of a unidirectional search.
+     */
+    private final class Search {
+        private final boolean isForward;
+        /**
+         * The costs of the vertices from the source (or to the target), which are also read by the other search, or {@code null} if not yet allocated.
+         */
+        private AtomicIntegerArray costs;
+        /**
+         * The predecessor labels of the vertices, or {@code null} if not yet allocated. Forward searches record the label of the predecessor, packed along with the index of its edge leading to the vertex, while backward ones record the label of the successor, packed along with the index of the edge of the vertex leading to it.
+         */
+        private int[] predecessorLabels;
+        private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+        private final DeserializedVertex vertex = new DeserializedVertex();
+        private final DeserializedVertex adjacentVertex = new DeserializedVertex();
+        private final DeserializedEdge edge = new DeserializedEdge();
+        /**
+         * The labels of the vertices reached by the last execution, so that only these need to be reset.
+         */
+        private int[] reachedLabels = new int[1 << 10];
+        private int numReachedLabels;
+        private AbstractHeuristic heuristic;
+
+        private Search(final boolean isForward) {
+            this.isForward = isForward;
+        }
+
+        /**
+         * Prepares the search for an execution. This must happen on the calling thread, before the backward search is started, so that both searches see the state of each other.
+         */
+        private void initialize(final int originLabel, final AbstractHeuristic heuristic) {
+            if (costs == null) {
+                costs = new AtomicIntegerArray(graph.verticesLength());
+                predecessorLabels = new int[graph.verticesLength()];
+                for (int i = 0; i < costs.length(); i++) {
+                    costs.lazySet(i, Integer.MAX_VALUE);
+                }
+            }
+            this.heuristic = heuristic;
+            reach(originLabel, 0, -1);
+            priorityQueue.add(0, originLabel);
+        }
+
+        private void run(final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+            final Search otherSearch = isForward ? backwardSearch : forwardSearch;
+            int numSettled = 0;
+            while (!isFinished) {
+                if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                    token.throwIfAborted();
+                }
+                // The key of every queued vertex is at least as high as the cost of the best route through it.
+                if (priorityQueue.isEmpty() || priorityQueue.peekKey() >= unpackCost(bound.get())) {
+                    isFinished = true;
+                    return;
+                }
+                final int key = priorityQueue.peekKey();
+                final int label = priorityQueue.poll();
+                graph.vertices(vertex, label);
+                final int cost = costs.get(label);
+                if (key > cost + heuristic.calc(vertex)) {
+                    continue;
+                }
+                if (isForward) {
+                    for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                        vertex.outgoingEdges(edge, i);
+                        relax(edge.endVertexLabel(), cost + optimizationMode.getCost(edge), SearchSpace.packPredecessorLabel(label, i), otherSearch);
+                    }
+                } else {
+                    for (int i = incomingEdges.getEdgesStart(label); i < incomingEdges.getEdgesEnd(label); i++) {
+                        incomingEdges.getEdge(graph, i, adjacentVertex, edge);
+                        relax(incomingEdges.getStartVertexLabel(i), cost + optimizationMode.getCost(edge), SearchSpace.packPredecessorLabel(label, incomingEdges.getEdgeIndex(i)), otherSearch);
+                    }
+                }
+            }
+        }
+
+        private void relax(final int label, final int cost, final int predecessorLabel, final Search otherSearch) {
+            if (cost >= costs.get(label)) {
+                return;
+            }
+            final int estimatedCost = cost + heuristic.calc(graph.vertices(adjacentVertex, label));
+            final long currentBound = bound.get();
+            // Under an admissible heuristic, no route through this vertex can beat the current one.
+            if (estimatedCost >= unpackCost(currentBound)) {
+                return;
+            }
+            reach(label, cost, predecessorLabel);
+            priorityQueue.add(estimatedCost, label);
+            final int otherCost = otherSearch.costs.get(label);
+            if (otherCost != Integer.MAX_VALUE) {
+                final long candidateBound = pack(cost + otherCost, label);
+                if (candidateBound < currentBound) {
+                    bound.accumulateAndGet(candidateBound, Math::min);
+                }
+            }
+        }
+
+        private void reach(final int label, final int cost, final int predecessorLabel) {
+            if (costs.get(label) == Integer.MAX_VALUE) {
+                if (numReachedLabels == reachedLabels.length) {
+                    reachedLabels = Arrays.copyOf(reachedLabels, 2 * numReachedLabels);
+                }
+                reachedLabels[numReachedLabels++] = label;
+            }
+            predecessorLabels[label] = predecessorLabel;
+            // A lazy store could be reordered after the load of the cost found by the other search, so that both searches would miss the vertex where they meet.
+            costs.set(label, cost);
+        }
+
+        private void reset() {
+            for (int i = 0; i < numReachedLabels; i++) {
+                costs.lazySet(reachedLabels[i], Integer.MAX_VALUE);
+            }
+            numReachedLabels = 0;
+            priorityQueue.clear();
+        }
+    }
+}
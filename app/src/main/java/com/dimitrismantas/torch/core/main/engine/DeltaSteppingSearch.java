@@ -0,0 +1,353 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * An implementation of the delta-stepping algorithm, which finds the cost of the optimal route from a given source to every vertex of the graph in parallel.
+ * <p>
+ * The vertices are kept in buckets of width delta, in terms of their tentative cost. The algorithm empties the buckets in ascending order of cost. Every time a bucket is processed, the light edges (i.e., those costing at most delta) of all its vertices are relaxed in parallel, possibly refilling it, until it stays empty. Then, the heavy edges of every vertex removed from the bucket are relaxed in parallel, once. Wider buckets expose more parallelism, but cause more vertices to be relaxed more than once.
+ * <p>
+ * Relaxations are split into a fixed number of chunks run on a {@link ForkJoinPool}, and every chunk collects the vertices it improved into its own buffer. The buffers are then merged into the buckets sequentially. Small frontiers are relaxed on the calling thread instead.
+ * <p>
+ * The state of the search is reused across executions, so this class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class DeltaSteppingSearch {
+    /**
+     * The cost of every vertex not reachable from the source.
+     */
+    public static final int UNREACHABLE = -1;
+    /**
+     * The ratio of the default bucket width to the average cost of an edge.
+     */
+    private static final int DEFAULT_BUCKET_WIDTH_FACTOR = 8;
+    /**
+     * The minimum number of vertices per chunk of a frontier.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 8;
+    /**
+     * The number of chunks per thread of the pool, so that threads which finish early can steal work from the others.
+     */
+    private static final int NUM_CHUNKS_PER_THREAD = 4;
+    private final DeserializedGraph graph;
+    private final ForkJoinPool pool;
+    private final Chunk[] chunks;
+    /**
+     * The maximum and average cost of an edge, per optimization mode, or {@code null} if not yet computed.
+     */
+    private final int[][] edgeCostStatistics = new int[AStar.OptimizationMode.values().length][];
+    private AtomicIntegerArray costs;
+    /**
+     * The one-based index of the bucket every vertex is queued in, or zero if it is not queued.
+     */
+    private int[] queuedBuckets;
+    private int[][] buckets;
+    private int[] bucketSizes;
+    private int[] frontier = new int[MIN_CHUNK_SIZE];
+    private int[] removedLabels = new int[MIN_CHUNK_SIZE];
+
+    public DeltaSteppingSearch(final DeserializedGraph graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    public DeltaSteppingSearch(final DeserializedGraph graph, final ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+        chunks = new Chunk[NUM_CHUNKS_PER_THREAD * pool.getParallelism()];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk();
+        }
+    }
+
+    /**
+     * Returns a bucket width suitable for a given optimization mode, which is a small multiple of the average cost of an edge.
+     *
+     * @param optimizationMode The optimization mode.
+     * @return The bucket width.
+     */
+    public int getDefaultBucketWidth(final AStar.OptimizationMode optimizationMode) {
+        return Math.max(1, DEFAULT_BUCKET_WIDTH_FACTOR * getEdgeCostStatistics(optimizationMode)[1]);
+    }
+
+    public Result run(final int sourceLabel, final AStar.OptimizationMode optimizationMode) {
+        return run(sourceLabel, optimizationMode, getDefaultBucketWidth(optimizationMode), CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the cost of the optimal route from a given source to every vertex of the graph.
+     *
+     * @param sourceLabel      The label of the source vertex.
+     * @param optimizationMode The optimization mode.
+     * @param bucketWidth      The width of the buckets (i.e., delta).
+     * @param token            The cancellation token, which is polled once per phase.
+     * @return The costs.
+     */
+    public Result run(final int sourceLabel, final AStar.OptimizationMode optimizationMode, final int bucketWidth, final CancellationToken token) {
+        if (bucketWidth < 1) {
+            throw new IllegalArgumentException("The bucket width must be positive.");
+        }
+        token.throwIfAborted();
+        initialize(optimizationMode, bucketWidth);
+        costs.set(sourceLabel, 0);
+        enqueue(sourceLabel, 0);
+        int numQueued = 1;
+
+        for (int bucket = 0; numQueued > 0; bucket++) {
+            final int slot = bucket % buckets.length;
+            if (bucketSizes[slot] == 0) {
+                continue;
+            }
+            int numRemoved = 0;
+            while (bucketSizes[slot] > 0) {
+                token.throwIfAborted();
+                // Stale entries (i.e., those of vertices which have since moved to an earlier bucket) are dropped.
+                int frontierSize = 0;
+                for (int i = 0; i < bucketSizes[slot]; i++) {
+                    final int label = buckets[slot][i];
+                    if (queuedBuckets[label] == bucket + 1 && costs.get(label) / bucketWidth == bucket) {
+                        queuedBuckets[label] = 0;
+                        frontier = append(frontier, frontierSize++, label);
+                        removedLabels = append(removedLabels, numRemoved++, label);
+                    }
+                }
+                numQueued -= bucketSizes[slot];
+                bucketSizes[slot] = 0;
+                relax(frontier, frontierSize, optimizationMode, bucketWidth, true);
+                numQueued += merge(bucketWidth);
+            }
+            token.throwIfAborted();
+            relax(removedLabels, numRemoved, optimizationMode, bucketWidth, false);
+            numQueued += merge(bucketWidth);
+        }
+
+        final int[] result = new int[costs.length()];
+        for (int i = 0; i < result.length; i++) {
+            final int cost = costs.get(i);
+            result[i] = cost == Integer.MAX_VALUE ? UNREACHABLE : cost;
+        }
+        return new Result(result);
+    }
+
+    private void initialize(final AStar.OptimizationMode optimizationMode, final int bucketWidth) {
+        final int numVertices = graph.verticesLength();
+        if (costs == null) {
+            costs = new AtomicIntegerArray(numVertices);
+            queuedBuckets = new int[numVertices];
+        } else {
+            Arrays.fill(queuedBuckets, 0);
+        }
+        for (int i = 0; i < numVertices; i++) {
+            costs.lazySet(i, Integer.MAX_VALUE);
+        }
+        // Every queued vertex costs less than the cost of the current bucket plus that of the most expensive edge, so the buckets can be reused cyclically.
+        final int numBuckets = getEdgeCostStatistics(optimizationMode)[0] / bucketWidth + 2;
+        if (buckets == null || buckets.length != numBuckets) {
+            buckets = new int[numBuckets][MIN_CHUNK_SIZE];
+            bucketSizes = new int[numBuckets];
+        } else {
+            Arrays.fill(bucketSizes, 0);
+        }
+    }
+
+    private void relax(final int[] labels, final int numLabels, final AStar.OptimizationMode optimizationMode, final int bucketWidth, final boolean relaxesLightEdges) {
+        if (numLabels <= MIN_CHUNK_SIZE) {
+            chunks[0].relax(labels, 0, numLabels, optimizationMode, bucketWidth, relaxesLightEdges);
+            return;
+        }
+        final int numChunks = Math.min(chunks.length, (numLabels + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+        pool.invoke(new RelaxationTask(labels, numLabels, numChunks, 0, numChunks, optimizationMode, bucketWidth, relaxesLightEdges));
+    }
+
+    /**
+     * Moves the vertices improved by the last relaxation into their buckets.
+     *
+     * @return The number of vertices moved.
+     */
+    private int merge(final int bucketWidth) {
+        int numQueued = 0;
+        for (final Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.numImprovedLabels; i++) {
+                final int label = chunk.improvedLabels[i];
+                final int bucket = costs.get(label) / bucketWidth;
+                // Vertices improved more than once are queued once.
+                if (queuedBuckets[label] != bucket + 1) {
+                    enqueue(label, bucket);
+                    numQueued++;
+                }
+            }
+            chunk.numImprovedLabels = 0;
+        }
+        return numQueued;
+    }
+
+    private void enqueue(final int label, final int bucket) {
+        final int slot = bucket % buckets.length;
+        buckets[slot] = append(buckets[slot], bucketSizes[slot]++, label);
+        queuedBuckets[label] = bucket + 1;
+    }
+
+    private int[] getEdgeCostStatistics(final AStar.OptimizationMode optimizationMode) {
+        int[] statistics = edgeCostStatistics[optimizationMode.ordinal()];
+        if (statistics == null) {
+            final DeserializedVertex vertex = new DeserializedVertex();
+            final DeserializedEdge edge = new DeserializedEdge();
+            int maxCost = 0;
+            long totalCost = 0;
+            long numEdges = 0;
+            for (int i = 0; i < graph.verticesLength(); i++) {
+                graph.vertices(vertex, i);
+                for (int j = 0; j < vertex.outgoingEdgesLength(); j++) {
+                    vertex.outgoingEdges(edge, j);
+                    final int cost = optimizationMode.getCost(edge);
+                    maxCost = Math.max(maxCost, cost);
+                    totalCost += cost;
+                    numEdges++;
+                }
+            }
+            statistics = new int[]{maxCost, numEdges == 0 ? 0 : (int) (totalCost / numEdges)};
+            edgeCostStatistics[optimizationMode.ordinal()] = statistics;
+        }
+        return statistics;
+    }
+
+    private static int[] append(final int[] array, final int size, final int element) {
+        final int[] result = size == array.length ? Arrays.copyOf(array, 2 * size) : array;
+        result[size] = element;
+        return result;
+    }
+
+    /**
+     * The costs found by a delta-stepping search.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Result {
+        private final int[] costs;
+
+        private Result(final int[] costs) {
+            this.costs = costs;
+        }
+
+        /**
+         * Returns the cost of the optimal route from the source to a given vertex.
+         *
+         * @param label The label of the vertex.
+         * @return The cost, or {@link #UNREACHABLE} if there is no route.
+         */
+        public int getCost(final int label) {
+            return costs[label];
+        }
+
+        /**
+         * Returns the costs of the optimal routes from the source to every vertex, indexed by label.
+         *
+         * @return The costs.
+         */
+        public int[] getCosts() {
+            return costs;
+        }
+    }
+
+    /**
+     * The reusable state of a chunk of a frontier.
+     */
+    private final class Chunk {
+        private final DeserializedVertex vertex = new DeserializedVertex();
+        private final DeserializedEdge edge = new DeserializedEdge();
+        private int[] improvedLabels = new int[MIN_CHUNK_SIZE];
+        private int numImprovedLabels;
+
+        private void relax(final int[] labels, final int from, final int to, final AStar.OptimizationMode optimizationMode, final int bucketWidth, final boolean relaxesLightEdges) {
+            for (int i = from; i < to; i++) {
+                final int label = labels[i];
+                final int cost = costs.get(label);
+                graph.vertices(vertex, label);
+                for (int j = 0; j < vertex.outgoingEdgesLength(); j++) {
+                    vertex.outgoingEdges(edge, j);
+                    final int edgeCost = optimizationMode.getCost(edge);
+                    if ((edgeCost <= bucketWidth) != relaxesLightEdges) {
+                        continue;
+                    }
+                    final int endVertexLabel = edge.endVertexLabel();
+                    final int newCost = cost + edgeCost;
+                    int oldCost = costs.get(endVertexLabel);
+                    while (newCost < oldCost) {
+                        if (costs.compareAndSet(endVertexLabel, oldCost, newCost)) {
+                            improvedLabels = append(improvedLabels, numImprovedLabels++, endVertexLabel);
+                            break;
+                        }
+                        oldCost = costs.get(endVertexLabel);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A task relaxing a range of chunks of a frontier, which is split in half until it consists of a single chunk.
+     */
+    private final class RelaxationTask extends RecursiveAction {
+        private final int[] labels;
+        private final int numLabels;
+        private final int numChunks;
+        private final int fromChunk;
+        private final int toChunk;
+        private final AStar.OptimizationMode optimizationMode;
+        private final int bucketWidth;
+        private final boolean relaxesLightEdges;
+
+        private RelaxationTask(final int[] labels, final int numLabels, final int numChunks, final int fromChunk, final int toChunk, final AStar.OptimizationMode optimizationMode, final int bucketWidth, final boolean relaxesLightEdges) {
+            this.labels = labels;
+            this.numLabels = numLabels;
+            this.numChunks = numChunks;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.optimizationMode = optimizationMode;
+            this.bucketWidth = bucketWidth;
+            this.relaxesLightEdges = relaxesLightEdges;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk == 1) {
+                final int from = (int) ((long) numLabels * fromChunk / numChunks);
+                final int to = (int) ((long) numLabels * toChunk / numChunks);
+                chunks[fromChunk].relax(labels, from, to, optimizationMode, bucketWidth, relaxesLightEdges);
+                return;
+            }
+            final int midChunk = (fromChunk + toChunk) >>> 1;
+            invokeAll(new RelaxationTask(labels, numLabels, numChunks, fromChunk, midChunk, optimizationMode, bucketWidth, relaxesLightEdges), new RelaxationTask(labels, numLabels, numChunks, midChunk, toChunk, optimizationMode, bucketWidth, relaxesLightEdges));
+        }
+    }
+}
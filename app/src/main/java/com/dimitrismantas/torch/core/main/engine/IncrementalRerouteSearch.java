@@ -0,0 +1,497 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.AbstractHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Arrays;
+
+/**
+ * An implementation of an incremental routing algorithm, which answers a sequence of queries to the same target from slightly different sources (e.g., while the origin marker is dragged) by small local searches on top of a reverse shortest path tree of the target, which is kept across queries.
+ * <p>
+ * The tree is grown by Dijkstra's algorithm over the incoming edges of every vertex, until it settles the source of the query, and then for {@link #TREE_SLACK} times its cost beyond it, so that it covers the neighborhood of the source too. It is only rebuilt once the target, the optimization mode or the version of the overlay of closures, penalties and travel time overrides change; otherwise, its growth is merely resumed whenever a query needs more of it. The tree holds at most a fixed number of vertices, so its memory footprint is bounded, and it stops growing once it is full.
+ * <p>
+ * Every query is answered by an A* search from its source, whose heuristic is the exact cost to the target of every vertex settled by the tree, and, for every other vertex, the larger of the heuristic of {@link AStar} and the radius of the tree (i.e., the cost of the last vertex it settled, which no vertex outside the tree can beat). This heuristic is consistent, so the search stops as soon as it settles any vertex of the tree, and the route found is the search route to that vertex, followed by the tree route from there to the target. If the source itself is in the tree, no search is run at all.
+ * <p>
+ * The state of both the tree and the local searches is kept outside the graph itself, in hash tables holding only the vertices actually reached. This class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see IncomingEdgeIndex
+ * @since 1.1.0
+ */
+public final class IncrementalRerouteSearch {
+    /**
+     * The default maximum number of vertices held by the tree.
+     */
+    public static final int DEFAULT_MAX_TREE_SIZE = 1 << 18;
+    /**
+     * The relative excess cost beyond that of the source, up to which the tree keeps growing after settling it.
+     */
+    public static final double TREE_SLACK = 0.25;
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    private final DeserializedGraph graph;
+    private final IncomingEdgeIndex incomingEdges;
+    /**
+     * The overlay, or {@code null}.
+     */
+    private final EdgeOverlay overlay;
+    private final int maxTreeSize;
+    /**
+     * The reverse shortest path tree of the target. The predecessor of every vertex in this tree is its successor on the route to the target, packed along with the index of the edge to it among the outgoing edges of the vertex itself.
+     */
+    private final VertexTable tree;
+    /**
+     * The priority queue of the tree, which is kept between queries, so that the growth of the tree can be resumed.
+     */
+    private final IntPriorityQueue treePriorityQueue = new IntPriorityQueue();
+    private final VertexTable localSearchSpace = new VertexTable(1 << 10);
+    private final IntPriorityQueue localPriorityQueue = new IntPriorityQueue();
+    private final DeserializedVertex vertex = new DeserializedVertex();
+    private final DeserializedVertex estimatedVertex = new DeserializedVertex();
+    private final DeserializedEdge edge = new DeserializedEdge();
+    private int targetLabel = -1;
+    private AStar.OptimizationMode optimizationMode;
+    /**
+     * The version of the overlay snapshot the tree was grown with.
+     */
+    private long overlayVersion;
+    /**
+     * The overlay snapshot the tree was grown with, or {@code null} if it is empty or there is no overlay.
+     */
+    private EdgeOverlay.Snapshot overlaySnapshot;
+    private AbstractHeuristic heuristic;
+    /**
+     * A lower bound on the cost to the target of every vertex not settled by the tree, or {@link SearchSpace#INFINITY} if every vertex from which the target is reachable is settled.
+     */
+    private int radius;
+    private boolean isTreeFull;
+    private int numLocallySettled;
+
+    public IncrementalRerouteSearch(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges) {
+        this(graph, incomingEdges, null, DEFAULT_MAX_TREE_SIZE);
+    }
+
+    public IncrementalRerouteSearch(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges, final int maxTreeSize) {
+        this(graph, incomingEdges, null, maxTreeSize);
+    }
+
+    /**
+     * Creates an instance of the algorithm whose searches avoid every closure, pay every penalty and use every travel time override of a given overlay.
+     *
+     * @param graph         The graph.
+     * @param incomingEdges The index of incoming edges of the graph.
+     * @param overlay       The overlay, or {@code null}.
+     * @param maxTreeSize   The maximum number of vertices held by the tree.
+     */
+    public IncrementalRerouteSearch(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges, final EdgeOverlay overlay, final int maxTreeSize) {
+        if (graph.verticesLength() > SearchSpace.PREDECESSOR_LABEL_MASK) {
+            throw new IllegalArgumentException("The graph must not contain more than " + SearchSpace.PREDECESSOR_LABEL_MASK + " vertices.");
+        }
+        if (maxTreeSize < 1) {
+            throw new IllegalArgumentException("The maximum tree size must be positive.");
+        }
+        this.graph = graph;
+        this.incomingEdges = incomingEdges;
+        this.overlay = overlay;
+        this.maxTreeSize = maxTreeSize;
+        tree = new VertexTable(Integer.highestOneBit(maxTreeSize) << 2);
+    }
+
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode) {
+        return run(source, target, optimizationMode, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the optimal route between two vertices, reusing the tree of the previous query if it has the same target and optimization mode, and the overlay has not been edited since.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @param token            The cancellation token.
+     * @return The optimal route.
+     * @throws EqualEndpointException     If the source and target vertices are equal.
+     * @throws UnreachableTargetException If the target vertex is unreachable from the source.
+     */
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+        token.throwIfAborted();
+        if (source.lbl() == target.lbl()) {
+            throw new EqualEndpointException("The source and target vertices are equal.");
+        }
+        // The tree is only valid for the overlay snapshot it was grown with.
+        final EdgeOverlay.Snapshot snapshot = overlay == null ? null : overlay.getSnapshot();
+        final long snapshotVersion = snapshot == null ? 0 : snapshot.getVersion();
+        if (target.lbl() != targetLabel || optimizationMode != this.optimizationMode || snapshotVersion != overlayVersion) {
+            resetTree(target.lbl(), optimizationMode, snapshot);
+        }
+        if (!tree.isSettled(source.lbl())) {
+            growTree(source.lbl(), token);
+        }
+        return searchLocally(source.lbl(), token);
+    }
+
+    /**
+     * Forgets the tree, so that the next query builds a new one.
+     */
+    public void invalidate() {
+        targetLabel = -1;
+        optimizationMode = null;
+    }
+
+    /**
+     * Returns the number of vertices held by the tree.
+     *
+     * @return The number of vertices, including those reached but not settled.
+     */
+    public int getTreeSize() {
+        return tree.size;
+    }
+
+    /**
+     * Returns the number of vertices settled by the local search of the latest query.
+     *
+     * @return The number of vertices, which is zero if its source was settled by the tree.
+     */
+    public int getNumLocallySettled() {
+        return numLocallySettled;
+    }
+
+    private void resetTree(final int targetLabel, final AStar.OptimizationMode optimizationMode, final EdgeOverlay.Snapshot snapshot) {
+        this.targetLabel = targetLabel;
+        this.optimizationMode = optimizationMode;
+        overlayVersion = snapshot == null ? 0 : snapshot.getVersion();
+        overlaySnapshot = snapshot == null || snapshot.isEmpty() ? null : snapshot;
+        heuristic = AStar.getHeuristic(graph.vertices(new DeserializedVertex(), targetLabel), optimizationMode, overlaySnapshot == null ? 1 : overlaySnapshot.getMinTravelTimeFactor(graph));
+        tree.clear();
+        treePriorityQueue.clear();
+        tree.reach(targetLabel, 0, -1);
+        treePriorityQueue.add(0, targetLabel);
+        radius = 0;
+        isTreeFull = false;
+    }
+
+    /**
+     * Resumes the growth of the tree, until it settles a given vertex and then grows for {@link #TREE_SLACK} times its cost beyond it, or it is full.
+     */
+    private void growTree(final int sourceLabel, final CancellationToken token) {
+        long maxCost = Long.MAX_VALUE;
+        int numSettled = 0;
+        while (!isTreeFull && !treePriorityQueue.isEmpty()) {
+            final int cost = treePriorityQueue.peekKey();
+            if (cost > maxCost) {
+                // Every vertex left unsettled costs at least as much as this one.
+                radius = cost;
+                return;
+            }
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            final int label = treePriorityQueue.poll();
+            final int slot = tree.indexOf(label);
+            if (tree.isSettled[slot] || cost > tree.costs[slot]) {
+                continue;
+            }
+            tree.isSettled[slot] = true;
+            radius = cost;
+            if (label == sourceLabel) {
+                maxCost = (long) ((1 + TREE_SLACK) * cost);
+            }
+            // No edge may lead to a closed vertex.
+            if (overlaySnapshot != null && overlaySnapshot.isClosed(label)) {
+                continue;
+            }
+            for (int i = incomingEdges.getEdgesStart(label); i < incomingEdges.getEdgesEnd(label); i++) {
+                incomingEdges.getEdge(graph, i, vertex, edge);
+                final int adjacentLabel = incomingEdges.getStartVertexLabel(i);
+                final int edgeCost = getCost(adjacentLabel, incomingEdges.getEdgeIndex(i), edge);
+                if (edgeCost == EdgeOverlay.CLOSED) {
+                    continue;
+                }
+                final int adjacentCost = cost + edgeCost;
+                final int adjacentSlot = tree.indexOf(adjacentLabel);
+                if (adjacentSlot == -1 && tree.size == maxTreeSize) {
+                    // The radius remains the cost of this vertex, since some of its incoming edges are left unrelaxed.
+                    isTreeFull = true;
+                    return;
+                }
+                if (adjacentSlot == -1 || adjacentCost < tree.costs[adjacentSlot]) {
+                    tree.reach(adjacentLabel, adjacentCost, SearchSpace.packPredecessorLabel(label, incomingEdges.getEdgeIndex(i)));
+                    treePriorityQueue.add(adjacentCost, adjacentLabel);
+                }
+            }
+        }
+        if (!isTreeFull) {
+            radius = SearchSpace.INFINITY;
+        }
+    }
+
+    /**
+     * Finds the optimal route from a given vertex to the target by an A* search, which stops as soon as it settles a vertex of the tree.
+     */
+    private Path searchLocally(final int sourceLabel, final CancellationToken token) {
+        localSearchSpace.clear();
+        localPriorityQueue.clear();
+        numLocallySettled = 0;
+        final int sourceEstimate = estimate(sourceLabel);
+        if (sourceEstimate == SearchSpace.INFINITY) {
+            throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+        }
+        localSearchSpace.reach(sourceLabel, 0, -1);
+        localPriorityQueue.add(sourceEstimate, sourceLabel);
+        while (!localPriorityQueue.isEmpty()) {
+            final int key = localPriorityQueue.peekKey();
+            final int label = localPriorityQueue.poll();
+            final int slot = localSearchSpace.indexOf(label);
+            final int cost = localSearchSpace.costs[slot];
+            if (localSearchSpace.isSettled[slot] || key > cost + estimate(label)) {
+                continue;
+            }
+            if (tree.isSettled(label)) {
+                return toPath(sourceLabel, label);
+            }
+            localSearchSpace.isSettled[slot] = true;
+            if ((++numLocallySettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            graph.vertices(vertex, label);
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                vertex.outgoingEdges(edge, i);
+                final int adjacentLabel = edge.endVertexLabel();
+                final int adjacentEstimate = estimate(adjacentLabel);
+                if (adjacentEstimate == SearchSpace.INFINITY) {
+                    continue;
+                }
+                final int edgeCost = getCost(label, i, edge);
+                if (edgeCost == EdgeOverlay.CLOSED) {
+                    continue;
+                }
+                final int adjacentCost = cost + edgeCost;
+                final int adjacentSlot = localSearchSpace.indexOf(adjacentLabel);
+                if (adjacentSlot == -1 || adjacentCost < localSearchSpace.costs[adjacentSlot]) {
+                    localSearchSpace.reach(adjacentLabel, adjacentCost, SearchSpace.packPredecessorLabel(label, i));
+                    localPriorityQueue.add(adjacentCost + adjacentEstimate, adjacentLabel);
+                }
+            }
+        }
+        throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+    }
+
+    /**
+     * Returns the cost of an edge under the overlay snapshot the tree was grown with.
+     *
+     * @return The cost, or {@link EdgeOverlay#CLOSED} if the edge or its end vertex is closed.
+     */
+    private int getCost(final int startVertexLabel, final int edgeIndex, final DeserializedEdge edge) {
+        if (overlaySnapshot == null) {
+            return optimizationMode.getCost(edge);
+        }
+        if (overlaySnapshot.isClosed(edge.endVertexLabel())) {
+            return EdgeOverlay.CLOSED;
+        }
+        final int cost = optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? edge.length() : overlaySnapshot.getTravelTime(startVertexLabel, edgeIndex, edge.travelTime());
+        return overlaySnapshot.getCost(startVertexLabel, edgeIndex, cost);
+    }
+
+    /**
+     * Estimates the cost from a vertex to the target.
+     *
+     * @return The estimate, or {@link SearchSpace#INFINITY} if the target is known to be unreachable from the vertex.
+     */
+    private int estimate(final int label) {
+        final int slot = tree.indexOf(label);
+        if (slot != -1 && tree.isSettled[slot]) {
+            return tree.costs[slot];
+        }
+        if (radius == SearchSpace.INFINITY) {
+            return SearchSpace.INFINITY;
+        }
+        return Math.max(radius, heuristic.calc(graph.vertices(estimatedVertex, label)));
+    }
+
+    /**
+     * Builds the route following the local search from the source up to a vertex of the tree, and then the tree route to the target.
+     */
+    private Path toPath(final int sourceLabel, final int treeLabel) {
+        int numEndpoints = 1;
+        for (int label = treeLabel; label != sourceLabel; label = SearchSpace.unpackLabel(localSearchSpace.getPredecessorLabel(label))) {
+            numEndpoints++;
+        }
+        final int numLocalEndpoints = numEndpoints;
+        for (int label = treeLabel; label != targetLabel; label = SearchSpace.unpackLabel(tree.getPredecessorLabel(label))) {
+            numEndpoints++;
+        }
+        final int[] labels = new int[numEndpoints];
+        // The index of the edge from every endpoint to the next, among the outgoing edges of the former.
+        final int[] edgeIndices = new int[numEndpoints - 1];
+        int label = treeLabel;
+        for (int i = numLocalEndpoints - 1; i >= 0; i--) {
+            labels[i] = label;
+            if (i > 0) {
+                final int packedPredecessorLabel = localSearchSpace.getPredecessorLabel(label);
+                edgeIndices[i - 1] = SearchSpace.unpackEdgeIndex(packedPredecessorLabel);
+                label = SearchSpace.unpackLabel(packedPredecessorLabel);
+            }
+        }
+        label = treeLabel;
+        for (int i = numLocalEndpoints; i < numEndpoints; i++) {
+            final int packedSuccessorLabel = tree.getPredecessorLabel(label);
+            edgeIndices[i - 1] = SearchSpace.unpackEdgeIndex(packedSuccessorLabel);
+            label = SearchSpace.unpackLabel(packedSuccessorLabel);
+            labels[i] = label;
+        }
+        final float[] coordinates = new float[2 * numEndpoints];
+        int length = 0;
+        int travelTime = 0;
+        for (int i = 0; i < numEndpoints; i++) {
+            graph.vertices(vertex, labels[i]);
+            coordinates[2 * i] = vertex.lat();
+            coordinates[2 * i + 1] = vertex.lon();
+            if (i < edgeIndices.length) {
+                vertex.outgoingEdges(edge, edgeIndices[i]);
+                length += edge.length();
+                travelTime += overlaySnapshot == null ? edge.travelTime() : overlaySnapshot.getTravelTime(labels[i], edgeIndices[i], edge.travelTime());
+            }
+        }
+        return new Path(labels, coordinates, length, travelTime);
+    }
+
+    /**
+     * An open-addressing hash table of the cost, predecessor and settledness of every vertex reached by a search, which only takes up space for the vertices actually reached.
+     */
+    private static final class VertexTable {
+        /**
+         * The label of the vertex in every slot, plus one, so that empty slots are zero.
+         */
+        private int[] keys;
+        private int[] costs;
+        private int[] predecessorLabels;
+        private boolean[] isSettled;
+        private int size;
+
+        /**
+         * Instantiates this class.
+         *
+         * @param capacity The initial number of slots, which must be a power of two.
+         */
+        private VertexTable(final int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(final int capacity) {
+            keys = new int[capacity];
+            costs = new int[capacity];
+            predecessorLabels = new int[capacity];
+            isSettled = new boolean[capacity];
+        }
+
+        private void clear() {
+            Arrays.fill(keys, 0);
+            Arrays.fill(isSettled, false);
+            size = 0;
+        }
+
+        /**
+         * Returns the slot of a vertex.
+         *
+         * @return The slot, or {@code -1} if the vertex has not been reached.
+         */
+        private int indexOf(final int label) {
+            final int mask = keys.length - 1;
+            for (int slot = hash(label) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == label + 1) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private boolean isSettled(final int label) {
+            final int slot = indexOf(label);
+            return slot != -1 && isSettled[slot];
+        }
+
+        private int getPredecessorLabel(final int label) {
+            return predecessorLabels[indexOf(label)];
+        }
+
+        /**
+         * Reaches a vertex, or updates its state if it has already been reached.
+         */
+        private void reach(final int label, final int cost, final int predecessorLabel) {
+            int slot = indexOf(label);
+            if (slot == -1) {
+                // The table is kept at most half full, so that probe sequences stay short.
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                }
+                final int mask = keys.length - 1;
+                slot = hash(label) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = label + 1;
+                isSettled[slot] = false;
+                size++;
+            }
+            costs[slot] = cost;
+            predecessorLabels[slot] = predecessorLabel;
+        }
+
+        private void grow() {
+            final int[] oldKeys = keys;
+            final int[] oldCosts = costs;
+            final int[] oldPredecessorLabels = predecessorLabels;
+            final boolean[] oldIsSettled = isSettled;
+            allocate(2 * oldKeys.length);
+            final int mask = keys.length - 1;
+            for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+                if (oldKeys[oldSlot] == 0) {
+                    continue;
+                }
+                int slot = hash(oldKeys[oldSlot] - 1) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[oldSlot];
+                costs[slot] = oldCosts[oldSlot];
+                predecessorLabels[slot] = oldPredecessorLabels[oldSlot];
+                isSettled[slot] = oldIsSettled[oldSlot];
+            }
+        }
+
+        private static int hash(final int label) {
+            final int h = label * 0x9E3779B9;
+            return h ^ h >>> 16;
+        }
+    }
+}
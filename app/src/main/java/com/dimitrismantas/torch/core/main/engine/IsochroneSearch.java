@@ -0,0 +1,325 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Arrays;
+
+/**
+ * An implementation of a bounded variant of Dijkstra's algorithm, which finds every vertex reachable from a given origin within a given budget (i.e., an isochrone).
+ * <p>
+ * In reverse mode, the search follows the incoming edges of every vertex instead, and finds every vertex from which the origin is reachable within the budget.
+ * <p>
+ * The state of the search is kept in a {@link SearchSpace} rather than the graph itself, and is reused across executions, along with the buffers holding the reached vertices. This class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class IsochroneSearch {
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    private final DeserializedGraph graph;
+    /**
+     * The incoming edge index, or {@code null} if reverse searches are not supported.
+     */
+    private final IncomingEdgeIndex incomingEdges;
+    private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+    private SearchSpace searchSpace;
+    private int[] reachedLabels = new int[1 << 10];
+    private int[] reachedCosts = new int[1 << 10];
+
+    public IsochroneSearch(final DeserializedGraph graph) {
+        this(graph, null);
+    }
+
+    public IsochroneSearch(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges) {
+        this.graph = graph;
+        this.incomingEdges = incomingEdges;
+    }
+
+    public Isochrone run(final int originLabel, final int budget, final AStar.OptimizationMode optimizationMode, final Direction direction) {
+        return run(originLabel, budget, optimizationMode, direction, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds every vertex reachable from, or from which it is possible to reach, a given origin within a given budget.
+     *
+     * @param originLabel      The label of the origin vertex.
+     * @param budget           The budget, in meters if the optimization mode is {@link AStar.OptimizationMode#MINIMIZE_DISTANCE}, or in travel time units otherwise.
+     * @param optimizationMode The optimization mode, which determines the metric of the budget.
+     * @param direction        The direction of the search.
+     * @param token            The cancellation token.
+     * @return The isochrone.
+     * @throws IllegalStateException If the search is run in reverse, but no incoming edge index has been provided.
+     */
+    public Isochrone run(final int originLabel, final int budget, final AStar.OptimizationMode optimizationMode, final Direction direction, final CancellationToken token) {
+        if (direction == Direction.REVERSE && incomingEdges == null) {
+            throw new IllegalStateException("Reverse searches require an incoming edge index.");
+        }
+        token.throwIfAborted();
+        if (searchSpace == null) {
+            searchSpace = new SearchSpace(graph.verticesLength(), false, false);
+        } else {
+            searchSpace.clear();
+        }
+        priorityQueue.clear();
+
+        searchSpace.reach(originLabel, 0, 0, -1);
+        priorityQueue.add(0, originLabel);
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int numReached = 0;
+        while (!priorityQueue.isEmpty()) {
+            if (((numReached + 1) & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            final int cost = priorityQueue.peekKey();
+            final int label = priorityQueue.poll();
+            if (cost > searchSpace.getCost(label)) {
+                continue;
+            }
+            if (numReached == reachedLabels.length) {
+                reachedLabels = Arrays.copyOf(reachedLabels, 2 * numReached);
+                reachedCosts = Arrays.copyOf(reachedCosts, 2 * numReached);
+            }
+            reachedLabels[numReached] = label;
+            reachedCosts[numReached] = cost;
+            numReached++;
+            if (direction == Direction.FORWARD) {
+                graph.vertices(vertex, label);
+                for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                    vertex.outgoingEdges(edge, i);
+                    relax(edge.endVertexLabel(), cost + optimizationMode.getCost(edge), budget);
+                }
+            } else {
+                for (int i = incomingEdges.getEdgesStart(label); i < incomingEdges.getEdgesEnd(label); i++) {
+                    incomingEdges.getEdge(graph, i, vertex, edge);
+                    relax(incomingEdges.getStartVertexLabel(i), cost + optimizationMode.getCost(edge), budget);
+                }
+            }
+        }
+        return new Isochrone(Arrays.copyOf(reachedLabels, numReached), Arrays.copyOf(reachedCosts, numReached));
+    }
+
+    private void relax(final int label, final int cost, final int budget) {
+        // Vertices beyond the budget are never enqueued, so the search stops as soon as the queue runs out.
+        if (cost <= budget && cost < searchSpace.getCost(label)) {
+            searchSpace.reach(label, cost, 0, -1);
+            priorityQueue.add(cost, label);
+        }
+    }
+
+    public enum Direction {
+        /**
+         * Find every vertex reachable from the origin.
+         */
+        FORWARD,
+        /**
+         * Find every vertex from which the origin is reachable.
+         */
+        REVERSE
+    }
+
+    /**
+     * The vertices reached by an isochrone search, along with their costs from (or to) the origin.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Isochrone {
+        /**
+         * The maximum number of cells of the grid used to compute the outline.
+         */
+        private static final int MAX_NUM_CELLS = 1 << 22;
+        /**
+         * The labels of the reached vertices, in ascending order of cost.
+         */
+        private final int[] labels;
+        private final int[] costs;
+
+        private Isochrone(final int[] labels, final int[] costs) {
+            this.labels = labels;
+            this.costs = costs;
+        }
+
+        public int getNumVertices() {
+            return labels.length;
+        }
+
+        public int[] getLabels() {
+            return labels;
+        }
+
+        public int[] getCosts() {
+            return costs;
+        }
+
+        /**
+         * Computes a concave polygon enclosing the reached vertices.
+         * <p>
+         * The vertices are rasterized onto a latitude-longitude grid, and the boundary of the occupied cells is traced along the cell edges. The longest counterclockwise boundary (i.e., the outline of the largest region of occupied cells, ignoring any holes) is returned, with collinear points removed. Smaller cells produce tighter, but more fragmented, outlines.
+         *
+         * @param graph    The graph.
+         * @param cellSize The size of the grid cells, in decimal degrees.
+         * @return The outline, as alternating latitudes and longitudes of the polygon vertices, in counterclockwise order. The first vertex is not repeated at the end.
+         * @throws IllegalArgumentException If the cells are so small that the grid would be too large.
+         */
+        public float[] computeOutline(final DeserializedGraph graph, final double cellSize) {
+            final DeserializedVertex vertex = new DeserializedVertex();
+            double minLat = Double.POSITIVE_INFINITY;
+            double minLon = Double.POSITIVE_INFINITY;
+            double maxLat = Double.NEGATIVE_INFINITY;
+            double maxLon = Double.NEGATIVE_INFINITY;
+            for (final int label : labels) {
+                graph.vertices(vertex, label);
+                minLat = Math.min(minLat, vertex.lat());
+                minLon = Math.min(minLon, vertex.lon());
+                maxLat = Math.max(maxLat, vertex.lat());
+                maxLon = Math.max(maxLon, vertex.lon());
+            }
+            // The grid is padded by one cell on every side, so that every occupied cell has a neighbor.
+            minLat -= cellSize;
+            minLon -= cellSize;
+            final int width = (int) Math.floor((maxLon - minLon) / cellSize) + 2;
+            final int height = (int) Math.floor((maxLat - minLat) / cellSize) + 2;
+            if ((long) width * height > MAX_NUM_CELLS) {
+                throw new IllegalArgumentException("The cell size is too small for the extent of the isochrone.");
+            }
+            final boolean[] isOccupied = new boolean[width * height];
+            for (final int label : labels) {
+                graph.vertices(vertex, label);
+                final int x = (int) Math.floor((vertex.lon() - minLon) / cellSize);
+                final int y = (int) Math.floor((vertex.lat() - minLat) / cellSize);
+                isOccupied[y * width + x] = true;
+            }
+            return toCoordinates(traceOutline(isOccupied, width, height), width, minLat, minLon, cellSize);
+        }
+
+        /**
+         * Traces the longest counterclockwise boundary of the occupied cells of a grid.
+         *
+         * @return The grid corners along the boundary, identified by {@code y * (width + 1) + x}.
+         */
+        private static int[] traceOutline(final boolean[] isOccupied, final int width, final int height) {
+            final int numCorners = (width + 1) * (height + 1);
+            // Every corner has at most two outgoing boundary edges, identified by their end corners.
+            final int[] firstEdges = new int[numCorners];
+            final int[] secondEdges = new int[numCorners];
+            Arrays.fill(firstEdges, -1);
+            Arrays.fill(secondEdges, -1);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (!isOccupied[y * width + x]) {
+                        continue;
+                    }
+                    final int bottomLeft = y * (width + 1) + x;
+                    final int bottomRight = bottomLeft + 1;
+                    final int topLeft = bottomLeft + width + 1;
+                    final int topRight = topLeft + 1;
+                    // The edges are directed so that the occupied cell is on their left.
+                    if (y == 0 || !isOccupied[(y - 1) * width + x]) {
+                        addEdge(firstEdges, secondEdges, bottomLeft, bottomRight);
+                    }
+                    if (x == width - 1 || !isOccupied[y * width + x + 1]) {
+                        addEdge(firstEdges, secondEdges, bottomRight, topRight);
+                    }
+                    if (y == height - 1 || !isOccupied[(y + 1) * width + x]) {
+                        addEdge(firstEdges, secondEdges, topRight, topLeft);
+                    }
+                    if (x == 0 || !isOccupied[y * width + x - 1]) {
+                        addEdge(firstEdges, secondEdges, topLeft, bottomLeft);
+                    }
+                }
+            }
+            // Every corner has as many incoming boundary edges as outgoing ones, so following unused edges from any corner eventually leads back to it.
+            int[] outline = new int[0];
+            long maxArea = 0;
+            int[] loop = new int[16];
+            for (int start = 0; start < numCorners; start++) {
+                while (firstEdges[start] != -1) {
+                    int numLoopCorners = 0;
+                    int corner = start;
+                    do {
+                        if (numLoopCorners == loop.length) {
+                            loop = Arrays.copyOf(loop, 2 * numLoopCorners);
+                        }
+                        loop[numLoopCorners++] = corner;
+                        corner = removeEdge(firstEdges, secondEdges, corner);
+                    } while (corner != start);
+                    // Twice the signed area of the loop, which is positive for counterclockwise loops.
+                    long area = 0;
+                    for (int i = 0; i < numLoopCorners; i++) {
+                        final int a = loop[i];
+                        final int b = loop[(i + 1) % numLoopCorners];
+                        area += (long) (a % (width + 1)) * (b / (width + 1)) - (long) (b % (width + 1)) * (a / (width + 1));
+                    }
+                    if (area > maxArea) {
+                        maxArea = area;
+                        outline = Arrays.copyOf(loop, numLoopCorners);
+                    }
+                }
+            }
+            return outline;
+        }
+
+        private static void addEdge(final int[] firstEdges, final int[] secondEdges, final int from, final int to) {
+            if (firstEdges[from] == -1) {
+                firstEdges[from] = to;
+            } else {
+                secondEdges[from] = to;
+            }
+        }
+
+        private static int removeEdge(final int[] firstEdges, final int[] secondEdges, final int from) {
+            final int to = firstEdges[from];
+            firstEdges[from] = secondEdges[from];
+            secondEdges[from] = -1;
+            return to;
+        }
+
+        private static float[] toCoordinates(final int[] outline, final int width, final double minLat, final double minLon, final double cellSize) {
+            final float[] coordinates = new float[2 * outline.length];
+            int numPoints = 0;
+            for (int i = 0; i < outline.length; i++) {
+                final int prev = outline[(i + outline.length - 1) % outline.length];
+                final int curr = outline[i];
+                final int next = outline[(i + 1) % outline.length];
+                // Skip corners where the boundary does not turn.
+                if (curr - prev == next - curr) {
+                    continue;
+                }
+                coordinates[2 * numPoints] = (float) (minLat + (curr / (width + 1)) * cellSize);
+                coordinates[2 * numPoints + 1] = (float) (minLon + (curr % (width + 1)) * cellSize);
+                numPoints++;
+            }
+            return Arrays.copyOf(coordinates, 2 * numPoints);
+        }
+    }
+}
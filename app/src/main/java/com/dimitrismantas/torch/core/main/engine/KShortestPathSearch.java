@@ -0,0 +1,592 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SparseSearchSpace;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An implementation of Yen's algorithm for finding the k shortest simple (i.e., loopless) routes between two vertices.
+ * <p>
+ * Every route after the shortest one is derived from one found before it, by following it up to some spur vertex, and then taking the shortest route from there to the target which neither revisits a vertex before the spur vertex, nor leaves it along the edge taken by any route found so far with the same prefix. Following the modification by Lawler, only the vertices of a route from the one where it deviates from its parent onwards are used as spur vertices, since the rest have already been used for its parent.
+ * <p>
+ * The spur searches are sped up using the reverse shortest path tree of the target, which is grown by Dijkstra's algorithm once per execution:
+ * <ul>
+ *     <li>The cost of the tree route from every vertex to the target is the exact cost of its optimal route when nothing is excluded, and hence an admissible and consistent heuristic for every spur search, which is then an A* search.</li>
+ *     <li>As soon as a spur search settles a vertex whose tree route to the target avoids every excluded vertex and edge, that tree route completes the spur route, so the search stops right there, rather than at the target.</li>
+ * </ul>
+ * The spur searches derived from the same route are independent of each other, so they are run in parallel, by at most {@link #MAX_NUM_SPUR_SEARCH_CONTEXTS} tasks, which share them out among themselves. Every task runs its spur searches in a search context of its own, which is reused across spur searches and executions, and excludes vertices and edges by marking them in that context, so the graph itself is never copied or modified. The state of every context is kept in hash tables holding only the vertices actually reached or marked, since a spur search only reaches a small part of the graph.
+ * <p>
+ * The reverse tree is reused across executions, so this class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see IncomingEdgeIndex
+ * @since 1.1.0
+ */
+public final class KShortestPathSearch {
+    /**
+     * The maximum number of search contexts, and hence of spur searches running at the same time.
+     */
+    public static final int MAX_NUM_SPUR_SEARCH_CONTEXTS = 4;
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    private final DeserializedGraph graph;
+    private final IncomingEdgeIndex incomingEdges;
+    private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+    /**
+     * The reverse shortest path tree of the target. The predecessor of every vertex in this tree is its successor on the route to the target, packed along with the index of the edge to it among the outgoing edges of the vertex itself.
+     */
+    private final SearchSpace reverseTree;
+    /**
+     * The search context of every task running spur searches, which is only created once the task first runs one.
+     */
+    private final SpurSearch[] spurSearches = new SpurSearch[MAX_NUM_SPUR_SEARCH_CONTEXTS];
+    private int targetLabel;
+
+    public KShortestPathSearch(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges) {
+        if (graph.verticesLength() > SearchSpace.PREDECESSOR_LABEL_MASK) {
+            throw new IllegalArgumentException("The graph must not contain more than " + SearchSpace.PREDECESSOR_LABEL_MASK + " vertices.");
+        }
+        this.graph = graph;
+        this.incomingEdges = incomingEdges;
+        reverseTree = new SearchSpace(graph.verticesLength(), false, true);
+    }
+
+    public Result run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final int maxNumRoutes) {
+        return run(source, target, optimizationMode, maxNumRoutes, Runnable::run, CancellationToken.NONE);
+    }
+
+    public Result run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final int maxNumRoutes, final Executor executor) {
+        return run(source, target, optimizationMode, maxNumRoutes, executor, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the k shortest simple routes between two vertices.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @param maxNumRoutes     The maximum number of routes to find (i.e., k).
+     * @param executor         The executor running the spur searches.
+     * @param token            The cancellation token.
+     * @return The routes found, in increasing order of cost, which are fewer than requested only if there are no more simple routes between the vertices.
+     * @throws EqualEndpointException     If the source and target vertices are equal.
+     * @throws UnreachableTargetException If the target vertex is unreachable from the source.
+     */
+    public Result run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final int maxNumRoutes, final Executor executor, final CancellationToken token) {
+        token.throwIfAborted();
+        if (source.lbl() == target.lbl()) {
+            throw new EqualEndpointException("The source and target vertices are equal.");
+        }
+        if (maxNumRoutes < 1) {
+            throw new IllegalArgumentException("At least one route must be requested.");
+        }
+        targetLabel = target.lbl();
+        growReverseTree(optimizationMode, token);
+        if (reverseTree.getCost(source.lbl()) == SearchSpace.INFINITY) {
+            throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+        }
+        final List<Route> routes = new ArrayList<>();
+        routes.add(toRoute(source.lbl()));
+        final PriorityQueue<Route> candidates = new PriorityQueue<>();
+        // Every route found so far, or currently a candidate, so that no route is ever found twice.
+        final Set<Route> knownRoutes = new HashSet<>(routes);
+        while (routes.size() < maxNumRoutes) {
+            token.throwIfAborted();
+            final Route parent = routes.get(routes.size() - 1);
+            final int numSpurVertices = parent.labels.length - 1 - parent.deviationIndex;
+            // The length of the longest prefix every route found so far shares with the parent, which determines the edges excluded from every spur search.
+            final int[] commonPrefixLengths = new int[routes.size()];
+            for (int i = 0; i < routes.size(); i++) {
+                commonPrefixLengths[i] = parent.getCommonPrefixLength(routes.get(i));
+            }
+            final int[][] excludedEdgeIndices = new int[numSpurVertices][];
+            for (int spurIndex = parent.deviationIndex; spurIndex < parent.labels.length - 1; spurIndex++) {
+                final int[] currExcludedEdgeIndices = new int[routes.size()];
+                int numExcludedEdges = 0;
+                for (int i = 0; i < routes.size(); i++) {
+                    if (commonPrefixLengths[i] >= spurIndex && routes.get(i).edges.length > spurIndex) {
+                        currExcludedEdgeIndices[numExcludedEdges++] = SearchSpace.unpackEdgeIndex(routes.get(i).edges[spurIndex]);
+                    }
+                }
+                excludedEdgeIndices[spurIndex - parent.deviationIndex] = Arrays.copyOf(currExcludedEdgeIndices, numExcludedEdges);
+            }
+            final Route[] spurRoutes = new Route[numSpurVertices];
+            final AtomicInteger nextSpurVertex = new AtomicInteger();
+            final List<CompletableFuture<Void>> tasks = new ArrayList<>(MAX_NUM_SPUR_SEARCH_CONTEXTS);
+            for (int task = 0; task < Math.min(MAX_NUM_SPUR_SEARCH_CONTEXTS, numSpurVertices); task++) {
+                final int currTask = task;
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    // Every task claims the next spur vertex until there are none left, so that no task waits for another while there is work to do.
+                    for (int j = nextSpurVertex.getAndIncrement(); j < numSpurVertices; j = nextSpurVertex.getAndIncrement()) {
+                        if (spurSearches[currTask] == null) {
+                            spurSearches[currTask] = new SpurSearch();
+                        }
+                        spurRoutes[j] = spurSearches[currTask].run(parent, parent.deviationIndex + j, excludedEdgeIndices[j], optimizationMode, token);
+                    }
+                }, executor));
+            }
+            // Every spur search must have stopped before the reverse tree can be grown again, so they are all awaited before any failure is propagated.
+            RuntimeException failure = null;
+            for (final CompletableFuture<Void> task : tasks) {
+                try {
+                    task.join();
+                } catch (final CompletionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            for (final Route route : spurRoutes) {
+                if (route != null && knownRoutes.add(route)) {
+                    candidates.add(route);
+                }
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            routes.add(candidates.poll());
+        }
+        final Path[] paths = new Path[routes.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = routes.get(i).toPath(graph);
+        }
+        return new Result(paths);
+    }
+
+    /**
+     * Grows the reverse shortest path tree of the target over the whole graph.
+     */
+    private void growReverseTree(final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+        reverseTree.clear();
+        priorityQueue.clear();
+        reverseTree.reach(targetLabel, 0, 0, -1);
+        priorityQueue.add(0, targetLabel);
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int numSettled = 0;
+        while (!priorityQueue.isEmpty()) {
+            final int cost = priorityQueue.peekKey();
+            final int label = priorityQueue.poll();
+            if (cost > reverseTree.getCost(label)) {
+                continue;
+            }
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            for (int i = incomingEdges.getEdgesStart(label); i < incomingEdges.getEdgesEnd(label); i++) {
+                incomingEdges.getEdge(graph, i, vertex, edge);
+                final int adjacentLabel = incomingEdges.getStartVertexLabel(i);
+                final int adjacentCost = cost + optimizationMode.getCost(edge);
+                if (adjacentCost < reverseTree.getCost(adjacentLabel)) {
+                    reverseTree.reach(adjacentLabel, adjacentCost, 0, SearchSpace.packPredecessorLabel(label, incomingEdges.getEdgeIndex(i)));
+                    priorityQueue.add(adjacentCost, adjacentLabel);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the tree route from a vertex to the target, which is the shortest one.
+     */
+    private Route toRoute(final int sourceLabel) {
+        int numEndpoints = 1;
+        for (int label = sourceLabel; label != targetLabel; label = SearchSpace.unpackLabel(reverseTree.getPredecessorLabel(label))) {
+            numEndpoints++;
+        }
+        final Route route = new Route(numEndpoints, 0);
+        route.labels[0] = sourceLabel;
+        appendTreeRoute(route, 0, 0);
+        return route;
+    }
+
+    /**
+     * Fills in the remainder of a route with the tree route to the target, starting from a given one of its vertices.
+     *
+     * @param cost The cost of the route up to the given vertex.
+     */
+    private void appendTreeRoute(final Route route, final int start, final int cost) {
+        final int startLabel = route.labels[start];
+        for (int i = start; i < route.edges.length; i++) {
+            final int packedSuccessorLabel = reverseTree.getPredecessorLabel(route.labels[i]);
+            route.edges[i] = SearchSpace.packPredecessorLabel(route.labels[i], SearchSpace.unpackEdgeIndex(packedSuccessorLabel));
+            route.labels[i + 1] = SearchSpace.unpackLabel(packedSuccessorLabel);
+        }
+        for (int i = start; i < route.labels.length; i++) {
+            route.costs[i] = cost + reverseTree.getCost(startLabel) - reverseTree.getCost(route.labels[i]);
+        }
+    }
+
+    /**
+     * The context of a spur search, which is reused across spur searches, but only ever used by one of them at a time.
+     */
+    private final class SpurSearch {
+        private static final int EXCLUDED = 1;
+        private static final int CLEAN = 2;
+        private static final int DIRTY = 3;
+        private final SparseSearchSpace searchSpace = new SparseSearchSpace();
+        private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+        private final DeserializedVertex vertex = new DeserializedVertex();
+        private final DeserializedEdge edge = new DeserializedEdge();
+        /**
+         * The state of every vertex in the current spur search. A vertex is either excluded, or its tree route to the target is known to be clean (i.e., to avoid every excluded vertex and edge) or dirty, or neither.
+         */
+        private final StateTable states = new StateTable();
+        private int[] walkedLabels = new int[64];
+
+        /**
+         * Finds the shortest route which follows a given one up to a spur vertex, and then neither revisits any of its vertices before the spur vertex, nor leaves the spur vertex along any of the given edges.
+         *
+         * @param excludedEdgeIndices The indices of the excluded edges among the outgoing edges of the spur vertex.
+         * @return The route, or {@code null} if there is none.
+         */
+        private Route run(final Route parent, final int spurIndex, final int[] excludedEdgeIndices, final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+            states.clear();
+            for (int i = 0; i < spurIndex; i++) {
+                states.set(parent.labels[i], EXCLUDED);
+            }
+            final int spurLabel = parent.labels[spurIndex];
+            // Any tree route through the spur vertex would revisit it.
+            states.set(spurLabel, DIRTY);
+            states.set(targetLabel, CLEAN);
+            searchSpace.clear();
+            priorityQueue.clear();
+            searchSpace.reach(spurLabel, 0, -1);
+            priorityQueue.add(reverseTree.getCost(spurLabel), spurLabel);
+            int numSettled = 0;
+            while (!priorityQueue.isEmpty()) {
+                if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                    token.throwIfAborted();
+                }
+                final int key = priorityQueue.peekKey();
+                final int label = priorityQueue.poll();
+                final int cost = searchSpace.getCost(label);
+                if (key > cost + reverseTree.getCost(label)) {
+                    continue;
+                }
+                final boolean isTreeRouteClean;
+                if (label == spurLabel) {
+                    final int packedSuccessorLabel = reverseTree.getPredecessorLabel(label);
+                    isTreeRouteClean = !contains(excludedEdgeIndices, SearchSpace.unpackEdgeIndex(packedSuccessorLabel)) && isTreeRouteClean(SearchSpace.unpackLabel(packedSuccessorLabel));
+                } else {
+                    isTreeRouteClean = isTreeRouteClean(label);
+                }
+                if (isTreeRouteClean) {
+                    return toRoute(parent, spurIndex, label);
+                }
+                graph.vertices(vertex, label);
+                for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                    if (label == spurLabel && contains(excludedEdgeIndices, i)) {
+                        continue;
+                    }
+                    vertex.outgoingEdges(edge, i);
+                    final int adjacentLabel = edge.endVertexLabel();
+                    final int adjacentEstimate = reverseTree.getCost(adjacentLabel);
+                    // Vertices from which the target is unreachable are never worth reaching.
+                    if (states.get(adjacentLabel) == EXCLUDED || adjacentEstimate == SearchSpace.INFINITY) {
+                        continue;
+                    }
+                    final int adjacentCost = cost + optimizationMode.getCost(edge);
+                    if (adjacentCost < searchSpace.getCost(adjacentLabel)) {
+                        searchSpace.reach(adjacentLabel, adjacentCost, SearchSpace.packPredecessorLabel(label, i));
+                        priorityQueue.add(adjacentCost + adjacentEstimate, adjacentLabel);
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns whether the tree route from a vertex to the target is clean, and remembers the answer for every vertex along the way.
+         */
+        private boolean isTreeRouteClean(final int startLabel) {
+            int numWalked = 0;
+            int label = startLabel;
+            int state = states.get(label);
+            while (state != CLEAN && state != EXCLUDED && state != DIRTY) {
+                if (numWalked == walkedLabels.length) {
+                    walkedLabels = Arrays.copyOf(walkedLabels, 2 * numWalked);
+                }
+                walkedLabels[numWalked++] = label;
+                label = SearchSpace.unpackLabel(reverseTree.getPredecessorLabel(label));
+                state = states.get(label);
+            }
+            final boolean isClean = state == CLEAN;
+            for (int i = 0; i < numWalked; i++) {
+                states.set(walkedLabels[i], isClean ? CLEAN : DIRTY);
+            }
+            return isClean;
+        }
+
+        /**
+         * Builds the route following the parent up to the spur vertex, then the spur route up to a given vertex, and then the tree route to the target.
+         */
+        private Route toRoute(final Route parent, final int spurIndex, final int lastSpurLabel) {
+            int numSpurEdges = 0;
+            for (int label = lastSpurLabel; searchSpace.getPredecessorLabel(label) != -1; label = SearchSpace.unpackLabel(searchSpace.getPredecessorLabel(label))) {
+                numSpurEdges++;
+            }
+            int numTreeEdges = 0;
+            for (int label = lastSpurLabel; label != targetLabel; label = SearchSpace.unpackLabel(reverseTree.getPredecessorLabel(label))) {
+                numTreeEdges++;
+            }
+            final int lastSpurIndex = spurIndex + numSpurEdges;
+            final Route route = new Route(lastSpurIndex + numTreeEdges + 1, spurIndex);
+            System.arraycopy(parent.labels, 0, route.labels, 0, spurIndex + 1);
+            System.arraycopy(parent.edges, 0, route.edges, 0, spurIndex);
+            System.arraycopy(parent.costs, 0, route.costs, 0, spurIndex + 1);
+            final int spurCost = parent.costs[spurIndex];
+            int label = lastSpurLabel;
+            for (int i = lastSpurIndex; i > spurIndex; i--) {
+                final int packedPredecessorLabel = searchSpace.getPredecessorLabel(label);
+                route.labels[i] = label;
+                route.edges[i - 1] = packedPredecessorLabel;
+                route.costs[i] = spurCost + searchSpace.getCost(label);
+                label = SearchSpace.unpackLabel(packedPredecessorLabel);
+            }
+            appendTreeRoute(route, lastSpurIndex, route.costs[lastSpurIndex]);
+            return route;
+        }
+
+        private boolean contains(final int[] array, final int value) {
+            for (final int element : array) {
+                if (element == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * An open-addressing hash table of the state of every vertex marked by a spur search, which only takes up space for the vertices actually marked, and shrinks back once a spur search marks far fewer vertices than it can hold.
+     */
+    private static final class StateTable {
+        private static final int MIN_CAPACITY = 1 << 8;
+        /**
+         * The label of the vertex in every slot, plus one, so that empty slots are zero.
+         */
+        private int[] keys = new int[MIN_CAPACITY];
+        private byte[] states = new byte[MIN_CAPACITY];
+        private int size;
+
+        private void clear() {
+            if (keys.length > MIN_CAPACITY && 4 * size < keys.length) {
+                final int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size)) << 2);
+                keys = new int[capacity];
+                states = new byte[capacity];
+            } else {
+                Arrays.fill(keys, 0);
+            }
+            size = 0;
+        }
+
+        /**
+         * Returns the state of a vertex.
+         *
+         * @return The state, or zero if the vertex has not been marked.
+         */
+        private int get(final int label) {
+            final int mask = keys.length - 1;
+            for (int slot = hash(label) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == label + 1) {
+                    return states[slot];
+                }
+            }
+            return 0;
+        }
+
+        private void set(final int label, final int state) {
+            int mask = keys.length - 1;
+            int slot = hash(label) & mask;
+            while (keys[slot] != 0 && keys[slot] != label + 1) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                // The table is kept at most half full, so that probe sequences stay short.
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                    mask = keys.length - 1;
+                    slot = hash(label) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                }
+                keys[slot] = label + 1;
+                size++;
+            }
+            states[slot] = (byte) state;
+        }
+
+        private void grow() {
+            final int[] oldKeys = keys;
+            final byte[] oldStates = states;
+            keys = new int[2 * oldKeys.length];
+            states = new byte[keys.length];
+            final int mask = keys.length - 1;
+            for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+                if (oldKeys[oldSlot] == 0) {
+                    continue;
+                }
+                int slot = hash(oldKeys[oldSlot] - 1) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[oldSlot];
+                states[slot] = oldStates[oldSlot];
+            }
+        }
+
+        private static int hash(final int label) {
+            final int h = label * 0x9E3779B9;
+            return h ^ h >>> 16;
+        }
+    }
+
+    /**
+     * A simple route, before it is turned into a {@link Path}. Routes are identified by their edges, and ordered by their cost.
+     */
+    private static final class Route implements Comparable<Route> {
+        private final int[] labels;
+        /**
+         * The edges of the route, as the labels of their start vertices packed along with their indices among the outgoing edges of those.
+         */
+        private final int[] edges;
+        /**
+         * The cost from the source to every vertex of the route.
+         */
+        private final int[] costs;
+        /**
+         * The index of the vertex where the route deviates from its parent.
+         */
+        private final int deviationIndex;
+
+        private Route(final int numEndpoints, final int deviationIndex) {
+            labels = new int[numEndpoints];
+            edges = new int[numEndpoints - 1];
+            costs = new int[numEndpoints];
+            this.deviationIndex = deviationIndex;
+        }
+
+        /**
+         * Returns the number of leading edges this route shares with another.
+         */
+        private int getCommonPrefixLength(final Route other) {
+            int length = 0;
+            while (length < edges.length && length < other.edges.length && edges[length] == other.edges[length]) {
+                length++;
+            }
+            return length;
+        }
+
+        private Path toPath(final DeserializedGraph graph) {
+            final DeserializedVertex vertex = new DeserializedVertex();
+            final DeserializedEdge edge = new DeserializedEdge();
+            final float[] coordinates = new float[2 * labels.length];
+            int length = 0;
+            int travelTime = 0;
+            for (int i = 0; i < labels.length; i++) {
+                graph.vertices(vertex, labels[i]);
+                coordinates[2 * i] = vertex.lat();
+                coordinates[2 * i + 1] = vertex.lon();
+                if (i < edges.length) {
+                    vertex.outgoingEdges(edge, SearchSpace.unpackEdgeIndex(edges[i]));
+                    length += edge.length();
+                    travelTime += edge.travelTime();
+                }
+            }
+            return new Path(labels, coordinates, length, travelTime);
+        }
+
+        @Override
+        public int compareTo(final Route other) {
+            final int result = Integer.compare(costs[costs.length - 1], other.costs[other.costs.length - 1]);
+            return result != 0 ? result : Integer.compare(labels.length, other.labels.length);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Route && Arrays.equals(edges, ((Route) obj).edges);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(edges);
+        }
+    }
+
+    /**
+     * The routes found by a search.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Result {
+        private final Path[] routes;
+
+        private Result(final Path[] routes) {
+            this.routes = routes;
+        }
+
+        public int getNumRoutes() {
+            return routes.length;
+        }
+
+        /**
+         * Returns a route.
+         *
+         * @param i The index of the route, in increasing order of cost, where {@code 0} is that of the optimal route.
+         * @return The route.
+         */
+        public Path getRoute(final int i) {
+            return routes[i];
+        }
+
+        public Path getOptimalRoute() {
+            return routes[0];
+        }
+    }
+}
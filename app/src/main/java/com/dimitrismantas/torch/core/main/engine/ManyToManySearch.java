@@ -0,0 +1,520 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+
+/**
+ * An implementation of a bucket-based many-to-many search algorithm, which finds the cost of the optimal route from every one of a set of sources to every one of a set of targets.
+ * <p>
+ * First, a backward search is run from every target, until a fixed number of vertices (i.e., the ball of the target) have been settled. Every settled vertex is assigned a bucket entry holding the target and the cost from the vertex to it. Then, a forward search is run from every source, and every time the cost of a vertex improves, the entries in its bucket are scanned to improve the tentative cost from the source to each target. This way, the forward searches of every source share the work done by the backward search of every target.
+ * <p>
+ * Every vertex whose cost to a target is less than the radius of its ball (i.e., the cost of the first vertex left unsettled) is in its ball. Hence, the optimal route to the target enters the ball through an edge starting at a vertex whose cost from the source is at most the cost of the route, minus the radius of the ball. The tentative cost to the target is therefore optimal as soon as the forward search has settled every vertex whose cost does not exceed this bound, and it can stop once this is the case for every target. If a ball contains every vertex from which its target can be reached, its radius is infinite.
+ * <p>
+ * The searches may optionally follow a snapshot of an {@link EdgeOverlay}, so that the matrix reflects the same closures, penalties and travel time overrides as the routes later found between its entries.
+ * <p>
+ * The backward searches, and then the forward searches, run in parallel. Every thread uses its own {@link SearchSpace}, so the graph itself is never modified and searches of other algorithms can run at the same time.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see IncomingEdgeIndex
+ * @since 1.1.0
+ */
+public final class ManyToManySearch {
+    /**
+     * The default number of vertices settled by the backward search of every target.
+     */
+    public static final int DEFAULT_BALL_SIZE = 1 << 12;
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    private final DeserializedGraph graph;
+    private final IncomingEdgeIndex incomingEdges;
+    private final int ballSize;
+    /**
+     * The search spaces and priority queues not currently in use by any thread.
+     */
+    private final ConcurrentLinkedQueue<Workspace> workspaces = new ConcurrentLinkedQueue<>();
+
+    public ManyToManySearch(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges) {
+        this(graph, incomingEdges, DEFAULT_BALL_SIZE);
+    }
+
+    public ManyToManySearch(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges, final int ballSize) {
+        if (ballSize < 1) {
+            throw new IllegalArgumentException("The ball size must be positive.");
+        }
+        this.graph = graph;
+        this.incomingEdges = incomingEdges;
+        this.ballSize = ballSize;
+    }
+
+    public Matrix run(final int[] sourceLabels, final int[] targetLabels, final AStar.OptimizationMode optimizationMode, final Executor executor) {
+        return run(sourceLabels, targetLabels, optimizationMode, executor, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the length and travel time of the optimal route from every source to every target.
+     *
+     * @param sourceLabels     The labels of the source vertices.
+     * @param targetLabels     The labels of the target vertices.
+     * @param optimizationMode The optimization mode.
+     * @param executor         The executor to run the searches on.
+     * @param token            The cancellation token.
+     * @return The matrix of route lengths and travel times.
+     */
+    public Matrix run(final int[] sourceLabels, final int[] targetLabels, final AStar.OptimizationMode optimizationMode, final Executor executor, final CancellationToken token) {
+        return run(sourceLabels, targetLabels, optimizationMode, null, executor, token);
+    }
+
+    /**
+     * Finds the length and travel time of the optimal route from every source to every target under a given overlay snapshot.
+     *
+     * @param sourceLabels     The labels of the source vertices.
+     * @param targetLabels     The labels of the target vertices.
+     * @param optimizationMode The optimization mode.
+     * @param snapshot         The overlay snapshot, or {@code null}.
+     * @param executor         The executor to run the searches on.
+     * @param token            The cancellation token.
+     * @return The matrix of route lengths and travel times.
+     */
+    public Matrix run(final int[] sourceLabels, final int[] targetLabels, final AStar.OptimizationMode optimizationMode, final EdgeOverlay.Snapshot snapshot, final Executor executor, final CancellationToken token) {
+        final EdgeOverlay.Snapshot overlaySnapshot = snapshot == null || snapshot.isEmpty() ? null : snapshot;
+        final Ball[] balls = new Ball[targetLabels.length];
+        runInParallel(targetLabels.length, j -> balls[j] = searchBackward(targetLabels[j], optimizationMode, overlaySnapshot, token), executor);
+        final Buckets buckets = new Buckets(balls, graph.verticesLength());
+        final Matrix matrix = new Matrix(sourceLabels.length, targetLabels.length);
+        runInParallel(sourceLabels.length, i -> searchForward(i, sourceLabels[i], balls, buckets, optimizationMode, overlaySnapshot, matrix, token), executor);
+        return matrix;
+    }
+
+    private Ball searchBackward(final int targetLabel, final AStar.OptimizationMode optimizationMode, final EdgeOverlay.Snapshot snapshot, final CancellationToken token) {
+        final Workspace workspace = acquireWorkspace();
+        try {
+            final SearchSpace searchSpace = workspace.searchSpace;
+            final IntPriorityQueue priorityQueue = workspace.priorityQueue;
+            searchSpace.reach(targetLabel, 0, 0, -1);
+            priorityQueue.add(0, targetLabel);
+
+            final Ball ball = new Ball(ballSize);
+            final DeserializedVertex vertex = new DeserializedVertex();
+            final DeserializedEdge edge = new DeserializedEdge();
+            int numSettled = 0;
+            while (!priorityQueue.isEmpty()) {
+                if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                    token.throwIfAborted();
+                }
+                final int cost = priorityQueue.peekKey();
+                final int label = priorityQueue.poll();
+                if (cost > searchSpace.getCost(label)) {
+                    continue;
+                }
+                if (ball.size == ballSize) {
+                    // Every vertex left unsettled costs at least as much as this one.
+                    ball.radius = cost;
+                    break;
+                }
+                ball.add(label, cost, searchSpace.getOtherCost(label));
+                for (int i = incomingEdges.getEdgesStart(label); i < incomingEdges.getEdgesEnd(label); i++) {
+                    incomingEdges.getEdge(graph, i, vertex, edge);
+                    final int startVertexLabel = incomingEdges.getStartVertexLabel(i);
+                    final int edgeIndex = incomingEdges.getEdgeIndex(i);
+                    final int edgeCost = getCost(startVertexLabel, edgeIndex, edge, optimizationMode, snapshot);
+                    if (edgeCost == EdgeOverlay.CLOSED) {
+                        continue;
+                    }
+                    final int costToTarget = cost + edgeCost;
+                    if (costToTarget < searchSpace.getCost(startVertexLabel)) {
+                        searchSpace.reach(startVertexLabel, costToTarget, searchSpace.getOtherCost(label) + getOtherCost(startVertexLabel, edgeIndex, edge, optimizationMode, snapshot), -1);
+                        priorityQueue.add(costToTarget, startVertexLabel);
+                    }
+                }
+            }
+            return ball;
+        } finally {
+            releaseWorkspace(workspace);
+        }
+    }
+
+    private void searchForward(final int sourceIndex, final int sourceLabel, final Ball[] balls, final Buckets buckets, final AStar.OptimizationMode optimizationMode, final EdgeOverlay.Snapshot snapshot, final Matrix matrix, final CancellationToken token) {
+        final Workspace workspace = acquireWorkspace();
+        try {
+            final SearchSpace searchSpace = workspace.searchSpace;
+            final IntPriorityQueue priorityQueue = workspace.priorityQueue;
+            final TargetCosts targetCosts = new TargetCosts(balls.length);
+            searchSpace.reach(sourceLabel, 0, 0, -1);
+            priorityQueue.add(0, sourceLabel);
+            buckets.scan(sourceLabel, 0, 0, targetCosts);
+            // The source can only reach a target whose ball contains every vertex that can reach it if it lies in that ball itself.
+            for (int j = 0; j < balls.length; j++) {
+                if (targetCosts.costs[j] == SearchSpace.INFINITY && balls[j].radius == SearchSpace.INFINITY) {
+                    targetCosts.numUnreachedTargets--;
+                }
+            }
+
+            final DeserializedVertex vertex = new DeserializedVertex();
+            final DeserializedEdge edge = new DeserializedEdge();
+            long bound = Long.MAX_VALUE;
+            int numSettled = 0;
+            while (!priorityQueue.isEmpty()) {
+                if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                    token.throwIfAborted();
+                }
+                final int cost = priorityQueue.peekKey();
+                if (targetCosts.numUnreachedTargets == 0) {
+                    if (targetCosts.isBoundStale) {
+                        bound = computeBound(targetCosts.costs, balls);
+                        targetCosts.isBoundStale = false;
+                    }
+                    if (cost > bound) {
+                        break;
+                    }
+                }
+                final int label = priorityQueue.poll();
+                if (cost > searchSpace.getCost(label)) {
+                    continue;
+                }
+                graph.vertices(vertex, label);
+                for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                    vertex.outgoingEdges(edge, i);
+                    final int adjacentLabel = edge.endVertexLabel();
+                    final int edgeCost = getCost(label, i, edge, optimizationMode, snapshot);
+                    if (edgeCost == EdgeOverlay.CLOSED) {
+                        continue;
+                    }
+                    final int costFromSource = cost + edgeCost;
+                    if (costFromSource < searchSpace.getCost(adjacentLabel)) {
+                        final int otherCostFromSource = searchSpace.getOtherCost(label) + getOtherCost(label, i, edge, optimizationMode, snapshot);
+                        searchSpace.reach(adjacentLabel, costFromSource, otherCostFromSource, -1);
+                        priorityQueue.add(costFromSource, adjacentLabel);
+                        buckets.scan(adjacentLabel, costFromSource, otherCostFromSource, targetCosts);
+                    }
+                }
+            }
+            matrix.setRow(sourceIndex, targetCosts.costs, targetCosts.otherCosts, optimizationMode);
+        } finally {
+            releaseWorkspace(workspace);
+        }
+    }
+
+    /**
+     * Returns the cost of an edge under an overlay snapshot, just like {@link AStar} does.
+     *
+     * @return The cost, or {@link EdgeOverlay#CLOSED} if the edge or its end vertex is closed.
+     */
+    private static int getCost(final int startVertexLabel, final int edgeIndex, final DeserializedEdge edge, final AStar.OptimizationMode optimizationMode, final EdgeOverlay.Snapshot snapshot) {
+        if (snapshot == null) {
+            return optimizationMode.getCost(edge);
+        }
+        if (snapshot.isClosed(edge.endVertexLabel())) {
+            return EdgeOverlay.CLOSED;
+        }
+        final int cost = optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? edge.length() : snapshot.getTravelTime(startVertexLabel, edgeIndex, edge.travelTime());
+        return snapshot.getCost(startVertexLabel, edgeIndex, cost);
+    }
+
+    /**
+     * Returns the cost of an edge in terms of the metric not being optimized under an overlay snapshot, which is never penalized.
+     */
+    private static int getOtherCost(final int startVertexLabel, final int edgeIndex, final DeserializedEdge edge, final AStar.OptimizationMode optimizationMode, final EdgeOverlay.Snapshot snapshot) {
+        if (snapshot == null || optimizationMode != AStar.OptimizationMode.MINIMIZE_DISTANCE) {
+            return optimizationMode.getOtherCost(edge);
+        }
+        return snapshot.getTravelTime(startVertexLabel, edgeIndex, edge.travelTime());
+    }
+
+    /**
+     * Computes the cost from the source, up to which the forward search must settle every vertex, for the tentative cost to every target to be optimal.
+     */
+    private static long computeBound(final int[] costs, final Ball[] balls) {
+        long bound = Long.MIN_VALUE;
+        for (int j = 0; j < costs.length; j++) {
+            // Unreachable targets whose balls have an infinite radius do not constrain the bound.
+            if (costs[j] != SearchSpace.INFINITY) {
+                bound = Math.max(bound, (long) costs[j] - balls[j].radius);
+            }
+        }
+        return bound;
+    }
+
+    private Workspace acquireWorkspace() {
+        final Workspace workspace = workspaces.poll();
+        if (workspace == null) {
+            return new Workspace(graph.verticesLength());
+        }
+        workspace.searchSpace.clear();
+        workspace.priorityQueue.clear();
+        return workspace;
+    }
+
+    private void releaseWorkspace(final Workspace workspace) {
+        workspaces.offer(workspace);
+    }
+
+    /**
+     * Runs a number of tasks in parallel, and waits for all of them to finish.
+     *
+     * @param numTasks The number of tasks.
+     * @param task     The task, which receives the index of each individual task.
+     * @param executor The executor to run the tasks on.
+     */
+    private static void runInParallel(final int numTasks, final IntConsumer task, final Executor executor) {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[numTasks];
+        for (int i = 0; i < numTasks; i++) {
+            final int taskIndex = i;
+            futures[i] = CompletableFuture.runAsync(() -> task.accept(taskIndex), executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The matrix of the lengths and travel times of the optimal routes from every source to every target.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Matrix {
+        /**
+         * The length and travel time of a route from a source to a target, which is unreachable from it.
+         */
+        public static final int UNREACHABLE = -1;
+        private final int numSources;
+        private final int numTargets;
+        private final int[] lengths;
+        private final int[] travelTimes;
+
+        private Matrix(final int numSources, final int numTargets) {
+            this.numSources = numSources;
+            this.numTargets = numTargets;
+            this.lengths = new int[numSources * numTargets];
+            this.travelTimes = new int[numSources * numTargets];
+        }
+
+        private void setRow(final int sourceIndex, final int[] costs, final int[] otherCosts, final AStar.OptimizationMode optimizationMode) {
+            final int[] primaryCosts = optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? lengths : travelTimes;
+            final int[] secondaryCosts = optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? travelTimes : lengths;
+            for (int j = 0; j < numTargets; j++) {
+                final boolean isReachable = costs[j] != SearchSpace.INFINITY;
+                primaryCosts[sourceIndex * numTargets + j] = isReachable ? costs[j] : UNREACHABLE;
+                secondaryCosts[sourceIndex * numTargets + j] = isReachable ? otherCosts[j] : UNREACHABLE;
+            }
+        }
+
+        public int getNumSources() {
+            return numSources;
+        }
+
+        public int getNumTargets() {
+            return numTargets;
+        }
+
+        public int getLength(final int sourceIndex, final int targetIndex) {
+            return lengths[sourceIndex * numTargets + targetIndex];
+        }
+
+        public int getTravelTime(final int sourceIndex, final int targetIndex) {
+            return travelTimes[sourceIndex * numTargets + targetIndex];
+        }
+
+        /**
+         * Returns the route lengths.
+         *
+         * @return The lengths, in row-major order (i.e., the length of the route from the {@code i}-th source to the {@code j}-th target is at index {@code i * numTargets + j}).
+         */
+        public int[] getLengths() {
+            return lengths;
+        }
+
+        /**
+         * Returns the route travel times.
+         *
+         * @return The travel times, in row-major order (i.e., the travel time of the route from the {@code i}-th source to the {@code j}-th target is at index {@code i * numTargets + j}).
+         */
+        public int[] getTravelTimes() {
+            return travelTimes;
+        }
+    }
+
+    /**
+     * The vertices settled by the backward search of a single target.
+     */
+    private static final class Ball {
+        private final int[] labels;
+        private final int[] costs;
+        private final int[] otherCosts;
+        private int size;
+        /**
+         * The cost to the target of the first vertex left unsettled.
+         */
+        private int radius = SearchSpace.INFINITY;
+
+        private Ball(final int capacity) {
+            this.labels = new int[capacity];
+            this.costs = new int[capacity];
+            this.otherCosts = new int[capacity];
+        }
+
+        private void add(final int label, final int cost, final int otherCost) {
+            labels[size] = label;
+            costs[size] = cost;
+            otherCosts[size] = otherCost;
+            size++;
+        }
+    }
+
+    /**
+     * The bucket entries of every vertex, sorted by vertex label.
+     */
+    private static final class Buckets {
+        private final int[] labels;
+        private final int[] targetIndices;
+        private final int[] costs;
+        private final int[] otherCosts;
+        /**
+         * Marks the vertices with at least one entry, so that most vertices are dismissed without a binary search.
+         */
+        private final BitSet hasEntries;
+
+        private Buckets(final Ball[] balls, final int numVertices) {
+            int numEntries = 0;
+            for (final Ball ball : balls) {
+                numEntries += ball.size;
+            }
+            final int[] unsortedTargetIndices = new int[numEntries];
+            final int[] unsortedCosts = new int[numEntries];
+            final int[] unsortedOtherCosts = new int[numEntries];
+            // Every entry is sorted by its vertex label, followed by its original position.
+            final long[] keys = new long[numEntries];
+            int k = 0;
+            for (int j = 0; j < balls.length; j++) {
+                final Ball ball = balls[j];
+                for (int i = 0; i < ball.size; i++, k++) {
+                    unsortedTargetIndices[k] = j;
+                    unsortedCosts[k] = ball.costs[i];
+                    unsortedOtherCosts[k] = ball.otherCosts[i];
+                    keys[k] = (long) ball.labels[i] << 32 | k;
+                }
+            }
+            Arrays.sort(keys);
+            labels = new int[numEntries];
+            targetIndices = new int[numEntries];
+            costs = new int[numEntries];
+            otherCosts = new int[numEntries];
+            hasEntries = new BitSet(numVertices);
+            for (int i = 0; i < numEntries; i++) {
+                final int position = (int) keys[i];
+                labels[i] = (int) (keys[i] >>> 32);
+                targetIndices[i] = unsortedTargetIndices[position];
+                costs[i] = unsortedCosts[position];
+                otherCosts[i] = unsortedOtherCosts[position];
+                hasEntries.set(labels[i]);
+            }
+        }
+
+        /**
+         * Improves the tentative cost from the source to every target in the bucket of a given vertex.
+         *
+         * @param label       The label of the vertex.
+         * @param cost        The cost from the source to the vertex.
+         * @param otherCost   The cost from the source to the vertex in terms of the metric not being optimized.
+         * @param targetCosts The tentative costs from the source to every target.
+         */
+        private void scan(final int label, final int cost, final int otherCost, final TargetCosts targetCosts) {
+            if (!hasEntries.get(label)) {
+                return;
+            }
+            // Find the first entry of the vertex.
+            int lo = 0;
+            int hi = labels.length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (labels[mid] < label) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < labels.length && labels[i] == label; i++) {
+                final int j = targetIndices[i];
+                final int costToTarget = cost + costs[i];
+                if (costToTarget < targetCosts.costs[j]) {
+                    if (targetCosts.costs[j] == SearchSpace.INFINITY) {
+                        targetCosts.numUnreachedTargets--;
+                    }
+                    targetCosts.costs[j] = costToTarget;
+                    targetCosts.otherCosts[j] = otherCost + otherCosts[i];
+                    targetCosts.isBoundStale = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * The tentative costs from a single source to every target.
+     */
+    private static final class TargetCosts {
+        private final int[] costs;
+        private final int[] otherCosts;
+        /**
+         * The number of targets which have not been reached yet and might still be.
+         */
+        private int numUnreachedTargets;
+        private boolean isBoundStale = true;
+
+        private TargetCosts(final int numTargets) {
+            this.costs = new int[numTargets];
+            this.otherCosts = new int[numTargets];
+            this.numUnreachedTargets = numTargets;
+            Arrays.fill(costs, SearchSpace.INFINITY);
+        }
+    }
+
+    private static final class Workspace {
+        private final SearchSpace searchSpace;
+        private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+
+        private Workspace(final int numVertices) {
+            this.searchSpace = new SearchSpace(numVertices, true, false);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
+import com.dimitrismantas.torch.core.math.HaversineFormula;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A turn-by-turn navigation session towards a fixed destination, which recalculates the route from any position near the original one without running a search.
+ * <p>
+ * Once the session starts, every vertex within {@link #DEFAULT_CORRIDOR_WIDTH a given distance} of some vertex of the original route is admitted into the corridor of the route, and a backward shortest path tree of the destination is grown over the corridor by Dijkstra's algorithm. Every route recalculated from a vertex of this tree is then merely a walk along its successors to the destination. Such a route is optimal among those staying within the corridor, which is the case for every vertex of the original route itself.
+ * <p>
+ * Once the driver leaves the tree, the corridor is lazily extended by the vertices within the same distance of their current position, which is doubled until the extension reaches the tree, or covers every vertex connected to the position. The tree is then grown over these vertices, from the edges connecting them to it. A vertex already in the tree is only searched again if one of these vertices improves its cost, so that every route remains optimal among those staying within the extended corridor.
+ * <p>
+ * The session may optionally avoid the closures, pay the penalties and use the travel time overrides of an {@link EdgeOverlay}. The tree is only valid for the snapshot of the overlay it was grown with, so it is grown again around the original route once the overlay is edited.
+ * <p>
+ * The state of the session is kept outside the graph itself, is only allocated once the first session starts, and is reused across sessions. This class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see IncomingEdgeIndex
+ * @since 1.1.0
+ */
+public final class NavigationSession {
+    /**
+     * The default distance, in meters, a vertex must lie within from some vertex of the route, to be admitted into its corridor.
+     */
+    public static final double DEFAULT_CORRIDOR_WIDTH = 1000;
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    private final DeserializedGraph graph;
+    private final IncomingEdgeIndex incomingEdges;
+    /**
+     * The overlay, or {@code null}.
+     */
+    private final EdgeOverlay overlay;
+    private final double corridorWidth;
+    private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+    /**
+     * The backward shortest path tree of the destination over the corridor, or {@code null} if no session has been started. The predecessor of every vertex in this tree is its successor on the route to the destination, packed along with the index of the edge to it among the outgoing edges of the vertex itself.
+     */
+    private SearchSpace tree;
+    private BitSet isSettled;
+    private BitSet isInCorridor;
+    private BitSet isVisited;
+    /**
+     * The vertex of the route, or the position, from which the admission of every visited vertex into the corridor is judged.
+     */
+    private int[] anchorLabels;
+    private final DeserializedVertex vertex = new DeserializedVertex();
+    private final DeserializedVertex anchorVertex = new DeserializedVertex();
+    private final DeserializedVertex adjacentVertex = new DeserializedVertex();
+    private final DeserializedEdge edge = new DeserializedEdge();
+    /**
+     * The vertices visited by the latest flood, in the order they were visited.
+     */
+    private int[] visitedLabels = new int[1 << 12];
+    private int numVisited;
+    /**
+     * Whether the latest flood left out some vertex for lying too far from its anchor.
+     */
+    private boolean isFloodBounded;
+    /**
+     * The labels of the vertices of the original route.
+     */
+    private int[] routeLabels;
+    private int destinationLabel = -1;
+    private AStar.OptimizationMode optimizationMode;
+    /**
+     * The version of the overlay snapshot the tree was grown with, or {@code -1} if its growth was cancelled.
+     */
+    private long overlayVersion;
+    /**
+     * The overlay snapshot the tree was grown with, or {@code null} if it is empty or there is no overlay.
+     */
+    private EdgeOverlay.Snapshot overlaySnapshot;
+    private int numTreeVertices;
+    private int numExtensions;
+
+    public NavigationSession(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges) {
+        this(graph, incomingEdges, null, DEFAULT_CORRIDOR_WIDTH);
+    }
+
+    public NavigationSession(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges, final double corridorWidth) {
+        this(graph, incomingEdges, null, corridorWidth);
+    }
+
+    /**
+     * Creates a session whose routes avoid every closure, pay every penalty and use every travel time override of a given overlay.
+     *
+     * @param graph         The graph.
+     * @param incomingEdges The index of incoming edges of the graph.
+     * @param overlay       The overlay, or {@code null}.
+     * @param corridorWidth The distance, in meters, a vertex must lie within from some vertex of the route, to be admitted into its corridor.
+     */
+    public NavigationSession(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges, final EdgeOverlay overlay, final double corridorWidth) {
+        if (graph.verticesLength() > SearchSpace.PREDECESSOR_LABEL_MASK) {
+            throw new IllegalArgumentException("The graph must not contain more than " + SearchSpace.PREDECESSOR_LABEL_MASK + " vertices.");
+        }
+        if (!(corridorWidth > 0)) {
+            throw new IllegalArgumentException("The corridor width must be positive.");
+        }
+        this.graph = graph;
+        this.incomingEdges = incomingEdges;
+        this.overlay = overlay;
+        this.corridorWidth = corridorWidth;
+    }
+
+    public void start(final Path route, final AStar.OptimizationMode optimizationMode) {
+        start(route, optimizationMode, CancellationToken.NONE);
+    }
+
+    /**
+     * Starts a new session, abandoning the previous one, by admitting the vertices around a route into its corridor and growing the tree of its target over them.
+     *
+     * @param route            The route, whose target is the destination of the session.
+     * @param optimizationMode The optimization mode the route was found with.
+     * @param token            The cancellation token.
+     */
+    public void start(final Path route, final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+        token.throwIfAborted();
+        if (tree == null) {
+            final int numVertices = graph.verticesLength();
+            tree = new SearchSpace(numVertices, false, true);
+            isSettled = new BitSet(numVertices);
+            isInCorridor = new BitSet(numVertices);
+            isVisited = new BitSet(numVertices);
+            anchorLabels = new int[numVertices];
+        }
+        this.optimizationMode = optimizationMode;
+        destinationLabel = route.getTargetLabel();
+        routeLabels = new int[route.getNumEndpoints()];
+        for (int i = 0; i < routeLabels.length; i++) {
+            routeLabels[i] = route.getLabel(i);
+        }
+        numExtensions = 0;
+        resetTree(token);
+    }
+
+    public Path reroute(final DeserializedVertex position) {
+        return reroute(position, CancellationToken.NONE);
+    }
+
+    /**
+     * Recalculates the route from a given position to the destination, growing the tree again first if the overlay has been edited or its previous growth was cancelled, and extending the corridor if the position lies outside it.
+     *
+     * @param position The vertex the current position is snapped to.
+     * @param token    The cancellation token, which is only polled while the tree is grown again or the corridor is extended.
+     * @return The route.
+     * @throws IllegalStateException      If no session has been started.
+     * @throws EqualEndpointException     If the position is the destination.
+     * @throws UnreachableTargetException If the destination is unreachable from the position.
+     */
+    public Path reroute(final DeserializedVertex position, final CancellationToken token) {
+        if (destinationLabel == -1) {
+            throw new IllegalStateException("No session has been started.");
+        }
+        final int positionLabel = position.lbl();
+        if (positionLabel == destinationLabel) {
+            throw new EqualEndpointException("The position is the destination.");
+        }
+        // The tree is only valid for the overlay snapshot it was grown with.
+        if (overlayVersion == -1 || overlay != null && overlay.getVersion() != overlayVersion) {
+            token.throwIfAborted();
+            resetTree(token);
+        }
+        // The extension is doubled until it reaches the tree. An extension admitting no vertex proves nothing, since the position may already be in the corridor, but only be able to leave it.
+        for (double width = corridorWidth; !isSettled.get(positionLabel); width *= 2) {
+            token.throwIfAborted();
+            admit(new int[]{positionLabel}, width, token);
+            numExtensions++;
+            extendTree(token);
+            // A flood which is not bounded by its width has visited every vertex connected to the position, so no wider one can reach the tree either.
+            if (!isFloodBounded && !isSettled.get(positionLabel)) {
+                throw new UnreachableTargetException("The destination is unreachable from the position.");
+            }
+        }
+        return toPath(positionLabel);
+    }
+
+    /**
+     * Returns whether the route from a given position can be recalculated without extending the corridor.
+     *
+     * @param position The vertex the position is snapped to.
+     * @return {@code true} if the vertex is in the tree; {@code false} otherwise.
+     */
+    public boolean isCovered(final DeserializedVertex position) {
+        return isSettled != null && isSettled.get(position.lbl());
+    }
+
+    public int getNumTreeVertices() {
+        return numTreeVertices;
+    }
+
+    public int getNumExtensions() {
+        return numExtensions;
+    }
+
+    /**
+     * Admits the vertices around the original route into the corridor and grows the tree of the destination over them, under the current snapshot of the overlay.
+     */
+    private void resetTree(final CancellationToken token) {
+        final EdgeOverlay.Snapshot snapshot = overlay == null ? null : overlay.getSnapshot();
+        overlaySnapshot = snapshot == null || snapshot.isEmpty() ? null : snapshot;
+        // The tree is only marked as grown with the snapshot once it has been grown completely, so that a cancelled growth is started over by the next recalculation.
+        overlayVersion = -1;
+        isInCorridor.clear();
+        isSettled.clear();
+        tree.clear();
+        priorityQueue.clear();
+        numTreeVertices = 0;
+        admit(routeLabels, corridorWidth, token);
+        tree.reach(destinationLabel, 0, 0, -1);
+        priorityQueue.add(0, destinationLabel);
+        growTree(token);
+        overlayVersion = snapshot == null ? 0 : snapshot.getVersion();
+    }
+
+    /**
+     * Admits every vertex within a given distance of some of a number of anchor vertices into the corridor, by flooding the graph from them, in both directions, through every vertex within that distance of the anchor it was reached from.
+     */
+    private void admit(final int[] anchors, final double width, final CancellationToken token) {
+        isVisited.clear();
+        numVisited = 0;
+        isFloodBounded = false;
+        for (final int anchor : anchors) {
+            if (!isVisited.get(anchor)) {
+                isVisited.set(anchor);
+                anchorLabels[anchor] = anchor;
+                visitedLabels = append(visitedLabels, numVisited++, anchor);
+            }
+        }
+        for (int head = 0; head < numVisited; head++) {
+            if ((head & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            final int label = visitedLabels[head];
+            isInCorridor.set(label);
+            final int anchor = anchorLabels[label];
+            graph.vertices(anchorVertex, anchor);
+            graph.vertices(vertex, label);
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                visit(vertex.outgoingEdges(edge, i).endVertexLabel(), anchor, width);
+            }
+            for (int i = incomingEdges.getEdgesStart(label); i < incomingEdges.getEdgesEnd(label); i++) {
+                visit(incomingEdges.getStartVertexLabel(i), anchor, width);
+            }
+        }
+    }
+
+    private void visit(final int label, final int anchor, final double width) {
+        if (isVisited.get(label)) {
+            return;
+        }
+        graph.vertices(adjacentVertex, label);
+        if (HaversineFormula.run(adjacentVertex.lat(), adjacentVertex.lon(), anchorVertex.lat(), anchorVertex.lon()) > width) {
+            isFloodBounded = true;
+            return;
+        }
+        isVisited.set(label);
+        anchorLabels[label] = anchor;
+        visitedLabels = append(visitedLabels, numVisited++, label);
+    }
+
+    /**
+     * Seeds the growth of the tree over the vertices visited by the latest flood with the edges connecting them to it, and grows it. Vertices admitted by an extension cancelled before the tree was grown over them are thus never left out, and vertices already in the tree are searched again if their cost improves.
+     */
+    private void extendTree(final CancellationToken token) {
+        priorityQueue.clear();
+        for (int j = 0; j < numVisited; j++) {
+            final int label = visitedLabels[j];
+            if (isSettled.get(label)) {
+                continue;
+            }
+            graph.vertices(vertex, label);
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                vertex.outgoingEdges(edge, i);
+                final int successorLabel = edge.endVertexLabel();
+                if (!isSettled.get(successorLabel)) {
+                    continue;
+                }
+                final int edgeCost = getCost(label, i, edge);
+                if (edgeCost == EdgeOverlay.CLOSED) {
+                    continue;
+                }
+                final int cost = tree.getCost(successorLabel) + edgeCost;
+                if (cost < tree.getCost(label)) {
+                    tree.reach(label, cost, 0, SearchSpace.packPredecessorLabel(successorLabel, i));
+                    priorityQueue.add(cost, label);
+                }
+            }
+        }
+        growTree(token);
+    }
+
+    /**
+     * Grows the tree over the corridor by Dijkstra's algorithm, until the priority queue runs out.
+     * <p>
+     * A vertex already in the tree is settled again whenever its cost improves, which only happens once the corridor has been extended, so that the improvement reaches every vertex whose route to the destination passes through it.
+     */
+    private void growTree(final CancellationToken token) {
+        int numSettled = 0;
+        while (!priorityQueue.isEmpty()) {
+            final int cost = priorityQueue.peekKey();
+            final int label = priorityQueue.poll();
+            if (cost > tree.getCost(label)) {
+                continue;
+            }
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            if (!isSettled.get(label)) {
+                isSettled.set(label);
+                numTreeVertices++;
+            }
+            // No edge may lead to a closed vertex.
+            if (overlaySnapshot != null && overlaySnapshot.isClosed(label)) {
+                continue;
+            }
+            for (int i = incomingEdges.getEdgesStart(label); i < incomingEdges.getEdgesEnd(label); i++) {
+                final int adjacentLabel = incomingEdges.getStartVertexLabel(i);
+                if (!isInCorridor.get(adjacentLabel)) {
+                    continue;
+                }
+                incomingEdges.getEdge(graph, i, vertex, edge);
+                final int edgeCost = getCost(adjacentLabel, incomingEdges.getEdgeIndex(i), edge);
+                if (edgeCost == EdgeOverlay.CLOSED) {
+                    continue;
+                }
+                final int adjacentCost = cost + edgeCost;
+                if (adjacentCost < tree.getCost(adjacentLabel)) {
+                    tree.reach(adjacentLabel, adjacentCost, 0, SearchSpace.packPredecessorLabel(label, incomingEdges.getEdgeIndex(i)));
+                    priorityQueue.add(adjacentCost, adjacentLabel);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cost of an edge under the overlay snapshot the tree was grown with.
+     *
+     * @return The cost, or {@link EdgeOverlay#CLOSED} if the edge or its end vertex is closed.
+     */
+    private int getCost(final int startVertexLabel, final int edgeIndex, final DeserializedEdge edge) {
+        if (overlaySnapshot == null) {
+            return optimizationMode.getCost(edge);
+        }
+        if (overlaySnapshot.isClosed(edge.endVertexLabel())) {
+            return EdgeOverlay.CLOSED;
+        }
+        final int cost = optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? edge.length() : overlaySnapshot.getTravelTime(startVertexLabel, edgeIndex, edge.travelTime());
+        return overlaySnapshot.getCost(startVertexLabel, edgeIndex, cost);
+    }
+
+    /**
+     * Builds the tree route from a vertex to the destination.
+     */
+    private Path toPath(final int sourceLabel) {
+        int numEndpoints = 1;
+        for (int label = sourceLabel; label != destinationLabel; label = SearchSpace.unpackLabel(tree.getPredecessorLabel(label))) {
+            numEndpoints++;
+        }
+        final int[] labels = new int[numEndpoints];
+        final float[] coordinates = new float[2 * numEndpoints];
+        int length = 0;
+        int travelTime = 0;
+        int label = sourceLabel;
+        for (int i = 0; i < numEndpoints; i++) {
+            graph.vertices(vertex, label);
+            labels[i] = label;
+            coordinates[2 * i] = vertex.lat();
+            coordinates[2 * i + 1] = vertex.lon();
+            if (label != destinationLabel) {
+                final int packedSuccessorLabel = tree.getPredecessorLabel(label);
+                final int edgeIndex = SearchSpace.unpackEdgeIndex(packedSuccessorLabel);
+                vertex.outgoingEdges(edge, edgeIndex);
+                length += edge.length();
+                travelTime += overlaySnapshot == null ? edge.travelTime() : overlaySnapshot.getTravelTime(label, edgeIndex, edge.travelTime());
+                label = SearchSpace.unpackLabel(packedSuccessorLabel);
+            }
+        }
+        return new Path(labels, coordinates, length, travelTime);
+    }
+
+    private static int[] append(final int[] array, final int size, final int value) {
+        final int[] result = size == array.length ? Arrays.copyOf(array, 2 * size) : array;
+        result[size] = value;
+        return result;
+    }
+}
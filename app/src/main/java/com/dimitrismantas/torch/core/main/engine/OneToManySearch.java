@@ -0,0 +1,198 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An implementation of Dijkstra's algorithm, which finds the optimal routes from a single source to a set of targets.
+ * <p>
+ * A single search is run from the source, which stops as soon as every target has been settled, rather than once per target. Since there is no single target to direct the search toward, no heuristic is used. If any target is unreachable, the search settles every vertex reachable from the source before stopping.
+ * <p>
+ * The state of the search is kept in a {@link SearchSpace} rather than the graph itself, and is reused across executions. This class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see ManyToManySearch
+ * @since 1.1.0
+ */
+public final class OneToManySearch {
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    private final DeserializedGraph graph;
+    private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+    private final BitSet isTarget;
+    private SearchSpace searchSpace;
+
+    public OneToManySearch(final DeserializedGraph graph) {
+        this.graph = graph;
+        this.isTarget = new BitSet(graph.verticesLength());
+    }
+
+    public Result run(final int sourceLabel, final int[] targetLabels, final AStar.OptimizationMode optimizationMode, final boolean buildsRoutes) {
+        return run(sourceLabel, targetLabels, optimizationMode, buildsRoutes, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the length and travel time of, and optionally the optimal route itself, from a single source to every one of a set of targets.
+     *
+     * @param sourceLabel      The label of the source vertex.
+     * @param targetLabels     The labels of the target vertices.
+     * @param optimizationMode The optimization mode.
+     * @param buildsRoutes     Whether to build the optimal route to every target, rather than only find its length and travel time.
+     * @param token            The cancellation token.
+     * @return The results of the search, in the same order as the targets.
+     */
+    public Result run(final int sourceLabel, final int[] targetLabels, final AStar.OptimizationMode optimizationMode, final boolean buildsRoutes, final CancellationToken token) {
+        token.throwIfAborted();
+        prepareSearchSpace(buildsRoutes);
+        priorityQueue.clear();
+        isTarget.clear();
+        for (final int targetLabel : targetLabels) {
+            isTarget.set(targetLabel);
+        }
+        // Duplicate targets only need to be settled once.
+        int numUnsettledTargets = isTarget.cardinality();
+
+        searchSpace.reach(sourceLabel, 0, 0, -1);
+        priorityQueue.add(0, sourceLabel);
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int numSettled = 0;
+        while (numUnsettledTargets > 0 && !priorityQueue.isEmpty()) {
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            final int cost = priorityQueue.peekKey();
+            final int label = priorityQueue.poll();
+            if (cost > searchSpace.getCost(label)) {
+                continue;
+            }
+            if (isTarget.get(label)) {
+                numUnsettledTargets--;
+            }
+            graph.vertices(vertex, label);
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                vertex.outgoingEdges(edge, i);
+                final int adjacentLabel = edge.endVertexLabel();
+                final int costFromSource = cost + optimizationMode.getCost(edge);
+                if (costFromSource < searchSpace.getCost(adjacentLabel)) {
+                    searchSpace.reach(adjacentLabel, costFromSource, searchSpace.getOtherCost(label) + optimizationMode.getOtherCost(edge), SearchSpace.packPredecessorLabel(label, i));
+                    priorityQueue.add(costFromSource, adjacentLabel);
+                }
+            }
+        }
+
+        final Result result = new Result(targetLabels.length, buildsRoutes);
+        for (int j = 0; j < targetLabels.length; j++) {
+            final int targetLabel = targetLabels[j];
+            if (!searchSpace.isReached(targetLabel)) {
+                continue;
+            }
+            final int cost = searchSpace.getCost(targetLabel);
+            final int otherCost = searchSpace.getOtherCost(targetLabel);
+            result.lengths[j] = optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? cost : otherCost;
+            result.travelTimes[j] = optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? otherCost : cost;
+            if (buildsRoutes) {
+                result.routes[j] = searchSpace.toPath(graph, targetLabel);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Clears the search space, or replaces it with one keeping predecessors if it does not, but they are needed.
+     */
+    private void prepareSearchSpace(final boolean buildsRoutes) {
+        if (searchSpace == null || (buildsRoutes && !searchSpace.keepsPredecessorLabels())) {
+            searchSpace = new SearchSpace(graph.verticesLength(), true, buildsRoutes);
+        } else {
+            searchSpace.clear();
+        }
+    }
+
+    /**
+     * The results of a one-to-many search.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Result {
+        /**
+         * The length and travel time of a route to a target, which is unreachable from the source.
+         */
+        public static final int UNREACHABLE = -1;
+        private final int[] lengths;
+        private final int[] travelTimes;
+        /**
+         * The optimal routes, or {@code null} if they have not been built.
+         */
+        private final Path[] routes;
+
+        private Result(final int numTargets, final boolean buildsRoutes) {
+            this.lengths = new int[numTargets];
+            this.travelTimes = new int[numTargets];
+            this.routes = buildsRoutes ? new Path[numTargets] : null;
+            Arrays.fill(lengths, UNREACHABLE);
+            Arrays.fill(travelTimes, UNREACHABLE);
+        }
+
+        public int getNumTargets() {
+            return lengths.length;
+        }
+
+        public int getLength(final int targetIndex) {
+            return lengths[targetIndex];
+        }
+
+        public int getTravelTime(final int targetIndex) {
+            return travelTimes[targetIndex];
+        }
+
+        public int[] getLengths() {
+            return lengths;
+        }
+
+        public int[] getTravelTimes() {
+            return travelTimes;
+        }
+
+        /**
+         * Returns the optimal route to a target.
+         *
+         * @param targetIndex The index of the target.
+         * @return The route, or {@code null} if the target is unreachable or routes have not been built.
+         */
+        public Path getRoute(final int targetIndex) {
+            return routes == null ? null : routes[targetIndex];
+        }
+    }
+}
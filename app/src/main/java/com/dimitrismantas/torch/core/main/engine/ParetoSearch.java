@@ -0,0 +1,331 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.AbstractHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.GreatCircleDistanceHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.TravelTimeHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Arrays;
+
+/**
+ * An implementation of a bi-criteria label-setting algorithm, which finds the Pareto-optimal routes between two vertices in terms of length and travel time, including the shortest and fastest ones, in a single search.
+ * <p>
+ * Every vertex keeps a bag of labels, each of which stands for a route from the source with a distinct trade-off between length and travel time, and a label is only kept if no other label of its vertex is both shorter and faster. Labels are settled in increasing order of their length plus the great-circle distance to the target, so the target labels are found in increasing order of length, starting from the shortest route, and each one is faster than the last. Every label which cannot lead to a route faster than the fastest target label found so far is pruned, based on the travel time heuristic, so the last target label found is the fastest route.
+ * <p>
+ * The number of Pareto-optimal routes, and that of the labels of every vertex, grows quickly with the distance between the endpoints, so the search is usually relaxed by a factor of {@code 1 + epsilon}: a label is also pruned if another label of its vertex, or the fastest target label found so far, is at most {@code 1 + epsilon} times as long and as slow. Since these relaxations may compound along a route, every Pareto-optimal route is then only approximated by one of the routes found to within a factor of about {@code 1 + epsilon} in both length and travel time. The shortest label of every vertex is never pruned this way, so the shortest route is always exact. The fastest route is only exact if the search is not relaxed, unless it is requested to be; it is then found beforehand by an A* search, and also bounds the length of every other Pareto-optimal route, which prunes every label that cannot lead to a route shorter than it.
+ * <p>
+ * The state of the search is only allocated by the first execution, and is reused across executions. This class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class ParetoSearch {
+    /**
+     * The number of labels settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    private static final int NO_LABEL = -1;
+    private static final int INITIAL_NUM_LABELS = 1 << 12;
+    private final DeserializedGraph graph;
+    private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+    private final WeightedAStar fastestRouteSearch;
+    /**
+     * The first label of the bag of every vertex, which is only valid if the stamp of the vertex is current, or {@code null} if not yet allocated.
+     */
+    private int[] firstLabels;
+    private int[] stamps;
+    private int stamp;
+    // The labels, which are never removed from these arrays during a search, but only unlinked from their bags.
+    private int[] lengths = new int[INITIAL_NUM_LABELS];
+    private int[] travelTimes = new int[INITIAL_NUM_LABELS];
+    private int[] vertexLabels = new int[INITIAL_NUM_LABELS];
+    private int[] predecessors = new int[INITIAL_NUM_LABELS];
+    private int[] nextLabels = new int[INITIAL_NUM_LABELS];
+    private boolean[] isDominated = new boolean[INITIAL_NUM_LABELS];
+    private int numLabels;
+
+    public ParetoSearch(final DeserializedGraph graph) {
+        this.graph = graph;
+        this.fastestRouteSearch = new WeightedAStar(graph);
+    }
+
+    public Result run(final DeserializedVertex source, final DeserializedVertex target, final double epsilon) {
+        return run(source, target, epsilon, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the Pareto-optimal routes between two vertices in terms of length and travel time, the shortest and fastest of which are always exact.
+     *
+     * @see #run(DeserializedVertex, DeserializedVertex, double, boolean, CancellationToken)
+     */
+    public Result run(final DeserializedVertex source, final DeserializedVertex target, final double epsilon, final CancellationToken token) {
+        return run(source, target, epsilon, true, token);
+    }
+
+    /**
+     * Finds the Pareto-optimal routes between two vertices in terms of length and travel time.
+     *
+     * @param source  The source vertex.
+     * @param target  The target vertex.
+     * @param epsilon             The relaxation of the search, which must not be negative. If zero, every Pareto-optimal route is found.
+     * @param isFastestRouteExact Whether the fastest route must be exact even if the search is relaxed, at the cost of an A* search beforehand. This has no effect if the search is not relaxed.
+     * @param token               The cancellation token.
+     * @return The routes, in increasing order of length and decreasing order of travel time, the first of which is the shortest route, and the last of which is the fastest one.
+     * @throws EqualEndpointException     If the source and target vertices are equal.
+     * @throws UnreachableTargetException If the target vertex is unreachable from the source.
+     */
+    public Result run(final DeserializedVertex source, final DeserializedVertex target, final double epsilon, final boolean isFastestRouteExact, final CancellationToken token) {
+        if (!(epsilon >= 0)) {
+            throw new IllegalArgumentException("The relaxation must not be negative.");
+        }
+        token.throwIfAborted();
+        if (source.lbl() == target.lbl()) {
+            throw new EqualEndpointException("The source and target vertices are equal.");
+        }
+        // The fastest route bounds the length of every other Pareto-optimal route, but an unrelaxed search finds it on its own.
+        final Path fastestRoute = isFastestRouteExact && epsilon > 0 ? fastestRouteSearch.run(source, target, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, 0, token) : null;
+        final int maxLength = fastestRoute == null ? Integer.MAX_VALUE : fastestRoute.getLength();
+        clear();
+        final AbstractHeuristic lengthHeuristic = new GreatCircleDistanceHeuristic(target);
+        final AbstractHeuristic travelTimeHeuristic = new TravelTimeHeuristic(target);
+        final int targetLabel = target.lbl();
+        final double weight = 1 + epsilon;
+        int[] targetLabels = new int[16];
+        int numTargetLabels = 0;
+        int minTargetTravelTime = Integer.MAX_VALUE;
+
+        priorityQueue.add(lengthHeuristic.calc(source), addLabel(source.lbl(), 0, 0, NO_LABEL));
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedVertex adjacentVertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int numSettled = 0;
+        while (!priorityQueue.isEmpty()) {
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            final int label = priorityQueue.poll();
+            if (isDominated[label]) {
+                continue;
+            }
+            final int vertexLabel = vertexLabels[label];
+            final int length = lengths[label];
+            final int travelTime = travelTimes[label];
+            graph.vertices(vertex, vertexLabel);
+            // The fastest target label found so far may have been found after this label was reached.
+            if (weight * (travelTime + travelTimeHeuristic.calc(vertex)) >= minTargetTravelTime || length + lengthHeuristic.calc(vertex) >= maxLength) {
+                continue;
+            }
+            if (vertexLabel == targetLabel) {
+                // Every target label found later is at least as long, so this one is (approximately) Pareto-optimal.
+                if (numTargetLabels == targetLabels.length) {
+                    targetLabels = Arrays.copyOf(targetLabels, 2 * numTargetLabels);
+                }
+                targetLabels[numTargetLabels++] = label;
+                minTargetTravelTime = travelTime;
+                continue;
+            }
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                vertex.outgoingEdges(edge, i);
+                final int adjacentLabel = edge.endVertexLabel();
+                final int adjacentLength = length + edge.length();
+                final int adjacentTravelTime = travelTime + edge.travelTime();
+                if (isDominated(adjacentLabel, adjacentLength, adjacentTravelTime, weight)) {
+                    continue;
+                }
+                // Every target label found so far is at most as long as any route through this label, so it only has to be faster.
+                graph.vertices(adjacentVertex, adjacentLabel);
+                final int adjacentLengthBound = adjacentLength + lengthHeuristic.calc(adjacentVertex);
+                if (weight * (adjacentTravelTime + travelTimeHeuristic.calc(adjacentVertex)) >= minTargetTravelTime || adjacentLengthBound >= maxLength) {
+                    continue;
+                }
+                priorityQueue.add(adjacentLengthBound, addLabel(adjacentLabel, adjacentLength, adjacentTravelTime, label));
+            }
+        }
+        if (fastestRoute == null && numTargetLabels == 0) {
+            throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+        }
+        // The last target label is an equally fast but shorter alternative to the fastest route, if any.
+        final boolean isFastestRouteDominated = fastestRoute == null || (numTargetLabels > 0 && minTargetTravelTime <= fastestRoute.getTravelTime());
+        final Path[] routes = new Path[isFastestRouteDominated ? numTargetLabels : numTargetLabels + 1];
+        for (int j = 0; j < numTargetLabels; j++) {
+            routes[j] = toPath(targetLabels[j]);
+        }
+        if (!isFastestRouteDominated) {
+            routes[numTargetLabels] = fastestRoute;
+        }
+        return new Result(routes, numSettled);
+    }
+
+    /**
+     * Returns whether a new label of a vertex is dominated by any label in its bag, or approximately dominated by one without being the shortest label of the vertex.
+     */
+    private boolean isDominated(final int vertexLabel, final int length, final int travelTime, final double weight) {
+        if (stamps[vertexLabel] != stamp) {
+            return false;
+        }
+        boolean isApproximatelyDominated = false;
+        int minLength = Integer.MAX_VALUE;
+        for (int label = firstLabels[vertexLabel]; label != NO_LABEL; label = nextLabels[label]) {
+            if (lengths[label] <= length && travelTimes[label] <= travelTime) {
+                return true;
+            }
+            if (lengths[label] <= weight * length && travelTimes[label] <= weight * travelTime) {
+                isApproximatelyDominated = true;
+            }
+            minLength = Math.min(minLength, lengths[label]);
+        }
+        // The shortest labels must survive, so that the shortest route is found.
+        return isApproximatelyDominated && length >= minLength;
+    }
+
+    /**
+     * Adds a label to the bag of its vertex, and removes every label it dominates from it.
+     *
+     * @return The new label.
+     */
+    private int addLabel(final int vertexLabel, final int length, final int travelTime, final int predecessor) {
+        if (numLabels == lengths.length) {
+            final int capacity = 2 * numLabels;
+            lengths = Arrays.copyOf(lengths, capacity);
+            travelTimes = Arrays.copyOf(travelTimes, capacity);
+            vertexLabels = Arrays.copyOf(vertexLabels, capacity);
+            predecessors = Arrays.copyOf(predecessors, capacity);
+            nextLabels = Arrays.copyOf(nextLabels, capacity);
+            isDominated = Arrays.copyOf(isDominated, capacity);
+        }
+        if (stamps[vertexLabel] != stamp) {
+            stamps[vertexLabel] = stamp;
+            firstLabels[vertexLabel] = NO_LABEL;
+        }
+        int previous = NO_LABEL;
+        for (int label = firstLabels[vertexLabel]; label != NO_LABEL; label = nextLabels[label]) {
+            if (length <= lengths[label] && travelTime <= travelTimes[label]) {
+                // Labels are never expanded once dominated, even if they are already in the priority queue.
+                isDominated[label] = true;
+                if (previous == NO_LABEL) {
+                    firstLabels[vertexLabel] = nextLabels[label];
+                } else {
+                    nextLabels[previous] = nextLabels[label];
+                }
+            } else {
+                previous = label;
+            }
+        }
+        final int label = numLabels++;
+        lengths[label] = length;
+        travelTimes[label] = travelTime;
+        vertexLabels[label] = vertexLabel;
+        predecessors[label] = predecessor;
+        nextLabels[label] = firstLabels[vertexLabel];
+        isDominated[label] = false;
+        firstLabels[vertexLabel] = label;
+        return label;
+    }
+
+    private void clear() {
+        if (stamps == null) {
+            firstLabels = new int[graph.verticesLength()];
+            stamps = new int[graph.verticesLength()];
+        }
+        priorityQueue.clear();
+        numLabels = 0;
+        stamp++;
+        if (stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    private Path toPath(final int targetLabel) {
+        int numEndpoints = 0;
+        for (int label = targetLabel; label != NO_LABEL; label = predecessors[label]) {
+            numEndpoints++;
+        }
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final int[] labels = new int[numEndpoints];
+        final float[] coordinates = new float[2 * numEndpoints];
+        int label = targetLabel;
+        for (int i = numEndpoints - 1; i >= 0; i--) {
+            graph.vertices(vertex, vertexLabels[label]);
+            labels[i] = vertexLabels[label];
+            coordinates[2 * i] = vertex.lat();
+            coordinates[2 * i + 1] = vertex.lon();
+            label = predecessors[label];
+        }
+        return new Path(labels, coordinates, lengths[targetLabel], travelTimes[targetLabel]);
+    }
+
+    /**
+     * The Pareto-optimal routes found by a search.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Result {
+        private final Path[] routes;
+        private final int numSettledLabels;
+
+        private Result(final Path[] routes, final int numSettledLabels) {
+            this.routes = routes;
+            this.numSettledLabels = numSettledLabels;
+        }
+
+        public int getNumRoutes() {
+            return routes.length;
+        }
+
+        /**
+         * Returns a route.
+         *
+         * @param i The index of the route, in increasing order of length.
+         * @return The route.
+         */
+        public Path getRoute(final int i) {
+            return routes[i];
+        }
+
+        public Path getShortestRoute() {
+            return routes[0];
+        }
+
+        public Path getFastestRoute() {
+            return routes[routes.length - 1];
+        }
+
+        /**
+         * Returns the number of labels polled from the priority queue, including those found dominated in the meantime.
+         *
+         * @return The number of labels.
+         */
+        public int getNumSettledLabels() {
+            return numSettledLabels;
+        }
+    }
+}
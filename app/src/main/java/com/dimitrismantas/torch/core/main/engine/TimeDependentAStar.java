@@ -0,0 +1,148 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.AbstractHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.TravelTimeHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.profiles.TravelTimeProfiles;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+/**
+ * An implementation of the time-dependent A* algorithm, which finds the fastest route between two vertices when departing at a given time, with the travel time of every edge depending on the time it is entered.
+ * <p>
+ * The search is the same as that of {@link AStar} in the {@link AStar.OptimizationMode#MINIMIZE_TRAVEL_TIME} mode, except that the travel time of every edge is evaluated at the arrival time at its start vertex. Since the profiles satisfy the FIFO property, arriving at a vertex earlier never results in leaving it later, so settling every vertex once remains optimal. The heuristic is that of travel time, scaled by the minimum factor of the profiles, so that it remains admissible when traffic is faster than free flow.
+ * <p>
+ * The state of the search is kept in a {@link SearchSpace} rather than the graph itself, and is reused across executions. This class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see TravelTimeProfiles
+ * @since 1.1.0
+ */
+public final class TimeDependentAStar {
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    private final DeserializedGraph graph;
+    private final TravelTimeProfiles profiles;
+    private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+    private SearchSpace searchSpace;
+
+    public TimeDependentAStar(final DeserializedGraph graph, final TravelTimeProfiles profiles) {
+        if (graph.verticesLength() > SearchSpace.PREDECESSOR_LABEL_MASK) {
+            throw new IllegalArgumentException("The graph must not contain more than " + SearchSpace.PREDECESSOR_LABEL_MASK + " vertices.");
+        }
+        this.graph = graph;
+        this.profiles = profiles;
+    }
+
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final int departureTime) {
+        return run(source, target, departureTime, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds the fastest route between two vertices when departing at a given time.
+     *
+     * @param source        The source vertex.
+     * @param target        The target vertex.
+     * @param departureTime The departure time in seconds since the start of any period of the profiles (e.g., since midnight for daily profiles).
+     * @param token         The cancellation token.
+     * @return The route, whose travel time is the arrival time minus the departure time.
+     * @throws EqualEndpointException     If the source and target vertices are equal.
+     * @throws UnreachableTargetException If the target vertex is unreachable from the source.
+     */
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final int departureTime, final CancellationToken token) {
+        token.throwIfAborted();
+        if (source.lbl() == target.lbl()) {
+            throw new EqualEndpointException("The source and target vertices are equal.");
+        }
+        if (searchSpace == null) {
+            searchSpace = new SearchSpace(graph.verticesLength(), true, true);
+        } else {
+            searchSpace.clear();
+        }
+        priorityQueue.clear();
+        final AbstractHeuristic heuristic = new TravelTimeHeuristic(target, profiles.getMinFactor());
+        final int targetLabel = target.lbl();
+        // The cost of every vertex is its travel time from the source, and its other cost is its length.
+        searchSpace.reach(source.lbl(), 0, 0, -1);
+        priorityQueue.add(0, source.lbl());
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedVertex adjacentVertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int numSettled = 0;
+        while (!priorityQueue.isEmpty()) {
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                token.throwIfAborted();
+            }
+            final int key = priorityQueue.peekKey();
+            final int label = priorityQueue.poll();
+            final int travelTime = searchSpace.getCost(label);
+            graph.vertices(vertex, label);
+            if (key > travelTime + heuristic.calc(vertex)) {
+                continue;
+            }
+            if (label == targetLabel) {
+                return toPath(targetLabel);
+            }
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                vertex.outgoingEdges(edge, i);
+                final int adjacentLabel = edge.endVertexLabel();
+                final int adjacentTravelTime = travelTime + profiles.getTravelTime(label, i, edge.travelTime(), departureTime + travelTime);
+                if (adjacentTravelTime >= searchSpace.getCost(adjacentLabel)) {
+                    continue;
+                }
+                searchSpace.reach(adjacentLabel, adjacentTravelTime, searchSpace.getOtherCost(label) + edge.length(), SearchSpace.packPredecessorLabel(label, i));
+                priorityQueue.add(adjacentTravelTime + heuristic.calc(graph.vertices(adjacentVertex, adjacentLabel)), adjacentLabel);
+            }
+        }
+        throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+    }
+
+    /**
+     * Builds the route to a settled vertex, whose travel time is the time-dependent one found by the search rather than the sum of the free-flow travel times of its edges.
+     */
+    private Path toPath(final int targetLabel) {
+        int numEndpoints = 1;
+        for (int predecessorLabel = searchSpace.getPredecessorLabel(targetLabel); predecessorLabel != -1; predecessorLabel = searchSpace.getPredecessorLabel(SearchSpace.unpackLabel(predecessorLabel))) {
+            numEndpoints++;
+        }
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final int[] labels = new int[numEndpoints];
+        final float[] coordinates = new float[2 * numEndpoints];
+        int label = targetLabel;
+        for (int i = numEndpoints - 1; i >= 0; i--) {
+            graph.vertices(vertex, label);
+            labels[i] = label;
+            coordinates[2 * i] = vertex.lat();
+            coordinates[2 * i + 1] = vertex.lon();
+            label = SearchSpace.unpackLabel(searchSpace.getPredecessorLabel(label));
+        }
+        return new Path(labels, coordinates, searchSpace.getOtherCost(targetLabel), searchSpace.getCost(targetLabel));
+    }
+}
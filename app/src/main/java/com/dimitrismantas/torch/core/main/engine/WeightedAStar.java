@@ -0,0 +1,247 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.AbstractHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.priorityqueue.IntPriorityQueue;
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.function.Consumer;
+
+/**
+ * An implementation of the weighted A* algorithm, which trades optimality for speed by inflating the heuristic of {@link AStar} by a factor of {@code 1 + epsilon}.
+ * <p>
+ * As long as the heuristic is admissible, the route found costs at most {@code 1 + epsilon} times as much as the optimal one. The anytime variant then restarts the search with half the maximum relative excess cost, pruning every vertex whose (non-inflated) estimated cost is at least that of the best route found so far, until either an exact search finishes and the route is proven optimal or the time budget of the search runs out. Restarting avoids the repeated expansions of the same vertices that plague searches continuing with a highly inflated heuristic.
+ * <p>
+ * The state of the search is kept in a {@link SearchSpace} rather than the graph itself, and is reused across executions. This class is not thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class WeightedAStar {
+    /**
+     * The number of vertices settled between two consecutive polls of the cancellation token. This must be a power of two.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1 << 11;
+    /**
+     * The factor by which the maximum relative excess cost is multiplied after every iteration of an anytime search.
+     */
+    private static final double EPSILON_DECAY = 0.5;
+    /**
+     * The maximum relative excess cost below which the next iteration of an anytime search is exact.
+     */
+    private static final double MIN_EPSILON = 0.01;
+    /**
+     * The result of an iteration ended because its deadline was exceeded.
+     */
+    private static final int DEADLINE_EXCEEDED = -1;
+    private final DeserializedGraph graph;
+    private final IntPriorityQueue priorityQueue = new IntPriorityQueue();
+    private SearchSpace searchSpace;
+
+    public WeightedAStar(final DeserializedGraph graph) {
+        if (graph.verticesLength() > SearchSpace.PREDECESSOR_LABEL_MASK) {
+            throw new IllegalArgumentException("The graph must not contain more than " + SearchSpace.PREDECESSOR_LABEL_MASK + " vertices.");
+        }
+        this.graph = graph;
+    }
+
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final double epsilon) {
+        return run(source, target, optimizationMode, epsilon, CancellationToken.NONE);
+    }
+
+    /**
+     * Finds a route between two vertices costing at most {@code 1 + epsilon} times as much as the optimal one.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @param epsilon          The maximum relative excess cost of the route, which must not be negative.
+     * @param token            The cancellation token.
+     * @return The route.
+     * @throws EqualEndpointException     If the source and target vertices are equal.
+     * @throws UnreachableTargetException If the target vertex is unreachable from the source.
+     */
+    public Path run(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final double epsilon, final CancellationToken token) {
+        return search(source, target, optimizationMode, epsilon, token, false, null).getRoute();
+    }
+
+    public AnytimeResult runAnytime(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final double epsilon, final CancellationToken token) {
+        return runAnytime(source, target, optimizationMode, epsilon, token, null);
+    }
+
+    /**
+     * Finds a route between two vertices costing at most {@code 1 + epsilon} times as much as the optimal one, and then keeps improving it until it is proven optimal or the token expires.
+     * <p>
+     * If the token expires before the first route is found, the search fails as usual.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @param epsilon          The maximum relative excess cost of the first route, which must not be negative.
+     * @param token            The cancellation token, whose time budget is the deadline of the search.
+     * @param listener         The listener notified of the first route and every improvement thereof, or {@code null}.
+     * @return The best route found.
+     * @throws EqualEndpointException     If the source and target vertices are equal.
+     * @throws UnreachableTargetException If the target vertex is unreachable from the source.
+     */
+    public AnytimeResult runAnytime(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final double epsilon, final CancellationToken token, final Consumer<Path> listener) {
+        return search(source, target, optimizationMode, epsilon, token, true, listener);
+    }
+
+    private AnytimeResult search(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final double epsilon, final CancellationToken token, final boolean isAnytime, final Consumer<Path> listener) {
+        if (!(epsilon >= 0)) {
+            throw new IllegalArgumentException("The maximum relative excess cost must not be negative.");
+        }
+        token.throwIfAborted();
+        if (source.lbl() == target.lbl()) {
+            throw new EqualEndpointException("The source and target vertices are equal.");
+        }
+        if (searchSpace == null) {
+            searchSpace = new SearchSpace(graph.verticesLength(), false, true);
+        }
+        final AbstractHeuristic heuristic = AStar.getHeuristic(target, optimizationMode);
+        Path route = null;
+        int bestCost = SearchSpace.INFINITY;
+        double suboptimalityBound = Double.POSITIVE_INFINITY;
+        for (double currEpsilon = epsilon; ; currEpsilon = currEpsilon < MIN_EPSILON ? 0 : EPSILON_DECAY * currEpsilon) {
+            final int cost = iterate(source.lbl(), target.lbl(), optimizationMode, heuristic, 1 + currEpsilon, bestCost, token, route != null);
+            if (cost == DEADLINE_EXCEEDED) {
+                return new AnytimeResult(route, false, suboptimalityBound);
+            }
+            if (cost == SearchSpace.INFINITY) {
+                if (route == null) {
+                    throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+                }
+                // There is no route better than the best one found so far.
+                return new AnytimeResult(route, true, 1);
+            }
+            bestCost = cost;
+            route = searchSpace.toPath(graph, target.lbl());
+            suboptimalityBound = 1 + currEpsilon;
+            if (listener != null) {
+                listener.accept(route);
+            }
+            if (!isAnytime || currEpsilon == 0) {
+                return new AnytimeResult(route, currEpsilon == 0, suboptimalityBound);
+            }
+        }
+    }
+
+    /**
+     * Runs a single weighted A* search, pruning every vertex which cannot lead to a route better than the best one found so far.
+     *
+     * @return The cost of the route found, {@link SearchSpace#INFINITY} if there is no better route, or {@link #DEADLINE_EXCEEDED} if the token has expired and the search is allowed to end because of it.
+     */
+    private int iterate(final int sourceLabel, final int targetLabel, final AStar.OptimizationMode optimizationMode, final AbstractHeuristic heuristic, final double weight, final int bestCost, final CancellationToken token, final boolean canExceedDeadline) {
+        searchSpace.clear();
+        priorityQueue.clear();
+        searchSpace.reach(sourceLabel, 0, 0, -1);
+        priorityQueue.add(0, sourceLabel);
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedVertex adjacentVertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int numSettled = 0;
+        while (!priorityQueue.isEmpty()) {
+            if ((++numSettled & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+                // Once a bounded route is available, running out of time merely ends the search.
+                if (canExceedDeadline && !token.isCancelled() && token.isExpired()) {
+                    return DEADLINE_EXCEEDED;
+                }
+                token.throwIfAborted();
+            }
+            final int key = priorityQueue.peekKey();
+            final int label = priorityQueue.poll();
+            final int cost = searchSpace.getCost(label);
+            graph.vertices(vertex, label);
+            final int costToTarget = heuristic.calc(vertex);
+            if (key > cost + (int) (weight * costToTarget)) {
+                continue;
+            }
+            if (label == targetLabel) {
+                return cost;
+            }
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                vertex.outgoingEdges(edge, i);
+                final int adjacentLabel = edge.endVertexLabel();
+                final int adjacentCost = cost + optimizationMode.getCost(edge);
+                if (adjacentCost >= searchSpace.getCost(adjacentLabel)) {
+                    continue;
+                }
+                final int adjacentCostToTarget = heuristic.calc(graph.vertices(adjacentVertex, adjacentLabel));
+                // No route through this vertex can improve the best one.
+                if (adjacentCost + adjacentCostToTarget >= bestCost) {
+                    continue;
+                }
+                searchSpace.reach(adjacentLabel, adjacentCost, 0, SearchSpace.packPredecessorLabel(label, i));
+                priorityQueue.add(adjacentCost + (int) (weight * adjacentCostToTarget), adjacentLabel);
+            }
+        }
+        return SearchSpace.INFINITY;
+    }
+
+    /**
+     * The best route found by an anytime search, along with its guaranteed quality.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class AnytimeResult {
+        private final Path route;
+        private final boolean isOptimal;
+        private final double suboptimalityBound;
+
+        private AnytimeResult(final Path route, final boolean isOptimal, final double suboptimalityBound) {
+            this.route = route;
+            this.isOptimal = isOptimal;
+            this.suboptimalityBound = suboptimalityBound;
+        }
+
+        public Path getRoute() {
+            return route;
+        }
+
+        /**
+         * Returns whether the route has been proven optimal.
+         *
+         * @return {@code true} if the search finished before the deadline, or {@code false} otherwise.
+         */
+        public boolean isOptimal() {
+            return isOptimal;
+        }
+
+        /**
+         * Returns the maximum ratio of the cost of the route to that of the optimal one.
+         *
+         * @return {@code 1} if the route is optimal, or one plus the maximum relative excess cost of the last iteration that found it otherwise.
+         */
+        public double getSuboptimalityBound() {
+            return suboptimalityBound;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.cancellation;
+
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchCancelledException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchTimeoutException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token used to abort a running search, either on demand or once its time budget has been exhausted.
+ * <p>
+ * Routing algorithms poll the token periodically (e.g., every few thousand settled vertices), so an aborted search stops shortly after, rather than immediately. This class is thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class CancellationToken {
+    /**
+     * A token that can never be cancelled and has no time budget.
+     */
+    public static final CancellationToken NONE = new CancellationToken(null, System::nanoTime, Long.MAX_VALUE, false);
+    /**
+     * The token this one has been derived from, or {@code null}.
+     */
+    private final CancellationToken parent;
+    /**
+     * The clock this token and every token derived from it measure time with, in nanoseconds.
+     */
+    private final LongSupplier clock;
+    /**
+     * The value of {@link #clock} after which the token expires.
+     */
+    private final long deadline;
+    private final boolean hasDeadline;
+    private volatile boolean isCancelled;
+
+    public CancellationToken() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Instantiates this class.
+     *
+     * @param clock The clock to measure time budgets with, in nanoseconds (e.g., {@link System#nanoTime()}).
+     */
+    public CancellationToken(final LongSupplier clock) {
+        this(null, clock, Long.MAX_VALUE, false);
+    }
+
+    private CancellationToken(final CancellationToken parent, final LongSupplier clock, final long deadline, final boolean hasDeadline) {
+        this.parent = parent;
+        this.clock = clock;
+        this.deadline = deadline;
+        this.hasDeadline = hasDeadline;
+    }
+
+    /**
+     * Derives a new token from this one, which expires once a given amount of time has elapsed from now.
+     * <p>
+     * The derived token is cancelled along with this one, but not vice versa, and measures time with the same clock.
+     *
+     * @param budget The amount of time.
+     * @param unit   The unit of the amount of time.
+     * @return The derived token.
+     */
+    public CancellationToken withTimeBudget(final long budget, final TimeUnit unit) {
+        return new CancellationToken(this, clock, clock.getAsLong() + unit.toNanos(budget), true);
+    }
+
+    /**
+     * Cancels this token, as well as every token derived from it.
+     *
+     * @throws UnsupportedOperationException If this token is {@link #NONE}.
+     */
+    public void cancel() {
+        if (this == NONE) {
+            throw new UnsupportedOperationException("This token cannot be cancelled.");
+        }
+        isCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return isCancelled || (parent != null && parent.isCancelled());
+    }
+
+    public boolean isExpired() {
+        return (hasDeadline && clock.getAsLong() - deadline >= 0) || (parent != null && parent.isExpired());
+    }
+
+    /**
+     * Throws an exception if this token has been cancelled or has expired.
+     *
+     * @throws SearchCancelledException If this token has been cancelled.
+     * @throws SearchTimeoutException   If this token has expired.
+     */
+    public void throwIfAborted() {
+        if (isCancelled()) {
+            throw new SearchCancelledException("The search has been cancelled.");
+        }
+        if (isExpired()) {
+            throw new SearchTimeoutException("The search has exceeded its time budget.");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.heuristics;
+
+import com.dimitrismantas.torch.core.math.HaversineFormula;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+/**
+ * A heuristic for a weighted sum of the length and travel time of a route, which is the same weighted sum of the great-circle distance and travel time heuristics.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class BlendedHeuristic extends AbstractHeuristic {
+    /**
+     * The cost of a meter, which is the weight of the length plus that of the travel time times the inverse of the minimum speed.
+     */
+    private final double costPerMeter;
+
+    public BlendedHeuristic(final DeserializedVertex refVertex, final double lengthWeight, final double travelTimeWeight) {
+        this(refVertex, lengthWeight, travelTimeWeight, 1);
+    }
+
+    /**
+     * Instantiates this class for travel times which may be shorter than those of the graph.
+     *
+     * @param refVertex        The reference vertex.
+     * @param lengthWeight     The weight of the length.
+     * @param travelTimeWeight The weight of the travel time.
+     * @param minFactor        The minimum ratio of any travel time to the corresponding one in the graph. Values greater than {@code 1} are treated as {@code 1}.
+     */
+    public BlendedHeuristic(final DeserializedVertex refVertex, final double lengthWeight, final double travelTimeWeight, final double minFactor) {
+        super(refVertex);
+        costPerMeter = lengthWeight + travelTimeWeight * TravelTimeHeuristic.INVERSE_MIN_SPEED * Math.min(1, minFactor);
+    }
+
+    @Override
+    public int calc(final DeserializedVertex vertex) {
+        return (int) (HaversineFormula.run(vertex.lat(), vertex.lon(), refVertex.lat(), refVertex.lon()) * costPerMeter);
+    }
+}
@@ -34,17 +34,30 @@ public final class TravelTimeHeuristic extends AbstractHeuristic {
      * @since 1.0.0
      */
     // This value corresponds to 100 km/h (i.e., the Q3 + 1.5 * IQR of all edge speeds).
-    private static final double INVERSE_MIN_SPEED = 0.036d;
+    static final double INVERSE_MIN_SPEED = 0.036d;
     private final GreatCircleDistanceHeuristic distanceFrom;
+    private final double inverseMinSpeed;
 
     public TravelTimeHeuristic(final DeserializedVertex refVertex) {
+        this(refVertex, 1);
+    }
+
+    /**
+     * Instantiates this class for travel times which may be shorter than those of the graph (e.g., because they depend on the time of departure).
+     *
+     * @param refVertex The reference vertex.
+     * @param minFactor The minimum ratio of any travel time to the corresponding one in the graph. Values greater than {@code 1} are treated as {@code 1}.
+     * @since 1.1.0
+     */
+    public TravelTimeHeuristic(final DeserializedVertex refVertex, final double minFactor) {
         super(refVertex);
         // The reference latitude and longitude are read two times. This is inefficient.
         distanceFrom = new GreatCircleDistanceHeuristic(refVertex);
+        inverseMinSpeed = INVERSE_MIN_SPEED * Math.min(1, minFactor);
     }
 
     @Override
     public int calc(final DeserializedVertex vertex) {
-       return (int) (distanceFrom.calc(vertex) * INVERSE_MIN_SPEED);
+       return (int) (distanceFrom.calc(vertex) * inverseMinSpeed);
     }
 }
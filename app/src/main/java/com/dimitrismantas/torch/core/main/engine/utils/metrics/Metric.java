@@ -0,0 +1,194 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.metrics;
+
+import com.dimitrismantas.torch.core.main.engine.AStar;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.AbstractHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.BlendedHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.GreatCircleDistanceHeuristic;
+import com.dimitrismantas.torch.core.main.engine.utils.heuristics.TravelTimeHeuristic;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+/**
+ * A metric assigning every edge of a graph a cost equal to a weighted sum of its length and travel time.
+ * <p>
+ * The costs are computed once, and stored in a flat array in the order of the edges in the graph (i.e., the outgoing edges of the first vertex, followed by those of the second, and so on), so that reading the cost of an edge is a single array access. Every cost is rounded up, so that the matching heuristic, which is the same weighted sum of the great-circle distance and travel time heuristics, remains admissible.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class Metric {
+    /**
+     * The index of the first outgoing edge of every vertex, followed by the number of edges. This can be shared by every metric of the same graph.
+     */
+    private final int[] firstEdgeIndices;
+    private final int[] costs;
+    private final double lengthWeight;
+    private final double travelTimeWeight;
+
+    private Metric(final int[] firstEdgeIndices, final int[] costs, final double lengthWeight, final double travelTimeWeight) {
+        this.firstEdgeIndices = firstEdgeIndices;
+        this.costs = costs;
+        this.lengthWeight = lengthWeight;
+        this.travelTimeWeight = travelTimeWeight;
+    }
+
+    /**
+     * Creates the metric minimized in a given optimization mode.
+     *
+     * @param graph            The graph.
+     * @param optimizationMode The optimization mode.
+     * @return The metric.
+     */
+    public static Metric of(final DeserializedGraph graph, final AStar.OptimizationMode optimizationMode) {
+        return optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? of(graph, 1, 0) : of(graph, 0, 1);
+    }
+
+    /**
+     * Creates a metric equal to a weighted sum of the length and travel time of every edge.
+     *
+     * @param graph            The graph.
+     * @param lengthWeight     The weight of the length, per meter.
+     * @param travelTimeWeight The weight of the travel time, per unit of travel time.
+     * @return The metric.
+     * @throws IllegalArgumentException If either weight is negative, or both are zero.
+     */
+    public static Metric of(final DeserializedGraph graph, final double lengthWeight, final double travelTimeWeight) {
+        final int[] firstEdgeIndices = new int[graph.verticesLength() + 1];
+        final DeserializedVertex vertex = new DeserializedVertex();
+        for (int i = 0; i < graph.verticesLength(); i++) {
+            firstEdgeIndices[i + 1] = firstEdgeIndices[i] + graph.vertices(vertex, i).outgoingEdgesLength();
+        }
+        return create(graph, firstEdgeIndices, lengthWeight, travelTimeWeight);
+    }
+
+    /**
+     * Creates a metric of the same graph as this one, equal to a different weighted sum of the length and travel time of every edge.
+     * <p>
+     * The order of the edges is shared with this metric, which makes this cheaper than {@link #of(DeserializedGraph, double, double)}.
+     *
+     * @param graph            The graph of this metric.
+     * @param lengthWeight     The weight of the length, per meter.
+     * @param travelTimeWeight The weight of the travel time, per unit of travel time.
+     * @return The metric.
+     * @throws IllegalArgumentException If either weight is negative, or both are zero.
+     */
+    public Metric withWeights(final DeserializedGraph graph, final double lengthWeight, final double travelTimeWeight) {
+        return create(graph, firstEdgeIndices, lengthWeight, travelTimeWeight);
+    }
+
+    private static Metric create(final DeserializedGraph graph, final int[] firstEdgeIndices, final double lengthWeight, final double travelTimeWeight) {
+        if (!(lengthWeight >= 0 && travelTimeWeight >= 0) || lengthWeight + travelTimeWeight == 0) {
+            throw new IllegalArgumentException("The weights must not be negative, and at least one must be positive.");
+        }
+        final int[] costs = new int[firstEdgeIndices[graph.verticesLength()]];
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        for (int i = 0; i < graph.verticesLength(); i++) {
+            graph.vertices(vertex, i);
+            for (int j = 0; j < vertex.outgoingEdgesLength(); j++) {
+                vertex.outgoingEdges(edge, j);
+                final double cost = getCost(lengthWeight, travelTimeWeight, edge.length(), edge.travelTime());
+                if (cost > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("The weights are too large.");
+                }
+                costs[firstEdgeIndices[i] + j] = (int) cost;
+            }
+        }
+        return new Metric(firstEdgeIndices, costs, lengthWeight, travelTimeWeight);
+    }
+
+    /**
+     * Returns the index of the first outgoing edge of a given vertex.
+     *
+     * @param label The label of the vertex.
+     * @return The index of the edge, whose cost is returned by {@link #getCost(int)}. The indices of the other outgoing edges of the vertex follow it.
+     */
+    public int getFirstEdgeIndex(final int label) {
+        return firstEdgeIndices[label];
+    }
+
+    /**
+     * Returns the cost of a given edge.
+     *
+     * @param edgeIndex The index of the edge.
+     * @return The cost.
+     */
+    public int getCost(final int edgeIndex) {
+        return costs[edgeIndex];
+    }
+
+    /**
+     * Returns the cost of an edge with a given length and travel time (e.g., one whose travel time is overridden).
+     *
+     * @param length     The length of the edge.
+     * @param travelTime The travel time of the edge.
+     * @return The cost.
+     */
+    public int getCost(final int length, final int travelTime) {
+        return (int) Math.min(Integer.MAX_VALUE, getCost(lengthWeight, travelTimeWeight, length, travelTime));
+    }
+
+    private static double getCost(final double lengthWeight, final double travelTimeWeight, final int length, final int travelTime) {
+        return Math.ceil(lengthWeight * length + travelTimeWeight * travelTime);
+    }
+
+    public int getNumEdges() {
+        return costs.length;
+    }
+
+    public double getLengthWeight() {
+        return lengthWeight;
+    }
+
+    public double getTravelTimeWeight() {
+        return travelTimeWeight;
+    }
+
+    /**
+     * Returns an admissible heuristic for this metric.
+     *
+     * @param target The target vertex.
+     * @return The great-circle distance or travel time heuristic if this metric is the length or the travel time, respectively, or a weighted sum of both otherwise.
+     */
+    public AbstractHeuristic getHeuristic(final DeserializedVertex target) {
+        return getHeuristic(target, 1);
+    }
+
+    /**
+     * Returns an admissible heuristic for this metric, when travel times may be shorter than those of the graph.
+     *
+     * @param target    The target vertex.
+     * @param minFactor The minimum ratio of any travel time to the corresponding one in the graph.
+     * @return The heuristic.
+     * @see #getHeuristic(DeserializedVertex)
+     */
+    public AbstractHeuristic getHeuristic(final DeserializedVertex target, final double minFactor) {
+        if (lengthWeight == 1 && travelTimeWeight == 0) {
+            return new GreatCircleDistanceHeuristic(target);
+        }
+        if (lengthWeight == 0 && travelTimeWeight == 1) {
+            return new TravelTimeHeuristic(target, minFactor);
+        }
+        return new BlendedHeuristic(target, lengthWeight, travelTimeWeight, minFactor);
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.overlay;
+
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * An overlay of closures, penalties and travel time overrides on the edges and vertices of a graph, which searches consult while relaxing edges.
+ * <p>
+ * Every edge is identified by the label of its start vertex and its index among the outgoing edges of that vertex. The overlay is an immutable {@link Snapshot}, which is replaced as a whole by every edit, so that every search sees either all or none of the changes made by an edit. Edits are lock-free; if two of them race, the one that loses is applied again to the snapshot produced by the other.
+ * <p>
+ * Penalties multiply the cost of an edge by a factor of at least one, so that the heuristics remain admissible. Travel time overrides replace the travel time of an edge before any penalty is applied, and are kept off-heap. Since they may be shorter than the travel time of the graph, travel time heuristics must be scaled by {@link Snapshot#getMinTravelTimeFactor(DeserializedGraph)}.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class EdgeOverlay {
+    /**
+     * The cost of an edge which is closed.
+     */
+    public static final int CLOSED = -1;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+
+    public Snapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    public long getVersion() {
+        return snapshot.get().version;
+    }
+
+    /**
+     * Applies a set of edits to this overlay atomically.
+     * <p>
+     * The edits may be applied more than once if another edit is made concurrently, so they must not have side effects.
+     *
+     * @param edits The edits.
+     */
+    public void edit(final Consumer<Editor> edits) {
+        while (true) {
+            final Snapshot currSnapshot = snapshot.get();
+            final Editor editor = new Editor(currSnapshot);
+            edits.accept(editor);
+            if (snapshot.compareAndSet(currSnapshot, editor.build(currSnapshot.version + 1))) {
+                return;
+            }
+        }
+    }
+
+    public void closeVertex(final int label) {
+        edit(editor -> editor.closeVertex(label));
+    }
+
+    public void closeEdge(final int startVertexLabel, final int edgeIndex) {
+        edit(editor -> editor.closeEdge(startVertexLabel, edgeIndex));
+    }
+
+    public void setPenalty(final int startVertexLabel, final int edgeIndex, final float multiplier) {
+        edit(editor -> editor.setPenalty(startVertexLabel, edgeIndex, multiplier));
+    }
+
+    public void applyTravelTimePatch(final TravelTimePatch patch) {
+        edit(editor -> editor.applyTravelTimePatch(patch));
+    }
+
+    public void clear() {
+        edit(Editor::clear);
+    }
+
+    /**
+     * An immutable state of an overlay.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(0, new BitSet(), new BitSet(), new int[0], new float[0], TravelTimeTable.EMPTY);
+        private final long version;
+        private final BitSet closedVertices;
+        /**
+         * The start vertices of every edge which is closed, penalized or overridden, so that most vertices can skip looking up their edges.
+         */
+        private final BitSet modifiedVertices;
+        /**
+         * The packed labels of the start vertices and indices of every edge which is closed or penalized, in ascending order.
+         */
+        private final int[] edges;
+        /**
+         * The cost multiplier of every edge which is closed or penalized, which is infinite for closed edges.
+         */
+        private final float[] multipliers;
+        private final TravelTimeTable travelTimes;
+        /**
+         * The minimum ratio of any overriding travel time to the corresponding one in the graph, or {@code NaN} if it has not been computed yet. Computing it more than once is harmless, so it is not synchronized.
+         */
+        private volatile double minTravelTimeFactor = Double.NaN;
+
+        private Snapshot(final long version, final BitSet closedVertices, final BitSet modifiedVertices, final int[] edges, final float[] multipliers, final TravelTimeTable travelTimes) {
+            this.version = version;
+            this.closedVertices = closedVertices;
+            this.modifiedVertices = modifiedVertices;
+            this.edges = edges;
+            this.multipliers = multipliers;
+            this.travelTimes = travelTimes;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isEmpty() {
+            return edges.length == 0 && closedVertices.isEmpty() && travelTimes.getNumOverriddenEdges() == 0;
+        }
+
+        public int getNumOverriddenEdges() {
+            return travelTimes.getNumOverriddenEdges();
+        }
+
+        /**
+         * Returns the minimum ratio of any overriding travel time to the corresponding one in a given graph, by which travel time heuristics must be scaled to remain admissible.
+         * <p>
+         * The ratio is computed on the first call, so the graph must be the same on every call.
+         *
+         * @param graph The graph.
+         * @return The ratio, which is at most {@code 1}, and {@code 1} if no edge is overridden.
+         */
+        public double getMinTravelTimeFactor(final DeserializedGraph graph) {
+            double minFactor = minTravelTimeFactor;
+            if (Double.isNaN(minFactor)) {
+                minFactor = travelTimes.getMinFactor(graph);
+                minTravelTimeFactor = minFactor;
+            }
+            return minFactor;
+        }
+
+        /**
+         * Returns the travel time of a given edge under this overlay.
+         *
+         * @param startVertexLabel The label of the start vertex of the edge.
+         * @param edgeIndex        The index of the edge among the outgoing edges of its start vertex.
+         * @param travelTime       The travel time of the edge in the graph.
+         * @return The overriding travel time, or the given one if the edge is not overridden.
+         */
+        public int getTravelTime(final int startVertexLabel, final int edgeIndex, final int travelTime) {
+            if (!modifiedVertices.get(startVertexLabel)) {
+                return travelTime;
+            }
+            return travelTimes.get(TravelTimePatch.getEdgeId(startVertexLabel, edgeIndex), travelTime);
+        }
+
+        /**
+         * Returns whether a given vertex is closed, in which case no edge may lead to it.
+         *
+         * @param label The label of the vertex.
+         * @return {@code true} if the vertex is closed, or {@code false} otherwise.
+         */
+        public boolean isClosed(final int label) {
+            return closedVertices.get(label);
+        }
+
+        /**
+         * Returns the cost of a given edge under this overlay.
+         *
+         * @param startVertexLabel The label of the start vertex of the edge.
+         * @param edgeIndex        The index of the edge among the outgoing edges of its start vertex.
+         * @param cost             The cost of the edge.
+         * @return The cost, multiplied by the penalty of the edge and rounded up, or {@link #CLOSED} if the edge is closed.
+         */
+        public int getCost(final int startVertexLabel, final int edgeIndex, final int cost) {
+            if (!modifiedVertices.get(startVertexLabel)) {
+                return cost;
+            }
+            final int i = Arrays.binarySearch(edges, SearchSpace.packPredecessorLabel(startVertexLabel, edgeIndex));
+            if (i < 0) {
+                return cost;
+            }
+            if (multipliers[i] == Float.POSITIVE_INFINITY) {
+                return CLOSED;
+            }
+            return (int) Math.min(Integer.MAX_VALUE / 2, Math.ceil(cost * (double) multipliers[i]));
+        }
+    }
+
+    /**
+     * A set of edits to an overlay.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Editor {
+        private final BitSet closedVertices;
+        private final Map<Integer, Float> multipliers;
+        private TravelTimeTable travelTimes;
+        /**
+         * The travel time overrides made by this editor, which are merged into the table once the edits are complete.
+         */
+        private int[] overriddenEdges = new int[0];
+        private int[] overridingTravelTimes = new int[0];
+        private int numOverrides;
+
+        private Editor(final Snapshot snapshot) {
+            travelTimes = snapshot.travelTimes;
+            closedVertices = (BitSet) snapshot.closedVertices.clone();
+            multipliers = new HashMap<>(2 * snapshot.edges.length);
+            for (int i = 0; i < snapshot.edges.length; i++) {
+                multipliers.put(snapshot.edges[i], snapshot.multipliers[i]);
+            }
+        }
+
+        public Editor closeVertex(final int label) {
+            closedVertices.set(label);
+            return this;
+        }
+
+        public Editor openVertex(final int label) {
+            closedVertices.clear(label);
+            return this;
+        }
+
+        public Editor closeEdge(final int startVertexLabel, final int edgeIndex) {
+            multipliers.put(SearchSpace.packPredecessorLabel(startVertexLabel, edgeIndex), Float.POSITIVE_INFINITY);
+            return this;
+        }
+
+        /**
+         * Penalizes a given edge, replacing any previous penalty or closure.
+         *
+         * @param startVertexLabel The label of the start vertex of the edge.
+         * @param edgeIndex        The index of the edge among the outgoing edges of its start vertex.
+         * @param multiplier       The factor to multiply the cost of the edge by, which must be at least one. A factor of one removes the penalty.
+         * @return This editor.
+         * @throws IllegalArgumentException If the factor is less than one or infinite.
+         */
+        public Editor setPenalty(final int startVertexLabel, final int edgeIndex, final float multiplier) {
+            if (!(multiplier >= 1) || multiplier == Float.POSITIVE_INFINITY) {
+                throw new IllegalArgumentException("The multiplier must be finite and at least one.");
+            }
+            if (multiplier == 1) {
+                return openEdge(startVertexLabel, edgeIndex);
+            }
+            multipliers.put(SearchSpace.packPredecessorLabel(startVertexLabel, edgeIndex), multiplier);
+            return this;
+        }
+
+        /**
+         * Removes any closure or penalty of a given edge.
+         *
+         * @param startVertexLabel The label of the start vertex of the edge.
+         * @param edgeIndex        The index of the edge among the outgoing edges of its start vertex.
+         * @return This editor.
+         */
+        public Editor openEdge(final int startVertexLabel, final int edgeIndex) {
+            multipliers.remove(SearchSpace.packPredecessorLabel(startVertexLabel, edgeIndex));
+            return this;
+        }
+
+        /**
+         * Overrides the travel time of a given edge, replacing any previous override.
+         *
+         * @param startVertexLabel The label of the start vertex of the edge.
+         * @param edgeIndex        The index of the edge among the outgoing edges of its start vertex.
+         * @param travelTime       The travel time, or {@link TravelTimePatch#RESTORED} to restore that of the graph.
+         * @return This editor.
+         */
+        public Editor setTravelTime(final int startVertexLabel, final int edgeIndex, final int travelTime) {
+            return applyTravelTimePatch(new TravelTimePatch(new int[]{TravelTimePatch.getEdgeId(startVertexLabel, edgeIndex)}, new int[]{travelTime}));
+        }
+
+        /**
+         * Applies a travel time patch on top of the current overrides.
+         *
+         * @param patch The patch.
+         * @return This editor.
+         */
+        public Editor applyTravelTimePatch(final TravelTimePatch patch) {
+            final int numRecords = patch.getNumRecords();
+            if (numOverrides + numRecords > overriddenEdges.length) {
+                overriddenEdges = Arrays.copyOf(overriddenEdges, Math.max(2 * overriddenEdges.length, numOverrides + numRecords));
+                overridingTravelTimes = Arrays.copyOf(overridingTravelTimes, overriddenEdges.length);
+            }
+            System.arraycopy(patch.getEdges(), 0, overriddenEdges, numOverrides, numRecords);
+            System.arraycopy(patch.getTravelTimes(), 0, overridingTravelTimes, numOverrides, numRecords);
+            numOverrides += numRecords;
+            return this;
+        }
+
+        public Editor clear() {
+            closedVertices.clear();
+            multipliers.clear();
+            travelTimes = TravelTimeTable.EMPTY;
+            numOverrides = 0;
+            return this;
+        }
+
+        private Snapshot build(final long version) {
+            final int[] edges = new int[multipliers.size()];
+            int i = 0;
+            for (final int edge : multipliers.keySet()) {
+                edges[i++] = edge;
+            }
+            Arrays.sort(edges);
+            final float[] sortedMultipliers = new float[edges.length];
+            final BitSet modifiedVertices = new BitSet();
+            for (i = 0; i < edges.length; i++) {
+                sortedMultipliers[i] = multipliers.get(edges[i]);
+                modifiedVertices.set(SearchSpace.unpackLabel(edges[i]));
+            }
+            final TravelTimeTable mergedTravelTimes = travelTimes.merge(overriddenEdges, overridingTravelTimes, numOverrides);
+            mergedTravelTimes.forEachEdge(edge -> modifiedVertices.set(SearchSpace.unpackLabel(edge)));
+            return new Snapshot(version, closedVertices, modifiedVertices, edges, sortedMultipliers, mergedTravelTimes);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.overlay;
+
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A set of travel times overriding those of a set of edges (e.g., based on live traffic data).
+ * <p>
+ * A patch is serialized as the following little-endian sequence, so that it can be produced independently of the graph:
+ * <ol>
+ *     <li>The magic number {@link #MAGIC}.</li>
+ *     <li>The number of records, as a 32-bit integer.</li>
+ *     <li>Every record, as the identifier of the edge, followed by its travel time, both as 32-bit integers. The identifier of an edge is the label of its start vertex, packed along with its index among the outgoing edges of that vertex (see {@link #getEdgeId(int, int)}). A travel time equal to {@link #RESTORED} restores that of the graph.</li>
+ * </ol>
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see EdgeOverlay.Editor#applyTravelTimePatch(TravelTimePatch)
+ * @since 1.1.0
+ */
+public final class TravelTimePatch {
+    /**
+     * The first four bytes of every serialized patch (i.e., "TTP1").
+     */
+    public static final int MAGIC = 0x31505454;
+    /**
+     * The travel time restoring that of an edge in the graph.
+     */
+    public static final int RESTORED = -1;
+    private static final int RECORD_SIZE = 2 * Integer.BYTES;
+    /**
+     * The largest serialized size of the records of a patch, in bytes, which is well above that of a patch covering every edge of the graph.
+     */
+    private static final long MAX_RECORDS_SIZE = 256L * 1024 * 1024;
+    /**
+     * The number of records read at a time.
+     */
+    private static final int CHUNK_NUM_RECORDS = 1 << 13;
+    private final int[] edges;
+    private final int[] travelTimes;
+
+    /**
+     * Creates a patch.
+     *
+     * @param edges       The identifiers of the edges.
+     * @param travelTimes The travel times of the edges, in the same order, or {@link #RESTORED}.
+     * @throws IllegalArgumentException If the arrays differ in length, or any travel time is negative and not {@link #RESTORED}.
+     */
+    public TravelTimePatch(final int[] edges, final int[] travelTimes) {
+        if (edges.length != travelTimes.length) {
+            throw new IllegalArgumentException("Every edge must have exactly one travel time.");
+        }
+        for (final int travelTime : travelTimes) {
+            if (travelTime < 0 && travelTime != RESTORED) {
+                throw new IllegalArgumentException("Travel times must not be negative.");
+            }
+        }
+        this.edges = edges;
+        this.travelTimes = travelTimes;
+    }
+
+    /**
+     * Returns the identifier of an edge.
+     *
+     * @param startVertexLabel The label of the start vertex of the edge.
+     * @param edgeIndex        The index of the edge among the outgoing edges of its start vertex.
+     * @return The identifier.
+     */
+    public static int getEdgeId(final int startVertexLabel, final int edgeIndex) {
+        return SearchSpace.packPredecessorLabel(startVertexLabel, edgeIndex);
+    }
+
+    /**
+     * Reads a serialized patch.
+     * <p>
+     * The records are read in chunks, and memory is only allocated for those actually read, so that a corrupted number of records cannot exhaust the memory before the stream runs out.
+     *
+     * @param in The stream to read from, which is not closed.
+     * @return The patch.
+     * @throws IOException If the stream cannot be read, or does not hold a patch.
+     */
+    public static TravelTimePatch read(final InputStream in) throws IOException {
+        final DataInputStream dataIn = new DataInputStream(in);
+        final ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        dataIn.readFully(header.array());
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("The stream does not hold a travel time patch.");
+        }
+        final int numRecords = header.getInt(Integer.BYTES);
+        if (numRecords < 0 || (long) numRecords * RECORD_SIZE > MAX_RECORDS_SIZE) {
+            throw new IOException("The travel time patch is corrupted.");
+        }
+        int[] edges = new int[Math.min(numRecords, CHUNK_NUM_RECORDS)];
+        int[] travelTimes = new int[edges.length];
+        final ByteBuffer records = ByteBuffer.allocate(edges.length * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < numRecords; ) {
+            final int numChunkRecords = Math.min(CHUNK_NUM_RECORDS, numRecords - i);
+            dataIn.readFully(records.array(), 0, numChunkRecords * RECORD_SIZE);
+            if (i + numChunkRecords > edges.length) {
+                final int capacity = (int) Math.min(numRecords, 2L * edges.length);
+                edges = Arrays.copyOf(edges, capacity);
+                travelTimes = Arrays.copyOf(travelTimes, capacity);
+            }
+            for (int j = 0; j < numChunkRecords; j++, i++) {
+                edges[i] = records.getInt(j * RECORD_SIZE);
+                travelTimes[i] = records.getInt(j * RECORD_SIZE + Integer.BYTES);
+            }
+        }
+        try {
+            return new TravelTimePatch(edges, travelTimes);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("The travel time patch is corrupted.", e);
+        }
+    }
+
+    /**
+     * Serializes this patch.
+     *
+     * @param out The stream to write to, which is neither flushed nor closed.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void write(final OutputStream out) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + edges.length * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(edges.length);
+        for (int i = 0; i < edges.length; i++) {
+            buffer.putInt(edges[i]).putInt(travelTimes[i]);
+        }
+        out.write(buffer.array());
+    }
+
+    public int getNumRecords() {
+        return edges.length;
+    }
+
+    int[] getEdges() {
+        return edges;
+    }
+
+    int[] getTravelTimes() {
+        return travelTimes;
+    }
+}
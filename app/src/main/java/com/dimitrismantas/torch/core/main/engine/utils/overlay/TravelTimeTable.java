@@ -0,0 +1,189 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.overlay;
+
+import com.dimitrismantas.torch.core.main.engine.utils.searchspace.SearchSpace;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable off-heap hash table mapping edges to the travel times overriding their own.
+ * <p>
+ * Every slot holds the identifier of an edge, followed by its travel time, and collisions are resolved by linear probing. Edges whose travel time has been restored are kept until the next merge, but do not count as overridden.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+final class TravelTimeTable {
+    /**
+     * The identifier of an empty slot, which is never that of an edge, since no label is equal to the label mask.
+     */
+    private static final int NO_EDGE = -1;
+    private static final int SLOT_SIZE = 2 * Integer.BYTES;
+    static final TravelTimeTable EMPTY = new TravelTimeTable(ByteBuffer.allocateDirect(2 * SLOT_SIZE).order(ByteOrder.nativeOrder()), 0);
+    private final ByteBuffer slots;
+    private final int mask;
+    private final int numOverriddenEdges;
+
+    private TravelTimeTable(final ByteBuffer slots, final int numOverriddenEdges) {
+        this.slots = slots;
+        mask = slots.capacity() / SLOT_SIZE - 1;
+        this.numOverriddenEdges = numOverriddenEdges;
+        if (numOverriddenEdges == 0) {
+            for (int i = 0; i <= mask; i++) {
+                slots.putInt(i * SLOT_SIZE, NO_EDGE);
+            }
+        }
+    }
+
+    /**
+     * Returns the travel time of a given edge.
+     *
+     * @param edge       The identifier of the edge.
+     * @param travelTime The travel time of the edge in the graph.
+     * @return The overriding travel time, or the given one if the edge is not overridden.
+     */
+    int get(final int edge, final int travelTime) {
+        if (numOverriddenEdges == 0) {
+            return travelTime;
+        }
+        for (int i = hash(edge) & mask; ; i = (i + 1) & mask) {
+            final int slotEdge = slots.getInt(i * SLOT_SIZE);
+            if (slotEdge == edge) {
+                final int overridingTravelTime = slots.getInt(i * SLOT_SIZE + Integer.BYTES);
+                return overridingTravelTime == TravelTimePatch.RESTORED ? travelTime : overridingTravelTime;
+            }
+            if (slotEdge == NO_EDGE) {
+                return travelTime;
+            }
+        }
+    }
+
+    int getNumOverriddenEdges() {
+        return numOverriddenEdges;
+    }
+
+    /**
+     * Finds the minimum ratio of any overriding travel time to the corresponding one in a given graph.
+     *
+     * @param graph The graph.
+     * @return The ratio, which is at most {@code 1}.
+     */
+    double getMinFactor(final DeserializedGraph graph) {
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        double minFactor = 1;
+        for (int i = 0; i <= mask && numOverriddenEdges > 0; i++) {
+            final int edgeId = slots.getInt(i * SLOT_SIZE);
+            final int travelTime = slots.getInt(i * SLOT_SIZE + Integer.BYTES);
+            if (edgeId == NO_EDGE || travelTime == TravelTimePatch.RESTORED) {
+                continue;
+            }
+            final int label = SearchSpace.unpackLabel(edgeId);
+            final int edgeIndex = SearchSpace.unpackEdgeIndex(edgeId);
+            // Patches are produced independently of the graph, so they may refer to edges which do not exist.
+            if (label >= graph.verticesLength() || edgeIndex >= graph.vertices(vertex, label).outgoingEdgesLength()) {
+                continue;
+            }
+            final int ownTravelTime = vertex.outgoingEdges(edge, edgeIndex).travelTime();
+            if (ownTravelTime > 0) {
+                minFactor = Math.min(minFactor, travelTime / (double) ownTravelTime);
+            }
+        }
+        return minFactor;
+    }
+
+    /**
+     * Calls a given consumer with the identifier of every overridden edge.
+     */
+    void forEachEdge(final IntConsumer consumer) {
+        for (int i = 0; i <= mask && numOverriddenEdges > 0; i++) {
+            final int edge = slots.getInt(i * SLOT_SIZE);
+            if (edge != NO_EDGE && slots.getInt(i * SLOT_SIZE + Integer.BYTES) != TravelTimePatch.RESTORED) {
+                consumer.accept(edge);
+            }
+        }
+    }
+
+    /**
+     * Merges a set of travel times into a copy of this table.
+     *
+     * @param edges       The identifiers of the edges.
+     * @param travelTimes The travel times of the edges, or {@link TravelTimePatch#RESTORED} for edges whose own travel time is restored. If an edge appears more than once, its last travel time takes effect.
+     * @param numEdges    The number of edges.
+     * @return The merged table.
+     */
+    TravelTimeTable merge(final int[] edges, final int[] travelTimes, final int numEdges) {
+        if (numEdges == 0) {
+            return this;
+        }
+        // The table is kept at most half full, so that probe sequences stay short.
+        final int capacity = Integer.highestOneBit(Math.max(1, 2 * (numOverriddenEdges + numEdges) - 1)) << 1;
+        final ByteBuffer mergedSlots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+        final int mergedMask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            mergedSlots.putInt(i * SLOT_SIZE, NO_EDGE);
+        }
+        int numMergedEdges = 0;
+        // Newer travel times are inserted first, so that older ones of the same edges are ignored.
+        for (int k = numEdges - 1; k >= 0; k--) {
+            if (insert(mergedSlots, mergedMask, edges[k], travelTimes[k]) && travelTimes[k] != TravelTimePatch.RESTORED) {
+                numMergedEdges++;
+            }
+        }
+        for (int i = 0; i <= mask && numOverriddenEdges > 0; i++) {
+            final int edge = slots.getInt(i * SLOT_SIZE);
+            final int travelTime = slots.getInt(i * SLOT_SIZE + Integer.BYTES);
+            if (edge != NO_EDGE && travelTime != TravelTimePatch.RESTORED && insert(mergedSlots, mergedMask, edge, travelTime)) {
+                numMergedEdges++;
+            }
+        }
+        return numMergedEdges == 0 ? EMPTY : new TravelTimeTable(mergedSlots, numMergedEdges);
+    }
+
+    /**
+     * Inserts an edge into a table, unless it is already there.
+     *
+     * @return {@code true} if the edge was inserted, or {@code false} otherwise.
+     */
+    private static boolean insert(final ByteBuffer slots, final int mask, final int edge, final int travelTime) {
+        for (int i = hash(edge) & mask; ; i = (i + 1) & mask) {
+            final int slotEdge = slots.getInt(i * SLOT_SIZE);
+            if (slotEdge == edge) {
+                return false;
+            }
+            if (slotEdge == NO_EDGE) {
+                slots.putInt(i * SLOT_SIZE, edge);
+                slots.putInt(i * SLOT_SIZE + Integer.BYTES, travelTime);
+                return true;
+            }
+        }
+    }
+
+    private static int hash(final int edge) {
+        final int h = edge * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
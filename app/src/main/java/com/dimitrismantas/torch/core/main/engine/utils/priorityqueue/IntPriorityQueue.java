@@ -0,0 +1,123 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.priorityqueue;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of vertex labels keyed by integer costs, backed by primitive arrays.
+ * <p>
+ * Unlike a {@link java.util.PriorityQueue} of {@link PriorityQueueEntry} objects, this queue allocates nothing once its arrays have grown large enough, and can be cleared and reused across searches. Like it, it does not support decreasing the key of a vertex; a vertex whose cost improves is instead added again, and its stale copies are skipped when dequeued.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class IntPriorityQueue {
+    private static final int DEFAULT_INITIAL_CAPACITY = 1 << 10;
+    private int[] keys;
+    private int[] vertexLabels;
+    private int size;
+
+    public IntPriorityQueue() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public IntPriorityQueue(final int initialCapacity) {
+        keys = new int[Math.max(1, initialCapacity)];
+        vertexLabels = new int[keys.length];
+    }
+
+    public void add(final int key, final int vertexLabel) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * size);
+            vertexLabels = Arrays.copyOf(vertexLabels, 2 * size);
+        }
+        int i = size++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            keys[i] = keys[parent];
+            vertexLabels[i] = vertexLabels[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        vertexLabels[i] = vertexLabel;
+    }
+
+    /**
+     * Returns the minimum key in this queue.
+     *
+     * @return The key.
+     * @throws NoSuchElementException If this queue is empty.
+     */
+    public int peekKey() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[0];
+    }
+
+    /**
+     * Removes the vertex with the minimum key from this queue.
+     *
+     * @return The label of the vertex.
+     * @throws NoSuchElementException If this queue is empty.
+     */
+    public int poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        final int vertexLabel = vertexLabels[0];
+        final int lastKey = keys[--size];
+        final int lastVertexLabel = vertexLabels[size];
+        int i = 0;
+        final int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (lastKey <= keys[child]) {
+                break;
+            }
+            keys[i] = keys[child];
+            vertexLabels[i] = vertexLabels[child];
+            i = child;
+        }
+        keys[i] = lastKey;
+        vertexLabels[i] = lastVertexLabel;
+        return vertexLabel;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.profiles;
+
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A set of periodic piecewise-linear travel time profiles, along with the profile of every edge of a graph.
+ * <p>
+ * A profile describes the travel time of an edge as a multiple of its free-flow travel time (i.e., that of the graph) at a number of breakpoints within a period (e.g., a day or a week), and is linearly interpolated between them, wrapping around the end of the period. Since profiles are relative, a small number of them can be shared by every edge of the graph. Every edge whose profile is {@link #FREE_FLOW} keeps its free-flow travel time at all times.
+ * <p>
+ * The profiles are serialized as the following little-endian sequence:
+ * <ol>
+ *     <li>The magic number {@link #MAGIC}.</li>
+ *     <li>The period in seconds, the number of profiles and the number of edges of the graph, as 32-bit integers.</li>
+ *     <li>Every profile, as its number of breakpoints, followed by the time and factor of every breakpoint, all as unsigned 16-bit integers. The times are in {@code 1/65536} of the period, and must be strictly increasing, while the factors are in {@code 1/}{@link #FACTOR_SCALE}.</li>
+ *     <li>The identifier of the profile of every edge, as an unsigned 16-bit integer, in the order of the edges in the graph (i.e., the outgoing edges of the first vertex, followed by those of the second, and so on). The identifier of the first profile is {@code 1}.</li>
+ * </ol>
+ * The identifiers of the profiles of the edges are kept off-heap, two bytes per edge. Every profile must satisfy the FIFO property on every edge using it (i.e., departing later must never result in arriving earlier), which is what makes a label-setting time-dependent search optimal.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class TravelTimeProfiles {
+    /**
+     * The first four bytes of every serialized set of profiles (i.e., "TDP1").
+     */
+    public static final int MAGIC = 0x31504454;
+    /**
+     * The identifier of the implicit profile keeping the free-flow travel time of an edge.
+     */
+    public static final int FREE_FLOW = 0;
+    /**
+     * The number of units per free-flow travel time of a serialized factor.
+     */
+    public static final int FACTOR_SCALE = 1 << 12;
+    /**
+     * The number of units per period of a serialized breakpoint time.
+     */
+    private static final int TIME_SCALE = 1 << 16;
+    private static final int MAX_NUM_PROFILES = (1 << 16) - 1;
+    private final int period;
+    /**
+     * The index of the first breakpoint of every profile, followed by the number of breakpoints. The implicit free-flow profile has none.
+     */
+    private final int[] firstBreakpointIndices;
+    private final int[] breakpointTimes;
+    private final double[] breakpointFactors;
+    /**
+     * The index of the first outgoing edge of every vertex, followed by the number of edges.
+     */
+    private final int[] firstEdgeIndices;
+    private final ByteBuffer edgeProfileIds;
+    private final double minFactor;
+
+    private TravelTimeProfiles(final int period, final int[] firstBreakpointIndices, final int[] breakpointTimes, final double[] breakpointFactors, final int[] firstEdgeIndices, final ByteBuffer edgeProfileIds) {
+        this.period = period;
+        this.firstBreakpointIndices = firstBreakpointIndices;
+        this.breakpointTimes = breakpointTimes;
+        this.breakpointFactors = breakpointFactors;
+        this.firstEdgeIndices = firstEdgeIndices;
+        this.edgeProfileIds = edgeProfileIds;
+        // The minimum of a piecewise-linear function is attained at one of its breakpoints.
+        double minFactor = 1;
+        for (final double factor : breakpointFactors) {
+            minFactor = Math.min(minFactor, factor);
+        }
+        this.minFactor = minFactor;
+    }
+
+    /**
+     * Reads a set of serialized profiles.
+     *
+     * @param in    The stream to read from, which is not closed.
+     * @param graph The graph whose edges the profiles describe.
+     * @return The profiles.
+     * @throws IOException If the stream cannot be read, does not hold a set of profiles, or holds one which does not match the graph or violates the FIFO property.
+     */
+    public static TravelTimeProfiles read(final InputStream in, final DeserializedGraph graph) throws IOException {
+        final DataInputStream dataIn = new DataInputStream(in);
+        final ByteBuffer header = readFully(dataIn, 4 * Integer.BYTES);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("The stream does not hold a set of travel time profiles.");
+        }
+        final int period = header.getInt(Integer.BYTES);
+        final int numProfiles = header.getInt(2 * Integer.BYTES);
+        final int numEdges = header.getInt(3 * Integer.BYTES);
+        if (period <= 0 || numProfiles < 0 || numProfiles > MAX_NUM_PROFILES) {
+            throw new IOException("The travel time profiles are corrupted.");
+        }
+
+        final int[] firstBreakpointIndices = new int[numProfiles + 2];
+        int[] breakpointTimes = new int[0];
+        double[] breakpointFactors = new double[0];
+        for (int i = 1; i <= numProfiles; i++) {
+            final int numBreakpoints = readFully(dataIn, Short.BYTES).getShort(0) & 0xFFFF;
+            if (numBreakpoints == 0) {
+                throw new IOException("Travel time profile " + i + " has no breakpoints.");
+            }
+            final int first = firstBreakpointIndices[i];
+            firstBreakpointIndices[i + 1] = first + numBreakpoints;
+            breakpointTimes = Arrays.copyOf(breakpointTimes, first + numBreakpoints);
+            breakpointFactors = Arrays.copyOf(breakpointFactors, first + numBreakpoints);
+            final ByteBuffer breakpoints = readFully(dataIn, numBreakpoints * 2 * Short.BYTES);
+            for (int j = 0; j < numBreakpoints; j++) {
+                final int time = breakpoints.getShort(2 * j * Short.BYTES) & 0xFFFF;
+                final int factor = breakpoints.getShort((2 * j + 1) * Short.BYTES) & 0xFFFF;
+                if ((j > 0 && time <= breakpointTimes[first + j - 1]) || factor == 0) {
+                    throw new IOException("Travel time profile " + i + " is corrupted.");
+                }
+                breakpointTimes[first + j] = time;
+                breakpointFactors[first + j] = (double) factor / FACTOR_SCALE;
+            }
+        }
+
+        final int[] firstEdgeIndices = new int[graph.verticesLength() + 1];
+        final DeserializedVertex vertex = new DeserializedVertex();
+        for (int i = 0; i < graph.verticesLength(); i++) {
+            firstEdgeIndices[i + 1] = firstEdgeIndices[i] + graph.vertices(vertex, i).outgoingEdgesLength();
+        }
+        if (numEdges != firstEdgeIndices[graph.verticesLength()]) {
+            throw new IOException("The travel time profiles describe a different graph.");
+        }
+        // The identifiers are copied off-heap, since there is one per edge.
+        final ByteBuffer edgeProfileIds = ByteBuffer.allocateDirect(numEdges * Short.BYTES).order(ByteOrder.nativeOrder());
+        final byte[] chunk = new byte[1 << 16];
+        final ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+        for (int remaining = numEdges * Short.BYTES; remaining > 0; ) {
+            final int chunkSize = Math.min(remaining, chunk.length);
+            dataIn.readFully(chunk, 0, chunkSize);
+            for (int k = 0; k < chunkSize; k += Short.BYTES) {
+                edgeProfileIds.putShort(chunkBuffer.getShort(k));
+            }
+            remaining -= chunkSize;
+        }
+
+        final TravelTimeProfiles profiles = new TravelTimeProfiles(period, firstBreakpointIndices, breakpointTimes, breakpointFactors, firstEdgeIndices, edgeProfileIds);
+        profiles.checkFifo(graph, numProfiles);
+        return profiles;
+    }
+
+    /**
+     * Serializes a set of profiles.
+     *
+     * @param out            The stream to write to, which is neither flushed nor closed.
+     * @param period         The period of the profiles in seconds.
+     * @param departureTimes The departure time of every breakpoint of every profile in seconds since the start of the period, in increasing order.
+     * @param factors        The travel time of every breakpoint of every profile as a multiple of the free-flow one, in the same order.
+     * @param edgeProfileIds The identifier of the profile of every edge, in the order of the edges in the graph, where the identifier of the first profile is {@code 1}.
+     * @throws IOException              If the stream cannot be written.
+     * @throws IllegalArgumentException If the profiles cannot be serialized (e.g., because two breakpoints are too close to each other).
+     */
+    public static void write(final OutputStream out, final int period, final int[][] departureTimes, final double[][] factors, final int[] edgeProfileIds) throws IOException {
+        if (period <= 0 || departureTimes.length != factors.length || departureTimes.length > MAX_NUM_PROFILES) {
+            throw new IllegalArgumentException("The profiles are invalid.");
+        }
+        int size = 4 * Integer.BYTES + edgeProfileIds.length * Short.BYTES;
+        for (final int[] profileDepartureTimes : departureTimes) {
+            size += (1 + 2 * profileDepartureTimes.length) * Short.BYTES;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(period).putInt(departureTimes.length).putInt(edgeProfileIds.length);
+        for (int i = 0; i < departureTimes.length; i++) {
+            if (departureTimes[i].length == 0 || departureTimes[i].length != factors[i].length || departureTimes[i].length >= TIME_SCALE) {
+                throw new IllegalArgumentException("Profile " + (i + 1) + " is invalid.");
+            }
+            buffer.putShort((short) departureTimes[i].length);
+            int previousTime = -1;
+            for (int j = 0; j < departureTimes[i].length; j++) {
+                final long time = Math.round((double) departureTimes[i][j] * TIME_SCALE / period);
+                final long factor = Math.round(factors[i][j] * FACTOR_SCALE);
+                if (time <= previousTime || time >= TIME_SCALE || factor < 1 || factor >= 1 << 16) {
+                    throw new IllegalArgumentException("Breakpoint " + j + " of profile " + (i + 1) + " cannot be serialized.");
+                }
+                buffer.putShort((short) time).putShort((short) factor);
+                previousTime = (int) time;
+            }
+        }
+        for (final int profileId : edgeProfileIds) {
+            if (profileId < FREE_FLOW || profileId > departureTimes.length) {
+                throw new IllegalArgumentException("Profile " + profileId + " does not exist.");
+            }
+            buffer.putShort((short) profileId);
+        }
+        out.write(buffer.array());
+    }
+
+    /**
+     * Returns the travel time of an edge when departing at a given time.
+     *
+     * @param startVertexLabel   The label of the start vertex of the edge.
+     * @param edgeIndex          The index of the edge among the outgoing edges of its start vertex.
+     * @param freeFlowTravelTime The free-flow travel time of the edge.
+     * @param departureTime      The departure time in seconds since the start of any period.
+     * @return The travel time, rounded up.
+     */
+    public int getTravelTime(final int startVertexLabel, final int edgeIndex, final int freeFlowTravelTime, final int departureTime) {
+        final int profileId = getProfileId(startVertexLabel, edgeIndex);
+        if (profileId == FREE_FLOW) {
+            return freeFlowTravelTime;
+        }
+        return (int) Math.ceil(freeFlowTravelTime * getFactor(profileId, departureTime));
+    }
+
+    /**
+     * Returns the minimum factor of every profile, including the implicit free-flow one. Every travel time is at least this multiple of the free-flow one.
+     *
+     * @return The factor, which is at most {@code 1}.
+     */
+    public double getMinFactor() {
+        return minFactor;
+    }
+
+    /**
+     * Returns the period of the profiles.
+     *
+     * @return The period in seconds.
+     */
+    public int getPeriod() {
+        return period;
+    }
+
+    public int getNumProfiles() {
+        return firstBreakpointIndices.length - 2;
+    }
+
+    public int getProfileId(final int startVertexLabel, final int edgeIndex) {
+        return edgeProfileIds.getShort((firstEdgeIndices[startVertexLabel] + edgeIndex) * Short.BYTES) & 0xFFFF;
+    }
+
+    /**
+     * Returns the factor of a profile at a given time, by interpolating between the breakpoints around it.
+     */
+    private double getFactor(final int profileId, final int departureTime) {
+        final int first = firstBreakpointIndices[profileId];
+        final int last = firstBreakpointIndices[profileId + 1] - 1;
+        final double time = (double) Math.floorMod(departureTime, period) * TIME_SCALE / period;
+        if (first == last) {
+            return breakpointFactors[first];
+        }
+        // The segment between the last and first breakpoints wraps around the end of the period.
+        if (time < breakpointTimes[first] || time >= breakpointTimes[last]) {
+            final double startTime = breakpointTimes[last];
+            final double endTime = breakpointTimes[first] + TIME_SCALE;
+            final double wrappedTime = time < breakpointTimes[first] ? time + TIME_SCALE : time;
+            return interpolate(startTime, breakpointFactors[last], endTime, breakpointFactors[first], wrappedTime);
+        }
+        int lo = first;
+        int hi = last;
+        // Find the last breakpoint at or before the given time.
+        while (hi - lo > 1) {
+            final int mid = (lo + hi) >>> 1;
+            if (breakpointTimes[mid] <= time) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return interpolate(breakpointTimes[lo], breakpointFactors[lo], breakpointTimes[hi], breakpointFactors[hi], time);
+    }
+
+    private static double interpolate(final double startTime, final double startFactor, final double endTime, final double endFactor, final double time) {
+        return startFactor + (endFactor - startFactor) * (time - startTime) / (endTime - startTime);
+    }
+
+    /**
+     * Checks that no edge can be left earlier by departing later, i.e., that its travel time never decreases faster than time passes.
+     */
+    private void checkFifo(final DeserializedGraph graph, final int numProfiles) throws IOException {
+        // The maximum rate of decrease of the factor of every profile, per second.
+        final double[] maxDecreaseRates = new double[numProfiles + 1];
+        for (int i = 1; i <= numProfiles; i++) {
+            final int first = firstBreakpointIndices[i];
+            final int last = firstBreakpointIndices[i + 1] - 1;
+            for (int j = first; j <= last; j++) {
+                final int next = j == last ? first : j + 1;
+                final int duration = breakpointTimes[next] - breakpointTimes[j] + (next <= j ? TIME_SCALE : 0);
+                maxDecreaseRates[i] = Math.max(maxDecreaseRates[i], (breakpointFactors[j] - breakpointFactors[next]) / ((double) duration * period / TIME_SCALE));
+            }
+        }
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        for (int i = 0; i < graph.verticesLength(); i++) {
+            graph.vertices(vertex, i);
+            for (int j = 0; j < vertex.outgoingEdgesLength(); j++) {
+                final int profileId = getProfileId(i, j);
+                if (profileId > numProfiles) {
+                    throw new IOException("Travel time profile " + profileId + " does not exist.");
+                }
+                if (vertex.outgoingEdges(edge, j).travelTime() * maxDecreaseRates[profileId] > 1) {
+                    throw new IOException("Travel time profile " + profileId + " violates the FIFO property on edge " + j + " of vertex " + i + ".");
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(final DataInputStream in, final int numBytes) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(numBytes).order(ByteOrder.LITTLE_ENDIAN);
+        in.readFully(buffer.array());
+        return buffer;
+    }
+}
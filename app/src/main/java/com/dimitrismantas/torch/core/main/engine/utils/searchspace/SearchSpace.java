@@ -0,0 +1,207 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.searchspace;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Arrays;
+
+/**
+ * The state of a single search, i.e., the cost from the search origin to every vertex reached so far and, optionally, its cost in terms of a second metric and its predecessor.
+ * <p>
+ * The state is kept in dense primitive arrays indexed by vertex label, along with a stamp per vertex, much like the {@code numInitialized} field of the vertices of the graph itself. Clearing the search space for the next search only increments the current stamp, so a search space can be reused indefinitely without allocating anything or touching the vertices of previous searches. This class is not thread-safe; every thread must use its own search space.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class SearchSpace {
+    /**
+     * The cost of a vertex which has not been reached.
+     */
+    public static final int INFINITY = Integer.MAX_VALUE;
+    /**
+     * The number of low-order bits of a packed predecessor label holding the label of the predecessor vertex itself. The remaining high-order bits hold the index of the edge from the predecessor to its successor.
+     */
+    public static final int PREDECESSOR_LABEL_BITS = 24;
+    public static final int PREDECESSOR_LABEL_MASK = (1 << PREDECESSOR_LABEL_BITS) - 1;
+    public static final int MAX_EDGE_INDEX = (1 << (Integer.SIZE - PREDECESSOR_LABEL_BITS)) - 1;
+    private final int[] costs;
+    /**
+     * The costs in terms of the second metric, or {@code null} if they are not kept.
+     */
+    private final int[] otherCosts;
+    /**
+     * The (packed) predecessor labels, or {@code null} if they are not kept.
+     */
+    private final int[] predecessorLabels;
+    private final short[] stamps;
+    private short stamp = 1;
+
+    /**
+     * Instantiates this class.
+     *
+     * @param numVertices            The number of vertices of the graph.
+     * @param keepsOtherCosts        Whether to keep the cost of every vertex in terms of a second metric.
+     * @param keepsPredecessorLabels Whether to keep the predecessor of every vertex.
+     */
+    public SearchSpace(final int numVertices, final boolean keepsOtherCosts, final boolean keepsPredecessorLabels) {
+        this.costs = new int[numVertices];
+        this.otherCosts = keepsOtherCosts ? new int[numVertices] : null;
+        this.predecessorLabels = keepsPredecessorLabels ? new int[numVertices] : null;
+        this.stamps = new short[numVertices];
+    }
+
+    /**
+     * Forgets every vertex reached so far.
+     */
+    public void clear() {
+        stamp++;
+        // The stamps of vertices reached 65536 searches ago would otherwise become current again.
+        if (stamp == 0) {
+            Arrays.fill(stamps, (short) 0);
+            stamp = 1;
+        }
+    }
+
+    public boolean isReached(final int label) {
+        return stamps[label] == stamp;
+    }
+
+    /**
+     * Returns the cost of a vertex.
+     *
+     * @param label The label of the vertex.
+     * @return The cost, or {@link #INFINITY} if the vertex has not been reached.
+     */
+    public int getCost(final int label) {
+        return stamps[label] == stamp ? costs[label] : INFINITY;
+    }
+
+    /**
+     * Returns the cost of a reached vertex in terms of the second metric.
+     *
+     * @param label The label of the vertex.
+     * @return The cost.
+     */
+    public int getOtherCost(final int label) {
+        return otherCosts[label];
+    }
+
+    /**
+     * Returns the predecessor of a reached vertex.
+     *
+     * @param label The label of the vertex.
+     * @return The (packed) label of the predecessor.
+     */
+    public int getPredecessorLabel(final int label) {
+        return predecessorLabels[label];
+    }
+
+    /**
+     * Reaches a vertex, or updates its state if it has already been reached.
+     *
+     * @param label            The label of the vertex.
+     * @param cost             The cost of the vertex.
+     * @param otherCost        The cost of the vertex in terms of the second metric. This is ignored if such costs are not kept.
+     * @param predecessorLabel The (packed) label of the predecessor of the vertex. This is ignored if predecessors are not kept.
+     */
+    public void reach(final int label, final int cost, final int otherCost, final int predecessorLabel) {
+        stamps[label] = stamp;
+        costs[label] = cost;
+        if (otherCosts != null) {
+            otherCosts[label] = otherCost;
+        }
+        if (predecessorLabels != null) {
+            predecessorLabels[label] = predecessorLabel;
+        }
+    }
+
+    /**
+     * Packs the label of a predecessor vertex and the index of the edge from it to its successor into a single integer.
+     *
+     * @param label     The label of the predecessor.
+     * @param edgeIndex The index of the edge among the outgoing edges of the predecessor.
+     * @return The packed predecessor label, which is never equal to {@code -1} for graphs with fewer than {@link #PREDECESSOR_LABEL_MASK} vertices.
+     * @throws IllegalStateException If the edge index does not fit in the packed label.
+     */
+    public static int packPredecessorLabel(final int label, final int edgeIndex) {
+        if (edgeIndex > MAX_EDGE_INDEX) {
+            throw new IllegalStateException("The out-degree of vertex " + label + " exceeds " + (MAX_EDGE_INDEX + 1) + ".");
+        }
+        return edgeIndex << PREDECESSOR_LABEL_BITS | label;
+    }
+
+    public static int unpackLabel(final int predecessorLabel) {
+        return predecessorLabel & PREDECESSOR_LABEL_MASK;
+    }
+
+    public static int unpackEdgeIndex(final int predecessorLabel) {
+        return predecessorLabel >>> PREDECESSOR_LABEL_BITS;
+    }
+
+    /**
+     * Builds the route to a reached vertex by following the predecessor of each vertex, starting from the vertex itself, until one without a predecessor (i.e., whose predecessor label is {@code -1}) is found.
+     * <p>
+     * The predecessors are followed twice; first to count the route endpoints and sum the route length and travel time along the edges recorded in the packed predecessor labels, and then to fill in the route itself from the target backwards.
+     *
+     * @param graph       The graph.
+     * @param targetLabel The label of the vertex.
+     * @return The route.
+     */
+    public Path toPath(final DeserializedGraph graph, final int targetLabel) {
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        int numEndpoints = 1;
+        int length = 0;
+        int travelTime = 0;
+        for (int predecessorLabel = predecessorLabels[targetLabel]; predecessorLabel != -1; predecessorLabel = predecessorLabels[unpackLabel(predecessorLabel)]) {
+            graph.vertices(vertex, unpackLabel(predecessorLabel)).outgoingEdges(edge, unpackEdgeIndex(predecessorLabel));
+            length += edge.length();
+            travelTime += edge.travelTime();
+            numEndpoints++;
+        }
+        final int[] labels = new int[numEndpoints];
+        final float[] coordinates = new float[2 * numEndpoints];
+        int label = targetLabel;
+        for (int i = numEndpoints - 1; i >= 0; i--) {
+            graph.vertices(vertex, label);
+            labels[i] = label;
+            coordinates[2 * i] = vertex.lat();
+            coordinates[2 * i + 1] = vertex.lon();
+            label = unpackLabel(predecessorLabels[label]);
+        }
+        return new Path(labels, coordinates, length, travelTime);
+    }
+
+    public int getNumVertices() {
+        return costs.length;
+    }
+
+    public boolean keepsOtherCosts() {
+        return otherCosts != null;
+    }
+
+    public boolean keepsPredecessorLabels() {
+        return predecessorLabels != null;
+    }
+}
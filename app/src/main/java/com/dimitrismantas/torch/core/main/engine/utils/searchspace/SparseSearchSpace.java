@@ -0,0 +1,182 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.engine.utils.searchspace;
+
+import java.util.Arrays;
+
+/**
+ * The state of a single search which is expected to reach only a small part of the graph, i.e., the cost from the search origin to every vertex reached so far and its predecessor.
+ * <p>
+ * Unlike a {@link SearchSpace}, whose memory footprint is proportional to the number of vertices of the graph, the state is kept in an open-addressing hash table, which only takes up space for the vertices actually reached. The table grows as needed, and shrinks back once a search reaches far fewer vertices than it can hold, so that a single large search does not hold on to memory for long. This class is not thread-safe; every thread must use its own search space.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class SparseSearchSpace {
+    /**
+     * The default initial number of slots.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 10;
+    private final int minCapacity;
+    /**
+     * The label of the vertex in every slot, plus one, so that empty slots are zero.
+     */
+    private int[] keys;
+    private int[] costs;
+    private int[] predecessorLabels;
+    private int size;
+
+    public SparseSearchSpace() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Instantiates this class.
+     *
+     * @param minCapacity The initial number of slots, below which the table never shrinks. This must be a power of two.
+     */
+    public SparseSearchSpace(final int minCapacity) {
+        if (minCapacity < 2 || Integer.bitCount(minCapacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two greater than one.");
+        }
+        this.minCapacity = minCapacity;
+        allocate(minCapacity);
+    }
+
+    /**
+     * Forgets every vertex reached so far.
+     */
+    public void clear() {
+        // The table is kept at least a quarter full, unless it is already at its minimum capacity.
+        if (keys.length > minCapacity && 4 * size < keys.length) {
+            allocate(Math.max(minCapacity, Integer.highestOneBit(Math.max(1, size)) << 2));
+        } else {
+            Arrays.fill(keys, 0);
+        }
+        size = 0;
+    }
+
+    public boolean isReached(final int label) {
+        return indexOf(label) != -1;
+    }
+
+    /**
+     * Returns the cost of a vertex.
+     *
+     * @param label The label of the vertex.
+     * @return The cost, or {@link SearchSpace#INFINITY} if the vertex has not been reached.
+     */
+    public int getCost(final int label) {
+        final int slot = indexOf(label);
+        return slot == -1 ? SearchSpace.INFINITY : costs[slot];
+    }
+
+    /**
+     * Returns the predecessor of a reached vertex.
+     *
+     * @param label The label of the vertex.
+     * @return The (packed) label of the predecessor.
+     */
+    public int getPredecessorLabel(final int label) {
+        return predecessorLabels[indexOf(label)];
+    }
+
+    /**
+     * Reaches a vertex, or updates its state if it has already been reached.
+     *
+     * @param label            The label of the vertex.
+     * @param cost             The cost of the vertex.
+     * @param predecessorLabel The (packed) label of the predecessor of the vertex.
+     */
+    public void reach(final int label, final int cost, final int predecessorLabel) {
+        int slot = indexOf(label);
+        if (slot == -1) {
+            // The table is kept at most half full, so that probe sequences stay short.
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            slot = findEmptySlot(keys, label);
+            keys[slot] = label + 1;
+            size++;
+        }
+        costs[slot] = cost;
+        predecessorLabels[slot] = predecessorLabel;
+    }
+
+    /**
+     * Returns the number of vertices reached so far.
+     *
+     * @return The number of vertices.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void allocate(final int capacity) {
+        keys = new int[capacity];
+        costs = new int[capacity];
+        predecessorLabels = new int[capacity];
+    }
+
+    /**
+     * Returns the slot of a vertex.
+     *
+     * @return The slot, or {@code -1} if the vertex has not been reached.
+     */
+    private int indexOf(final int label) {
+        final int mask = keys.length - 1;
+        for (int slot = hash(label) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == label + 1) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void grow() {
+        final int[] oldKeys = keys;
+        final int[] oldCosts = costs;
+        final int[] oldPredecessorLabels = predecessorLabels;
+        allocate(2 * oldKeys.length);
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldKeys[oldSlot] == 0) {
+                continue;
+            }
+            final int slot = findEmptySlot(keys, oldKeys[oldSlot] - 1);
+            keys[slot] = oldKeys[oldSlot];
+            costs[slot] = oldCosts[oldSlot];
+            predecessorLabels[slot] = oldPredecessorLabels[oldSlot];
+        }
+    }
+
+    private static int findEmptySlot(final int[] keys, final int label) {
+        final int mask = keys.length - 1;
+        int slot = hash(label) & mask;
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(final int label) {
+        final int h = label * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+}
@@ -50,17 +50,37 @@ public final class NearestNeighborSearch {
      */
     @WGS84
     public DeserializedVertex run(final double lat, final double lon) {
+        return run(lat, lon, new double[2]);
+    }
+
+    /**
+     * Finds the nearest neighbor to a given point on the surface of the Earth, along with its distance from the point, and that of the second nearest neighbor.
+     *
+     * @param lat       The latitude of the point to be used during the search, in decimal degrees.
+     * @param lon       The longitude of the point to be used during the search, in decimal degrees.
+     * @param distances The array to store the distances from the point to its nearest and second nearest neighbors in, in meters. The latter is infinite if the graph contains a single vertex.
+     * @return The nearest neighbor to this point.
+     * @since 1.1.0
+     */
+    @WGS84
+    public DeserializedVertex run(final double lat, final double lon, final double[] distances) {
         // This is equivalent to setting match equal to null, since graph.vertices(-1) will throw a NullPointerException.
         int matchIndex = -1;
         double minDistance = Double.POSITIVE_INFINITY;
+        double secondMinDistance = Double.POSITIVE_INFINITY;
         for (int i = 0; i < graph.verticesLength(); i++) {
             final DeserializedVertex matchCandidate = graph.vertices(i);
             final double currentDistance = HaversineFormula.run(lat, lon, matchCandidate.lat(), matchCandidate.lon());
             if (minDistance > currentDistance) {
+                secondMinDistance = minDistance;
                 minDistance = currentDistance;
                 matchIndex = i;
+            } else if (secondMinDistance > currentDistance) {
+                secondMinDistance = currentDistance;
             }
         }
+        distances[0] = minDistance;
+        distances[1] = secondMinDistance;
         return graph.vertices(matchIndex);
     }
 
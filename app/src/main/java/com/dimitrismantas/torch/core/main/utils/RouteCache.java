@@ -0,0 +1,261 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.utils;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.AStar;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of optimal routes.
+ * <p>
+ * Routes are keyed by their source and target vertices, the optimization mode used to find them, and the version of the graph they were found on. They are stored in their compact form, and the least recently used ones are evicted once their estimated total size exceeds the capacity of the cache. This class is thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class RouteCache {
+    /**
+     * The default capacity of the cache, in bytes.
+     */
+    public static final long DEFAULT_CAPACITY = 4 * 1024 * 1024;
+    /**
+     * The estimated size of an entry, in bytes, excluding the label and coordinate arrays of its route.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+    /**
+     * The capacity of the cache, in bytes.
+     */
+    private final long capacity;
+    private final LinkedHashMap<Key, Path> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The version of the graph routes are currently being found on.
+     */
+    private long graphVersion;
+    /**
+     * The estimated total size of the cached routes, in bytes.
+     */
+    private long size;
+    private long numHits;
+    private long numMisses;
+    private long numEvictions;
+
+    public RouteCache(final long graphVersion) {
+        this(graphVersion, DEFAULT_CAPACITY);
+    }
+
+    public RouteCache(final long graphVersion, final long capacity) {
+        this.graphVersion = graphVersion;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cached optimal route between two vertices.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @return The route, or {@code null} if it has not been cached.
+     */
+    public Path get(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode) {
+        return get(source, target, optimizationMode, 0);
+    }
+
+    /**
+     * Returns the cached optimal route between two vertices under a given version of an overlay.
+     *
+     * @param source           The source vertex.
+     * @param target           The target vertex.
+     * @param optimizationMode The optimization mode.
+     * @param overlayVersion   The version of the overlay.
+     * @return The route, or {@code null} if it has not been cached.
+     * @see com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay
+     */
+    public synchronized Path get(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final long overlayVersion) {
+        final Path route = entries.get(new Key(source.lbl(), target.lbl(), optimizationMode, graphVersion, overlayVersion));
+        if (route == null) {
+            numMisses++;
+        } else {
+            numHits++;
+        }
+        return route;
+    }
+
+    /**
+     * Caches an optimal route.
+     *
+     * @param route            The route.
+     * @param optimizationMode The optimization mode used to find the route.
+     */
+    public void put(final Path route, final AStar.OptimizationMode optimizationMode) {
+        put(route, optimizationMode, 0);
+    }
+
+    /**
+     * Caches an optimal route found under a given version of an overlay.
+     * <p>
+     * Routes found under other versions are never returned, and are eventually evicted.
+     *
+     * @param route            The route.
+     * @param optimizationMode The optimization mode used to find the route.
+     * @param overlayVersion   The version of the overlay.
+     */
+    public synchronized void put(final Path route, final AStar.OptimizationMode optimizationMode, final long overlayVersion) {
+        // Routes larger than the cache itself would evict everything else only to be evicted next.
+        if (sizeOf(route) > capacity) {
+            return;
+        }
+        final Path previousRoute = entries.put(new Key(route.getSourceLabel(), route.getTargetLabel(), optimizationMode, graphVersion, overlayVersion), route);
+        if (previousRoute != null) {
+            size -= sizeOf(previousRoute);
+        }
+        size += sizeOf(route);
+        final Iterator<Path> iterator = entries.values().iterator();
+        while (size > capacity) {
+            size -= sizeOf(iterator.next());
+            iterator.remove();
+            numEvictions++;
+        }
+    }
+
+    /**
+     * Sets the version of the graph routes are found on, and evicts every route found on a different version.
+     * <p>
+     * This must be called whenever the cost of any edge changes.
+     *
+     * @param graphVersion The version of the graph.
+     */
+    public synchronized void setGraphVersion(final long graphVersion) {
+        if (this.graphVersion == graphVersion) {
+            return;
+        }
+        this.graphVersion = graphVersion;
+        final Iterator<Map.Entry<Key, Path>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Key, Path> entry = iterator.next();
+            if (entry.getKey().graphVersion != graphVersion) {
+                size -= sizeOf(entry.getValue());
+                iterator.remove();
+                numEvictions++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized long getGraphVersion() {
+        return graphVersion;
+    }
+
+    public synchronized int getNumEntries() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the estimated total size of the cached routes.
+     *
+     * @return The size, in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getNumHits() {
+        return numHits;
+    }
+
+    public synchronized long getNumMisses() {
+        return numMisses;
+    }
+
+    public synchronized long getNumEvictions() {
+        return numEvictions;
+    }
+
+    /**
+     * Returns the fraction of lookups served by the cache.
+     *
+     * @return The hit rate, or zero if no lookups have been made.
+     */
+    public synchronized double getHitRate() {
+        final long numLookups = numHits + numMisses;
+        return numLookups == 0 ? 0 : (double) numHits / numLookups;
+    }
+
+    /**
+     * Estimates the size of a route, i.e., the size of its label and coordinate arrays, plus that of its cache entry.
+     *
+     * @param route The route.
+     * @return The size, in bytes.
+     */
+    private static long sizeOf(final Path route) {
+        return ENTRY_OVERHEAD + 12L * route.getNumEndpoints();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("RouteCache{entries=%d, size=%d, hits=%d, misses=%d, evictions=%d}", entries.size(), size, numHits, numMisses, numEvictions);
+    }
+
+    private static final class Key {
+        private final int sourceLabel;
+        private final int targetLabel;
+        private final AStar.OptimizationMode optimizationMode;
+        private final long graphVersion;
+        private final long overlayVersion;
+
+        private Key(final int sourceLabel, final int targetLabel, final AStar.OptimizationMode optimizationMode, final long graphVersion, final long overlayVersion) {
+            this.sourceLabel = sourceLabel;
+            this.targetLabel = targetLabel;
+            this.optimizationMode = optimizationMode;
+            this.graphVersion = graphVersion;
+            this.overlayVersion = overlayVersion;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return sourceLabel == key.sourceLabel && targetLabel == key.targetLabel && optimizationMode == key.optimizationMode && graphVersion == key.graphVersion && overlayVersion == key.overlayVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sourceLabel;
+            result = 31 * result + targetLabel;
+            result = 31 * result + optimizationMode.hashCode();
+            result = 31 * result + Long.hashCode(graphVersion);
+            result = 31 * result + Long.hashCode(overlayVersion);
+            return result;
+        }
+    }
+}
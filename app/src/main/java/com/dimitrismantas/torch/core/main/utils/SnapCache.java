@@ -0,0 +1,154 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.utils;
+
+import com.dimitrismantas.torch.core.math.HaversineFormula;
+import com.dimitrismantas.torch.core.utils.annotations.WGS84;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of nearest neighbors, placed in front of a nearest neighbor search.
+ * <p>
+ * Points are quantized to the cells of a regular latitude-longitude grid. The nearest neighbor of the first point snapped within a cell is cached for the whole cell, but only if it is provably the nearest neighbor of every other point in it too. By the triangle inequality, this is the case if its distance from the first point, plus twice the diagonal of the cell, is less than the distance from the first point to its second nearest neighbor. Cells failing this check are never cached, so that this class always returns the same vertex as the search itself. This class is thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see NearestNeighborSearch
+ * @since 1.1.0
+ */
+public final class SnapCache {
+    /**
+     * The default size of the grid cells, in decimal degrees. This is roughly equal to ten meters.
+     */
+    public static final double DEFAULT_CELL_SIZE = 1e-4;
+    /**
+     * The default maximum number of cached cells.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    private final DeserializedGraph graph;
+    private final NearestNeighborSearch nearestNeighborSearch;
+    /**
+     * The size of the grid cells, in decimal degrees.
+     */
+    private final double cellSize;
+    /**
+     * The maximum number of cached cells. If this is equal to zero, every point is snapped by the search itself.
+     */
+    private final int capacity;
+    /**
+     * The labels of the cached nearest neighbors, keyed by the indices of their cells.
+     */
+    private final LinkedHashMap<Long, Integer> labels;
+    private long numHits;
+    private long numMisses;
+
+    public SnapCache(final DeserializedGraph graph, final NearestNeighborSearch nearestNeighborSearch) {
+        this(graph, nearestNeighborSearch, DEFAULT_CELL_SIZE, DEFAULT_CAPACITY);
+    }
+
+    public SnapCache(final DeserializedGraph graph, final NearestNeighborSearch nearestNeighborSearch, final double cellSize, final int capacity) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("The cell size must be positive.");
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity must not be negative.");
+        }
+        this.graph = graph;
+        this.nearestNeighborSearch = nearestNeighborSearch;
+        this.cellSize = cellSize;
+        this.capacity = capacity;
+        this.labels = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Integer> eldest) {
+                return size() > SnapCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Finds the nearest neighbor to a given point on the surface of the Earth.
+     *
+     * @param lat The latitude of the point, in decimal degrees.
+     * @param lon The longitude of the point, in decimal degrees.
+     * @return The nearest neighbor to this point.
+     */
+    @WGS84
+    public DeserializedVertex run(final double lat, final double lon) {
+        if (capacity == 0) {
+            return nearestNeighborSearch.run(lat, lon);
+        }
+        final long latIndex = (long) Math.floor(lat / cellSize);
+        final long lonIndex = (long) Math.floor(lon / cellSize);
+        // The indices are well within 32 bits for any valid point and cell size larger than a millionth of a degree.
+        final Long key = (latIndex << 32) | (lonIndex & 0xFFFFFFFFL);
+        synchronized (this) {
+            final Integer label = labels.get(key);
+            if (label != null) {
+                numHits++;
+                return graph.vertices(label);
+            }
+            numMisses++;
+        }
+        // The search is run outside the lock, so that it does not block lookups from other threads.
+        final double[] distances = new double[2];
+        final DeserializedVertex nearestNeighbor = nearestNeighborSearch.run(lat, lon, distances);
+        final double cellDiagonal = HaversineFormula.run(latIndex * cellSize, lonIndex * cellSize, (latIndex + 1) * cellSize, (lonIndex + 1) * cellSize);
+        if (distances[0] + 2 * cellDiagonal < distances[1]) {
+            synchronized (this) {
+                labels.put(key, nearestNeighbor.lbl());
+            }
+        }
+        return nearestNeighbor;
+    }
+
+    public synchronized void clear() {
+        labels.clear();
+    }
+
+    public synchronized int getNumEntries() {
+        return labels.size();
+    }
+
+    public synchronized long getNumHits() {
+        return numHits;
+    }
+
+    public synchronized long getNumMisses() {
+        return numMisses;
+    }
+
+    /**
+     * Returns the fraction of points snapped using the cache.
+     *
+     * @return The hit rate, or zero if no points have been snapped.
+     */
+    public synchronized double getHitRate() {
+        final long numLookups = numHits + numMisses;
+        return numLookups == 0 ? 0 : (double) numHits / numLookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SnapCache{entries=%d, hits=%d, misses=%d}", labels.size(), numHits, numMisses);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.main.utils;
+
+/**
+ * A heuristic for the order in which to visit a number of stops between a fixed first and last one, which minimizes the total cost of the route through all of them (i.e., an open, asymmetric variant of the travelling salesman problem).
+ * <p>
+ * An initial order is built by nearest insertion; the stop closest to any stop already in the order is inserted where it increases the total cost the least, until every stop has been inserted. The order is then improved by local search, until no move improves it any further:
+ * <ul>
+ *     <li>2-opt, which reverses a run of consecutive stops.</li>
+ *     <li>Or-opt, which moves a run of up to {@link #MAX_OR_OPT_RUN_LENGTH} consecutive stops elsewhere, without reversing it.</li>
+ * </ul>
+ * Since costs need not be symmetric, reversing a run changes its own cost too. The cost of every run in either direction is read off prefix sums along the current order, so that every move is evaluated in constant time, and a pass over all moves takes time quadratic in the number of stops. This keeps the ordering fast for dozens of stops, even though the result is not necessarily optimal.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class WaypointOrdering {
+    /**
+     * The maximum number of consecutive stops moved by a single Or-opt move.
+     */
+    public static final int MAX_OR_OPT_RUN_LENGTH = 3;
+    /**
+     * The maximum number of improving moves, which bounds the running time of the local search in the presence of many tiny improvements.
+     */
+    private static final int MAX_NUM_MOVES = 1 << 12;
+    /**
+     * The cost of travelling between two stops, the second of which is unreachable from the first.
+     */
+    private static final long UNREACHABLE_COST = Integer.MAX_VALUE;
+
+    // This class is static.
+    private WaypointOrdering() {
+    }
+
+    /**
+     * Finds the order in which to visit a number of stops.
+     *
+     * @param costs    The cost of travelling from every stop to every other, in row-major order (i.e., the cost from the {@code i}-th stop to the {@code j}-th one is at index {@code i * numStops + j}). Negative costs denote unreachable stops.
+     * @param numStops The number of stops, including the first and last one.
+     * @return The indices of the stops in the order they are to be visited, which always starts with the first stop and ends with the last one.
+     */
+    public static int[] run(final int[] costs, final int numStops) {
+        if (numStops < 2) {
+            throw new IllegalArgumentException("There must be at least two stops.");
+        }
+        if (costs.length != numStops * numStops) {
+            throw new IllegalArgumentException("There must be exactly one cost for every pair of stops.");
+        }
+        final int[] order = insertNearest(costs, numStops);
+        // The prefix sums of the costs along the order, and against it.
+        final long[] forwardCosts = new long[numStops];
+        final long[] backwardCosts = new long[numStops];
+        for (int numMoves = 0; numMoves < MAX_NUM_MOVES; numMoves++) {
+            for (int i = 1; i < numStops; i++) {
+                forwardCosts[i] = forwardCosts[i - 1] + getCost(costs, numStops, order[i - 1], order[i]);
+                backwardCosts[i] = backwardCosts[i - 1] + getCost(costs, numStops, order[i], order[i - 1]);
+            }
+            if (!applyTwoOptMove(costs, numStops, order, forwardCosts, backwardCosts) && !applyOrOptMove(costs, numStops, order, forwardCosts)) {
+                break;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Builds an order by nearest insertion.
+     */
+    private static int[] insertNearest(final int[] costs, final int numStops) {
+        final int[] order = new int[numStops];
+        order[0] = 0;
+        order[1] = numStops - 1;
+        int size = 2;
+        // The cost between every stop not yet inserted and the closest one already inserted, in either direction.
+        final long[] minCosts = new long[numStops];
+        final boolean[] isInserted = new boolean[numStops];
+        isInserted[0] = true;
+        isInserted[numStops - 1] = true;
+        for (int u = 1; u < numStops - 1; u++) {
+            minCosts[u] = Math.min(getCost(costs, numStops, 0, u), Math.min(getCost(costs, numStops, u, numStops - 1), getCost(costs, numStops, numStops - 1, u)));
+        }
+        while (size < numStops) {
+            int nearest = -1;
+            for (int u = 1; u < numStops - 1; u++) {
+                if (!isInserted[u] && (nearest == -1 || minCosts[u] < minCosts[nearest])) {
+                    nearest = u;
+                }
+            }
+            int bestPosition = 1;
+            long bestIncrease = Long.MAX_VALUE;
+            for (int p = 1; p < size; p++) {
+                final long increase = getCost(costs, numStops, order[p - 1], nearest) + getCost(costs, numStops, nearest, order[p]) - getCost(costs, numStops, order[p - 1], order[p]);
+                if (increase < bestIncrease) {
+                    bestIncrease = increase;
+                    bestPosition = p;
+                }
+            }
+            System.arraycopy(order, bestPosition, order, bestPosition + 1, size - bestPosition);
+            order[bestPosition] = nearest;
+            size++;
+            isInserted[nearest] = true;
+            for (int u = 1; u < numStops - 1; u++) {
+                if (!isInserted[u]) {
+                    minCosts[u] = Math.min(minCosts[u], Math.min(getCost(costs, numStops, nearest, u), getCost(costs, numStops, u, nearest)));
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Applies the first 2-opt move found to improve an order, if any.
+     *
+     * @return Whether a move was applied.
+     */
+    private static boolean applyTwoOptMove(final int[] costs, final int numStops, final int[] order, final long[] forwardCosts, final long[] backwardCosts) {
+        for (int i = 1; i < numStops - 2; i++) {
+            for (int j = i + 1; j < numStops - 1; j++) {
+                // The run from the i-th to the j-th stop is traversed backwards.
+                final long oldCost = getCost(costs, numStops, order[i - 1], order[i]) + forwardCosts[j] - forwardCosts[i] + getCost(costs, numStops, order[j], order[j + 1]);
+                final long newCost = getCost(costs, numStops, order[i - 1], order[j]) + backwardCosts[j] - backwardCosts[i] + getCost(costs, numStops, order[i], order[j + 1]);
+                if (newCost < oldCost) {
+                    for (int l = i, r = j; l < r; l++, r--) {
+                        final int stop = order[l];
+                        order[l] = order[r];
+                        order[r] = stop;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Applies the first Or-opt move found to improve an order, if any.
+     *
+     * @return Whether a move was applied.
+     */
+    private static boolean applyOrOptMove(final int[] costs, final int numStops, final int[] order, final long[] forwardCosts) {
+        for (int runLength = 1; runLength <= MAX_OR_OPT_RUN_LENGTH; runLength++) {
+            for (int i = 1; i + runLength < numStops; i++) {
+                final int j = i + runLength - 1;
+                final int first = order[i];
+                final int last = order[j];
+                final long removalGain = getCost(costs, numStops, order[i - 1], first) + getCost(costs, numStops, last, order[j + 1]) - getCost(costs, numStops, order[i - 1], order[j + 1]);
+                // The run is inserted between the (p - 1)-th and p-th stops.
+                for (int p = 1; p < numStops; p++) {
+                    if (p >= i && p <= j + 1) {
+                        continue;
+                    }
+                    final long insertionCost = getCost(costs, numStops, order[p - 1], first) + getCost(costs, numStops, last, order[p]) - (forwardCosts[p] - forwardCosts[p - 1]);
+                    if (insertionCost < removalGain) {
+                        moveRun(order, i, runLength, p);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves a run of consecutive stops so that it ends up between two others.
+     */
+    private static void moveRun(final int[] order, final int start, final int runLength, final int position) {
+        final int[] run = new int[runLength];
+        System.arraycopy(order, start, run, 0, runLength);
+        if (position < start) {
+            System.arraycopy(order, position, order, position + runLength, start - position);
+            System.arraycopy(run, 0, order, position, runLength);
+        } else {
+            System.arraycopy(order, start + runLength, order, start, position - start - runLength);
+            System.arraycopy(run, 0, order, position - runLength, runLength);
+        }
+    }
+
+    private static long getCost(final int[] costs, final int numStops, final int from, final int to) {
+        final int cost = costs[from * numStops + to];
+        return cost < 0 ? UNREACHABLE_COST : cost;
+    }
+}
@@ -26,6 +26,7 @@ import com.dimitrismantas.torch.utils.data.FileManager;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
@@ -53,6 +54,24 @@ public class DeserializationManager {
         return DeserializedGraph.getRootAsDeserializedGraph(bb);
     }
 
+    /**
+     * Returns the absolute position of a given vertex in the buffer backing the graph.
+     *
+     * @param graph The graph.
+     * @param label The label of the vertex.
+     * @return The position of the vertex table in the buffer.
+     * @implNote The generated accessors do not expose this position, so it is computed by following the same offsets they do.
+     */
+    public static int getVertexPosition(final DeserializedGraph graph, final int label) {
+        final ByteBuffer bb = graph.getByteBuffer();
+        final int root = bb.position() + bb.getInt(bb.position());
+        final int vtable = root - bb.getInt(root);
+        // The vertex vector is the first field of the graph table.
+        final int field = root + bb.getShort(vtable + 4);
+        final int element = field + bb.getInt(field) + 4 + 4 * label;
+        return element + bb.getInt(element);
+    }
+
     /**
      * Determines if two given vertices are equal to each other.
      *
@@ -0,0 +1,156 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.utils.serialization;
+
+import com.dimitrismantas.torch.core.main.utils.NearestNeighborSearch;
+import com.dimitrismantas.torch.core.math.HaversineFormula;
+import com.dimitrismantas.torch.core.utils.annotations.WGS84;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * A task touching every page of the mapped graph sequentially, so that the first routing queries do not have to fault them in one at a time.
+ * <p>
+ * If a viewport is specified, the vertices inside its bounds and their outgoing edges are touched first.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @since 1.1.0
+ */
+public final class GraphPrewarmer implements Runnable {
+    /**
+     * The smallest page size supported by Android, in bytes.
+     */
+    private static final int PAGE_SIZE = 4096;
+    /**
+     * The latitude and longitude of the point the vertices of the graph are sorted by distance from.
+     *
+     * @see NearestNeighborSearch#run1(double, double)
+     */
+    @WGS84
+    private static final double[] SORTING_REFERENCE_POINT = {36.4025066, 20.0121613};
+    private final DeserializedGraph graph;
+    @WGS84
+    private final double[] viewport;
+    /**
+     * Prevents the page reads from being optimized away.
+     */
+    private volatile int sink;
+
+    /**
+     * Instantiates this class.
+     *
+     * @param graph    The graph to prewarm.
+     * @param viewport The minimum latitude, minimum longitude, maximum latitude and maximum longitude of the viewport to prioritize, or {@code null}.
+     */
+    public GraphPrewarmer(final DeserializedGraph graph, final double[] viewport) {
+        this.graph = graph;
+        this.viewport = viewport;
+    }
+
+    @Override
+    public void run() {
+        final ByteBuffer bb = graph.getByteBuffer();
+        if (viewport != null && !touchViewport(bb)) {
+            return;
+        }
+        if (bb instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) bb).load();
+        } else {
+            touch(bb, 0, bb.capacity());
+        }
+    }
+
+    /**
+     * Reads a single byte from every page overlapping a given region of a buffer.
+     *
+     * @return {@code false} if the current thread has been interrupted; {@code true} otherwise.
+     */
+    private boolean touch(final ByteBuffer bb, final int from, final int to) {
+        int checksum = 0;
+        for (int position = from; position < to; position = (position / PAGE_SIZE + 1) * PAGE_SIZE) {
+            checksum += bb.get(position);
+            // Check for an interrupt once every 256 pages (i.e., 1 MB).
+            if ((position / PAGE_SIZE & 0xFF) == 0 && Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        sink = checksum;
+        return true;
+    }
+
+    /**
+     * Touches the vertices inside the viewport, as well as their outgoing edges.
+     * <p>
+     * Only the vertices whose distance from {@link #SORTING_REFERENCE_POINT} lies between those of the nearest and farthest points of the viewport can be inside it, so only these are checked against its bounds. This relies on the vertices being sorted by distance from that point, just like {@link NearestNeighborSearch#run1(double, double)}. If they are not, fewer vertices are simply prewarmed first.
+     *
+     * @return {@code false} if the current thread has been interrupted; {@code true} otherwise.
+     */
+    private boolean touchViewport(final ByteBuffer bb) {
+        // The nearest point of the viewport is the reference point itself, clamped to the bounds of the viewport, while the farthest one is always a corner.
+        final double minDistance = HaversineFormula.run(clamp(SORTING_REFERENCE_POINT[0], viewport[0], viewport[2]), clamp(SORTING_REFERENCE_POINT[1], viewport[1], viewport[3]), SORTING_REFERENCE_POINT[0], SORTING_REFERENCE_POINT[1]);
+        double maxDistance = 0.0D;
+        for (int i = 0; i < 4; i += 2) {
+            for (int j = 1; j < 4; j += 2) {
+                maxDistance = Math.max(maxDistance, HaversineFormula.run(viewport[i], viewport[j], SORTING_REFERENCE_POINT[0], SORTING_REFERENCE_POINT[1]));
+            }
+        }
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final int hi = lowerBound(Math.nextUp(maxDistance));
+        for (int i = lowerBound(minDistance); i < hi; i++) {
+            if ((i & 0xFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            graph.vertices(vertex, i);
+            if (vertex.lat() < viewport[0] || vertex.lat() > viewport[2] || vertex.lon() < viewport[1] || vertex.lon() > viewport[3]) {
+                continue;
+            }
+            // Each vertex is preceded by its outgoing edges, and the buffer is built back to front, so these end where the previous vertex begins.
+            final int end = i > 0 ? DeserializationManager.getVertexPosition(graph, i - 1) : bb.capacity();
+            if (!touch(bb, DeserializationManager.getVertexPosition(graph, i), end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double clamp(final double value, final double min, final double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Finds the first vertex whose distance from the reference point is not smaller than a given one.
+     */
+    private int lowerBound(final double distance) {
+        final DeserializedVertex vertex = new DeserializedVertex();
+        int lo = 0;
+        int hi = graph.verticesLength();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            graph.vertices(vertex, mid);
+            if (HaversineFormula.run(vertex.lat(), vertex.lon(), SORTING_REFERENCE_POINT[0], SORTING_REFERENCE_POINT[1]) < distance) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
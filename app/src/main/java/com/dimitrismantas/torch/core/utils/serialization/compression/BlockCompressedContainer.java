@@ -0,0 +1,138 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.utils.serialization.compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A container storing a file as a sequence of independently compressed fixed-size blocks.
+ * <p>
+ * The container starts with a header, which is followed by an index holding the absolute offset of each block, as well as that of the end of the last one. A block whose compressed size is equal to its uncompressed size is stored as is.
+ * <pre>
+ * int     magic
+ * int     version
+ * int     block size
+ * long    uncompressed size
+ * int     number of blocks (n)
+ * long[]  block offsets (n + 1)
+ * byte[]  blocks
+ * </pre>
+ * All values are stored in little-endian byte order, just like the serialized graph itself.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see BlockCompressedReader
+ * @see Lz4BlockCodec
+ * @since 1.1.0
+ */
+public final class BlockCompressedContainer {
+    /**
+     * The default uncompressed size of each block in bytes.
+     * <p>
+     * This value is a compromise between the compression ratio, which improves for larger blocks, and the cost of a cache miss, which grows with them.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    static final int MAGIC = 0x31434254;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+
+    // This class is static.
+    private BlockCompressedContainer() {
+    }
+
+    /**
+     * Compresses a given file into a new container.
+     *
+     * @param in        The file to compress.
+     * @param out       The container to write.
+     * @param blockSize The uncompressed size of each block in bytes.
+     * @throws IOException If either file cannot be accessed.
+     */
+    public static void write(final File in, final File out, final int blockSize) throws IOException {
+        try (final FileChannel inChannel = new RandomAccessFile(in, "r").getChannel(); final FileChannel outChannel = new RandomAccessFile(out, "rw").getChannel()) {
+            outChannel.truncate(0);
+            write(inChannel.map(FileChannel.MapMode.READ_ONLY, 0, inChannel.size()), outChannel, blockSize);
+        }
+    }
+
+    /**
+     * Compresses the remaining contents of a given buffer into a new container.
+     *
+     * @param src       The buffer to compress.
+     * @param out       The channel to write the container to, starting at its current position.
+     * @param blockSize The uncompressed size of each block in bytes.
+     * @throws IOException If the channel cannot be written to.
+     */
+    public static void write(final ByteBuffer src, final FileChannel out, final int blockSize) throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("The block size must be positive.");
+        }
+        final long start = out.position();
+        final long uncompressedLength = src.remaining();
+        final int numBlocks = (int) ((uncompressedLength + blockSize - 1) / blockSize);
+        final long[] offsets = new long[numBlocks + 1];
+        // Reserve the space for the header and index, which can only be written after every block has been compressed.
+        offsets[0] = start + HEADER_SIZE + 8L * (numBlocks + 1);
+        out.position(offsets[0]);
+        final byte[] block = new byte[blockSize];
+        final byte[] compressedBlock = new byte[Lz4BlockCodec.maxCompressedLength(blockSize)];
+        for (int i = 0; i < numBlocks; i++) {
+            final int length = Math.min(blockSize, src.remaining());
+            src.get(block, 0, length);
+            final int compressedLength = Lz4BlockCodec.compress(block, 0, length, compressedBlock, 0);
+            if (compressedLength < length) {
+                writeFully(out, ByteBuffer.wrap(compressedBlock, 0, compressedLength));
+                offsets[i + 1] = offsets[i] + compressedLength;
+            } else {
+                writeFully(out, ByteBuffer.wrap(block, 0, length));
+                offsets[i + 1] = offsets[i] + length;
+            }
+        }
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 8 * (numBlocks + 1)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(blockSize).putLong(uncompressedLength).putInt(numBlocks);
+        for (final long offset : offsets) {
+            header.putLong(offset);
+        }
+        header.flip();
+        out.position(start);
+        writeFully(out, header);
+        out.position(offsets[numBlocks]);
+    }
+
+    /**
+     * Determines if a given buffer starts with a container header.
+     *
+     * @param header The buffer, whose first four bytes (starting at its current position) are examined.
+     * @return {@code true} if the buffer starts with a container header; {@code false} otherwise.
+     */
+    public static boolean isContainer(final ByteBuffer header) {
+        return header.remaining() >= 4 && header.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+    }
+
+    private static void writeFully(final FileChannel out, final ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            out.write(src);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.utils.serialization.compression;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A random-access reader of a block-compressed container, which decompresses blocks on demand and keeps the most recently used ones in memory.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see BlockCompressedContainer
+ * @since 1.1.0
+ */
+public final class BlockCompressedReader implements Closeable {
+    /**
+     * The default number of decompressed blocks kept in memory.
+     */
+    public static final int DEFAULT_CACHE_CAPACITY = 64;
+    private final FileChannel channel;
+    private final int blockSize;
+    private final long length;
+    private final long[] offsets;
+    /**
+     * The decompressed blocks, ordered from the least to the most recently used.
+     */
+    private final Map<Integer, byte[]> cache;
+    private final byte[] compressedBlock;
+
+    public BlockCompressedReader(final File container) throws IOException {
+        this(container, DEFAULT_CACHE_CAPACITY);
+    }
+
+    public BlockCompressedReader(final File container, final int cacheCapacity) throws IOException {
+        this.channel = new RandomAccessFile(container, "r").getChannel();
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(BlockCompressedContainer.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            header.flip();
+            if (header.getInt() != BlockCompressedContainer.MAGIC || header.getInt() != BlockCompressedContainer.VERSION) {
+                throw new IOException("The file is not a supported block-compressed container.");
+            }
+            this.blockSize = header.getInt();
+            this.length = header.getLong();
+            final int numBlocks = header.getInt();
+            final ByteBuffer index = ByteBuffer.allocate(8 * (numBlocks + 1)).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(index, BlockCompressedContainer.HEADER_SIZE);
+            index.flip();
+            this.offsets = new long[numBlocks + 1];
+            for (int i = 0; i <= numBlocks; i++) {
+                offsets[i] = index.getLong();
+            }
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.compressedBlock = new byte[Lz4BlockCodec.maxCompressedLength(blockSize)];
+        this.cache = new LinkedHashMap<Integer, byte[]>(cacheCapacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, byte[]> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the uncompressed size of the container contents.
+     *
+     * @return The uncompressed size in bytes.
+     */
+    public long length() {
+        return length;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getNumBlocks() {
+        return offsets.length - 1;
+    }
+
+    public byte get(final long position) throws IOException {
+        return block((int) (position / blockSize))[(int) (position % blockSize)];
+    }
+
+    public short getShort(final long position) throws IOException {
+        return (short) (get(position) & 0xFF | (get(position + 1) & 0xFF) << 8);
+    }
+
+    public int getInt(final long position) throws IOException {
+        final int offset = (int) (position % blockSize);
+        if (offset + 4 <= blockSize) {
+            final byte[] block = block((int) (position / blockSize));
+            return (block[offset] & 0xFF) | (block[offset + 1] & 0xFF) << 8 | (block[offset + 2] & 0xFF) << 16 | (block[offset + 3] & 0xFF) << 24;
+        }
+        // The value spans two consecutive blocks.
+        return (get(position) & 0xFF) | (get(position + 1) & 0xFF) << 8 | (get(position + 2) & 0xFF) << 16 | (get(position + 3) & 0xFF) << 24;
+    }
+
+    public float getFloat(final long position) throws IOException {
+        return Float.intBitsToFloat(getInt(position));
+    }
+
+    /**
+     * Reads a given number of uncompressed bytes into an array.
+     *
+     * @param position The position of the first byte to read.
+     * @param dst      The array to write the bytes to.
+     * @param dstOff   The offset at which to start writing.
+     * @param len      The number of bytes to read.
+     * @throws IOException If the container cannot be read.
+     */
+    public void read(long position, final byte[] dst, int dstOff, int len) throws IOException {
+        while (len > 0) {
+            final int offset = (int) (position % blockSize);
+            final int n = Math.min(len, blockSize - offset);
+            System.arraycopy(block((int) (position / blockSize)), offset, dst, dstOff, n);
+            position += n;
+            dstOff += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Decompresses the entire container sequentially to a given channel.
+     * <p>
+     * The decompressed blocks bypass the cache, so that its contents are not evicted.
+     *
+     * @param out The channel to write the uncompressed contents to.
+     * @throws IOException If either channel cannot be accessed.
+     */
+    public void decompressTo(final WritableByteChannel out) throws IOException {
+        final byte[] block = new byte[blockSize];
+        for (int i = 0; i < getNumBlocks(); i++) {
+            final int uncompressedLength = decompress(i, block);
+            final ByteBuffer src = ByteBuffer.wrap(block, 0, uncompressedLength);
+            while (src.hasRemaining()) {
+                out.write(src);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private synchronized byte[] block(final int i) throws IOException {
+        byte[] block = cache.get(i);
+        if (block == null) {
+            block = new byte[blockSize];
+            decompress(i, block);
+            cache.put(i, block);
+        }
+        return block;
+    }
+
+    private synchronized int decompress(final int i, final byte[] dst) throws IOException {
+        if (i < 0 || i >= getNumBlocks()) {
+            throw new IndexOutOfBoundsException("The position is out of bounds.");
+        }
+        final int uncompressedLength = (int) Math.min(blockSize, length - (long) i * blockSize);
+        final int compressedLength = (int) (offsets[i + 1] - offsets[i]);
+        if (compressedLength == uncompressedLength) {
+            // This block has been stored as is.
+            readFully(ByteBuffer.wrap(dst, 0, uncompressedLength), offsets[i]);
+        } else {
+            readFully(ByteBuffer.wrap(compressedBlock, 0, compressedLength), offsets[i]);
+            try {
+                Lz4BlockCodec.decompress(compressedBlock, 0, compressedLength, dst, 0, uncompressedLength);
+            } catch (final IllegalArgumentException e) {
+                throw new IOException(String.format("Block No.%d is corrupt.", i), e);
+            }
+        }
+        return uncompressedLength;
+    }
+
+    private void readFully(final ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            final int n = channel.read(dst, position);
+            if (n < 0) {
+                throw new IOException("The container is truncated.");
+            }
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.core.utils.serialization.compression;
+
+import java.util.Arrays;
+
+/**
+ * An implementation of the LZ4 block format.
+ * <p>
+ * Each compressed block is a sequence of tokens, literals and back-references into the already decompressed part of the same block, meaning that it can be decompressed without any knowledge of its neighboring blocks.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md">LZ4 Block Format Description</a>
+ * @since 1.1.0
+ */
+public final class Lz4BlockCodec {
+    private static final int MIN_MATCH = 4;
+    /**
+     * The number of bytes at the end of each block that must always be encoded as literals.
+     */
+    private static final int LAST_LITERALS = 5;
+    /**
+     * The minimum distance between the start of the last match and the end of each block.
+     */
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 15;
+    private static final int ML_MASK = 15;
+    /**
+     * The number of consecutive failed match attempts, after which the compressor starts skipping ahead faster.
+     */
+    private static final int SKIP_TRIGGER = 6;
+
+    // This class is static.
+    private Lz4BlockCodec() {
+    }
+
+    /**
+     * Returns the maximum size of a compressed block, given the size of its uncompressed counterpart.
+     *
+     * @param length The size of the uncompressed block in bytes.
+     * @return The worst-case size of the compressed block in bytes.
+     */
+    public static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses a given block.
+     *
+     * @param src    The array containing the uncompressed block.
+     * @param srcOff The offset of the block in the source array.
+     * @param srcLen The size of the block in bytes.
+     * @param dst    The array the compressed block is written to. Its remaining capacity must be at least equal to {@link #maxCompressedLength(int)}.
+     * @param dstOff The offset at which to start writing.
+     * @return The size of the compressed block in bytes.
+     */
+    public static int compress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff) {
+        final int srcEnd = srcOff + srcLen;
+        int dp = dstOff;
+        int anchor = srcOff;
+        // Inputs which are too short to contain a valid match are stored as a single literal run.
+        if (srcLen > MF_LIMIT) {
+            final int matchLimit = srcEnd - LAST_LITERALS;
+            final int mfLimit = srcEnd - MF_LIMIT;
+            final int[] hashTable = new int[1 << HASH_LOG];
+            // Position zero relative to the offset is a valid reference, so the table must be told apart from it.
+            Arrays.fill(hashTable, -1);
+            int ip = srcOff;
+            int searchCount = 1 << SKIP_TRIGGER;
+            while (ip < mfLimit) {
+                final int sequence = readIntLE(src, ip);
+                final int h = hash(sequence);
+                int ref = hashTable[h];
+                hashTable[h] = ip;
+                if (ref < 0 || ip - ref > MAX_OFFSET || readIntLE(src, ref) != sequence) {
+                    ip += searchCount++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searchCount = 1 << SKIP_TRIGGER;
+                // Extend the match backwards into the pending literals.
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                    matchLength++;
+                }
+                dp = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, dp);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+        dp = writeLiterals(src, anchor, srcEnd - anchor, dst, dp);
+        return dp - dstOff;
+    }
+
+    /**
+     * Decompresses a given block.
+     *
+     * @param src    The array containing the compressed block.
+     * @param srcOff The offset of the block in the source array.
+     * @param srcLen The size of the compressed block in bytes.
+     * @param dst    The array the decompressed block is written to.
+     * @param dstOff The offset at which to start writing.
+     * @param dstLen The size of the decompressed block in bytes.
+     * @throws IllegalArgumentException If the block is corrupt.
+     */
+    public static void decompress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff, final int dstLen) {
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dstOff + dstLen;
+        int ip = srcOff;
+        int op = dstOff;
+        try {
+            while (true) {
+                final int token = src[ip++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                // The last sequence of each block consists only of literals.
+                if (ip >= srcEnd) {
+                    break;
+                }
+                final int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int matchLength = token & ML_MASK;
+                if (matchLength == ML_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                final int match = op - offset;
+                if (offset == 0 || match < dstOff || op + matchLength > dstEnd) {
+                    throw new IllegalArgumentException("The block is corrupt.");
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, match, dst, op, matchLength);
+                } else {
+                    // The match overlaps with the bytes it produces, so it has to be copied one byte at a time.
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[op + i] = dst[match + i];
+                    }
+                }
+                op += matchLength;
+            }
+        } catch (final ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("The block is corrupt.", e);
+        }
+        if (ip != srcEnd || op != dstEnd) {
+            throw new IllegalArgumentException("The block is corrupt.");
+        }
+    }
+
+    private static int writeSequence(final byte[] src, final int literalOff, final int literalLength, final int offset, final int matchLength, final byte[] dst, int dp) {
+        final int tokenPosition = dp++;
+        int token;
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            dp = writeLengthExtension(literalLength - RUN_MASK, dst, dp);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalOff, dst, dp, literalLength);
+        dp += literalLength;
+        dst[dp++] = (byte) offset;
+        dst[dp++] = (byte) (offset >>> 8);
+        final int remainingMatchLength = matchLength - MIN_MATCH;
+        if (remainingMatchLength >= ML_MASK) {
+            token |= ML_MASK;
+            dp = writeLengthExtension(remainingMatchLength - ML_MASK, dst, dp);
+        } else {
+            token |= remainingMatchLength;
+        }
+        dst[tokenPosition] = (byte) token;
+        return dp;
+    }
+
+    private static int writeLiterals(final byte[] src, final int literalOff, final int literalLength, final byte[] dst, int dp) {
+        if (literalLength >= RUN_MASK) {
+            dst[dp++] = (byte) (RUN_MASK << 4);
+            dp = writeLengthExtension(literalLength - RUN_MASK, dst, dp);
+        } else {
+            dst[dp++] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, literalOff, dst, dp, literalLength);
+        return dp + literalLength;
+    }
+
+    private static int writeLengthExtension(int length, final byte[] dst, int dp) {
+        while (length >= 255) {
+            dst[dp++] = (byte) 255;
+            length -= 255;
+        }
+        dst[dp++] = (byte) length;
+        return dp;
+    }
+
+    private static int readIntLE(final byte[] b, final int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(final int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
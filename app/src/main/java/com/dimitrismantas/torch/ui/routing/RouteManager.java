@@ -33,16 +33,17 @@ import android.widget.Toast;
 import androidx.core.content.res.ResourcesCompat;
 
 import com.dimitrismantas.torch.R;
-import com.dimitrismantas.torch.core.main.Path;
 import com.dimitrismantas.torch.core.main.engine.AStar;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
 import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchCancelledException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchTimeoutException;
 import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
-import com.dimitrismantas.torch.core.main.utils.NearestNeighborSearch;
 import com.dimitrismantas.torch.ui.map.MapController;
 import com.dimitrismantas.torch.ui.utils.AnimationManager;
 import com.dimitrismantas.torch.utils.data.AssetManager;
 import com.dimitrismantas.torch.utils.data.DataManager;
-import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+import com.dimitrismantas.torch.utils.multithreading.RoutingPipeline;
 
 import org.oscim.android.canvas.AndroidBitmap;
 import org.oscim.backend.CanvasAdapter;
@@ -58,9 +59,7 @@ import org.oscim.map.Map;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletionException;
 
 /**
  * A class containing the logic of the routing section of the app's UI.
@@ -101,6 +100,12 @@ public final class RouteManager {
      * @since 1.0.0
      */
     private static boolean isRouteOnMap = false;
+    /**
+     * The cancellation token of the latest routing request.
+     *
+     * @since 1.1.0
+     */
+    private static CancellationToken latestRoutingRequest;
     /**
      * The activity instantiating and calling this class.
      *
@@ -142,12 +147,6 @@ public final class RouteManager {
     private final EditText odTextField;
     private final ImageView odMarkerLegend;
     private final TextView routeAttributes;
-    /**
-     * The exception (if any) thrown by the app during the routing process.
-     *
-     * @since 1.0.0
-     */
-    private Exception routingException;
     /**
      * The origin.
      *
@@ -172,8 +171,6 @@ public final class RouteManager {
      * @since 1.0.0
      */
     private GeoPoint destination;
-    private DeserializedVertex sourceVertex;
-    private DeserializedVertex targetVertex;
 
     /**
      * Instantiates this class.
@@ -218,73 +215,72 @@ public final class RouteManager {
                 // TODO - Fix the markers in place.
                 origin = pointsOnMap.get(0);
                 destination = pointsOnMap.get(1);
-                // This whole block is copied from StackOverflow; I have no idea how it works.
-                final ExecutorService aStarExecutor = Executors.newSingleThreadExecutor();
+                if (!DataManager.areRoutingServicesAvailable()) {
+                    Toast.makeText(appContext, "Torch is still setting up. Your route will be ready in a few moments.", Toast.LENGTH_LONG).show();
+                }
+                // Activate the routing-in-progress notifier.
+                AnimationManager.spin(routingInProgressNotifier);
+                final CancellationToken routingRequest = new CancellationToken();
+                latestRoutingRequest = routingRequest;
+                // The delete-route button doubles as a cancel-routing button while the request is in progress.
+                deleteRouteButton.setOnClickListener(v -> routingRequest.cancel());
+                isRouteOnMap = true;
                 final Handler messageLooper = new Handler(Looper.getMainLooper());
-                // Work is now being done on the A* thread.
-                aStarExecutor.execute(() -> {
-                    if (!DataManager.areRoutingServicesAvailable()) {
-                        messageLooper.post(() -> Toast.makeText(appContext, "Torch is still setting up. Please try again in a few moments.", Toast.LENGTH_LONG).show());
-                        return;
-                    }
-
-                    messageLooper.post(() -> {
-                        // Activate the routing-in-progress notifier.
-                        AnimationManager.spin(routingInProgressNotifier);
-                        // TODO - Change the behavior of the delete-route button to make it double as a cancel-routing button.
-                        deleteRouteButton.setOnClickListener(v -> {
-                            // Do nothing so the user can't delete the origin and destination markers.
-                        });
-                    });
-                    final ExecutorService nearestNeighborSearchExecutor = Executors.newFixedThreadPool(2);
-                    final NearestNeighborSearch nearestNeighborSearch = DataManager.getNearestNeighborSearch();
-                    // Work is now being done on the Nearest Neighbor Search threads.
-                    nearestNeighborSearchExecutor.execute(() -> sourceVertex = nearestNeighborSearch.run(origin.getLatitude(), origin.getLongitude()));
-                    nearestNeighborSearchExecutor.execute(() -> targetVertex = nearestNeighborSearch.run(destination.getLatitude(), destination.getLongitude()));
-                    nearestNeighborSearchExecutor.shutdown();
-                    try {
-                        nearestNeighborSearchExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-                    } catch (InterruptedException e) {
-                        messageLooper.post(() -> Toast.makeText(appContext, "An unexpected error has occurred. Please try again.", Toast.LENGTH_LONG).show());
-                        isRouteOnMap = false;
-                        return;
-                    }
-                    isRouteOnMap = true;
-                    routingException=null;
-                    try {
-                        // Do not factor the graph out to a new variable!
-                        DataManager.setRoute(DataManager.getaStar().run(DataManager.getGraph().vertices(sourceVertex.lbl()), DataManager.getGraph().vertices(targetVertex.lbl()), optimizationMode));
-                    } catch (final EqualEndpointException | UnreachableTargetException e) {
-                        routingException = e;
-                        Log.w(TAG, e);
-                    }
-                    // Work is now being done on the main thread.
-                    messageLooper.post(() -> {
-                        if (routingException != null && routingException instanceof EqualEndpointException) {
-                            Toast.makeText(appContext, "The origin and destination are too close to each other.", Toast.LENGTH_SHORT).show();
-                        } else if (routingException != null && routingException instanceof UnreachableTargetException) {
-                            Toast.makeText(appContext, "The destination is unreachable from the source.", Toast.LENGTH_SHORT).show();
-                        } else {
-                            final Path route = DataManager.getRoute();
-                            System.out.println("HERE");
-                            routeAttributes.setText(new RouteAttributeStringBuilder(optimizationMode, route, appContext).buildRouteAttributeString());
-                            AnimationManager.slide(routeAttributes, AnimationManager.SlideMode.DOWN, appContext);
-                            // These two lines must be in this order because draw route uses points on map.
-                            pointsOnMap.addAll(1, DataManager.toGeoPoints(route.getEndpoints()));
-                            drawRoute(DataManager.toGeoPoints(route.getEndpoints()));
-                        }
-                        AnimationManager.makeDisappear(routingInProgressNotifier);
-                        // Revert the behavior of the delete-route button to its previous state.
-                        deleteRouteButton.setOnClickListener(v -> deleteRoute());
-                    });
-                });
-                aStarExecutor.shutdown();
+                // Work is now being done on the routing threads, and the results are delivered on the main thread.
+                DataManager.getRoutingServicesAvailability()
+                        .thenCompose(ignored -> DataManager.getRoutingPipeline().route(origin, destination, optimizationMode, routingRequest))
+                        .whenCompleteAsync((result, e) -> onRoutingCompleted(result, e, optimizationMode, routingRequest), messageLooper::post);
                 break;
             default:
                 promptRouteDeletion();
         }
     }
 
+    /**
+     * Displays the results of a routing request, or informs the user why it failed.
+     *
+     * @param result           The routing results, or {@code null} if the request failed.
+     * @param e                The exception (if any) thrown during the routing process.
+     * @param optimizationMode The optimization mode of the request.
+     * @param routingRequest   The cancellation token of the request.
+     * @since 1.1.0
+     */
+    private void onRoutingCompleted(final RoutingPipeline.Result result, final Throwable e, final AStar.OptimizationMode optimizationMode, final CancellationToken routingRequest) {
+        // A superseded request must leave the UI to the one that replaced it.
+        if (routingRequest != latestRoutingRequest) {
+            return;
+        }
+        final Throwable routingException = e instanceof CompletionException ? e.getCause() : e;
+        if (routingException instanceof SearchCancelledException) {
+            Toast.makeText(appContext, "Routing has been cancelled.", Toast.LENGTH_SHORT).show();
+            isRouteOnMap = false;
+        } else if (routingException instanceof SearchTimeoutException) {
+            Log.w(TAG, routingException);
+            Toast.makeText(appContext, "The route is taking too long to find. Please try a shorter one.", Toast.LENGTH_LONG).show();
+            isRouteOnMap = false;
+        } else if (routingException instanceof EqualEndpointException) {
+            Log.w(TAG, routingException);
+            Toast.makeText(appContext, "The origin and destination are too close to each other.", Toast.LENGTH_SHORT).show();
+        } else if (routingException instanceof UnreachableTargetException) {
+            Log.w(TAG, routingException);
+            Toast.makeText(appContext, "The destination is unreachable from the source.", Toast.LENGTH_SHORT).show();
+        } else if (routingException != null) {
+            Log.e(TAG, "Failed to route.", routingException);
+            Toast.makeText(appContext, "An unexpected error has occurred. Please try again.", Toast.LENGTH_LONG).show();
+            isRouteOnMap = false;
+        } else {
+            DataManager.setRoute(result.getRoute());
+            routeAttributes.setText(new RouteAttributeStringBuilder(optimizationMode, result.getRoute(), appContext).buildRouteAttributeString());
+            AnimationManager.slide(routeAttributes, AnimationManager.SlideMode.DOWN, appContext);
+            // These two lines must be in this order because draw route uses points on map.
+            pointsOnMap.addAll(1, result.getGeometry());
+            drawRoute(result.getGeometry());
+        }
+        AnimationManager.makeDisappear(routingInProgressNotifier);
+        // Revert the behavior of the delete-route button to its previous state.
+        deleteRouteButton.setOnClickListener(v -> deleteRoute());
+    }
+
     /**
      * Prompts the user to delete a route already present on the map.
      *
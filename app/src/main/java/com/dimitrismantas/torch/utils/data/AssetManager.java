@@ -19,6 +19,7 @@
 package com.dimitrismantas.torch.utils.data;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
@@ -27,21 +28,31 @@ import android.util.Log;
 import androidx.core.content.res.ResourcesCompat;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
 public final class AssetManager {
     private static final String TAG = "AssetManager";
-    private static final int BUFFER_SIZE = 8192;
 
     private AssetManager() {
     }
 
-    public static void writeToFile(final String relInPath, final Context appCtx) {
-        File absOutPath;
+    /**
+     * Unpacks a given application asset to the primary storage device, unless it has already been unpacked completely.
+     * <p>
+     * Assets stored uncompressed in the APK are transferred directly from it, while compressed assets are streamed.
+     *
+     * @param relInPath The path of the asset relative to the assets directory.
+     * @param listener  The listener to report the progress to, or {@code null}.
+     * @param appCtx    The application context.
+     * @return The unpacked asset.
+     * @throws IOException If the asset cannot be unpacked.
+     * @see AssetUnpacker
+     */
+    public static File unpack(final String relInPath, final AssetUnpacker.ProgressListener listener, final Context appCtx) throws IOException {
+        final File absOutPath;
         if (relInPath.lastIndexOf("/") > 0) {
             final String[] relInDirAndFile = relInPath.split("/");
             FileManager.mkdirs(relInDirAndFile[0], appCtx);
@@ -50,24 +61,22 @@ public final class AssetManager {
             FileManager.setPrimaryStorageDevicePath(appCtx);
             absOutPath = new File(FileManager.concatenateNestedPaths(FileManager.getPrimaryStorageDevicePath(), relInPath));
         }
-        if (!absOutPath.exists()) {
-            try (final InputStream iStream = appCtx.getAssets().open(relInPath); final OutputStream oStream = new FileOutputStream(absOutPath)) {
-                writeToOutputStream(iStream, oStream);
-            } catch (final IOException e) {
-                Log.e(TAG, "Failed to write asset to file.", e);
-            }
+        if (AssetUnpacker.isUnpacked(absOutPath)) {
+            return absOutPath;
         }
-    }
-
-    private static void writeToOutputStream(final InputStream iStream, final OutputStream oStream) {
-        final byte[] buffer = new byte[BUFFER_SIZE];
+        final AssetFileDescriptor fd;
         try {
-            int length;
-            while ((length = iStream.read(buffer)) != -1) {
-                oStream.write(buffer, 0, length);
+            fd = appCtx.getAssets().openFd(relInPath);
+        } catch (final FileNotFoundException e) {
+            // The asset has been compressed when the APK was built, so it can only be opened as a stream.
+            Log.w(TAG, "Failed to open asset file descriptor.", e);
+            try (final InputStream iStream = appCtx.getAssets().open(relInPath)) {
+                return AssetUnpacker.unpack(iStream, -1, absOutPath, listener);
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to write input stream to output stream.", e);
+        }
+        // Closing the stream also closes the file descriptor.
+        try (final FileInputStream iStream = fd.createInputStream()) {
+            return AssetUnpacker.unpack(iStream.getChannel(), fd.getStartOffset(), fd.getLength(), absOutPath, listener);
         }
     }
 
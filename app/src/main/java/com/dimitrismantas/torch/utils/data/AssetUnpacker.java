@@ -0,0 +1,298 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.utils.data;
+
+import com.dimitrismantas.torch.core.utils.serialization.compression.BlockCompressedContainer;
+import com.dimitrismantas.torch.core.utils.serialization.compression.BlockCompressedReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * A pipeline unpacking a file from a given source to the local storage.
+ * <p>
+ * The contents are first written to a temporary file, whose checksum is computed from the very bytes being written, and which is renamed atomically to its final name only once it is complete. A second, equally atomic, marker file then records the size and checksum of the unpacked file, so that a partially written file is never mistaken for a complete one. If the unpacked file turns out to be a block-compressed container, it is additionally inflated.
+ * <p>
+ * This class does not depend on the Android framework, so that it can be tested on the JVM.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see BlockCompressedContainer
+ * @since 1.1.0
+ */
+public final class AssetUnpacker {
+    /**
+     * The number of bytes transferred between two consecutive progress reports.
+     */
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    /**
+     * The size of the direct buffer used when the source is a stream, in bytes.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final String TEMP_FILE_SUFFIX = ".part";
+    private static final String MARKER_FILE_SUFFIX = ".crc32";
+
+    // This class is static.
+    private AssetUnpacker() {
+    }
+
+    /**
+     * Unpacks a given region of a file channel asynchronously.
+     *
+     * @param src      The channel to unpack.
+     * @param offset   The position of the first byte to unpack.
+     * @param length   The number of bytes to unpack.
+     * @param dst      The file to unpack the region to.
+     * @param listener The listener to report the progress to, or {@code null}.
+     * @param executor The executor to unpack the region on.
+     * @return A future completed with the unpacked file.
+     * @see #unpack(FileChannel, long, long, File, ProgressListener)
+     */
+    public static CompletableFuture<File> unpackAsync(final FileChannel src, final long offset, final long length, final File dst, final ProgressListener listener, final Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return unpack(src, offset, length, dst, listener);
+            } catch (final IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Unpacks a given region of a file channel.
+     * <p>
+     * The region is transferred in a single pass, without being copied through the Java heap; every chunk is mapped once, and its checksum is computed from the same mapping it is written from. The transfer is resumed from where the previous one stopped, if it was interrupted, but only if the part already written matches the region.
+     *
+     * @param src      The channel to unpack.
+     * @param offset   The position of the first byte to unpack.
+     * @param length   The number of bytes to unpack.
+     * @param dst      The file to unpack the region to.
+     * @param listener The listener to report the progress to, or {@code null}.
+     * @return The unpacked file.
+     * @throws IOException If the region cannot be unpacked.
+     */
+    public static File unpack(final FileChannel src, final long offset, final long length, final File dst, final ProgressListener listener) throws IOException {
+        if (isUnpacked(dst)) {
+            return dst;
+        }
+        if (offset + length > src.size()) {
+            throw new IOException("The source is truncated.");
+        }
+        final File temp = new File(dst.getPath() + TEMP_FILE_SUFFIX);
+        final CRC32 crc = new CRC32();
+        try (final FileChannel out = new RandomAccessFile(temp, "rw").getChannel()) {
+            // Anything beyond the expected length cannot belong to the region, so the transfer starts over.
+            long position = out.size() <= length ? out.size() : 0;
+            if (position > 0) {
+                update(crc, out, 0, position);
+                // A part written by an interrupted transfer is only kept if it matches the region.
+                final CRC32 expectedCrc = new CRC32();
+                update(expectedCrc, src, offset, position);
+                if (crc.getValue() != expectedCrc.getValue()) {
+                    crc.reset();
+                    position = 0;
+                }
+            }
+            out.truncate(position);
+            while (position < length) {
+                final MappedByteBuffer bb = src.map(FileChannel.MapMode.READ_ONLY, offset + position, Math.min(CHUNK_SIZE, length - position));
+                crc.update(bb.duplicate());
+                while (bb.hasRemaining()) {
+                    position += out.write(bb, position);
+                }
+                report(listener, position, length);
+            }
+            out.force(false);
+        }
+        return commit(temp, dst, crc.getValue());
+    }
+
+    /**
+     * Unpacks a given stream.
+     * <p>
+     * Streams cannot be repositioned, so the transfer always starts over, and the checksum of the source is computed as it is being read.
+     *
+     * @param src      The stream to unpack.
+     * @param length   The number of bytes in the stream, or {@code -1} if it is unknown.
+     * @param dst      The file to unpack the stream to.
+     * @param listener The listener to report the progress to, or {@code null}.
+     * @return The unpacked file.
+     * @throws IOException If the stream cannot be unpacked.
+     */
+    public static File unpack(final InputStream src, final long length, final File dst, final ProgressListener listener) throws IOException {
+        if (isUnpacked(dst)) {
+            return dst;
+        }
+        final File temp = new File(dst.getPath() + TEMP_FILE_SUFFIX);
+        final CRC32 crc = new CRC32();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (final ReadableByteChannel in = Channels.newChannel(src); final FileChannel out = new RandomAccessFile(temp, "rw").getChannel()) {
+            out.truncate(0);
+            long position = 0;
+            long reported = 0;
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    position += out.write(buffer);
+                }
+                buffer.clear();
+                if (position - reported >= CHUNK_SIZE) {
+                    report(listener, position, length);
+                    reported = position;
+                }
+            }
+            if (length >= 0 && position != length) {
+                throw new IOException("The source is truncated.");
+            }
+            report(listener, position, position);
+            out.force(false);
+        }
+        return commit(temp, dst, crc.getValue());
+    }
+
+    /**
+     * Determines if a given file has been unpacked completely.
+     * <p>
+     * This is a cheap check, which only compares the size of the file to the one recorded when it was unpacked.
+     *
+     * @param dst The file.
+     * @return {@code true} if the file has been unpacked completely; {@code false} otherwise.
+     */
+    public static boolean isUnpacked(final File dst) {
+        final File marker = new File(dst.getPath() + MARKER_FILE_SUFFIX);
+        if (!dst.isFile() || !marker.isFile()) {
+            return false;
+        }
+        try {
+            final String[] record = new String(Files.readAllBytes(marker.toPath()), StandardCharsets.US_ASCII).trim().split(" ");
+            return record.length == 2 && Long.parseLong(record[0]) == dst.length();
+        } catch (final IOException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the checksum recorded when a given file was unpacked.
+     *
+     * @param dst The file.
+     * @return The CRC-32 checksum of the file, or {@code -1} if it has not been unpacked completely.
+     */
+    public static long getChecksum(final File dst) {
+        if (!isUnpacked(dst)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(new File(dst.getPath() + MARKER_FILE_SUFFIX).toPath()), StandardCharsets.US_ASCII).trim().split(" ")[1], 16);
+        } catch (final IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Renames a complete temporary file to its final name, after inflating it if necessary, and records its size and checksum.
+     */
+    private static File commit(final File temp, final File dst, long checksum) throws IOException {
+        if (isContainer(temp)) {
+            final File inflated = new File(dst.getPath() + TEMP_FILE_SUFFIX + TEMP_FILE_SUFFIX);
+            try (final BlockCompressedReader reader = new BlockCompressedReader(temp); final FileChannel out = new RandomAccessFile(inflated, "rw").getChannel()) {
+                out.truncate(0);
+                reader.decompressTo(out);
+                out.force(false);
+            }
+            Files.delete(temp.toPath());
+            Files.move(inflated.toPath(), temp.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            checksum = checksum(temp);
+        }
+        // Invalidate the previous marker (if any) before its file is replaced.
+        Files.deleteIfExists(new File(dst.getPath() + MARKER_FILE_SUFFIX).toPath());
+        Files.move(temp.toPath(), dst.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        final File marker = new File(dst.getPath() + MARKER_FILE_SUFFIX);
+        final File tempMarker = new File(marker.getPath() + TEMP_FILE_SUFFIX);
+        Files.write(tempMarker.toPath(), (dst.length() + " " + Long.toHexString(checksum)).getBytes(StandardCharsets.US_ASCII));
+        Files.move(tempMarker.toPath(), marker.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return dst;
+    }
+
+    private static boolean isContainer(final File file) throws IOException {
+        try (final FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            final ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            header.flip();
+            return BlockCompressedContainer.isContainer(header);
+        }
+    }
+
+    private static long checksum(final File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        try (final FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            update(crc, channel, 0, channel.size());
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Updates a CRC-32 checksum with a given region of a file channel.
+     * <p>
+     * The region is mapped in chunks, since a single mapping cannot exceed two gigabytes.
+     */
+    private static void update(final CRC32 crc, final FileChannel channel, final long offset, final long length) throws IOException {
+        for (long position = 0; position < length; position += Integer.MAX_VALUE) {
+            final MappedByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, offset + position, Math.min(Integer.MAX_VALUE, length - position));
+            crc.update(bb);
+        }
+    }
+
+    private static void report(final ProgressListener listener, final long bytesWritten, final long totalBytes) {
+        if (listener != null) {
+            listener.onProgress(bytesWritten, totalBytes);
+        }
+    }
+
+    /**
+     * A listener receiving progress reports while a file is being unpacked.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public interface ProgressListener {
+        /**
+         * Called every time a chunk of the file has been written.
+         *
+         * @param bytesWritten The number of bytes written so far.
+         * @param totalBytes   The total number of bytes to be written, or {@code -1} if it is unknown.
+         */
+        void onProgress(final long bytesWritten, final long totalBytes);
+    }
+}
@@ -20,28 +20,40 @@ package com.dimitrismantas.torch.utils.data;
 
 import com.dimitrismantas.torch.core.main.Path;
 import com.dimitrismantas.torch.core.main.engine.AStar;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay;
 import com.dimitrismantas.torch.core.main.utils.NearestNeighborSearch;
+import com.dimitrismantas.torch.core.main.utils.RouteCache;
+import com.dimitrismantas.torch.core.main.utils.SnapCache;
 import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
-import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+import com.dimitrismantas.torch.utils.multithreading.RoutingPipeline;
 
 import org.oscim.core.GeoPoint;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public final class DataManager {
     private static DeserializedGraph graph;
     private static Path route;
     private static NearestNeighborSearch nearestNeighborSearch;
     private static AStar aStar;
+    private static RoutingPipeline routingPipeline;
+    private static RouteCache routeCache;
+    private static SnapCache snapCache;
+    private static EdgeOverlay edgeOverlay;
+    /**
+     * The future completed once the routing services have been instantiated, or completed exceptionally if they could not be.
+     */
+    private static volatile CompletableFuture<Void> routingServicesAvailability = new CompletableFuture<>();
 
     private DataManager() {
     }
 
-    public static List<GeoPoint> toGeoPoints(final List<DeserializedVertex> vertices) {
-        final List<GeoPoint> geoPoints = new ArrayList<>(vertices.size());
-        for (final DeserializedVertex vertex : vertices) {
-            geoPoints.add(new GeoPoint(vertex.lat(), vertex.lon()));
+    public static List<GeoPoint> toGeoPoints(final Path route) {
+        final List<GeoPoint> geoPoints = new ArrayList<>(route.getNumEndpoints());
+        for (int i = 0; i < route.getNumEndpoints(); i++) {
+            geoPoints.add(new GeoPoint(route.getLatitude(i), route.getLongitude(i)));
         }
         return geoPoints;
     }
@@ -62,6 +74,38 @@ public final class DataManager {
         DataManager.aStar = aStar;
     }
 
+    public static RoutingPipeline getRoutingPipeline() {
+        return routingPipeline;
+    }
+
+    public static void setRoutingPipeline(final RoutingPipeline routingPipeline) {
+        DataManager.routingPipeline = routingPipeline;
+    }
+
+    public static RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    public static void setRouteCache(final RouteCache routeCache) {
+        DataManager.routeCache = routeCache;
+    }
+
+    public static SnapCache getSnapCache() {
+        return snapCache;
+    }
+
+    public static void setSnapCache(final SnapCache snapCache) {
+        DataManager.snapCache = snapCache;
+    }
+
+    public static EdgeOverlay getEdgeOverlay() {
+        return edgeOverlay;
+    }
+
+    public static void setEdgeOverlay(final EdgeOverlay edgeOverlay) {
+        DataManager.edgeOverlay = edgeOverlay;
+    }
+
     public static DeserializedGraph getGraph() {
         return graph;
     }
@@ -74,6 +118,28 @@ public final class DataManager {
         return aStar != null;
     }
 
+    /**
+     * Returns a future that is completed once the routing services become available.
+     * <p>
+     * Dependent actions should be chained to this future instead of polling {@link #areRoutingServicesAvailable()}.
+     *
+     * @return The future.
+     */
+    public static CompletableFuture<Void> getRoutingServicesAvailability() {
+        return routingServicesAvailability;
+    }
+
+    /**
+     * Replaces the routing-services availability future if it has been completed exceptionally, so that their instantiation can be retried.
+     * <p>
+     * The actions already chained to the failed future still observe the failure.
+     */
+    public static void resetRoutingServicesAvailability() {
+        if (routingServicesAvailability.isCompletedExceptionally()) {
+            routingServicesAvailability = new CompletableFuture<>();
+        }
+    }
+
     public static Path getRoute() {
         return route;
     }
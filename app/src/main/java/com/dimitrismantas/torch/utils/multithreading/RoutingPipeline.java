@@ -0,0 +1,368 @@
+/*
+ * Torch is an Android application for the optimal routing of offline
+ * mobile devices.
+ * Copyright (C) 2021-2022  DIMITRIS(.)MANTAS(@outlook.com)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.dimitrismantas.torch.utils.multithreading;
+
+import com.dimitrismantas.torch.core.main.Path;
+import com.dimitrismantas.torch.core.main.engine.AStar;
+import com.dimitrismantas.torch.core.main.engine.IncrementalRerouteSearch;
+import com.dimitrismantas.torch.core.main.engine.ManyToManySearch;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.EqualEndpointException;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
+import com.dimitrismantas.torch.core.main.utils.NearestNeighborSearch;
+import com.dimitrismantas.torch.core.main.utils.RouteCache;
+import com.dimitrismantas.torch.core.main.utils.SnapCache;
+import com.dimitrismantas.torch.core.main.utils.WaypointOrdering;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+import com.dimitrismantas.torch.utils.data.DataManager;
+
+import org.oscim.core.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An asynchronous pipeline processing a single routing request from start to finish.
+ * <p>
+ * The origin and destination are snapped to their nearest neighbors in parallel, after which the route between them is found, and its geometry is built. Every stage runs on the same long-lived executor, so that no threads are created or destroyed per request.
+ * <p>
+ * Points snapped before are served from an optional snapping cache, and routes already found are served from an optional route cache, without running the corresponding algorithms at all.
+ * <p>
+ * Requests issued while the origin is being dragged towards a fixed destination are best served incrementally, reusing the reverse shortest path tree of the destination found by the previous one, so that every such request only runs a small local search.
+ * <p>
+ * Routes through a number of stops are found leg by leg, so that every leg found before is served from the route cache. The stops between the first and the last one may optionally be reordered to minimize the total cost, based on the cost matrix between all of them, which is found by a single many-to-many search. The matrix and every leg are found under the same snapshot of the overlay of the routing algorithm, so that the order always reflects the closures and penalties the legs actually avoid.
+ * <p>
+ * Only the latest request is ever worth finishing; submitting a new request cancels the one before it, and every search is aborted once it exceeds its time budget. The searches of a route through a number of stops share a single time budget, so that the request as a whole can never run for longer than that.
+ * <p>
+ * This class does not depend on the Android framework, so that it can be tested on the JVM.
+ *
+ * @author Dimitris Mantas
+ * @version 1.0.0
+ * @see ThreadManager#getRoutingExecutor()
+ * @since 1.1.0
+ */
+public final class RoutingPipeline {
+    /**
+     * The default amount of time, in milliseconds, a single search, or all the searches of a route through a number of stops, are allowed to run for.
+     */
+    public static final long DEFAULT_TIME_BUDGET = 30000;
+    private final DeserializedGraph graph;
+    /**
+     * The snapping cache, which snaps every point using the nearest neighbor search itself if no cache is used.
+     */
+    private final SnapCache snapCache;
+    /**
+     * The routing algorithm, which keeps its state in the graph itself and must therefore only be run by one thread at a time.
+     */
+    private final AStar aStar;
+    /**
+     * The route cache, or {@code null}.
+     */
+    private final RouteCache routeCache;
+    private final Executor executor;
+    /**
+     * The amount of time, in milliseconds, a single search, or all the searches of a route through a number of stops, are allowed to run for.
+     */
+    private final long timeBudget;
+    /**
+     * The cancellation token of the latest request.
+     */
+    private final AtomicReference<CancellationToken> latestRequest = new AtomicReference<>();
+    /**
+     * The index of incoming edges, which is only built once a search depending on it is first requested.
+     */
+    private IncomingEdgeIndex incomingEdges;
+    /**
+     * The search finding the cost matrix between the stops of a route, which is only built once such a route is first requested.
+     */
+    private ManyToManySearch manyToManySearch;
+    /**
+     * The incremental search, which is only built once a request is first served incrementally, and must only be run by one thread at a time. It shares the overlay of the routing algorithm, so that both avoid the same closures.
+     */
+    private IncrementalRerouteSearch incrementalRerouteSearch;
+
+    public RoutingPipeline(final DeserializedGraph graph, final NearestNeighborSearch nearestNeighborSearch, final AStar aStar, final Executor executor) {
+        this(graph, nearestNeighborSearch, aStar, null, executor);
+    }
+
+    public RoutingPipeline(final DeserializedGraph graph, final NearestNeighborSearch nearestNeighborSearch, final AStar aStar, final RouteCache routeCache, final Executor executor) {
+        this(graph, nearestNeighborSearch, aStar, routeCache, executor, DEFAULT_TIME_BUDGET, TimeUnit.MILLISECONDS);
+    }
+
+    public RoutingPipeline(final DeserializedGraph graph, final NearestNeighborSearch nearestNeighborSearch, final AStar aStar, final Executor executor, final long timeBudget, final TimeUnit unit) {
+        this(graph, nearestNeighborSearch, aStar, null, executor, timeBudget, unit);
+    }
+
+    public RoutingPipeline(final DeserializedGraph graph, final NearestNeighborSearch nearestNeighborSearch, final AStar aStar, final RouteCache routeCache, final Executor executor, final long timeBudget, final TimeUnit unit) {
+        this(graph, new SnapCache(graph, nearestNeighborSearch, SnapCache.DEFAULT_CELL_SIZE, 0), aStar, routeCache, executor, timeBudget, unit);
+    }
+
+    public RoutingPipeline(final DeserializedGraph graph, final SnapCache snapCache, final AStar aStar, final RouteCache routeCache, final Executor executor) {
+        this(graph, snapCache, aStar, routeCache, executor, DEFAULT_TIME_BUDGET, TimeUnit.MILLISECONDS);
+    }
+
+    public RoutingPipeline(final DeserializedGraph graph, final SnapCache snapCache, final AStar aStar, final RouteCache routeCache, final Executor executor, final long timeBudget, final TimeUnit unit) {
+        this.graph = graph;
+        this.snapCache = snapCache;
+        this.aStar = aStar;
+        this.routeCache = routeCache;
+        this.executor = executor;
+        this.timeBudget = unit.toMillis(timeBudget);
+    }
+
+    /**
+     * Finds the optimal route between a given origin and destination.
+     *
+     * @param origin           The origin.
+     * @param destination      The destination.
+     * @param optimizationMode The optimization mode.
+     * @return A future completed with the routing results, or completed exceptionally with the exception thrown by the routing algorithm.
+     */
+    public CompletableFuture<Result> route(final GeoPoint origin, final GeoPoint destination, final AStar.OptimizationMode optimizationMode) {
+        return route(origin, destination, optimizationMode, new CancellationToken());
+    }
+
+    /**
+     * Finds the optimal route between a given origin and destination, superseding any request still in progress.
+     *
+     * @param origin           The origin.
+     * @param destination      The destination.
+     * @param optimizationMode The optimization mode.
+     * @param token            The cancellation token of this request.
+     * @return A future completed with the routing results, or completed exceptionally with the exception thrown by the routing algorithm. In case the request is cancelled or superseded, this is a {@link com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchCancelledException}, while in case it exceeds its time budget, this is a {@link com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchTimeoutException}.
+     */
+    public CompletableFuture<Result> route(final GeoPoint origin, final GeoPoint destination, final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+        final CancellationToken previousRequest = latestRequest.getAndSet(token);
+        if (previousRequest != null) {
+            previousRequest.cancel();
+        }
+        final CompletableFuture<DeserializedVertex> source = CompletableFuture.supplyAsync(() -> snapCache.run(origin.getLatitude(), origin.getLongitude()), executor);
+        final CompletableFuture<DeserializedVertex> target = CompletableFuture.supplyAsync(() -> snapCache.run(destination.getLatitude(), destination.getLongitude()), executor);
+        return source.thenCombineAsync(target, (s, t) -> findRoute(s, t, optimizationMode, getOverlaySnapshot(), token), executor).thenApply(route -> new Result(route, DataManager.toGeoPoints(route), getIdentityOrder(2)));
+    }
+
+    /**
+     * Finds the optimal route between a given origin and destination incrementally, superseding any request still in progress.
+     * <p>
+     * This is meant for requests following each other in quick succession, all of which share the same destination, but whose origins differ only slightly (e.g., while the origin marker is being dragged). Routes found this way are neither served from nor added to the route cache, since they are cheap to find anyway.
+     *
+     * @param origin           The origin.
+     * @param destination      The destination.
+     * @param optimizationMode The optimization mode.
+     * @param token            The cancellation token of this request.
+     * @return A future completed with the routing results, or completed exceptionally as described in {@link #route(GeoPoint, GeoPoint, AStar.OptimizationMode, CancellationToken)}.
+     * @see IncrementalRerouteSearch
+     */
+    public CompletableFuture<Result> reroute(final GeoPoint origin, final GeoPoint destination, final AStar.OptimizationMode optimizationMode, final CancellationToken token) {
+        final CancellationToken previousRequest = latestRequest.getAndSet(token);
+        if (previousRequest != null) {
+            previousRequest.cancel();
+        }
+        final CompletableFuture<DeserializedVertex> source = CompletableFuture.supplyAsync(() -> snapCache.run(origin.getLatitude(), origin.getLongitude()), executor);
+        final CompletableFuture<DeserializedVertex> target = CompletableFuture.supplyAsync(() -> snapCache.run(destination.getLatitude(), destination.getLongitude()), executor);
+        return source.thenCombineAsync(target, (s, t) -> {
+            token.throwIfAborted();
+            final IncrementalRerouteSearch search = getIncrementalRerouteSearch();
+            synchronized (search) {
+                return search.run(graph.vertices(s.lbl()), graph.vertices(t.lbl()), optimizationMode, token.withTimeBudget(timeBudget, TimeUnit.MILLISECONDS));
+            }
+        }, executor).thenApply(route -> new Result(route, DataManager.toGeoPoints(route), getIdentityOrder(2)));
+    }
+
+    /**
+     * Finds the optimal route through a number of stops, superseding any request still in progress.
+     *
+     * @param stops            The stops, in the order they are to be visited, unless it is optimized.
+     * @param optimizationMode The optimization mode.
+     * @param isOrderOptimized Whether to reorder the stops between the first and the last one, so that the total cost of the route is minimized.
+     * @param token            The cancellation token of this request.
+     * @return A future completed with the routing results, or completed exceptionally as described in {@link #route(GeoPoint, GeoPoint, AStar.OptimizationMode, CancellationToken)}.
+     * @throws IllegalArgumentException If there are fewer than two stops.
+     * @see WaypointOrdering
+     */
+    public CompletableFuture<Result> route(final List<GeoPoint> stops, final AStar.OptimizationMode optimizationMode, final boolean isOrderOptimized, final CancellationToken token) {
+        if (stops.size() < 2) {
+            throw new IllegalArgumentException("There must be at least two stops.");
+        }
+        final CancellationToken previousRequest = latestRequest.getAndSet(token);
+        if (previousRequest != null) {
+            previousRequest.cancel();
+        }
+        // Every stop is snapped in parallel.
+        final List<CompletableFuture<DeserializedVertex>> snappedStops = new ArrayList<>(stops.size());
+        for (final GeoPoint stop : stops) {
+            snappedStops.add(CompletableFuture.supplyAsync(() -> snapCache.run(stop.getLatitude(), stop.getLongitude()), executor));
+        }
+        return CompletableFuture.allOf(snappedStops.toArray(new CompletableFuture<?>[0])).thenApplyAsync(ignored -> {
+            // Every leg is derived from the same deadline, so that it only gets whatever is left of the budget of the request once the legs before it have been found.
+            final CancellationToken requestToken = token.withTimeBudget(timeBudget, TimeUnit.MILLISECONDS);
+            final int[] labels = new int[stops.size()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = snappedStops.get(i).join().lbl();
+            }
+            final EdgeOverlay.Snapshot snapshot = getOverlaySnapshot();
+            final int[] order = isOrderOptimized ? findOrder(labels, optimizationMode, snapshot, requestToken) : getIdentityOrder(labels.length);
+            final List<Path> legs = new ArrayList<>(labels.length - 1);
+            for (int i = 0; i + 1 < order.length; i++) {
+                final int sourceLabel = labels[order[i]];
+                final int targetLabel = labels[order[i + 1]];
+                // Consecutive stops snapped to the same vertex need no leg between them.
+                if (sourceLabel != targetLabel) {
+                    legs.add(findRoute(graph.vertices(sourceLabel), graph.vertices(targetLabel), optimizationMode, snapshot, requestToken));
+                }
+            }
+            if (legs.isEmpty()) {
+                throw new EqualEndpointException("Every stop is snapped to the same vertex.");
+            }
+            final Path route = Path.concatenate(legs);
+            return new Result(route, DataManager.toGeoPoints(route), order);
+        }, executor);
+    }
+
+    /**
+     * Cancels the latest request, if it is still in progress.
+     */
+    public void cancel() {
+        final CancellationToken request = latestRequest.get();
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Finds the order in which to visit a number of stops, based on the cost matrix between all of them.
+     */
+    private int[] findOrder(final int[] labels, final AStar.OptimizationMode optimizationMode, final EdgeOverlay.Snapshot snapshot, final CancellationToken token) {
+        // The first and last stops are fixed, so there is nothing to reorder with fewer than two stops between them.
+        if (labels.length < 4) {
+            return getIdentityOrder(labels.length);
+        }
+        // The searches run on the calling thread, which is itself a routing thread, so that they never wait behind tasks queued on the executor that may in turn be waiting for them.
+        final ManyToManySearch.Matrix matrix = getManyToManySearch().run(labels, labels, optimizationMode, snapshot, Runnable::run, token);
+        return WaypointOrdering.run(optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? matrix.getLengths() : matrix.getTravelTimes(), labels.length);
+    }
+
+    /**
+     * Returns the current snapshot of the overlay of the routing algorithm.
+     *
+     * @return The snapshot, or {@code null} if there is no overlay.
+     */
+    private EdgeOverlay.Snapshot getOverlaySnapshot() {
+        return aStar.getOverlay() == null ? null : aStar.getOverlay().getSnapshot();
+    }
+
+    private synchronized IncomingEdgeIndex getIncomingEdges() {
+        if (incomingEdges == null) {
+            incomingEdges = IncomingEdgeIndex.build(graph);
+        }
+        return incomingEdges;
+    }
+
+    private synchronized ManyToManySearch getManyToManySearch() {
+        if (manyToManySearch == null) {
+            manyToManySearch = new ManyToManySearch(graph, getIncomingEdges());
+        }
+        return manyToManySearch;
+    }
+
+    private synchronized IncrementalRerouteSearch getIncrementalRerouteSearch() {
+        if (incrementalRerouteSearch == null) {
+            incrementalRerouteSearch = new IncrementalRerouteSearch(graph, getIncomingEdges(), aStar.getOverlay(), IncrementalRerouteSearch.DEFAULT_MAX_TREE_SIZE);
+        }
+        return incrementalRerouteSearch;
+    }
+
+    private static int[] getIdentityOrder(final int numStops) {
+        final int[] order = new int[numStops];
+        for (int i = 0; i < numStops; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Finds the optimal route between two vertices under a given overlay snapshot.
+     *
+     * @param snapshot The overlay snapshot, or {@code null} if there is no overlay.
+     */
+    private Path findRoute(final DeserializedVertex source, final DeserializedVertex target, final AStar.OptimizationMode optimizationMode, final EdgeOverlay.Snapshot snapshot, final CancellationToken token) {
+        // Avoid queueing up behind a search that is going to be cancelled anyway.
+        token.throwIfAborted();
+        // Closures and penalties may change while the request is in progress, so the route is looked up and cached under the version of the snapshot it is actually found with.
+        final long overlayVersion = snapshot == null ? 0 : snapshot.getVersion();
+        if (routeCache != null) {
+            final Path cachedRoute = routeCache.get(source, target, optimizationMode, overlayVersion);
+            if (cachedRoute != null) {
+                return cachedRoute;
+            }
+        }
+        final Path route;
+        synchronized (aStar) {
+            // The time budget only starts once the algorithm is available, so that waiting for the previous search to yield does not count against this one. A token derived from that of a request through a number of stops still expires along with it.
+            route = aStar.run(graph.vertices(source.lbl()), graph.vertices(target.lbl()), optimizationMode, snapshot, token.withTimeBudget(timeBudget, TimeUnit.MILLISECONDS));
+        }
+        if (routeCache != null) {
+            routeCache.put(route, optimizationMode, overlayVersion);
+        }
+        return route;
+    }
+
+    /**
+     * The results of a single routing request.
+     *
+     * @author Dimitris Mantas
+     * @version 1.0.0
+     * @since 1.1.0
+     */
+    public static final class Result {
+        private final Path route;
+        /**
+         * The locations of the route endpoints, in order from the source to the target.
+         */
+        private final List<GeoPoint> geometry;
+        /**
+         * The indices of the stops of the request, in the order they are visited.
+         */
+        private final int[] stopOrder;
+
+        private Result(final Path route, final List<GeoPoint> geometry, final int[] stopOrder) {
+            this.route = route;
+            this.geometry = geometry;
+            this.stopOrder = stopOrder;
+        }
+
+        public Path getRoute() {
+            return route;
+        }
+
+        public List<GeoPoint> getGeometry() {
+            return geometry;
+        }
+
+        public int[] getStopOrder() {
+            return stopOrder;
+        }
+    }
+}
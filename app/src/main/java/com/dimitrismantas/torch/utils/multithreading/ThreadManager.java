@@ -19,44 +19,163 @@
 package com.dimitrismantas.torch.utils.multithreading;
 
 import android.content.Context;
+import android.os.Process;
 import android.util.Log;
 
 import com.dimitrismantas.torch.core.main.engine.AStar;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay;
 import com.dimitrismantas.torch.core.main.utils.NearestNeighborSearch;
+import com.dimitrismantas.torch.core.main.utils.RouteCache;
+import com.dimitrismantas.torch.core.main.utils.SnapCache;
 import com.dimitrismantas.torch.utils.data.AssetManager;
+import com.dimitrismantas.torch.utils.data.AssetUnpacker;
 import com.dimitrismantas.torch.utils.data.DataManager;
 import com.dimitrismantas.torch.core.utils.serialization.DeserializationManager;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
+import com.dimitrismantas.torch.core.utils.serialization.GraphPrewarmer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class ThreadManager {
     /**
      * The class tag for logging purposes.
      */
     private static final String TAG = "ThreadManager";
+    /**
+     * The number of threads serving routing requests. There are always at least two, so that the origin and destination can be snapped in parallel.
+     */
+    private static final int NUM_ROUTING_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /**
+     * The executor running every stage of every routing request.
+     */
+    private static final ExecutorService ROUTING_EXECUTOR = newFixedThreadPool("Routing", NUM_ROUTING_THREADS);
+    /**
+     * The executor unpacking the application assets and instantiating the routing services, one task at a time.
+     */
+    private static final ExecutorService BACKGROUND_EXECUTOR = newFixedThreadPool("Background", 1);
+    private static boolean isInstantiatingRoutingServices = false;
 
     // This class is static.
     private ThreadManager() {
     }
 
-    public static void unpackCriticalAssets(final Context appCtx) {
-        Thread t = new Thread(() -> {
-            AssetManager.writeToFile("map/grc.map", appCtx);
-        });
-        t.start();
-        try {
-            // Keep the splash screen visible until the assets have been unpacked.
-            t.join();
-        } catch (InterruptedException e) {
-            Log.e(TAG, "Failed to unpack critical application assets", e);
+    /**
+     * Unpacks the application assets required to display the map without blocking the calling thread.
+     *
+     * @param appCtx The application context.
+     * @return A future completed with the unpacked map file.
+     */
+    public static CompletableFuture<File> unpackCriticalAssets(final Context appCtx) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return AssetManager.unpack("map/grc.map", logProgress("map/grc.map"), appCtx);
+            } catch (final IOException e) {
+                Log.e(TAG, "Failed to unpack critical application assets", e);
+                throw new CompletionException(e);
+            }
+        }, BACKGROUND_EXECUTOR);
+    }
+
+    /**
+     * Returns the executor running every stage of every routing request.
+     *
+     * @return The executor.
+     * @see RoutingPipeline
+     */
+    public static Executor getRoutingExecutor() {
+        return ROUTING_EXECUTOR;
+    }
+
+    /**
+     * Instantiates the routing services without blocking the calling thread.
+     *
+     * @param appCtx The application context.
+     * @return A future completed once the routing services become available.
+     * @see DataManager#getRoutingServicesAvailability()
+     */
+    public static CompletableFuture<Void> instantiateRoutingServices(final Context appCtx) {
+        return instantiateRoutingServices(appCtx, false, null);
+    }
+
+    /**
+     * Instantiates the routing services without blocking the calling thread and, optionally, prewarms the graph in the background.
+     *
+     * @param appCtx   The application context.
+     * @param prewarm  Whether to prewarm the graph after the routing services become available.
+     * @param viewport The minimum latitude, minimum longitude, maximum latitude and maximum longitude of the viewport to prioritize while prewarming, or {@code null}.
+     * @return A future completed once the routing services become available.
+     * @see GraphPrewarmer
+     */
+    public static synchronized CompletableFuture<Void> instantiateRoutingServices(final Context appCtx, final boolean prewarm, final double[] viewport) {
+        final CompletableFuture<Void> availability = DataManager.getRoutingServicesAvailability();
+        // The routing services outlive the activity, so they must only be instantiated once.
+        if (isInstantiatingRoutingServices) {
+            return availability;
         }
+        isInstantiatingRoutingServices = true;
+        BACKGROUND_EXECUTOR.execute(() -> {
+            try {
+                final File graphFile = AssetManager.unpack("bin/grc.bin", logProgress("bin/grc.bin"), appCtx);
+                final DeserializedGraph graph = DeserializationManager.deserializeGraph("bin/grc.bin");
+                if (graph == null) {
+                    throw new IOException("Failed to deserialize graph.");
+                }
+                DataManager.setGraph(graph);
+                DataManager.setNearestNeighborSearch(new NearestNeighborSearch(DataManager.getGraph()));
+                DataManager.setEdgeOverlay(new EdgeOverlay());
+                DataManager.setaStar(new AStar(DataManager.getGraph(), DataManager.getEdgeOverlay()));
+                // The checksum of the graph identifies its version, so that routes found on a previous one are never served.
+                DataManager.setRouteCache(new RouteCache(AssetUnpacker.getChecksum(graphFile)));
+                DataManager.setSnapCache(new SnapCache(graph, DataManager.getNearestNeighborSearch()));
+                DataManager.setRoutingPipeline(new RoutingPipeline(graph, DataManager.getSnapCache(), DataManager.getaStar(), DataManager.getRouteCache(), ROUTING_EXECUTOR));
+                availability.complete(null);
+                if (prewarm) {
+                    BACKGROUND_EXECUTOR.execute(() -> {
+                        // Prewarming must never compete with the UI or the routing threads.
+                        final int priority = Process.getThreadPriority(Process.myTid());
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                        try {
+                            new GraphPrewarmer(graph, viewport).run();
+                            Log.d(TAG, "Graph prewarmed.");
+                        } finally {
+                            Process.setThreadPriority(priority);
+                        }
+                    });
+                }
+            } catch (final Throwable e) {
+                // Whoever is waiting for the routing services must learn that they will never become available, and a later call must be able to retry.
+                Log.e(TAG, "Failed to instantiate routing services", e);
+                synchronized (ThreadManager.class) {
+                    // The routing services may have become available before prewarming failed to be scheduled.
+                    if (availability.completeExceptionally(e)) {
+                        DataManager.resetRoutingServicesAvailability();
+                        isInstantiatingRoutingServices = false;
+                    }
+                }
+            }
+        });
+        return availability;
     }
 
-    public static void instantiateRoutingServices(final Context appCtx) {
-        Thread thread = new Thread(() -> {
-            AssetManager.writeToFile("bin/grc.bin", appCtx);
-            DataManager.setGraph(DeserializationManager.deserializeGraph("bin/grc.bin"));
-            DataManager.setNearestNeighborSearch(new NearestNeighborSearch(DataManager.getGraph()));
-            DataManager.setaStar(new AStar(DataManager.getGraph()));
+    private static ExecutorService newFixedThreadPool(final String name, final int numThreads) {
+        final AtomicInteger numCreatedThreads = new AtomicInteger();
+        return Executors.newFixedThreadPool(numThreads, r -> {
+            final Thread thread = new Thread(r, name + "-" + numCreatedThreads.incrementAndGet());
+            // These threads must not keep the process alive.
+            thread.setDaemon(true);
+            return thread;
         });
-        thread.start();
+    }
+
+    private static AssetUnpacker.ProgressListener logProgress(final String relPath) {
+        return (bytesWritten, totalBytes) -> Log.d(TAG, String.format(Locale.US, "Unpacking %s: %d of %d bytes written.", relPath, bytesWritten, totalBytes));
     }
 }
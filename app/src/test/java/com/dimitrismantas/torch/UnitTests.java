@@ -20,22 +20,82 @@ package com.dimitrismantas.torch;
 
 import com.dimitrismantas.torch.core.main.Path;
 import com.dimitrismantas.torch.core.main.engine.AStar;
+import com.dimitrismantas.torch.core.main.engine.AlternativeRouteSearch;
+import com.dimitrismantas.torch.core.main.engine.BidirectionalAStar;
+import com.dimitrismantas.torch.core.main.engine.DeltaSteppingSearch;
+import com.dimitrismantas.torch.core.main.engine.IncrementalRerouteSearch;
+import com.dimitrismantas.torch.core.main.engine.IsochroneSearch;
+import com.dimitrismantas.torch.core.main.engine.KShortestPathSearch;
+import com.dimitrismantas.torch.core.main.engine.ManyToManySearch;
+import com.dimitrismantas.torch.core.main.engine.NavigationSession;
+import com.dimitrismantas.torch.core.main.engine.OneToManySearch;
+import com.dimitrismantas.torch.core.main.engine.ParetoSearch;
+import com.dimitrismantas.torch.core.main.engine.TimeDependentAStar;
+import com.dimitrismantas.torch.core.main.engine.WeightedAStar;
+import com.dimitrismantas.torch.core.main.engine.utils.cancellation.CancellationToken;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchCancelledException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.SearchTimeoutException;
+import com.dimitrismantas.torch.core.main.engine.utils.exceptions.UnreachableTargetException;
+import com.dimitrismantas.torch.core.main.engine.utils.metrics.Metric;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.EdgeOverlay;
+import com.dimitrismantas.torch.core.main.engine.utils.overlay.TravelTimePatch;
+import com.dimitrismantas.torch.core.main.engine.utils.profiles.TravelTimeProfiles;
+import com.dimitrismantas.torch.core.main.utils.IncomingEdgeIndex;
 import com.dimitrismantas.torch.core.main.utils.NearestNeighborSearch;
+import com.dimitrismantas.torch.core.main.utils.RouteCache;
+import com.dimitrismantas.torch.core.main.utils.SnapCache;
+import com.dimitrismantas.torch.core.main.utils.WaypointOrdering;
+import com.dimitrismantas.torch.core.utils.serialization.DeserializedEdge;
 import com.dimitrismantas.torch.core.utils.serialization.DeserializedGraph;
 import com.dimitrismantas.torch.core.utils.serialization.DeserializedVertex;
+import com.dimitrismantas.torch.core.utils.serialization.compression.BlockCompressedContainer;
+import com.dimitrismantas.torch.core.utils.serialization.compression.BlockCompressedReader;
+import com.dimitrismantas.torch.utils.data.AssetUnpacker;
+import com.dimitrismantas.torch.utils.multithreading.RoutingPipeline;
 
+import org.oscim.core.GeoPoint;
+
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
 
 public class UnitTests {
+    private static final String SERIALIZED_GRAPH_PATH = "C:\\Documents\\Torch\\app\\src\\main\\assets\\bin\\grc.bin";
+    private static final int NUM_RANDOM_READS = 1000000;
+    private static final int NUM_SNAPS = 200;
+    private static final int NUM_MATRIX_SOURCES = 8;
+    private static final int NUM_MATRIX_TARGETS = 8;
+    private static final int NUM_ISOCHRONE_SAMPLES = 20;
+    private static final int NUM_ONE_TO_MANY_TARGETS = 50;
+
     @Test
     public void routingTest() {
-        final File serializedGraphPath = new File("C:\\Documents\\Torch\\app\\src\\main\\assets\\bin\\grc.bin");
+        final File serializedGraphPath = new File(SERIALIZED_GRAPH_PATH);
 
         MappedByteBuffer bb = null;
         try (final FileChannel fChannel = new RandomAccessFile(serializedGraphPath, "rw").getChannel()) {
@@ -56,6 +116,1141 @@ public class UnitTests {
         final long t0 = System.nanoTime();
         final Path route = aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_DISTANCE);
         System.out.println((System.nanoTime() - t0) * 1e-6);
-        System.out.println(route.getEndpoints().size());
+        System.out.println(route.getNumEndpoints());
+    }
+
+    @Test
+    public void pathTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final Path route = new AStar(graph).run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+
+        Assert.assertEquals(s.lbl(), route.getSourceLabel());
+        Assert.assertEquals(t.lbl(), route.getTargetLabel());
+        // The route totals must match those obtained by searching for the edge between every two consecutive endpoints.
+        int length = 0;
+        int travelTime = 0;
+        for (int i = 0; i < route.getNumEndpoints() - 1; i++) {
+            final DeserializedVertex endpoint = graph.vertices(route.getLabel(i));
+            Assert.assertEquals(endpoint.lat(), route.getLatitude(i), 0);
+            Assert.assertEquals(endpoint.lon(), route.getLongitude(i), 0);
+            int minTravelTime = Integer.MAX_VALUE;
+            int minLength = 0;
+            for (int j = 0; j < endpoint.outgoingEdgesLength(); j++) {
+                final DeserializedEdge outEdge = endpoint.outgoingEdges(j);
+                if (outEdge.endVertexLabel() == route.getLabel(i + 1) && outEdge.travelTime() < minTravelTime) {
+                    minTravelTime = outEdge.travelTime();
+                    minLength = outEdge.length();
+                }
+            }
+            Assert.assertNotEquals(Integer.MAX_VALUE, minTravelTime);
+            length += minLength;
+            travelTime += minTravelTime;
+        }
+        Assert.assertEquals(travelTime, route.getTravelTime());
+        Assert.assertEquals(length, route.getLength());
+    }
+
+    @Test
+    public void costTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final AStar aStar = new AStar(graph);
+
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            final Path route = aStar.run(s, t, optimizationMode);
+            final int[] otherCost = new int[1];
+            final int cost = aStar.findCost(s, t, optimizationMode, otherCost, CancellationToken.NONE);
+            if (optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE) {
+                Assert.assertEquals(route.getLength(), cost);
+            } else {
+                Assert.assertEquals(route.getTravelTime(), cost);
+            }
+            Assert.assertEquals(cost, aStar.findCost(s, t, optimizationMode));
+        }
+    }
+
+    @Test
+    public void manyToManyTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final Random random = new Random(0);
+        final int[] sourceLabels = new int[NUM_MATRIX_SOURCES];
+        final int[] targetLabels = new int[NUM_MATRIX_TARGETS];
+        for (int i = 0; i < NUM_MATRIX_SOURCES; i++) {
+            sourceLabels[i] = random.nextInt(graph.verticesLength());
+        }
+        for (int j = 0; j < NUM_MATRIX_TARGETS; j++) {
+            targetLabels[j] = random.nextInt(graph.verticesLength());
+        }
+
+        final IncomingEdgeIndex incomingEdges = IncomingEdgeIndex.build(graph);
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            final EdgeOverlay overlay = new EdgeOverlay();
+            final AStar aStar = new AStar(graph, overlay);
+            final ManyToManySearch manyToManySearch = new ManyToManySearch(graph, incomingEdges);
+            for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+                assertMatrixEquals(graph, aStar, manyToManySearch.run(sourceLabels, targetLabels, optimizationMode, executor), sourceLabels, targetLabels, optimizationMode);
+            }
+
+            // The matrix must reflect the closures and penalties of an overlay snapshot just like the routes found under it.
+            final int[] plainTravelTimes = manyToManySearch.run(sourceLabels, targetLabels, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, executor).getTravelTimes();
+            int k = 0;
+            while (plainTravelTimes[k] <= 0) {
+                k++;
+            }
+            final Path route = aStar.run(graph.vertices(sourceLabels[k / NUM_MATRIX_TARGETS]), graph.vertices(targetLabels[k % NUM_MATRIX_TARGETS]), AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+            final int i = route.getNumEndpoints() / 2;
+            overlay.closeEdge(route.getLabel(i), findEdgeIndex(graph, route.getLabel(i), route.getLabel(i + 1)));
+            overlay.setPenalty(route.getLabel(0), findEdgeIndex(graph, route.getLabel(0), route.getLabel(1)), 10);
+            overlay.closeVertex(targetLabels[(k + 1) % NUM_MATRIX_TARGETS]);
+            for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+                assertMatrixEquals(graph, aStar, manyToManySearch.run(sourceLabels, targetLabels, optimizationMode, overlay.getSnapshot(), executor, CancellationToken.NONE), sourceLabels, targetLabels, optimizationMode);
+            }
+            Assert.assertNotEquals(plainTravelTimes[k], manyToManySearch.run(sourceLabels, targetLabels, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, overlay.getSnapshot(), executor, CancellationToken.NONE).getTravelTimes()[k]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Asserts that every entry of a cost matrix is equal to the cost of the optimal route found by a given instance of the routing algorithm.
+     */
+    private static void assertMatrixEquals(final DeserializedGraph graph, final AStar aStar, final ManyToManySearch.Matrix matrix, final int[] sourceLabels, final int[] targetLabels, final AStar.OptimizationMode optimizationMode) {
+        for (int i = 0; i < sourceLabels.length; i++) {
+            for (int j = 0; j < targetLabels.length; j++) {
+                int cost;
+                try {
+                    cost = aStar.findCost(graph.vertices(sourceLabels[i]), graph.vertices(targetLabels[j]), optimizationMode);
+                } catch (UnreachableTargetException e) {
+                    cost = ManyToManySearch.Matrix.UNREACHABLE;
+                }
+                Assert.assertEquals(cost, optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? matrix.getLength(i, j) : matrix.getTravelTime(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void oneToManyTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        // A depot and its customers, all within a few kilometers of each other.
+        final int sourceLabel = nns.run(37.9838, 23.7275).lbl();
+        final Random random = new Random(0);
+        final int[] targetLabels = new int[NUM_ONE_TO_MANY_TARGETS];
+        for (int j = 0; j < NUM_ONE_TO_MANY_TARGETS; j++) {
+            targetLabels[j] = nns.run(37.9838 + 0.05 * (random.nextDouble() - 0.5), 23.7275 + 0.05 * (random.nextDouble() - 0.5)).lbl();
+        }
+
+        final OneToManySearch.Result result = new OneToManySearch(graph).run(sourceLabel, targetLabels, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, true);
+        final AStar aStar = new AStar(graph);
+        for (int j = 0; j < NUM_ONE_TO_MANY_TARGETS; j++) {
+            final int travelTime = aStar.findCost(graph.vertices(sourceLabel), graph.vertices(targetLabels[j]), AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+            Assert.assertEquals(travelTime, result.getTravelTime(j));
+            Assert.assertEquals(travelTime, result.getRoute(j).getTravelTime());
+            Assert.assertEquals(result.getLength(j), result.getRoute(j).getLength());
+            Assert.assertEquals(targetLabels[j], result.getRoute(j).getTargetLabel());
+        }
+    }
+
+    @Test
+    public void isochroneTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex origin = nns.run(37.9838, 23.7275);
+        final DeserializedVertex boundary = nns.run(37.9838 + 0.02, 23.7275 + 0.02);
+        final AStar aStar = new AStar(graph);
+        final IsochroneSearch isochroneSearch = new IsochroneSearch(graph, IncomingEdgeIndex.build(graph));
+        final Random random = new Random(0);
+        for (final IsochroneSearch.Direction direction : IsochroneSearch.Direction.values()) {
+            // The budget is exactly enough to reach (or be reached from) a vertex a couple of kilometers away.
+            final int budget = direction == IsochroneSearch.Direction.FORWARD ? aStar.findCost(origin, boundary, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME) : aStar.findCost(boundary, origin, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+            final IsochroneSearch.Isochrone isochrone = isochroneSearch.run(origin.lbl(), budget, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, direction);
+            final float[] outline = isochrone.computeOutline(graph, 1e-3);
+
+            boolean isBoundaryReached = false;
+            for (int i = 0; i < isochrone.getNumVertices(); i++) {
+                Assert.assertTrue(isochrone.getCosts()[i] <= budget);
+                Assert.assertTrue(i == 0 || isochrone.getCosts()[i - 1] <= isochrone.getCosts()[i]);
+                isBoundaryReached |= isochrone.getLabels()[i] == boundary.lbl();
+            }
+            Assert.assertTrue(isBoundaryReached);
+            for (int k = 0; k < NUM_ISOCHRONE_SAMPLES; k++) {
+                final int i = random.nextInt(isochrone.getNumVertices());
+                final DeserializedVertex v = graph.vertices(isochrone.getLabels()[i]);
+                final int travelTime = direction == IsochroneSearch.Direction.FORWARD ? aStar.findCost(origin, v, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME) : aStar.findCost(v, origin, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+                Assert.assertEquals(travelTime, isochrone.getCosts()[i]);
+            }
+            Assert.assertTrue(outline.length >= 8 && outline.length % 2 == 0);
+        }
+    }
+
+    @Test
+    public void deltaSteppingTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final int sourceLabel = new NearestNeighborSearch(graph).run(37.9838, 23.7275).lbl();
+        final IsochroneSearch dijkstra = new IsochroneSearch(graph);
+        final DeltaSteppingSearch deltaStepping = new DeltaSteppingSearch(graph);
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            // An unbounded isochrone search is a sequential Dijkstra search.
+            final IsochroneSearch.Isochrone isochrone = dijkstra.run(sourceLabel, Integer.MAX_VALUE, optimizationMode, IsochroneSearch.Direction.FORWARD);
+            final int defaultBucketWidth = deltaStepping.getDefaultBucketWidth(optimizationMode);
+            // The costs must not depend on the bucket width.
+            for (final int bucketWidth : new int[]{defaultBucketWidth / 4, defaultBucketWidth, 4 * defaultBucketWidth}) {
+                final DeltaSteppingSearch.Result result = deltaStepping.run(sourceLabel, optimizationMode, Math.max(1, bucketWidth), CancellationToken.NONE);
+                int numReached = 0;
+                for (final int cost : result.getCosts()) {
+                    numReached += cost == DeltaSteppingSearch.UNREACHABLE ? 0 : 1;
+                }
+                Assert.assertEquals(isochrone.getNumVertices(), numReached);
+                for (int i = 0; i < isochrone.getNumVertices(); i++) {
+                    Assert.assertEquals(isochrone.getCosts()[i], result.getCost(isochrone.getLabels()[i]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bidirectionalAStarTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final AStar aStar = new AStar(graph);
+        final BidirectionalAStar bidirectionalAStar = new BidirectionalAStar(graph, IncomingEdgeIndex.build(graph));
+        // Long queries between the largest cities, in both directions.
+        final double[][] queries = {{37.9838, 23.7275, 40.6401, 22.9444}, {40.6401, 22.9444, 37.9838, 23.7275}, {38.2466, 21.7346, 40.6401, 22.9444}};
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+                for (final double[] query : queries) {
+                    final DeserializedVertex s = nns.run(query[0], query[1]);
+                    final DeserializedVertex t = nns.run(query[2], query[3]);
+                    final Path expected = aStar.run(s, t, optimizationMode);
+                    final Path actual = bidirectionalAStar.run(graph.vertices(s.lbl()), graph.vertices(t.lbl()), optimizationMode, executor);
+                    Assert.assertEquals(optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? expected.getLength() : expected.getTravelTime(), optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? actual.getLength() : actual.getTravelTime());
+                    Assert.assertEquals(s.lbl(), actual.getSourceLabel());
+                    Assert.assertEquals(t.lbl(), actual.getTargetLabel());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void weightedAStarTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final WeightedAStar weightedAStar = new WeightedAStar(graph);
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            final int optimalCost = getCost(weightedAStar.run(s, t, optimizationMode, 0), optimizationMode);
+            for (final double epsilon : new double[]{0.1, 0.5, 1}) {
+                final int cost = getCost(weightedAStar.run(s, t, optimizationMode, epsilon), optimizationMode);
+                Assert.assertTrue(cost <= (1 + epsilon) * optimalCost);
+            }
+
+            // Every improvement must be strictly better than the last, and the final route must be optimal.
+            final List<Path> routes = new ArrayList<>();
+            final WeightedAStar.AnytimeResult result = weightedAStar.runAnytime(s, t, optimizationMode, 1, new CancellationToken().withTimeBudget(1, TimeUnit.MINUTES), routes::add);
+            Assert.assertTrue(result.isOptimal());
+            Assert.assertEquals(optimalCost, getCost(result.getRoute(), optimizationMode));
+            for (int i = 1; i < routes.size(); i++) {
+                Assert.assertTrue(getCost(routes.get(i), optimizationMode) < getCost(routes.get(i - 1), optimizationMode));
+            }
+        }
+    }
+
+    @Test
+    public void metricTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final AStar aStar = new AStar(graph);
+
+        final Metric distance = Metric.of(graph, AStar.OptimizationMode.MINIMIZE_DISTANCE);
+        final Metric travelTime = distance.withWeights(graph, 0, 1);
+        final Path[] routes = new Path[2];
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            final Metric metric = optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? distance : travelTime;
+            final Path expected = aStar.run(s, t, optimizationMode);
+            final Path actual = aStar.run(s, t, metric);
+            Assert.assertEquals(getCost(expected, optimizationMode), getCost(actual, optimizationMode));
+            routes[optimizationMode.ordinal()] = actual;
+        }
+
+        // A route minimizing a blend of both costs must be at least as good in terms of that blend as the routes minimizing either one.
+        final Metric blend = distance.withWeights(graph, 1, 10);
+        final Path blended = aStar.run(s, t, blend);
+        for (final Path route : routes) {
+            Assert.assertTrue(blended.getLength() + 10L * blended.getTravelTime() <= route.getLength() + 10L * route.getTravelTime());
+        }
+    }
+
+    @Test
+    public void alternativeRouteTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final WeightedAStar weightedAStar = new WeightedAStar(graph);
+        final AlternativeRouteSearch alternativeRouteSearch = new AlternativeRouteSearch(graph, IncomingEdgeIndex.build(graph));
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            final int optimalCost = getCost(weightedAStar.run(s, t, optimizationMode, 0), optimizationMode);
+            final AlternativeRouteSearch.Result result = alternativeRouteSearch.run(s, t, optimizationMode, 3);
+            Assert.assertEquals(optimalCost, getCost(result.getOptimalRoute(), optimizationMode));
+            final Set<Long> optimalEdges = new HashSet<>();
+            for (int i = 0; i + 1 < result.getOptimalRoute().getNumEndpoints(); i++) {
+                optimalEdges.add((long) result.getOptimalRoute().getLabel(i) << 32 | result.getOptimalRoute().getLabel(i + 1));
+            }
+            // Every alternative route must be a simple route of bounded stretch, which shares a limited part of the optimal route.
+            for (int j = 1; j < result.getNumRoutes(); j++) {
+                final Path route = result.getRoute(j);
+                Assert.assertTrue(getCost(route, optimizationMode) <= (1 + AlternativeRouteSearch.MAX_STRETCH) * optimalCost);
+                final Set<Integer> labels = new HashSet<>();
+                int cost = 0;
+                int sharedCost = 0;
+                for (int i = 0; i + 1 < route.getNumEndpoints(); i++) {
+                    Assert.assertTrue(labels.add(route.getLabel(i)));
+                    final DeserializedEdge edge = graph.vertices(route.getLabel(i)).outgoingEdges(findEdgeIndex(graph, route.getLabel(i), route.getLabel(i + 1)));
+                    final int edgeCost = optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? edge.length() : edge.travelTime();
+                    cost += edgeCost;
+                    if (optimalEdges.contains((long) route.getLabel(i) << 32 | route.getLabel(i + 1))) {
+                        sharedCost += edgeCost;
+                    }
+                }
+                Assert.assertEquals(getCost(route, optimizationMode), cost);
+                Assert.assertTrue(sharedCost <= AlternativeRouteSearch.MAX_SHARING * optimalCost);
+            }
+        }
+    }
+
+    @Test
+    public void edgeOverlayTest() throws IOException, InterruptedException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final EdgeOverlay overlay = new EdgeOverlay();
+        final AStar aStar = new AStar(graph, overlay);
+
+        // Every instance of the algorithm keeps its state in the graph itself, so the one without an overlay needs a mapping of its own.
+        final DeserializedGraph plainGraph = mapGraph();
+        final Path route = new AStar(plainGraph).run(plainGraph.vertices(s.lbl()), plainGraph.vertices(t.lbl()), AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        Assert.assertEquals(route.getTravelTime(), aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME).getTravelTime());
+
+        // Closing an edge in the middle of the route must divert it.
+        final int i = route.getNumEndpoints() / 2;
+        final int edgeIndex = findEdgeIndex(graph, route.getLabel(i), route.getLabel(i + 1));
+        overlay.closeEdge(route.getLabel(i), edgeIndex);
+        final Path diverted = aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        Assert.assertTrue(diverted.getTravelTime() >= route.getTravelTime());
+        for (int j = 0; j + 1 < diverted.getNumEndpoints(); j++) {
+            Assert.assertFalse(diverted.getLabel(j) == route.getLabel(i) && diverted.getLabel(j + 1) == route.getLabel(i + 1));
+        }
+        Assert.assertEquals(diverted.getTravelTime(), aStar.findCost(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME));
+
+        // Closing the target must make it unreachable, and clearing the overlay must restore the original route.
+        overlay.closeVertex(t.lbl());
+        try {
+            aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+            Assert.fail("Expected UnreachableTargetException.");
+        } catch (final UnreachableTargetException ignored) {
+        }
+        overlay.clear();
+        Assert.assertEquals(route.getTravelTime(), aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME).getTravelTime());
+
+        // A penalty makes an edge cost more, but never less than it does.
+        overlay.setPenalty(route.getLabel(i), edgeIndex, 1000);
+        Assert.assertTrue(aStar.findCost(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME) >= route.getTravelTime());
+        overlay.clear();
+
+        // Concurrent edits must never be lost.
+        final long version = overlay.getVersion();
+        final Thread[] threads = new Thread[4];
+        for (int k = 0; k < threads.length; k++) {
+            final int offset = k;
+            threads[k] = new Thread(() -> {
+                for (int label = offset; label < 400; label += threads.length) {
+                    overlay.closeVertex(label);
+                }
+            });
+            threads[k].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        for (int label = 0; label < 400; label++) {
+            Assert.assertTrue(overlay.getSnapshot().isClosed(label));
+        }
+        Assert.assertEquals(version + 400, overlay.getVersion());
+    }
+
+    @Test
+    public void travelTimePatchTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final EdgeOverlay overlay = new EdgeOverlay();
+        final AStar aStar = new AStar(graph, overlay);
+        final Path route = aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        final int i = route.getNumEndpoints() / 2;
+        final int edgeIndex = findEdgeIndex(graph, route.getLabel(i), route.getLabel(i + 1));
+        final int travelTime = graph.vertices(route.getLabel(i)).outgoingEdges(edgeIndex).travelTime();
+        final int edgeId = TravelTimePatch.getEdgeId(route.getLabel(i), edgeIndex);
+
+        // A patch must survive a round trip through its binary format.
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TravelTimePatch(new int[]{edgeId}, new int[]{0}).write(out);
+        final TravelTimePatch patch = TravelTimePatch.read(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals(1, patch.getNumRecords());
+
+        // A corrupted number of records must be rejected, whether it is implausibly large or merely larger than the number of records in the stream.
+        for (final int numRecords : new int[]{-1, Integer.MAX_VALUE, 1 << 20}) {
+            final byte[] corrupted = out.toByteArray();
+            ByteBuffer.wrap(corrupted).order(ByteOrder.LITTLE_ENDIAN).putInt(Integer.BYTES, numRecords);
+            try {
+                TravelTimePatch.read(new ByteArrayInputStream(corrupted));
+                Assert.fail("Expected IOException.");
+            } catch (final IOException ignored) {
+            }
+        }
+
+        // Making an edge of the optimal route free makes the route cheaper by exactly its original travel time, and no other route may be cheaper still.
+        overlay.applyTravelTimePatch(patch);
+        Assert.assertEquals(route.getTravelTime() - travelTime, aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME).getTravelTime());
+        Assert.assertEquals(route.getTravelTime() - travelTime, aStar.findCost(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME));
+        Assert.assertEquals(findTravelTime(graph, overlay.getSnapshot(), s.lbl(), t.lbl()), aStar.findCost(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME));
+
+        // A later patch overrides an earlier one, and restoring the edge brings back the original route.
+        overlay.applyTravelTimePatch(new TravelTimePatch(new int[]{edgeId}, new int[]{route.getTravelTime()}));
+        Assert.assertTrue(aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME).getTravelTime() >= route.getTravelTime());
+        overlay.applyTravelTimePatch(new TravelTimePatch(new int[]{edgeId}, new int[]{TravelTimePatch.RESTORED}));
+        Assert.assertEquals(0, overlay.getSnapshot().getNumOverriddenEdges());
+        Assert.assertEquals(route.getTravelTime(), aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME).getTravelTime());
+
+        // A large patch must be applied as a whole.
+        final Random random = new Random(362647020392L);
+        final int numRecords = 1 << 16;
+        final int[] edges = new int[numRecords];
+        final int[] travelTimes = new int[numRecords];
+        for (int j = 0; j < numRecords; j++) {
+            final int label = random.nextInt(graph.verticesLength());
+            final int degree = graph.vertices(label).outgoingEdgesLength();
+            edges[j] = TravelTimePatch.getEdgeId(label, degree == 0 ? 0 : random.nextInt(degree));
+            travelTimes[j] = random.nextInt(1000);
+        }
+        overlay.applyTravelTimePatch(new TravelTimePatch(edges, travelTimes));
+        Assert.assertTrue(overlay.getSnapshot().getNumOverriddenEdges() > 0);
+
+        // Making the edges around the original route faster than free flow must not make the heuristic overestimate the cost of the optimal route.
+        overlay.clear();
+        final Set<Integer> patchedVertices = new HashSet<>();
+        final List<Integer> frontier = new ArrayList<>();
+        for (int j = 0; j < route.getNumEndpoints(); j++) {
+            frontier.add(route.getLabel(j));
+        }
+        final int[] fasterEdges = new int[numRecords];
+        final int[] fasterTravelTimes = new int[numRecords];
+        int numFasterEdges = 0;
+        for (int j = 0; j < frontier.size(); j++) {
+            final DeserializedVertex vertex = graph.vertices(frontier.get(j));
+            if (!patchedVertices.add(vertex.lbl()) || numFasterEdges + vertex.outgoingEdgesLength() > numRecords) {
+                continue;
+            }
+            for (int k = 0; k < vertex.outgoingEdgesLength(); k++) {
+                fasterEdges[numFasterEdges] = TravelTimePatch.getEdgeId(vertex.lbl(), k);
+                fasterTravelTimes[numFasterEdges++] = vertex.outgoingEdges(k).travelTime() / 4;
+                frontier.add(vertex.outgoingEdges(k).endVertexLabel());
+            }
+        }
+        overlay.applyTravelTimePatch(new TravelTimePatch(Arrays.copyOf(fasterEdges, numFasterEdges), Arrays.copyOf(fasterTravelTimes, numFasterEdges)));
+        Assert.assertTrue(overlay.getSnapshot().getMinTravelTimeFactor(graph) <= 0.25);
+        final int patchedTravelTime = findTravelTime(graph, overlay.getSnapshot(), s.lbl(), t.lbl());
+        Assert.assertEquals(patchedTravelTime, aStar.findCost(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME));
+        Assert.assertEquals(patchedTravelTime, aStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME).getTravelTime());
+    }
+
+    @Test
+    public void timeDependentAStarTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        int numEdges = 0;
+        for (int i = 0; i < graph.verticesLength(); i++) {
+            numEdges += graph.vertices(i).outgoingEdgesLength();
+        }
+        // A single daily profile with a morning rush hour, which is faster than free flow at night.
+        final int[] edgeProfileIds = new int[numEdges];
+        Arrays.fill(edgeProfileIds, 1);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TravelTimeProfiles.write(out, 86400, new int[][]{{0, 5 * 3600, 7 * 3600, 10 * 3600, 12 * 3600}}, new double[][]{{0.8, 0.8, 2, 2, 1}}, edgeProfileIds);
+        final TravelTimeProfiles profiles = TravelTimeProfiles.read(new ByteArrayInputStream(out.toByteArray()), graph);
+        Assert.assertEquals(0.8, profiles.getMinFactor(), 1e-3);
+        final TimeDependentAStar timeDependentAStar = new TimeDependentAStar(graph, profiles);
+        final Path freeFlowRoute = new WeightedAStar(graph).run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, 0);
+
+        for (final int departureTime : new int[]{3 * 3600, 6 * 3600, 7 * 3600 + 1800, 11 * 3600, 14 * 3600}) {
+            final Path route = timeDependentAStar.run(s, t, departureTime);
+            // The travel time of the route must be that of driving along it.
+            int arrivalTime = departureTime;
+            int length = 0;
+            for (int i = 0; i + 1 < route.getNumEndpoints(); i++) {
+                final int edgeIndex = findEdgeIndex(graph, route.getLabel(i), route.getLabel(i + 1));
+                final DeserializedEdge edge = graph.vertices(route.getLabel(i)).outgoingEdges(edgeIndex);
+                arrivalTime += profiles.getTravelTime(route.getLabel(i), edgeIndex, edge.travelTime(), arrivalTime);
+                length += edge.length();
+            }
+            Assert.assertEquals(arrivalTime - departureTime, route.getTravelTime());
+            Assert.assertEquals(length, route.getLength());
+            Assert.assertTrue(route.getTravelTime() >= 0.8 * freeFlowRoute.getTravelTime());
+            Assert.assertTrue(route.getTravelTime() <= 2 * freeFlowRoute.getTravelTime());
+        }
+
+        // Profiles which are constant or free-flow must yield the free-flow route.
+        Arrays.fill(edgeProfileIds, TravelTimeProfiles.FREE_FLOW);
+        out.reset();
+        TravelTimeProfiles.write(out, 86400, new int[][]{{0}}, new double[][]{{2}}, edgeProfileIds);
+        Assert.assertEquals(freeFlowRoute.getTravelTime(), new TimeDependentAStar(graph, TravelTimeProfiles.read(new ByteArrayInputStream(out.toByteArray()), graph)).run(s, t, 0).getTravelTime());
+        Arrays.fill(edgeProfileIds, 1);
+        out.reset();
+        TravelTimeProfiles.write(out, 86400, new int[][]{{0}}, new double[][]{{2}}, edgeProfileIds);
+        Assert.assertEquals(2 * freeFlowRoute.getTravelTime(), new TimeDependentAStar(graph, TravelTimeProfiles.read(new ByteArrayInputStream(out.toByteArray()), graph)).run(s, t, 0).getTravelTime());
+
+        // A profile whose travel time drops faster than time passes must be rejected.
+        out.reset();
+        TravelTimeProfiles.write(out, 86400, new int[][]{{0, 2}}, new double[][]{{15, 1}}, edgeProfileIds);
+        try {
+            TravelTimeProfiles.read(new ByteArrayInputStream(out.toByteArray()), graph);
+            Assert.fail("Expected IOException.");
+        } catch (final IOException ignored) {
+        }
+    }
+
+    @Test
+    public void paretoSearchTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final WeightedAStar weightedAStar = new WeightedAStar(graph);
+        final ParetoSearch paretoSearch = new ParetoSearch(graph);
+        // The exact set of Pareto-optimal routes is only affordable over short distances.
+        final double[][] queries = {{37.9838, 23.7275, 37.9420, 23.6465}, {37.9838, 23.7275, 40.6401, 22.9444}};
+        final double[][] epsilons = {{0, 0.01}, {0.01, 0.05}};
+        for (int q = 0; q < queries.length; q++) {
+            final DeserializedVertex s = nns.run(queries[q][0], queries[q][1]);
+            final DeserializedVertex t = nns.run(queries[q][2], queries[q][3]);
+            final Path shortestRoute = weightedAStar.run(s, t, AStar.OptimizationMode.MINIMIZE_DISTANCE, 0);
+            final Path fastestRoute = weightedAStar.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME, 0);
+            for (final double epsilon : epsilons[q]) {
+                for (final boolean isFastestRouteExact : new boolean[]{true, false}) {
+                    final ParetoSearch.Result result = paretoSearch.run(s, t, epsilon, isFastestRouteExact, CancellationToken.NONE);
+                    // The shortest route must always be exact, the fastest one must be exact unless the search is relaxed and it is not requested to be, and every other route must trade length for travel time.
+                    Assert.assertEquals(shortestRoute.getLength(), result.getShortestRoute().getLength());
+                    if (isFastestRouteExact || epsilon == 0) {
+                        Assert.assertEquals(fastestRoute.getTravelTime(), result.getFastestRoute().getTravelTime());
+                    } else {
+                        Assert.assertTrue(result.getFastestRoute().getTravelTime() >= fastestRoute.getTravelTime());
+                    }
+                    Assert.assertEquals(t.lbl(), result.getFastestRoute().getTargetLabel());
+                    for (int i = 1; i < result.getNumRoutes(); i++) {
+                        Assert.assertTrue(result.getRoute(i).getLength() > result.getRoute(i - 1).getLength());
+                        Assert.assertTrue(result.getRoute(i).getTravelTime() < result.getRoute(i - 1).getTravelTime());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void kShortestPathsTest() throws IOException, InterruptedException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final WeightedAStar weightedAStar = new WeightedAStar(graph);
+        final IncomingEdgeIndex incomingEdges = IncomingEdgeIndex.build(graph);
+        final KShortestPathSearch kShortestPathSearch = new KShortestPathSearch(graph, incomingEdges);
+        final DeserializedVertex nearbyTarget = nns.run(37.9838 + 0.02, 23.7275 + 0.02);
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+                final int optimalCost = getCost(weightedAStar.run(s, t, optimizationMode, 0), optimizationMode);
+                final KShortestPathSearch.Result result = kShortestPathSearch.run(s, t, optimizationMode, 10);
+                final KShortestPathSearch.Result parallelResult = kShortestPathSearch.run(s, t, optimizationMode, 10, executor);
+                Assert.assertEquals(10, result.getNumRoutes());
+                Assert.assertEquals(optimalCost, getCost(result.getOptimalRoute(), optimizationMode));
+                final Set<List<Integer>> routes = new HashSet<>();
+                for (int j = 0; j < result.getNumRoutes(); j++) {
+                    final Path route = result.getRoute(j);
+                    // The routes must be distinct and simple, come in increasing order of cost, and not depend on how the spur searches are run.
+                    Assert.assertEquals(getCost(route, optimizationMode), getCost(parallelResult.getRoute(j), optimizationMode));
+                    if (j > 0) {
+                        Assert.assertTrue(getCost(route, optimizationMode) >= getCost(result.getRoute(j - 1), optimizationMode));
+                    }
+                    final List<Integer> labels = new ArrayList<>();
+                    for (int i = 0; i < route.getNumEndpoints(); i++) {
+                        labels.add(route.getLabel(i));
+                    }
+                    Assert.assertEquals(labels.size(), new HashSet<>(labels).size());
+                    Assert.assertTrue(routes.add(labels));
+                }
+
+                // Between two nearby vertices, every simple route costing at most as much as the tenth shortest one can be enumerated, and the cheapest ten of them must cost as much as the routes found.
+                final KShortestPathSearch.Result nearbyResult = kShortestPathSearch.run(s, nearbyTarget, optimizationMode, 10, executor);
+                final int maxCost = getCost(nearbyResult.getRoute(nearbyResult.getNumRoutes() - 1), optimizationMode);
+                final List<Integer> costs = findSimpleRouteCosts(graph, incomingEdges, s.lbl(), nearbyTarget.lbl(), maxCost, optimizationMode);
+                Assert.assertTrue(costs.size() >= nearbyResult.getNumRoutes());
+                for (int j = 0; j < nearbyResult.getNumRoutes(); j++) {
+                    Assert.assertEquals((int) costs.get(j), getCost(nearbyResult.getRoute(j), optimizationMode));
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Test
+    public void incrementalRerouteTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final WeightedAStar weightedAStar = new WeightedAStar(graph);
+        final IncomingEdgeIndex incomingEdges = IncomingEdgeIndex.build(graph);
+        // A tree too small to ever reach the source must still give optimal routes.
+        for (final int maxTreeSize : new int[]{IncrementalRerouteSearch.DEFAULT_MAX_TREE_SIZE, 1 << 10}) {
+            final IncrementalRerouteSearch incrementalRerouteSearch = new IncrementalRerouteSearch(graph, incomingEdges, maxTreeSize);
+            for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+                // The origin is dragged away from its initial location, one step at a time.
+                for (int i = 0; i < 10; i++) {
+                    final DeserializedVertex s = nns.run(37.9838 + 0.002 * i, 23.7275 + 0.002 * i);
+                    final Path route = incrementalRerouteSearch.run(s, t, optimizationMode);
+                    Assert.assertEquals(getCost(weightedAStar.run(s, t, optimizationMode, 0), optimizationMode), getCost(route, optimizationMode));
+                    Assert.assertEquals(s.lbl(), route.getSourceLabel());
+                    Assert.assertEquals(t.lbl(), route.getTargetLabel());
+                }
+            }
+        }
+
+        // Editing the overlay must invalidate the tree, so that the next query avoids the closed edge and uses the faster travel times.
+        final EdgeOverlay overlay = new EdgeOverlay();
+        final IncrementalRerouteSearch incrementalRerouteSearch = new IncrementalRerouteSearch(graph, incomingEdges, overlay, IncrementalRerouteSearch.DEFAULT_MAX_TREE_SIZE);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final Path route = incrementalRerouteSearch.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        final int i = route.getNumEndpoints() / 2;
+        final int closedEdgeIndex = findEdgeIndex(graph, route.getLabel(i), route.getLabel(i + 1));
+        final int fasterEdgeIndex = findEdgeIndex(graph, route.getLabel(i + 1), route.getLabel(i + 2));
+        overlay.edit(editor -> editor.closeEdge(route.getLabel(i), closedEdgeIndex).setTravelTime(route.getLabel(i + 1), fasterEdgeIndex, 0));
+        final Path reroute = incrementalRerouteSearch.run(s, t, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+        Assert.assertEquals(findTravelTime(graph, overlay.getSnapshot(), s.lbl(), t.lbl()), reroute.getTravelTime());
+        for (int j = 0; j + 1 < reroute.getNumEndpoints(); j++) {
+            Assert.assertFalse(reroute.getLabel(j) == route.getLabel(i) && reroute.getLabel(j + 1) == route.getLabel(i + 1));
+        }
+    }
+
+    @Test
+    public void navigationSessionTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final DeserializedVertex s = nns.run(37.9838, 23.7275);
+        final DeserializedVertex t = nns.run(40.6401, 22.9444);
+        final WeightedAStar weightedAStar = new WeightedAStar(graph);
+        final IncomingEdgeIndex incomingEdges = IncomingEdgeIndex.build(graph);
+        final EdgeOverlay overlay = new EdgeOverlay();
+        final NavigationSession navigationSession = new NavigationSession(graph, incomingEdges, overlay, NavigationSession.DEFAULT_CORRIDOR_WIDTH);
+        // The optimal routes the session must recalculate are those under an overlay closing every vertex it does not cover. Every instance of the algorithm keeps its state in the graph itself, so a single one is used throughout.
+        final EdgeOverlay coveredOverlay = new EdgeOverlay();
+        final AStar coveredAStar = new AStar(graph, coveredOverlay);
+        // No state is needed before the first session starts.
+        Assert.assertFalse(navigationSession.isCovered(s));
+        for (final AStar.OptimizationMode optimizationMode : AStar.OptimizationMode.values()) {
+            final Path route = weightedAStar.run(s, t, optimizationMode, 0);
+            navigationSession.start(route, optimizationMode);
+
+            // Every recalculation from a vertex of the original route must follow the rest of it, without extending the corridor.
+            for (int i = 0; i + 1 < route.getNumEndpoints(); i += 10) {
+                final Path recalculatedRoute = navigationSession.reroute(graph.vertices(route.getLabel(i)));
+                Assert.assertEquals(getCost(weightedAStar.run(graph.vertices(route.getLabel(i)), t, optimizationMode, 0), optimizationMode), getCost(recalculatedRoute, optimizationMode));
+            }
+            Assert.assertEquals(0, navigationSession.getNumExtensions());
+
+            // A driver far off the route must trigger an extension, after which the route from there, as well as from every vertex of the original route, is optimal among those passing through the tree alone.
+            final DeserializedVertex position = nns.run(38.2466, 21.7346);
+            Assert.assertFalse(navigationSession.isCovered(position));
+            final Path detour = navigationSession.reroute(position);
+            Assert.assertTrue(navigationSession.getNumExtensions() > 0);
+            Assert.assertTrue(navigationSession.isCovered(position));
+            Assert.assertEquals(position.lbl(), detour.getSourceLabel());
+            Assert.assertEquals(t.lbl(), detour.getTargetLabel());
+            closeUncovered(graph, navigationSession, coveredOverlay);
+            Assert.assertEquals(coveredAStar.findCost(position, t, optimizationMode), getCost(detour, optimizationMode));
+            for (int i = 0; i + 1 < route.getNumEndpoints(); i += 10) {
+                Assert.assertEquals(coveredAStar.findCost(graph.vertices(route.getLabel(i)), t, optimizationMode), getCost(navigationSession.reroute(graph.vertices(route.getLabel(i))), optimizationMode));
+            }
+
+            // Editing the overlay must grow the tree again, so that the recalculated route avoids the closed edge.
+            final int i = route.getNumEndpoints() / 2;
+            overlay.closeEdge(route.getLabel(i), findEdgeIndex(graph, route.getLabel(i), route.getLabel(i + 1)));
+            final Path diverted = navigationSession.reroute(s);
+            for (int j = 0; j + 1 < diverted.getNumEndpoints(); j++) {
+                Assert.assertFalse(diverted.getLabel(j) == route.getLabel(i) && diverted.getLabel(j + 1) == route.getLabel(i + 1));
+            }
+            closeUncovered(graph, navigationSession, coveredOverlay);
+            coveredOverlay.closeEdge(route.getLabel(i), findEdgeIndex(graph, route.getLabel(i), route.getLabel(i + 1)));
+            Assert.assertEquals(coveredAStar.findCost(s, t, optimizationMode), getCost(diverted, optimizationMode));
+            overlay.clear();
+
+            // A driver may already be in the corridor, but not in the tree, if every exit from there leaves the corridor. A route jumping from their position straight to the destination admits a patch of the corridor around them which is disconnected from the tree, so the first extension admits no vertex at all.
+            navigationSession.start(new Path(new int[]{position.lbl(), t.lbl()}, new float[]{position.lat(), position.lon(), t.lat(), t.lon()}, 0, 0), optimizationMode);
+            Assert.assertFalse(navigationSession.isCovered(position));
+            final Path disconnectedDetour = navigationSession.reroute(position);
+            Assert.assertTrue(navigationSession.getNumExtensions() > 1);
+            Assert.assertEquals(position.lbl(), disconnectedDetour.getSourceLabel());
+            Assert.assertEquals(t.lbl(), disconnectedDetour.getTargetLabel());
+            closeUncovered(graph, navigationSession, coveredOverlay);
+            Assert.assertEquals(coveredAStar.findCost(position, t, optimizationMode), getCost(disconnectedDetour, optimizationMode));
+
+            // An extension bridging the two legs of a route bent around the position must improve the cost of the vertices of the first leg, which are already in the tree.
+            final Path bentRoute = Path.concatenate(Arrays.asList(weightedAStar.run(s, position, optimizationMode, 0), weightedAStar.run(position, t, optimizationMode, 0)));
+            navigationSession.start(bentRoute, optimizationMode);
+            final int firstLegCost = getCost(navigationSession.reroute(s), optimizationMode);
+            final DeserializedVertex innerPosition = nns.run(38.3219, 23.3190);
+            Assert.assertFalse(navigationSession.isCovered(innerPosition));
+            navigationSession.reroute(innerPosition);
+            closeUncovered(graph, navigationSession, coveredOverlay);
+            final int improvedCost = coveredAStar.findCost(s, t, optimizationMode);
+            Assert.assertTrue(improvedCost < firstLegCost);
+            Assert.assertEquals(improvedCost, getCost(navigationSession.reroute(s), optimizationMode));
+        }
+    }
+
+    /**
+     * Replaces the contents of an overlay with the closure of every vertex not covered by a navigation session.
+     */
+    private static void closeUncovered(final DeserializedGraph graph, final NavigationSession navigationSession, final EdgeOverlay overlay) {
+        final DeserializedVertex vertex = new DeserializedVertex();
+        overlay.edit(editor -> {
+            editor.clear();
+            for (int label = 0; label < graph.verticesLength(); label++) {
+                if (!navigationSession.isCovered(graph.vertices(vertex, label))) {
+                    editor.closeVertex(label);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void blockCompressedContainerTest() throws IOException {
+        final File serializedGraphPath = new File(SERIALIZED_GRAPH_PATH);
+        final File containerPath = File.createTempFile("grc", ".tbc");
+        containerPath.deleteOnExit();
+        BlockCompressedContainer.write(serializedGraphPath, containerPath, BlockCompressedContainer.DEFAULT_BLOCK_SIZE);
+
+        final Random random = new Random(362647020392L);
+        try (final FileChannel fChannel = new RandomAccessFile(serializedGraphPath, "r").getChannel(); final BlockCompressedReader reader = new BlockCompressedReader(containerPath)) {
+            final ByteBuffer bb = fChannel.map(FileChannel.MapMode.READ_ONLY, 0, fChannel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            // Random reads must return the same values as the raw graph, including those straddling two blocks.
+            for (int i = 0; i < NUM_RANDOM_READS; i++) {
+                final long position = (long) (random.nextDouble() * (bb.capacity() - 4));
+                Assert.assertEquals(bb.getInt((int) position), reader.getInt(position));
+            }
+            for (long position = BlockCompressedContainer.DEFAULT_BLOCK_SIZE - 3; position < BlockCompressedContainer.DEFAULT_BLOCK_SIZE; position++) {
+                Assert.assertEquals(bb.getInt((int) position), reader.getInt(position));
+            }
+
+            // Full decompression must restore the raw graph byte for byte.
+            final File decompressedPath = File.createTempFile("grc", ".bin");
+            decompressedPath.deleteOnExit();
+            try (final FileChannel out = new RandomAccessFile(decompressedPath, "rw").getChannel()) {
+                reader.decompressTo(out);
+            }
+            Assert.assertEquals(serializedGraphPath.length(), decompressedPath.length());
+            try (final FileChannel decompressedChannel = new RandomAccessFile(decompressedPath, "r").getChannel()) {
+                Assert.assertEquals(bb, decompressedChannel.map(FileChannel.MapMode.READ_ONLY, 0, decompressedChannel.size()));
+            }
+        }
+    }
+
+    @Test
+    public void assetUnpackTest() throws IOException {
+        final File serializedGraphPath = new File(SERIALIZED_GRAPH_PATH);
+        final File unpackedPath = File.createTempFile("grc", ".bin");
+        Files.delete(unpackedPath.toPath());
+        unpackedPath.deleteOnExit();
+        final File tempPath = new File(unpackedPath.getPath() + ".part");
+        tempPath.deleteOnExit();
+        new File(unpackedPath.getPath() + ".crc32").deleteOnExit();
+        final byte[] contents = Files.readAllBytes(serializedGraphPath.toPath());
+        final CRC32 crc = new CRC32();
+        crc.update(contents);
+
+        // An interrupted transfer is resumed if the part already written matches the source, and started over otherwise.
+        for (final boolean isCorrupt : new boolean[]{false, true}) {
+            Files.deleteIfExists(unpackedPath.toPath());
+            final byte[] part = Arrays.copyOf(contents, contents.length / 2);
+            if (isCorrupt) {
+                part[part.length / 2] ^= 1;
+            }
+            Files.write(tempPath.toPath(), part);
+            Assert.assertFalse(AssetUnpacker.isUnpacked(unpackedPath));
+            try (final FileChannel fChannel = new RandomAccessFile(serializedGraphPath, "r").getChannel()) {
+                Assert.assertEquals(unpackedPath, AssetUnpacker.unpack(fChannel, 0, fChannel.size(), unpackedPath, null));
+            }
+            Assert.assertTrue(AssetUnpacker.isUnpacked(unpackedPath));
+            Assert.assertArrayEquals(contents, Files.readAllBytes(unpackedPath.toPath()));
+            Assert.assertEquals(crc.getValue(), AssetUnpacker.getChecksum(unpackedPath));
+            Assert.assertFalse(tempPath.exists());
+        }
+
+        // A file unpacked completely is never unpacked again, while a region beyond the end of the source cannot be unpacked at all.
+        try (final FileChannel fChannel = new RandomAccessFile(serializedGraphPath, "r").getChannel()) {
+            Assert.assertEquals(unpackedPath, AssetUnpacker.unpack(fChannel, 1, fChannel.size(), unpackedPath, null));
+            Files.delete(unpackedPath.toPath());
+            AssetUnpacker.unpack(fChannel, 1, fChannel.size(), unpackedPath, null);
+            Assert.fail("Expected IOException.");
+        } catch (final IOException ignored) {
+        }
+    }
+
+    @Test
+    public void routingPipelineTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final AStar aStar = new AStar(graph);
+
+        final GeoPoint origin = new GeoPoint(37.9838, 23.7275);
+        final GeoPoint destination = new GeoPoint(40.6401, 22.9444);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final RoutingPipeline pipeline = new RoutingPipeline(graph, nns, aStar, executor);
+            final RoutingPipeline.Result result = pipeline.route(origin, destination, AStar.OptimizationMode.MINIMIZE_DISTANCE).join();
+
+            final Path route = aStar.run(nns.run(origin.getLatitude(), origin.getLongitude()), nns.run(destination.getLatitude(), destination.getLongitude()), AStar.OptimizationMode.MINIMIZE_DISTANCE);
+            Assert.assertEquals(route.getLength(), result.getRoute().getLength());
+            Assert.assertEquals(route.getNumEndpoints(), result.getGeometry().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void waypointRoutingTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final AStar aStar = new AStar(graph);
+
+        // The intermediate stops are deliberately visited in a poor order.
+        final List<GeoPoint> stops = Arrays.asList(new GeoPoint(37.9838, 23.7275), new GeoPoint(39.6390, 22.4191), new GeoPoint(38.2466, 21.7346), new GeoPoint(39.3666, 22.9507), new GeoPoint(38.9012, 22.4345), new GeoPoint(40.6401, 22.9444));
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final RoutingPipeline pipeline = new RoutingPipeline(graph, nns, aStar, executor);
+            final RoutingPipeline.Result result = pipeline.route(stops, AStar.OptimizationMode.MINIMIZE_DISTANCE, false, new CancellationToken()).join();
+            final RoutingPipeline.Result optimizedResult = pipeline.route(stops, AStar.OptimizationMode.MINIMIZE_DISTANCE, true, new CancellationToken()).join();
+
+            // The route must be the concatenation of the optimal legs between consecutive stops, in the order they are visited.
+            for (final RoutingPipeline.Result r : Arrays.asList(result, optimizedResult)) {
+                final int[] order = r.getStopOrder();
+                Assert.assertEquals(0, order[0]);
+                Assert.assertEquals(stops.size() - 1, order[order.length - 1]);
+                int length = 0;
+                for (int i = 0; i + 1 < order.length; i++) {
+                    final GeoPoint source = stops.get(order[i]);
+                    final GeoPoint target = stops.get(order[i + 1]);
+                    length += aStar.run(nns.run(source.getLatitude(), source.getLongitude()), nns.run(target.getLatitude(), target.getLongitude()), AStar.OptimizationMode.MINIMIZE_DISTANCE).getLength();
+                }
+                Assert.assertEquals(length, r.getRoute().getLength());
+                Assert.assertEquals(r.getRoute().getNumEndpoints(), r.getGeometry().size());
+            }
+            Assert.assertTrue(optimizedResult.getRoute().getLength() <= result.getRoute().getLength());
+
+            // The legs share the budget of the request, so many legs which each fit in the budget on their own must still exceed it together. The clock advances by a millisecond every time it is read, so that the outcome does not depend on how fast the searches actually run.
+            final AtomicLong time = new AtomicLong();
+            final LongSupplier clock = () -> time.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+            final List<GeoPoint> roundTrip = Arrays.asList(stops.get(0), stops.get(stops.size() - 1), stops.get(0));
+            final long roundTripStartTime = time.get();
+            new RoutingPipeline(graph, nns, aStar, executor, 1, TimeUnit.HOURS).route(roundTrip, AStar.OptimizationMode.MINIMIZE_DISTANCE, false, new CancellationToken(clock)).join();
+            final long roundTripTime = TimeUnit.NANOSECONDS.toMillis(time.get() - roundTripStartTime);
+            final List<GeoPoint> roundTrips = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                roundTrips.add(stops.get(0));
+                roundTrips.add(stops.get(stops.size() - 1));
+            }
+            final RoutingPipeline impatientPipeline = new RoutingPipeline(graph, nns, aStar, executor, 2 * roundTripTime, TimeUnit.MILLISECONDS);
+            impatientPipeline.route(roundTrip, AStar.OptimizationMode.MINIMIZE_DISTANCE, false, new CancellationToken(clock)).join();
+            assertCompletedWith(impatientPipeline.route(roundTrips, AStar.OptimizationMode.MINIMIZE_DISTANCE, false, new CancellationToken(clock)), SearchTimeoutException.class);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void waypointOrderingTest() {
+        final Random random = new Random(362647020392L);
+        for (final int numStops : new int[]{8, 64}) {
+            // Stops scattered over a plane, with slightly asymmetric costs between them.
+            final double[][] stops = new double[numStops][2];
+            for (final double[] stop : stops) {
+                stop[0] = random.nextDouble() * 100000;
+                stop[1] = random.nextDouble() * 100000;
+            }
+            final int[] costs = new int[numStops * numStops];
+            for (int i = 0; i < numStops; i++) {
+                for (int j = 0; j < numStops; j++) {
+                    costs[i * numStops + j] = i == j ? 0 : (int) (Math.hypot(stops[i][0] - stops[j][0], stops[i][1] - stops[j][1]) * (1 + 0.2 * random.nextDouble()));
+                }
+            }
+            final int[] order = WaypointOrdering.run(costs, numStops);
+
+            // The order must visit every stop exactly once, between the fixed first and last ones, and beat the given order.
+            Assert.assertEquals(0, order[0]);
+            Assert.assertEquals(numStops - 1, order[numStops - 1]);
+            final int[] sortedOrder = order.clone();
+            Arrays.sort(sortedOrder);
+            final int[] identityOrder = new int[numStops];
+            for (int i = 0; i < numStops; i++) {
+                identityOrder[i] = i;
+            }
+            Assert.assertArrayEquals(identityOrder, sortedOrder);
+            final long cost = getCost(order, costs);
+            Assert.assertTrue(cost <= getCost(identityOrder, costs));
+            if (numStops <= 8) {
+                Assert.assertTrue(cost <= 1.1 * getOptimalCost(identityOrder, 1, costs));
+            }
+        }
+    }
+
+    @Test
+    public void routingCancellationTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final AStar aStar = new AStar(graph);
+
+        final GeoPoint origin = new GeoPoint(37.9838, 23.7275);
+        final GeoPoint destination = new GeoPoint(40.6401, 22.9444);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // A newer request supersedes an older one.
+            final RoutingPipeline pipeline = new RoutingPipeline(graph, nns, aStar, executor);
+            final CompletableFuture<RoutingPipeline.Result> superseded = pipeline.route(origin, destination, AStar.OptimizationMode.MINIMIZE_DISTANCE);
+            final RoutingPipeline.Result result = pipeline.route(origin, destination, AStar.OptimizationMode.MINIMIZE_DISTANCE).join();
+            assertCompletedWith(superseded, SearchCancelledException.class);
+            Assert.assertFalse(result.getGeometry().isEmpty());
+
+            // A search exceeding its time budget is aborted.
+            final RoutingPipeline impatientPipeline = new RoutingPipeline(graph, nns, aStar, executor, 1, TimeUnit.NANOSECONDS);
+            assertCompletedWith(impatientPipeline.route(origin, destination, AStar.OptimizationMode.MINIMIZE_DISTANCE), SearchTimeoutException.class);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void routeCacheTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final AStar aStar = new AStar(graph);
+        final RouteCache routeCache = new RouteCache(0);
+
+        final GeoPoint origin = new GeoPoint(37.9838, 23.7275);
+        final GeoPoint destination = new GeoPoint(40.6401, 22.9444);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final RoutingPipeline pipeline = new RoutingPipeline(graph, nns, aStar, routeCache, executor);
+            final Path route = pipeline.route(origin, destination, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME).join().getRoute();
+
+            final DeserializedVertex source = graph.vertices(route.getSourceLabel());
+            final DeserializedVertex target = graph.vertices(route.getTargetLabel());
+            final Path cachedRoute = routeCache.get(source, target, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME);
+            Assert.assertNotNull(cachedRoute);
+            Assert.assertEquals(route.getTravelTime(), cachedRoute.getTravelTime());
+            Assert.assertEquals(route.getNumEndpoints(), cachedRoute.getNumEndpoints());
+            // Routes are cached per optimization mode and graph version.
+            Assert.assertNull(routeCache.get(source, target, AStar.OptimizationMode.MINIMIZE_DISTANCE));
+            routeCache.setGraphVersion(1);
+            Assert.assertNull(routeCache.get(source, target, AStar.OptimizationMode.MINIMIZE_TRAVEL_TIME));
+            Assert.assertEquals(0, routeCache.getSize());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void snapCacheTest() throws IOException {
+        final DeserializedGraph graph = mapGraph();
+        final NearestNeighborSearch nns = new NearestNeighborSearch(graph);
+        final SnapCache snapCache = new SnapCache(graph, nns);
+
+        // Points cluster around a few popular locations.
+        final double[][] popularLocations = {{37.9838, 23.7275}, {40.6401, 22.9444}, {38.2466, 21.7346}, {35.3387, 25.1442}};
+        final Random random = new Random(0);
+        for (int i = 0; i < NUM_SNAPS; i++) {
+            final double[] location = popularLocations[random.nextInt(popularLocations.length)];
+            final double lat = location[0] + (random.nextInt(5) - 2) * SnapCache.DEFAULT_CELL_SIZE;
+            final double lon = location[1] + (random.nextInt(5) - 2) * SnapCache.DEFAULT_CELL_SIZE;
+            // The cache must always return the same vertex as the search it is in front of.
+            Assert.assertEquals(nns.run(lat, lon).lbl(), snapCache.run(lat, lon).lbl());
+        }
+    }
+
+    /**
+     * Maps the serialized graph privately, so that no test can modify it.
+     */
+    private static DeserializedGraph mapGraph() throws IOException {
+        try (final FileChannel fChannel = new RandomAccessFile(SERIALIZED_GRAPH_PATH, "rw").getChannel()) {
+            return DeserializedGraph.getRootAsDeserializedGraph(fChannel.map(FileChannel.MapMode.PRIVATE, 0, fChannel.size()));
+        }
+    }
+
+    private static int findEdgeIndex(final DeserializedGraph graph, final int startVertexLabel, final int endVertexLabel) {
+        final DeserializedVertex vertex = graph.vertices(startVertexLabel);
+        for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+            if (vertex.outgoingEdges(i).endVertexLabel() == endVertexLabel) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("The vertices are not adjacent.");
+    }
+
+    /**
+     * Finds the travel time of the optimal route between two vertices under an overlay snapshot using Dijkstra's algorithm, which does not depend on any heuristic.
+     */
+    private static int findTravelTime(final DeserializedGraph graph, final EdgeOverlay.Snapshot snapshot, final int sourceLabel, final int targetLabel) {
+        final int[] costs = new int[graph.verticesLength()];
+        Arrays.fill(costs, Integer.MAX_VALUE);
+        costs[sourceLabel] = 0;
+        // Every entry is the cost of a vertex, followed by its label.
+        final PriorityQueue<Long> queue = new PriorityQueue<>();
+        queue.add((long) sourceLabel);
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        while (!queue.isEmpty()) {
+            final long entry = queue.poll();
+            final int label = (int) entry;
+            final int cost = (int) (entry >>> 32);
+            if (cost > costs[label]) {
+                continue;
+            }
+            if (label == targetLabel) {
+                return cost;
+            }
+            graph.vertices(vertex, label);
+            for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+                vertex.outgoingEdges(edge, i);
+                if (snapshot.isClosed(edge.endVertexLabel())) {
+                    continue;
+                }
+                final int edgeCost = snapshot.getCost(label, i, snapshot.getTravelTime(label, i, edge.travelTime()));
+                if (edgeCost == EdgeOverlay.CLOSED) {
+                    continue;
+                }
+                if (cost + edgeCost < costs[edge.endVertexLabel()]) {
+                    costs[edge.endVertexLabel()] = cost + edgeCost;
+                    queue.add((long) (cost + edgeCost) << 32 | edge.endVertexLabel());
+                }
+            }
+        }
+        throw new UnreachableTargetException("The target vertex is unreachable from the source.");
+    }
+
+    /**
+     * Finds the cost of every simple route between two vertices costing at most a given amount, in increasing order, by enumerating them depth-first. Every partial route is pruned as soon as the cost of its optimal completion, which is found by a backward Dijkstra search beforehand, exceeds that amount.
+     */
+    private static List<Integer> findSimpleRouteCosts(final DeserializedGraph graph, final IncomingEdgeIndex incomingEdges, final int sourceLabel, final int targetLabel, final int maxCost, final AStar.OptimizationMode optimizationMode) {
+        final int[] costsToTarget = new int[graph.verticesLength()];
+        Arrays.fill(costsToTarget, Integer.MAX_VALUE);
+        costsToTarget[targetLabel] = 0;
+        final PriorityQueue<Long> queue = new PriorityQueue<>();
+        queue.add((long) targetLabel);
+        final DeserializedVertex vertex = new DeserializedVertex();
+        final DeserializedEdge edge = new DeserializedEdge();
+        while (!queue.isEmpty()) {
+            final long entry = queue.poll();
+            final int label = (int) entry;
+            final int cost = (int) (entry >>> 32);
+            if (cost > maxCost) {
+                break;
+            }
+            if (cost > costsToTarget[label]) {
+                continue;
+            }
+            for (int i = incomingEdges.getEdgesStart(label); i < incomingEdges.getEdgesEnd(label); i++) {
+                incomingEdges.getEdge(graph, i, vertex, edge);
+                final int adjacentLabel = incomingEdges.getStartVertexLabel(i);
+                final int adjacentCost = cost + optimizationMode.getCost(edge);
+                if (adjacentCost < costsToTarget[adjacentLabel]) {
+                    costsToTarget[adjacentLabel] = adjacentCost;
+                    queue.add((long) adjacentCost << 32 | adjacentLabel);
+                }
+            }
+        }
+        final List<Integer> routeCosts = new ArrayList<>();
+        final Set<Integer> visitedLabels = new HashSet<>();
+        visitedLabels.add(sourceLabel);
+        enumerateSimpleRoutes(graph, sourceLabel, targetLabel, 0, maxCost, optimizationMode, costsToTarget, visitedLabels, routeCosts);
+        routeCosts.sort(null);
+        return routeCosts;
+    }
+
+    private static void enumerateSimpleRoutes(final DeserializedGraph graph, final int label, final int targetLabel, final int cost, final int maxCost, final AStar.OptimizationMode optimizationMode, final int[] costsToTarget, final Set<Integer> visitedLabels, final List<Integer> routeCosts) {
+        if (label == targetLabel) {
+            routeCosts.add(cost);
+            return;
+        }
+        final DeserializedVertex vertex = graph.vertices(label);
+        for (int i = 0; i < vertex.outgoingEdgesLength(); i++) {
+            final DeserializedEdge edge = vertex.outgoingEdges(i);
+            final int adjacentLabel = edge.endVertexLabel();
+            final int adjacentCost = cost + optimizationMode.getCost(edge);
+            if (costsToTarget[adjacentLabel] == Integer.MAX_VALUE || (long) adjacentCost + costsToTarget[adjacentLabel] > maxCost || !visitedLabels.add(adjacentLabel)) {
+                continue;
+            }
+            enumerateSimpleRoutes(graph, adjacentLabel, targetLabel, adjacentCost, maxCost, optimizationMode, costsToTarget, visitedLabels, routeCosts);
+            visitedLabels.remove(adjacentLabel);
+        }
+    }
+
+    private static int getCost(final Path route, final AStar.OptimizationMode optimizationMode) {
+        return optimizationMode == AStar.OptimizationMode.MINIMIZE_DISTANCE ? route.getLength() : route.getTravelTime();
+    }
+
+    private static long getCost(final int[] order, final int[] costs) {
+        long cost = 0;
+        for (int i = 0; i + 1 < order.length; i++) {
+            cost += costs[order[i] * order.length + order[i + 1]];
+        }
+        return cost;
+    }
+
+    /**
+     * Finds the optimal cost over every permutation of the stops between the first and the last one, starting from a given position.
+     */
+    private static long getOptimalCost(final int[] order, final int start, final int[] costs) {
+        if (start >= order.length - 2) {
+            return getCost(order, costs);
+        }
+        long optimalCost = Long.MAX_VALUE;
+        for (int i = start; i < order.length - 1; i++) {
+            final int[] permutation = order.clone();
+            permutation[start] = order[i];
+            permutation[i] = order[start];
+            optimalCost = Math.min(optimalCost, getOptimalCost(permutation, start + 1, costs));
+        }
+        return optimalCost;
+    }
+
+    private static void assertCompletedWith(final CompletableFuture<?> future, final Class<? extends Throwable> exceptionClass) {
+        try {
+            future.join();
+            Assert.fail("Expected " + exceptionClass.getSimpleName() + ".");
+        } catch (CompletionException e) {
+            Assert.assertTrue(exceptionClass.isInstance(e.getCause()));
+        }
     }
-}
\ No newline at end of file
+}